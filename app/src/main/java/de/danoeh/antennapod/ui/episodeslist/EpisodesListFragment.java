@@ -13,6 +13,7 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.util.Pair;
 import androidx.fragment.app.Fragment;
@@ -48,9 +49,11 @@ import de.danoeh.antennapod.event.playback.PlaybackPositionEvent;
 import de.danoeh.antennapod.ui.swipeactions.SwipeActions;
 import de.danoeh.antennapod.model.feed.FeedItem;
 import de.danoeh.antennapod.model.feed.FeedItemFilter;
+import de.danoeh.antennapod.storage.database.DBReader;
 import de.danoeh.antennapod.ui.view.EmptyViewHandler;
 import de.danoeh.antennapod.ui.view.LiftOnScrollListener;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.disposables.Disposable;
@@ -136,8 +139,18 @@ public abstract class EpisodesListFragment extends Fragment
         } else if (listAdapter.onContextItemSelected(item)) {
             return true;
         }
-        FeedItem selectedItem = listAdapter.getLongPressedItem();
-        return FeedItemMenuHandler.onMenuItemClicked(this, item.getItemId(), selectedItem);
+        // The list does not load everything about an episode, for example its link
+        final long selectedItemId = listAdapter.getLongPressedItem().getId();
+        final int menuItemId = item.getItemId();
+        Maybe.fromCallable(() -> DBReader.getFeedItem(selectedItemId))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(selectedItem -> {
+                    if (isAdded()) {
+                        FeedItemMenuHandler.onMenuItemClicked(this, menuItemId, selectedItem);
+                    }
+                }, error -> Log.e(TAG, Log.getStackTraceString(error)));
+        return true;
     }
 
     @NonNull
@@ -240,16 +253,19 @@ public abstract class EpisodesListFragment extends Fragment
 
     private void performMultiSelectAction(int actionItemId) {
         EpisodeMultiSelectActionHandler handler = new EpisodeMultiSelectActionHandler(getActivity(), actionItemId);
+        final FeedItem lastLoadedItem = getLastLoadedItem();
         Completable.fromAction(
                 () -> {
                     handler.handleAction(listAdapter.getSelectedItems());
                     if (listAdapter.shouldSelectLazyLoadedItems()) {
-                        int applyPage = page + 1;
+                        FeedItem lastItem = lastLoadedItem;
                         List<FeedItem> nextPage;
                         do {
-                            nextPage = loadMoreData(applyPage);
+                            nextPage = loadMoreData(lastItem);
                             handler.handleAction(nextPage);
-                            applyPage++;
+                            if (!nextPage.isEmpty()) {
+                                lastItem = nextPage.get(nextPage.size() - 1);
+                            }
                         } while (nextPage.size() == EPISODES_PER_PAGE);
                     }
                 })
@@ -281,7 +297,8 @@ public abstract class EpisodesListFragment extends Fragment
         isLoadingMore = true;
         listAdapter.setDummyViews(1);
         listAdapter.notifyItemInserted(listAdapter.getItemCount() - 1);
-        disposable = Observable.fromCallable(() -> loadMoreData(page))
+        final FeedItem lastItem = getLastLoadedItem();
+        disposable = Observable.fromCallable(() -> loadMoreData(lastItem))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
@@ -426,8 +443,16 @@ public abstract class EpisodesListFragment extends Fragment
     @NonNull
     protected abstract List<FeedItem> loadData();
 
+    /**
+     * @param lastItem The last episode that is currently loaded, or null if none is loaded.
+     */
     @NonNull
-    protected abstract List<FeedItem> loadMoreData(int page);
+    protected abstract List<FeedItem> loadMoreData(@Nullable FeedItem lastItem);
+
+    @Nullable
+    private FeedItem getLastLoadedItem() {
+        return episodes.isEmpty() ? null : episodes.get(episodes.size() - 1);
+    }
 
     protected abstract int loadTotalItemCount();
 
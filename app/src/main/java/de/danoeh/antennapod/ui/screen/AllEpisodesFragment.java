@@ -56,14 +56,14 @@ public class AllEpisodesFragment extends EpisodesListFragment {
     @NonNull
     @Override
     protected List<FeedItem> loadData() {
-        return DBReader.getEpisodes(0, page * EPISODES_PER_PAGE, getFilter(),
+        return DBReader.getEpisodeRowsAfter(null, page * EPISODES_PER_PAGE, getFilter(),
                 UserPreferences.getAllEpisodesSortOrder());
     }
 
     @NonNull
     @Override
-    protected List<FeedItem> loadMoreData(int page) {
-        return DBReader.getEpisodes((page - 1) * EPISODES_PER_PAGE, EPISODES_PER_PAGE, getFilter(),
+    protected List<FeedItem> loadMoreData(@Nullable FeedItem lastItem) {
+        return DBReader.getEpisodeRowsAfter(lastItem, EPISODES_PER_PAGE, getFilter(),
                 UserPreferences.getAllEpisodesSortOrder());
     }
 
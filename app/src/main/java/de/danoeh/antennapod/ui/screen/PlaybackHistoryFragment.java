@@ -7,6 +7,7 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.util.Pair;
 
 import de.danoeh.antennapod.R;
@@ -103,13 +104,14 @@ public class PlaybackHistoryFragment extends EpisodesListFragment {
     @NonNull
     @Override
     protected List<FeedItem> loadData() {
-        return DBReader.getEpisodes(0, page * EPISODES_PER_PAGE, FILTER_HISTORY, SortOrder.COMPLETION_DATE_NEW_OLD);
+        return DBReader.getEpisodeRowsAfter(null, page * EPISODES_PER_PAGE, FILTER_HISTORY,
+                SortOrder.COMPLETION_DATE_NEW_OLD);
     }
 
     @NonNull
     @Override
-    protected List<FeedItem> loadMoreData(int page) {
-        return DBReader.getEpisodes((page - 1) * EPISODES_PER_PAGE, EPISODES_PER_PAGE, FILTER_HISTORY,
+    protected List<FeedItem> loadMoreData(@Nullable FeedItem lastItem) {
+        return DBReader.getEpisodeRowsAfter(lastItem, EPISODES_PER_PAGE, FILTER_HISTORY,
                 SortOrder.COMPLETION_DATE_NEW_OLD);
     }
 
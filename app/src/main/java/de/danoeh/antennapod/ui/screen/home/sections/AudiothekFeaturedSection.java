@@ -1,5 +1,6 @@
 package de.danoeh.antennapod.ui.screen.home.sections;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -14,7 +15,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import de.danoeh.antennapod.R;
 import de.danoeh.antennapod.activity.MainActivity;
 import de.danoeh.antennapod.event.FeedListUpdateEvent;
-import de.danoeh.antennapod.net.common.AntennapodHttpClient;
+import de.danoeh.antennapod.net.discovery.AudiothekHomescreenRepository;
 import de.danoeh.antennapod.ui.appstartintent.OnlineFeedviewActivityStarter;
 import de.danoeh.antennapod.ui.common.SquareImageView;
 import de.danoeh.antennapod.ui.screen.home.HomeSection;
@@ -22,10 +23,8 @@ import de.danoeh.antennapod.ui.screen.home.HomeSection;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,8 +33,6 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import okhttp3.Request;
-import okhttp3.Response;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.RequestOptions;
@@ -43,7 +40,6 @@ import com.bumptech.glide.request.RequestOptions;
 public class AudiothekFeaturedSection extends HomeSection {
     public static final String TAG = "AudiothekFeaturedSection";
 
-    private static final String AUDIOTHEK_HOME_URL = "https://api.ardaudiothek.de/homescreen";
     private static final int NUM_ITEMS = 8;
     private static final String API_BASE_URL = "https://api.ardaudiothek.de";
 
@@ -107,16 +103,9 @@ public class AudiothekFeaturedSection extends HomeSection {
         }
         listAdapter.setDummyViews(NUM_ITEMS);
 
-        disposable = Observable.fromCallable(() -> {
-                    Request request = new Request.Builder().url(AUDIOTHEK_HOME_URL).build();
-                    try (Response response = AntennapodHttpClient.getHttpClient().newCall(request).execute()) {
-                        if (!response.isSuccessful()) {
-                            throw new IOException("Unexpected response: " + response);
-                        }
-                        String body = response.body() != null ? response.body().string() : "";
-                        return parseFeatured(body);
-                    }
-                })
+        final Context context = requireContext().getApplicationContext();
+        disposable = Observable.fromCallable(() ->
+                        parseFeatured(AudiothekHomescreenRepository.getHomescreen(context)))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(items -> {
@@ -134,8 +123,7 @@ public class AudiothekFeaturedSection extends HomeSection {
                 });
     }
 
-    private static List<AudiothekItem> parseFeatured(String json) throws JSONException {
-        JSONObject root = new JSONObject(json);
+    private static List<AudiothekItem> parseFeatured(JSONObject root) {
         JSONObject embedded = root.optJSONObject("_embedded");
         if (embedded == null) {
             return new ArrayList<>();
@@ -20,7 +20,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
@@ -28,7 +27,7 @@ import java.util.List;
 import de.danoeh.antennapod.R;
 import de.danoeh.antennapod.activity.MainActivity;
 import de.danoeh.antennapod.event.FeedListUpdateEvent;
-import de.danoeh.antennapod.net.common.AntennapodHttpClient;
+import de.danoeh.antennapod.net.discovery.AudiothekGraphqlClient;
 import de.danoeh.antennapod.ui.appstartintent.OnlineFeedviewActivityStarter;
 import de.danoeh.antennapod.ui.common.SquareImageView;
 import de.danoeh.antennapod.ui.screen.home.HomeSection;
@@ -36,15 +35,15 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import okhttp3.Request;
-import okhttp3.Response;
 
 public class AudiothekHeuteWichtigSection extends HomeSection {
     public static final String TAG = "AudiothekHeuteWichtigSection";
 
-    private static final String AUDIOTHEK_POLITIK_URL = "https://api.ardaudiothek.de/graphql";
     private static final String API_BASE_URL = "https://api.ardaudiothek.de";
-    private static final String GRAPHQL_QUERY = "{\"query\":\"query { editorialCategory(id: \\\"51850530\\\") { sections { title nodes { __typename id title image { url url1X1 } ... on ItemInterface { programSet { id title } } } } } }\"}";
+    private static final String EDITORIAL_CATEGORY_SELECTION = "editorialCategory(id: \"51850530\") {"
+            + " sections { title nodes { __typename id title image { url url1X1 }"
+            + " ... on ItemInterface { programSet { id title } } } }"
+            + "}";
     private static final String PROGRAM_SET_URL_TEMPLATE = API_BASE_URL + "/programsets/%s";
     private static final int NUM_ITEMS = 8;
 
@@ -108,20 +107,8 @@ public class AudiothekHeuteWichtigSection extends HomeSection {
         }
         listAdapter.setDummyViews(NUM_ITEMS);
 
-        disposable = Observable.fromCallable(() -> {
-                    Request.Builder requestBuilder = new Request.Builder()
-                            .url(AUDIOTHEK_POLITIK_URL)
-                            .addHeader("Content-Type", "application/json")
-                            .post(okhttp3.RequestBody.create(GRAPHQL_QUERY, okhttp3.MediaType.parse("application/json")));
-                    
-                    try (Response response = AntennapodHttpClient.getHttpClient().newCall(requestBuilder.build()).execute()) {
-                        if (!response.isSuccessful()) {
-                            throw new IOException("Unexpected response: " + response);
-                        }
-                        String body = response.body() != null ? response.body().string() : "";
-                        return parseHeuteWichtigGraphQL(body);
-                    }
-                })
+        disposable = Observable.fromCallable(() -> parseHeuteWichtigGraphQL(AudiothekGraphqlClient.getInstance()
+                        .executeBatched(new AudiothekGraphqlClient.Query(EDITORIAL_CATEGORY_SELECTION))))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(items -> {
@@ -139,8 +126,7 @@ public class AudiothekHeuteWichtigSection extends HomeSection {
                 });
     }
 
-    private static List<AudiothekItem> parseHeuteWichtigGraphQL(String json) throws JSONException {
-        JSONObject root = new JSONObject(json);
+    private static List<AudiothekItem> parseHeuteWichtigGraphQL(JSONObject root) throws JSONException {
         JSONObject data = root.optJSONObject("data");
         if (data == null) {
             return new ArrayList<>();
@@ -21,7 +21,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.Date;
@@ -34,7 +33,7 @@ import de.danoeh.antennapod.event.FeedListUpdateEvent;
 import de.danoeh.antennapod.model.feed.Feed;
 import de.danoeh.antennapod.model.feed.FeedItem;
 import de.danoeh.antennapod.model.feed.FeedMedia;
-import de.danoeh.antennapod.net.common.AntennapodHttpClient;
+import de.danoeh.antennapod.net.discovery.AudiothekGraphqlClient;
 import de.danoeh.antennapod.ui.appstartintent.OnlineFeedviewActivityStarter;
 import de.danoeh.antennapod.ui.common.SquareImageView;
 import de.danoeh.antennapod.ui.screen.home.HomeSection;
@@ -44,35 +43,26 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import okhttp3.MediaType;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 
 public class AudiothekHotSection extends HomeSection {
     public static final String TAG = "AudiothekHotSection";
 
     private static final String API_BASE_URL = "https://api.ardaudiothek.de";
-    private static final String GRAPHQL_URL = API_BASE_URL + "/graphql";
     private static final String PROGRAM_SET_URL_TEMPLATE = API_BASE_URL + "/programsets/%s";
     private static final int IMAGE_WIDTH = 600;
     private static final int NUM_ITEMS = 8;
 
-    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
-
-    private static final String HOMESCREEN_STAGE_QUERY = "query HomescreenStage {"
-            + " homescreen {"
-            + "  sections {"
-            + "   __typename "
-            + "   ... on Stage {"
-            + "    nodes {"
-            + "     __typename title "
-            + "     image { url url1X1 } "
-            + "     ... on Item { id title synopsis duration publicationStartDateAndTime audios { url downloadUrl } programSet { id title } }"
-            + "     ... on EventLivestream { id title editorialDescription broadcastStart audios { url downloadUrl } programSet { id title } }"
-            + "     ... on Extra { id title synopsis duration audios { url downloadUrl } programSet { id title } }"
-            + "     ... on CoreSection { id title synopsis audios { url downloadUrl } programSet { id title } }"
-            + "    }"
+    private static final String HOMESCREEN_STAGE_SELECTION = "homescreen {"
+            + " sections {"
+            + "  __typename "
+            + "  ... on Stage {"
+            + "   nodes {"
+            + "    __typename title "
+            + "    image { url url1X1 } "
+            + "    ... on Item { id title synopsis duration publicationStartDateAndTime audios { url downloadUrl } programSet { id title } }"
+            + "    ... on EventLivestream { id title editorialDescription broadcastStart audios { url downloadUrl } programSet { id title } }"
+            + "    ... on Extra { id title synopsis duration audios { url downloadUrl } programSet { id title } }"
+            + "    ... on CoreSection { id title synopsis audios { url downloadUrl } programSet { id title } }"
             + "   }"
             + "  }"
             + " }"
@@ -138,24 +128,8 @@ public class AudiothekHotSection extends HomeSection {
         }
         listAdapter.setDummyViews(NUM_ITEMS);
 
-        disposable = Observable.fromCallable(() -> {
-                    RequestBody body = RequestBody.create(createGraphqlRequestBody(), JSON_MEDIA_TYPE);
-                    Request request = new Request.Builder()
-                            .url(GRAPHQL_URL)
-                            .addHeader("Content-Type", "application/json")
-                            .addHeader("Accept", "application/json")
-                            .addHeader("User-Agent", "AntennaPod")
-                            .post(body)
-                            .build();
-
-                    try (Response response = AntennapodHttpClient.getHttpClient().newCall(request).execute()) {
-                        if (!response.isSuccessful()) {
-                            throw new IOException("Unexpected response: " + response);
-                        }
-                        String responseBody = response.body() != null ? response.body().string() : "";
-                        return parseStage(responseBody);
-                    }
-                })
+        disposable = Observable.fromCallable(() -> parseStage(AudiothekGraphqlClient.getInstance()
+                        .executeBatched(new AudiothekGraphqlClient.Query(HOMESCREEN_STAGE_SELECTION))))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(items -> {
@@ -173,15 +147,7 @@ public class AudiothekHotSection extends HomeSection {
                 });
     }
 
-    private static String createGraphqlRequestBody() throws JSONException {
-        JSONObject requestJson = new JSONObject();
-        requestJson.put("query", HOMESCREEN_STAGE_QUERY);
-        requestJson.put("variables", new JSONObject());
-        return requestJson.toString();
-    }
-
-    private static List<AudiothekItem> parseStage(String json) throws JSONException {
-        JSONObject root = new JSONObject(json);
+    private static List<AudiothekItem> parseStage(JSONObject root) throws JSONException {
         JSONArray errors = root.optJSONArray("errors");
         if (errors != null && errors.length() > 0) {
             throw new JSONException(errors.toString());
@@ -1,5 +1,6 @@
 package de.danoeh.antennapod.ui.screen.home.sections;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -17,15 +18,13 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import de.danoeh.antennapod.R;
 import de.danoeh.antennapod.activity.MainActivity;
 import de.danoeh.antennapod.event.FeedListUpdateEvent;
-import de.danoeh.antennapod.net.common.AntennapodHttpClient;
+import de.danoeh.antennapod.net.discovery.AudiothekHomescreenRepository;
 import de.danoeh.antennapod.ui.appstartintent.OnlineFeedviewActivityStarter;
 import de.danoeh.antennapod.ui.screen.home.HomeSection;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,8 +32,6 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import okhttp3.Request;
-import okhttp3.Response;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.RequestOptions;
@@ -49,7 +46,6 @@ import org.greenrobot.eventbus.ThreadMode;
 public class AudiothekSection extends HomeSection {
     public static final String TAG = "AudiothekSection";
 
-    private static final String AUDIOTHEK_HOME_URL = "https://api.ardaudiothek.de/homescreen";
     private static final int NUM_ITEMS = 8;
     private static final String API_BASE_URL = "https://api.ardaudiothek.de";
 
@@ -200,16 +196,9 @@ public class AudiothekSection extends HomeSection {
         }
         listAdapter.setDummyModules(2, NUM_ITEMS);
 
-        disposable = Observable.fromCallable(() -> {
-                    Request request = new Request.Builder().url(AUDIOTHEK_HOME_URL).build();
-                    try (Response response = AntennapodHttpClient.getHttpClient().newCall(request).execute()) {
-                        if (!response.isSuccessful()) {
-                            throw new IOException("Unexpected response: " + response);
-                        }
-                        String body = response.body() != null ? response.body().string() : "";
-                        return parseHomescreen(body);
-                    }
-                })
+        final Context context = requireContext().getApplicationContext();
+        disposable = Observable.fromCallable(() ->
+                        parseHomescreen(AudiothekHomescreenRepository.getHomescreen(context)))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(modules -> {
@@ -227,8 +216,7 @@ public class AudiothekSection extends HomeSection {
                 });
     }
 
-    private static List<AudiothekModule> parseHomescreen(String json) throws JSONException {
-        JSONObject root = new JSONObject(json);
+    private static List<AudiothekModule> parseHomescreen(JSONObject root) {
         JSONObject embedded = root.optJSONObject("_embedded");
         if (embedded == null) {
             return new ArrayList<>();
@@ -59,6 +59,10 @@ public class Feed {
      * String that identifies the last update (adopted from Last-Modified or ETag header).
      */
     private String lastModified;
+    /**
+     * Fingerprint of the last downloaded feed file. Used to skip parsing when the server sends the same feed again.
+     */
+    private String contentHash;
     private long lastRefreshAttempt;
 
     private ArrayList<FeedFunding> fundingList;
@@ -337,6 +341,14 @@ public class Feed {
         this.lastModified = lastModified;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public String getFeedIdentifier() {
         return feedIdentifier;
     }
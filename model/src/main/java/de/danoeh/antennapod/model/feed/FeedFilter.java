@@ -51,7 +51,16 @@ public class FeedFilter implements Serializable {
      * @return true if the item should be downloaded
      */
     public boolean shouldAutoDownload(FeedItem item) {
+        int duration = item.getMedia() != null ? item.getMedia().getDuration() : 0;
+        return shouldAutoDownload(item.getTitle(), duration);
+    }
 
+    /**
+     * @param title the episode's title
+     * @param durationInMs the duration of the episode's media, or 0 if it is unknown
+     * @return true if the episode should be downloaded
+     */
+    public boolean shouldAutoDownload(String title, int durationInMs) {
         List<String> includeTerms = parseTerms(includeFilter);
         List<String> excludeTerms = parseTerms(excludeFilter);
 
@@ -61,16 +70,13 @@ public class FeedFilter implements Serializable {
         }
 
         // Check if the episode is long enough if minimal duration filter is on
-        if (hasMinimalDurationFilter() && item.getMedia() != null) {
-            int durationInMs = item.getMedia().getDuration();
-            // Minimal Duration is stored in seconds
-            if (durationInMs > 0 && durationInMs / 1000 < minimalDuration) {
-                return false;
-            }
+        // Minimal Duration is stored in seconds
+        if (hasMinimalDurationFilter() && durationInMs > 0 && durationInMs / 1000 < minimalDuration) {
+            return false;
         }
 
         // check using lowercase so the users don't have to worry about case.
-        String title = item.getTitle().toLowerCase(Locale.getDefault());
+        title = title.toLowerCase(Locale.getDefault());
 
         // if it's explicitly excluded, it shouldn't be autodownloaded
         // even if it has include terms
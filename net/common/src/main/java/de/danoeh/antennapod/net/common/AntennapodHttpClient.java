@@ -6,6 +6,7 @@ import androidx.annotation.NonNull;
 import de.danoeh.antennapod.model.download.ProxyConfig;
 import de.danoeh.antennapod.net.ssl.SslClientSetup;
 import okhttp3.Cache;
+import okhttp3.ConnectionPool;
 import okhttp3.Credentials;
 import okhttp3.JavaNetCookieJar;
 import okhttp3.OkHttpClient;
@@ -25,6 +26,7 @@ public class AntennapodHttpClient {
     private static final int CONNECTION_TIMEOUT = 10000;
     private static final int READ_TIMEOUT = 30000;
     private static final int MAX_CONNECTIONS = 8;
+    private static final int KEEP_ALIVE_MINUTES = 5;
     private static File cacheDirectory;
     private static ProxyConfig proxyConfig;
 
@@ -70,6 +72,9 @@ public class AntennapodHttpClient {
         cm.setCookiePolicy(CookiePolicy.ACCEPT_ORIGINAL_SERVER);
         builder.cookieJar(new JavaNetCookieJar(cm));
 
+        // Keep one idle connection per parallel feed download. Requests to HTTP/2 hosts share a connection.
+        builder.connectionPool(new ConnectionPool(MAX_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+
         // set timeouts
         builder.connectTimeout(CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS);
         builder.readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS);
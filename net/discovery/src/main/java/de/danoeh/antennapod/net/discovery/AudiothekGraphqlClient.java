@@ -0,0 +1,513 @@
+package de.danoeh.antennapod.net.discovery;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import de.danoeh.antennapod.net.common.AntennapodHttpClient;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Small GraphQL client for the ARD Audiothek API.
+ * Queries enqueued through {@link #executeBatched(Query)} within a short window are merged into one
+ * aliased request. Identical queries that are already running are only sent once, and successful
+ * responses are cached for a few minutes. Documents are sent as automatic persisted queries:
+ * the first request for a document sends it together with its hash, later requests only send the hash.
+ * If a hash-only request fails for any reason, the full document is sent again. Persisted queries are
+ * turned off if the server rejects the extension but accepts the plain document.
+ */
+public class AudiothekGraphqlClient {
+    public static final String GRAPHQL_URL = "https://api.ardaudiothek.de/graphql";
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    private static final String USER_AGENT = "AntennaPod";
+    private static final long DEFAULT_BATCH_WINDOW_MILLIS = 25;
+    private static final long CACHE_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_CACHE_ENTRIES = 32;
+    private static final Pattern FIELD_NAME = Pattern.compile("^\\s*([_A-Za-z][_0-9A-Za-z]*)");
+    private static final String PERSISTED_QUERY_NOT_FOUND = "PERSISTED_QUERY_NOT_FOUND";
+    private static final String PERSISTED_QUERY_NOT_SUPPORTED = "PERSISTED_QUERY_NOT_SUPPORTED";
+
+    private static AudiothekGraphqlClient instance;
+
+    private final String url;
+    @Nullable
+    private final OkHttpClient httpClient;
+    private final long batchWindowMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private final Map<String, PendingQuery> inFlight = new HashMap<>();
+    private final List<PendingQuery> batch = new ArrayList<>();
+    private final Map<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > MAX_CACHE_ENTRIES;
+        }
+    };
+    private final Map<String, String> documentHashes = Collections.synchronizedMap(new HashMap<>());
+    private final Set<String> registeredHashes = Collections.synchronizedSet(new HashSet<>());
+    private volatile boolean persistedQueriesSupported = true;
+    private int requestCount = 0;
+
+    public static synchronized AudiothekGraphqlClient getInstance() {
+        if (instance == null) {
+            instance = new AudiothekGraphqlClient(GRAPHQL_URL, null, DEFAULT_BATCH_WINDOW_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * @param httpClient Client to use, or null to use the shared AntennapodHttpClient.
+     */
+    AudiothekGraphqlClient(String url, @Nullable OkHttpClient httpClient, long batchWindowMillis) {
+        this.url = url;
+        this.httpClient = httpClient;
+        this.batchWindowMillis = batchWindowMillis;
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r);
+            t.setName("AudiothekGraphql");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Sends the query right away. Blocks, so do not call on the main thread.
+     * @return The response in the shape of a standalone GraphQL response ({@code data} and {@code errors}).
+     */
+    @NonNull
+    public JSONObject execute(Query query) throws IOException {
+        PendingQuery pending = obtain(query, false);
+        if (pending.owner) {
+            send(Collections.singletonList(pending));
+        }
+        return pending.await();
+    }
+
+    /**
+     * Like {@link #execute(Query)}, but waits a few milliseconds for other queries,
+     * so that queries from several sections share one request.
+     */
+    @NonNull
+    public JSONObject executeBatched(Query query) throws IOException {
+        return obtain(query, true).await();
+    }
+
+    /**
+     * Sends all given queries in one request.
+     */
+    @NonNull
+    public List<JSONObject> executeAll(List<Query> queries) throws IOException {
+        List<PendingQuery> pendingQueries = new ArrayList<>();
+        List<PendingQuery> toSend = new ArrayList<>();
+        for (Query query : queries) {
+            PendingQuery pending = obtain(query, false);
+            pendingQueries.add(pending);
+            if (pending.owner) {
+                toSend.add(pending);
+            }
+        }
+        if (!toSend.isEmpty()) {
+            send(toSend);
+        }
+        List<JSONObject> results = new ArrayList<>();
+        for (PendingQuery pending : pendingQueries) {
+            results.add(pending.await());
+        }
+        return results;
+    }
+
+    /**
+     * Number of HTTP requests sent by this client.
+     */
+    public int getRequestCount() {
+        synchronized (lock) {
+            return requestCount;
+        }
+    }
+
+    public void clearCache() {
+        synchronized (lock) {
+            cache.clear();
+        }
+    }
+
+    private PendingQuery obtain(Query query, boolean batched) {
+        String key = query.getKey();
+        synchronized (lock) {
+            CacheEntry cached = cache.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.timestamp < CACHE_MAX_AGE_MILLIS) {
+                PendingQuery done = new PendingQuery(query, key, false);
+                done.result = cached.response;
+                done.latch.countDown();
+                return done;
+            }
+            PendingQuery running = inFlight.get(key);
+            if (running != null) {
+                return new PendingQuery(running);
+            }
+            PendingQuery pending = new PendingQuery(query, key, !batched);
+            inFlight.put(key, pending);
+            if (batched) {
+                batch.add(pending);
+                if (batch.size() == 1) {
+                    scheduler.schedule(this::flushBatch, batchWindowMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            return pending;
+        }
+    }
+
+    private void flushBatch() {
+        List<PendingQuery> toSend;
+        synchronized (lock) {
+            toSend = new ArrayList<>(batch);
+            batch.clear();
+        }
+        if (!toSend.isEmpty()) {
+            send(toSend);
+        }
+    }
+
+    private void send(List<PendingQuery> queries) {
+        try {
+            StringBuilder variableDefinitions = new StringBuilder();
+            StringBuilder selections = new StringBuilder();
+            JSONObject variables = new JSONObject();
+            for (int i = 0; i < queries.size(); i++) {
+                queries.get(i).query.appendAliased("q" + i, variableDefinitions, selections, variables);
+            }
+            String document = "query Batch" + (variableDefinitions.length() > 0
+                    ? "(" + variableDefinitions + ")" : "") + " {" + selections + " }";
+            JSONObject root = post(document, variables);
+
+            JSONObject data = root.optJSONObject("data");
+            JSONArray errors = root.optJSONArray("errors");
+            for (int i = 0; i < queries.size(); i++) {
+                String alias = "q" + i;
+                PendingQuery pending = queries.get(i);
+                JSONObject queryData = new JSONObject();
+                if (data != null && data.has(alias)) {
+                    queryData.put(pending.query.getFieldName(), data.get(alias));
+                }
+                JSONObject result = new JSONObject();
+                result.put("data", queryData);
+                JSONArray queryErrors = errorsForAlias(errors, alias);
+                if (queryErrors.length() > 0) {
+                    result.put("errors", queryErrors);
+                }
+                complete(pending, result, null);
+            }
+        } catch (IOException | JSONException | RuntimeException e) {
+            for (PendingQuery pending : queries) {
+                complete(pending, null, e);
+            }
+        }
+    }
+
+    private void complete(PendingQuery pending, @Nullable JSONObject result, @Nullable Exception error) {
+        synchronized (lock) {
+            inFlight.remove(pending.key);
+            if (result != null && !result.has("errors")) {
+                cache.put(pending.key, new CacheEntry(result, System.currentTimeMillis()));
+            }
+        }
+        pending.result = result;
+        pending.error = error;
+        pending.latch.countDown();
+    }
+
+    private static JSONArray errorsForAlias(@Nullable JSONArray errors, String alias) {
+        JSONArray result = new JSONArray();
+        if (errors == null) {
+            return result;
+        }
+        for (int i = 0; i < errors.length(); i++) {
+            JSONObject error = errors.optJSONObject(i);
+            if (error == null) {
+                continue;
+            }
+            JSONArray path = error.optJSONArray("path");
+            if (path == null || path.length() == 0 || alias.equals(path.optString(0))) {
+                result.put(error);
+            }
+        }
+        return result;
+    }
+
+    private JSONObject post(String document, JSONObject variables) throws IOException, JSONException {
+        if (!persistedQueriesSupported) {
+            return parseResponse(sendRequest(createRequestJson(document, variables, null)));
+        }
+        String hash = getDocumentHash(document);
+        if (registeredHashes.contains(hash)) {
+            HttpResult hashOnly = sendRequest(createRequestJson(null, variables, hash));
+            if (hashOnly.successful && getPersistedQueryError(hashOnly.body) == null) {
+                return parseResponse(hashOnly);
+            }
+            // The server forgot the hash or cannot handle hash-only requests, so send the document again
+            registeredHashes.remove(hash);
+        }
+        HttpResult withDocument = sendRequest(createRequestJson(document, variables, hash));
+        if (isPersistedQueryRejected(withDocument)) {
+            HttpResult plain = sendRequest(createRequestJson(document, variables, null));
+            if (plain.successful) {
+                persistedQueriesSupported = false;
+            }
+            return parseResponse(plain);
+        }
+        if (withDocument.successful) {
+            registeredHashes.add(hash);
+        }
+        return parseResponse(withDocument);
+    }
+
+    /**
+     * Servers without support for persisted queries either report that or refuse requests
+     * with unknown extensions altogether.
+     */
+    private static boolean isPersistedQueryRejected(HttpResult result) {
+        return (result.code >= 400 && result.code < 500) || getPersistedQueryError(result.body) != null;
+    }
+
+    private static JSONObject parseResponse(HttpResult result) throws IOException, JSONException {
+        if (!result.successful) {
+            throw new IOException("Unexpected response: " + result.code);
+        }
+        String persistedQueryError = getPersistedQueryError(result.body);
+        if (persistedQueryError != null) {
+            throw new IOException("Unexpected persisted query error: " + persistedQueryError);
+        }
+        return new JSONObject(result.body);
+    }
+
+    /**
+     * @return {@link #PERSISTED_QUERY_NOT_FOUND} or {@link #PERSISTED_QUERY_NOT_SUPPORTED} if the server
+     *         rejected the persisted query, null otherwise
+     */
+    @Nullable
+    private static String getPersistedQueryError(String body) {
+        JSONArray errors;
+        try {
+            errors = new JSONObject(body).optJSONArray("errors");
+        } catch (JSONException e) {
+            return null;
+        }
+        if (errors == null) {
+            return null;
+        }
+        for (int i = 0; i < errors.length(); i++) {
+            JSONObject error = errors.optJSONObject(i);
+            if (error == null) {
+                continue;
+            }
+            JSONObject extensions = error.optJSONObject("extensions");
+            String code = extensions != null ? extensions.optString("code") : "";
+            String message = error.optString("message");
+            if (PERSISTED_QUERY_NOT_FOUND.equals(code) || "PersistedQueryNotFound".equals(message)) {
+                return PERSISTED_QUERY_NOT_FOUND;
+            } else if (PERSISTED_QUERY_NOT_SUPPORTED.equals(code) || "PersistedQueryNotSupported".equals(message)) {
+                return PERSISTED_QUERY_NOT_SUPPORTED;
+            }
+        }
+        return null;
+    }
+
+    private static String createRequestJson(@Nullable String document, JSONObject variables,
+                                            @Nullable String hash) throws JSONException {
+        JSONObject requestJson = new JSONObject();
+        if (document != null) {
+            requestJson.put("query", document);
+        }
+        requestJson.put("variables", variables);
+        if (hash != null) {
+            JSONObject persistedQuery = new JSONObject();
+            persistedQuery.put("version", 1);
+            persistedQuery.put("sha256Hash", hash);
+            JSONObject extensions = new JSONObject();
+            extensions.put("persistedQuery", persistedQuery);
+            requestJson.put("extensions", extensions);
+        }
+        return requestJson.toString();
+    }
+
+    private HttpResult sendRequest(String json) throws IOException {
+        synchronized (lock) {
+            requestCount++;
+        }
+        Request request = new Request.Builder()
+                .url(url)
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Accept", "application/json")
+                .addHeader("User-Agent", USER_AGENT)
+                .post(RequestBody.create(json, JSON_MEDIA_TYPE))
+                .build();
+        OkHttpClient client = httpClient != null ? httpClient : AntennapodHttpClient.getHttpClient();
+        try (Response response = client.newCall(request).execute()) {
+            String body = response.body() != null ? response.body().string() : "";
+            return new HttpResult(response.isSuccessful(), response.code(), body);
+        }
+    }
+
+    private String getDocumentHash(String document) {
+        String hash = documentHashes.get(document);
+        if (hash != null) {
+            return hash;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(document.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+            hash = hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        documentHashes.put(document, hash);
+        return hash;
+    }
+
+    /**
+     * A single top-level selection, for example {@code search(query: $query) { ... }},
+     * together with its variables.
+     */
+    public static class Query {
+        private final String selection;
+        private final String fieldName;
+        private final Map<String, String> variableTypes = new LinkedHashMap<>();
+        private final Map<String, Object> variableValues = new LinkedHashMap<>();
+
+        public Query(String selection) {
+            this.selection = selection;
+            Matcher matcher = FIELD_NAME.matcher(selection);
+            if (!matcher.find()) {
+                throw new IllegalArgumentException("Selection does not start with a field: " + selection);
+            }
+            this.fieldName = matcher.group(1);
+        }
+
+        public Query variable(String name, String type, Object value) {
+            variableTypes.put(name, type);
+            variableValues.put(name, value);
+            return this;
+        }
+
+        String getFieldName() {
+            return fieldName;
+        }
+
+        String getKey() {
+            return selection + "|" + variableValues;
+        }
+
+        void appendAliased(String alias, StringBuilder variableDefinitions, StringBuilder selections,
+                           JSONObject variables) throws JSONException {
+            String aliasedSelection = selection;
+            for (Map.Entry<String, String> variable : variableTypes.entrySet()) {
+                String renamed = alias + "_" + variable.getKey();
+                aliasedSelection = aliasedSelection.replaceAll(
+                        "\\$" + Pattern.quote(variable.getKey()) + "\\b", Matcher.quoteReplacement("$" + renamed));
+                if (variableDefinitions.length() > 0) {
+                    variableDefinitions.append(", ");
+                }
+                variableDefinitions.append('$').append(renamed).append(": ").append(variable.getValue());
+                variables.put(renamed, variableValues.get(variable.getKey()));
+            }
+            selections.append(' ').append(alias).append(": ").append(aliasedSelection.trim());
+        }
+    }
+
+    private static class PendingQuery {
+        final Query query;
+        final String key;
+        final boolean owner;
+        final CountDownLatch latch;
+        final PendingQuery delegate;
+        volatile JSONObject result;
+        volatile Exception error;
+
+        PendingQuery(Query query, String key, boolean owner) {
+            this.query = query;
+            this.key = key;
+            this.owner = owner;
+            this.latch = new CountDownLatch(1);
+            this.delegate = null;
+        }
+
+        /**
+         * Waits for a query that somebody else is already sending.
+         */
+        PendingQuery(PendingQuery running) {
+            this.query = running.query;
+            this.key = running.key;
+            this.owner = false;
+            this.latch = running.latch;
+            this.delegate = running;
+        }
+
+        JSONObject await() throws IOException {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for GraphQL response");
+            }
+            PendingQuery source = delegate != null ? delegate : this;
+            if (source.error instanceof IOException) {
+                throw (IOException) source.error;
+            } else if (source.error != null) {
+                throw new IOException(source.error);
+            }
+            return source.result;
+        }
+    }
+
+    private static class CacheEntry {
+        final JSONObject response;
+        final long timestamp;
+
+        CacheEntry(JSONObject response, long timestamp) {
+            this.response = response;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class HttpResult {
+        final boolean successful;
+        final int code;
+        final String body;
+
+        HttpResult(boolean successful, int code, String body) {
+            this.successful = successful;
+            this.code = code;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package de.danoeh.antennapod.net.discovery;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import de.danoeh.antennapod.net.common.AntennapodHttpClient;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the Audiothek homescreen once and shares the parsed result with all home sections.
+ * Concurrent callers wait for the request that is already running instead of starting their own.
+ */
+public class AudiothekHomescreenRepository {
+    private static final String TAG = "AudiothekHomescreen";
+    private static final String AUDIOTHEK_HOME_URL = "https://api.ardaudiothek.de/homescreen";
+    private static final String SNAPSHOT_FILE_NAME = "audiothek_homescreen.json";
+    private static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static AudiothekHomescreenRepository instance;
+
+    private final Object lock = new Object();
+    private final String url;
+    private final OkHttpClient httpClient;
+    private final long maxAgeMillis;
+    private JSONObject cachedHomescreen;
+    private long cachedHomescreenTimestamp;
+    private int networkRequestCount = 0;
+
+    AudiothekHomescreenRepository(String url, OkHttpClient httpClient, long maxAgeMillis) {
+        this.url = url;
+        this.httpClient = httpClient;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    private static synchronized AudiothekHomescreenRepository getInstance() {
+        if (instance == null) {
+            instance = new AudiothekHomescreenRepository(AUDIOTHEK_HOME_URL,
+                    AntennapodHttpClient.getHttpClient(), MAX_AGE_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the parsed homescreen. Blocks, so do not call on the main thread.
+     * The returned object is shared between callers and must not be modified.
+     */
+    @NonNull
+    public static JSONObject getHomescreen(Context context) throws IOException, JSONException {
+        return getInstance().load(context);
+    }
+
+    /**
+     * Number of homescreen requests sent over the network since process start.
+     */
+    public static int getNetworkRequestCount() {
+        return getInstance().getRequestCount();
+    }
+
+    @NonNull
+    JSONObject load(Context context) throws IOException, JSONException {
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            if (cachedHomescreen != null && now - cachedHomescreenTimestamp < maxAgeMillis) {
+                return cachedHomescreen;
+            }
+
+            File snapshot = getSnapshotFile(context);
+            if (snapshot.exists() && now - snapshot.lastModified() < maxAgeMillis) {
+                JSONObject fromDisk = readSnapshot(snapshot);
+                if (fromDisk != null) {
+                    cachedHomescreen = fromDisk;
+                    cachedHomescreenTimestamp = snapshot.lastModified();
+                    return cachedHomescreen;
+                }
+            }
+
+            String body;
+            try {
+                body = loadFromNetwork();
+            } catch (IOException e) {
+                JSONObject stale = cachedHomescreen != null ? cachedHomescreen : readSnapshot(snapshot);
+                if (stale != null) {
+                    Log.d(TAG, "Using stale homescreen snapshot: " + e.getMessage());
+                    return stale;
+                }
+                throw e;
+            }
+            JSONObject homescreen = new JSONObject(body);
+            cachedHomescreen = homescreen;
+            cachedHomescreenTimestamp = now;
+            try {
+                FileUtils.writeStringToFile(snapshot, body, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                Log.d(TAG, "Unable to store homescreen snapshot: " + e.getMessage());
+            }
+            return homescreen;
+        }
+    }
+
+    int getRequestCount() {
+        synchronized (lock) {
+            return networkRequestCount;
+        }
+    }
+
+    private String loadFromNetwork() throws IOException {
+        networkRequestCount++;
+        long start = System.currentTimeMillis();
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected response: " + response);
+            }
+            String body = response.body() != null ? response.body().string() : "";
+            Log.d(TAG, "Loaded homescreen in " + (System.currentTimeMillis() - start)
+                    + "ms (request #" + networkRequestCount + ")");
+            return body;
+        }
+    }
+
+    @Nullable
+    private static JSONObject readSnapshot(File snapshot) {
+        if (!snapshot.exists()) {
+            return null;
+        }
+        try {
+            return new JSONObject(FileUtils.readFileToString(snapshot, StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            Log.d(TAG, "Discarding unreadable homescreen snapshot: " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            snapshot.delete();
+            return null;
+        }
+    }
+
+    private static File getSnapshotFile(Context context) {
+        return new File(context.getCacheDir(), SNAPSHOT_FILE_NAME);
+    }
+}
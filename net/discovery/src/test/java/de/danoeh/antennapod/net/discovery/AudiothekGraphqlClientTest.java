@@ -0,0 +1,291 @@
+package de.danoeh.antennapod.net.discovery;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class AudiothekGraphqlClientTest {
+    private static final Pattern ALIASED_FIELD = Pattern.compile("(q\\d+): (\\w+)");
+
+    private MockWebServer server;
+    private FakeGraphqlDispatcher dispatcher;
+    private AudiothekGraphqlClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        dispatcher = new FakeGraphqlDispatcher();
+        server.setDispatcher(dispatcher);
+        server.start();
+        client = new AudiothekGraphqlClient(server.url("/graphql").toString(), new OkHttpClient(), 200);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void executeBatched_mergesConcurrentQueriesIntoOneDocument() throws Exception {
+        List<String> fields = List.of("homescreen", "editorialCategory", "search");
+        List<JSONObject> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (String field : fields) {
+            Thread thread = new Thread(() -> {
+                try {
+                    results.add(client.executeBatched(new AudiothekGraphqlClient.Query(field + " { id }")));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(3, results.size());
+        for (JSONObject result : results) {
+            JSONObject data = result.getJSONObject("data");
+            assertEquals(1, data.length());
+            String field = data.keys().next();
+            assertEquals(field, data.getJSONObject(field).getString("field"));
+        }
+        assertEquals(1, dispatcher.fullDocuments.get());
+        assertEquals(3, dispatcher.lastAliasCount);
+    }
+
+    @Test
+    public void execute_renamesVariablesPerAlias() throws Exception {
+        List<JSONObject> results = client.executeAll(List.of(
+                new AudiothekGraphqlClient.Query("search(query: $query) { id }").variable("query", "String!", "a"),
+                new AudiothekGraphqlClient.Query("search(query: $query) { id }").variable("query", "String!", "b")));
+
+        assertEquals(2, results.size());
+        assertTrue(dispatcher.lastDocument.contains("$q0_query: String!"));
+        assertTrue(dispatcher.lastDocument.contains("$q1_query: String!"));
+        assertFalse(dispatcher.lastDocument.contains("$query"));
+    }
+
+    @Test
+    public void execute_reusesCachedResponse() throws Exception {
+        AudiothekGraphqlClient.Query query = new AudiothekGraphqlClient.Query("homescreen { id }");
+        client.execute(query);
+        int requestsAfterFirstCall = server.getRequestCount();
+        client.execute(query);
+        assertEquals(requestsAfterFirstCall, server.getRequestCount());
+    }
+
+    @Test
+    public void execute_sendsOnlyHashOnceDocumentIsKnown() throws Exception {
+        AudiothekGraphqlClient.Query query = new AudiothekGraphqlClient.Query("homescreen { id }");
+        client.execute(query);
+        assertEquals(1, server.getRequestCount()); // Document together with its hash
+        client.clearCache();
+        client.execute(query);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, dispatcher.fullDocuments.get());
+        assertEquals(1, dispatcher.hashOnlyRequests.get());
+    }
+
+    @Test
+    public void executeAll_sendsOneRequestForAllQueries() throws Exception {
+        List<String> fields = List.of("a", "b", "c", "d", "e");
+        for (String field : fields) {
+            client.execute(new AudiothekGraphqlClient.Query(field + " { id }"));
+        }
+        assertEquals(fields.size(), client.getRequestCount());
+        client.clearCache();
+
+        List<AudiothekGraphqlClient.Query> queries = new ArrayList<>();
+        for (String field : fields) {
+            queries.add(new AudiothekGraphqlClient.Query(field + " { id }"));
+        }
+        List<JSONObject> results = client.executeAll(queries);
+        assertEquals(fields.size(), results.size());
+        assertEquals(fields.size() + 1, client.getRequestCount());
+        assertEquals(fields.size(), dispatcher.lastAliasCount);
+    }
+
+    @Test
+    public void execute_resendsDocumentWhenServerForgotHash() throws Exception {
+        AudiothekGraphqlClient.Query query = new AudiothekGraphqlClient.Query("homescreen { id }");
+        client.execute(query);
+        dispatcher.knownHashes.clear();
+        client.clearCache();
+
+        JSONObject result = client.execute(query);
+        assertEquals("homescreen", result.getJSONObject("data").getJSONObject("homescreen").getString("field"));
+        assertEquals(2, dispatcher.fullDocuments.get());
+        client.clearCache();
+        client.execute(query);
+        assertEquals(2, dispatcher.hashOnlyRequests.get()); // Persisted queries are still used
+    }
+
+    @Test
+    public void execute_stopsUsingPersistedQueriesWhenNotSupported() throws Exception {
+        dispatcher.persistedQueriesSupported = false;
+        AudiothekGraphqlClient.Query query = new AudiothekGraphqlClient.Query("homescreen { id }");
+        JSONObject result = client.execute(query);
+        assertEquals("homescreen", result.getJSONObject("data").getJSONObject("homescreen").getString("field"));
+        assertEquals(2, server.getRequestCount()); // Document with hash, then without hash
+
+        client.clearCache();
+        client.execute(query);
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, dispatcher.fullDocuments.get());
+    }
+
+    @Test
+    public void execute_fallsBackToPlainDocumentWhenServerRefusesExtensions() throws Exception {
+        dispatcher.extensionsStatusCode = 400;
+        AudiothekGraphqlClient.Query query = new AudiothekGraphqlClient.Query("homescreen { id }");
+        JSONObject result = client.execute(query);
+        assertEquals("homescreen", result.getJSONObject("data").getJSONObject("homescreen").getString("field"));
+        assertEquals(2, server.getRequestCount());
+
+        client.clearCache();
+        client.execute(query);
+        assertEquals(3, server.getRequestCount()); // Persisted queries are turned off
+    }
+
+    @Test
+    public void execute_resendsDocumentWhenHashOnlyRequestFails() throws Exception {
+        AudiothekGraphqlClient.Query query = new AudiothekGraphqlClient.Query("homescreen { id }");
+        client.execute(query);
+        client.clearCache();
+        dispatcher.hashOnlyStatusCode = 500;
+
+        JSONObject result = client.execute(query);
+        assertEquals("homescreen", result.getJSONObject("data").getJSONObject("homescreen").getString("field"));
+        assertEquals(3, server.getRequestCount());
+        assertEquals(2, dispatcher.fullDocuments.get());
+    }
+
+    @Test
+    public void execute_returnsGraphqlErrorsWithoutTurningOffPersistedQueries() throws Exception {
+        dispatcher.errorCode = "INTERNAL_SERVER_ERROR";
+        AudiothekGraphqlClient.Query query = new AudiothekGraphqlClient.Query("homescreen { id }");
+        JSONObject result = client.execute(query);
+        assertEquals(0, result.getJSONObject("data").length());
+        assertEquals("INTERNAL_SERVER_ERROR", result.getJSONArray("errors").getJSONObject(0)
+                .getJSONObject("extensions").getString("code"));
+        assertEquals(1, server.getRequestCount());
+
+        dispatcher.errorCode = null;
+        JSONObject retried = client.execute(query);
+        assertEquals("homescreen", retried.getJSONObject("data").getJSONObject("homescreen").getString("field"));
+        assertEquals(3, server.getRequestCount()); // The failed request did not register the hash
+        assertEquals(1, dispatcher.hashOnlyRequests.get());
+    }
+
+    @Test
+    public void executeBatched_completesCallersWhenSendingThrows() {
+        OkHttpClient failingHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    throw new IllegalStateException("Broken interceptor");
+                })
+                .build();
+        AudiothekGraphqlClient failingClient = new AudiothekGraphqlClient(
+                server.url("/graphql").toString(), failingHttpClient, 10);
+        assertThrows(IOException.class, () -> failingClient.executeBatched(
+                new AudiothekGraphqlClient.Query("homescreen { id }")));
+    }
+
+    /**
+     * Answers every aliased field with {"field": name} and emulates automatic persisted queries.
+     */
+    private static class FakeGraphqlDispatcher extends Dispatcher {
+        final Map<String, String> knownHashes = new HashMap<>();
+        final AtomicInteger fullDocuments = new AtomicInteger();
+        final AtomicInteger hashOnlyRequests = new AtomicInteger();
+        volatile boolean persistedQueriesSupported = true;
+        volatile String errorCode = null;
+        volatile int extensionsStatusCode = 0;
+        volatile int hashOnlyStatusCode = 0;
+        volatile String lastDocument = "";
+        volatile int lastAliasCount = 0;
+
+        @Override
+        public synchronized MockResponse dispatch(RecordedRequest request) {
+            try {
+                JSONObject body = new JSONObject(request.getBody().readUtf8());
+                if (errorCode != null) {
+                    return respond(error("Something went wrong", errorCode));
+                }
+                JSONObject extensions = body.optJSONObject("extensions");
+                if (extensions != null && extensionsStatusCode != 0) {
+                    return respond(error("Unknown extension", "BAD_REQUEST")).setResponseCode(extensionsStatusCode);
+                } else if (extensions != null && !body.has("query") && hashOnlyStatusCode != 0) {
+                    return respond(error("Something went wrong", "INTERNAL_SERVER_ERROR"))
+                            .setResponseCode(hashOnlyStatusCode);
+                }
+                String document;
+                if (extensions == null) {
+                    document = body.getString("query");
+                    fullDocuments.incrementAndGet();
+                } else if (!persistedQueriesSupported) {
+                    return respond(error("PersistedQueryNotSupported", "PERSISTED_QUERY_NOT_SUPPORTED"));
+                } else {
+                    String hash = extensions.getJSONObject("persistedQuery").getString("sha256Hash");
+                    if (body.has("query")) {
+                        document = body.getString("query");
+                        knownHashes.put(hash, document);
+                        fullDocuments.incrementAndGet();
+                    } else if (knownHashes.containsKey(hash)) {
+                        hashOnlyRequests.incrementAndGet();
+                        document = knownHashes.get(hash);
+                    } else {
+                        hashOnlyRequests.incrementAndGet();
+                        return respond(error("PersistedQueryNotFound", "PERSISTED_QUERY_NOT_FOUND"));
+                    }
+                }
+                lastDocument = document;
+
+                JSONObject data = new JSONObject();
+                Matcher matcher = ALIASED_FIELD.matcher(document);
+                int aliases = 0;
+                while (matcher.find()) {
+                    data.put(matcher.group(1), new JSONObject().put("field", matcher.group(2)));
+                    aliases++;
+                }
+                lastAliasCount = aliases;
+                return respond(new JSONObject().put("data", data).toString());
+            } catch (Exception e) {
+                return new MockResponse().setResponseCode(500);
+            }
+        }
+
+        private static String error(String message, String code) {
+            return "{\"errors\":[{\"message\":\"" + message + "\",\"extensions\":{\"code\":\"" + code + "\"}}]}";
+        }
+
+        private MockResponse respond(String body) {
+            return new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(body);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.danoeh.antennapod.net.discovery;
+
+import android.content.Context;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class AudiothekHomescreenRepositoryTest {
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private Context context;
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.getApplication();
+        //noinspection ResultOfMethodCallIgnored
+        new File(context.getCacheDir(), "audiothek_homescreen.json").delete();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneRequest() throws Exception {
+        server.enqueue(homescreenResponse(1).setBodyDelay(100, TimeUnit.MILLISECONDS));
+        AudiothekHomescreenRepository repository = createRepository(ONE_HOUR);
+        List<JSONObject> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    results.add(repository.load(context));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(5, results.size());
+        for (JSONObject result : results) {
+            assertSame(results.get(0), result);
+        }
+        assertEquals(1, results.get(0).getInt("version"));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, repository.getRequestCount());
+    }
+
+    @Test
+    public void testSnapshotIsUsedUntilItExpires() throws Exception {
+        server.enqueue(homescreenResponse(1));
+        server.enqueue(homescreenResponse(2));
+        assertEquals(1, createRepository(ONE_HOUR).load(context).getInt("version"));
+
+        // A new process reads the snapshot instead of loading the homescreen again
+        assertEquals(1, createRepository(ONE_HOUR).load(context).getInt("version"));
+        assertEquals(1, server.getRequestCount());
+
+        AudiothekHomescreenRepository expiring = createRepository(0);
+        assertEquals(2, expiring.load(context).getInt("version"));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testExpiredHomescreenIsUsedWhenLoadingFails() throws Exception {
+        server.enqueue(homescreenResponse(1));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        AudiothekHomescreenRepository repository = createRepository(0);
+        JSONObject homescreen = repository.load(context);
+
+        assertSame(homescreen, repository.load(context));
+        assertEquals(2, server.getRequestCount());
+        assertTrue(new File(context.getCacheDir(), "audiothek_homescreen.json").exists());
+    }
+
+    private AudiothekHomescreenRepository createRepository(long maxAgeMillis) {
+        return new AudiothekHomescreenRepository(server.url("/homescreen").toString(),
+                new OkHttpClient(), maxAgeMillis);
+    }
+
+    private static MockResponse homescreenResponse(int version) {
+        return new MockResponse().setBody("{\"version\": " + version + "}");
+    }
+}
@@ -61,7 +61,7 @@ public class MediaDownloadedHandler implements Runnable {
         try {
             // Cache chapters if file has them
             if (media.getItem() != null && !media.getItem().hasChapters()) {
-                media.setChapters(ChapterUtils.loadChaptersFromMediaFile(media, context));
+                media.setChapters(ChapterUtils.loadChaptersFromMediaFile(media, context, true));
             }
             if (media.getItem() != null && media.getItem().getPodcastIndexChapterUrl() != null) {
                 ChapterUtils.loadChaptersFromUrl(media.getItem().getPodcastIndexChapterUrl(), false);
@@ -6,16 +6,11 @@ import android.content.IntentFilter;
 import android.os.BatteryManager;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
 import de.danoeh.antennapod.model.feed.FeedItemFilter;
-import de.danoeh.antennapod.model.feed.SortOrder;
 import de.danoeh.antennapod.model.feed.FeedItem;
-import de.danoeh.antennapod.model.feed.FeedPreferences;
 import de.danoeh.antennapod.net.download.serviceinterface.DownloadServiceInterface;
 import de.danoeh.antennapod.storage.database.DBReader;
+import de.danoeh.antennapod.storage.database.LongList;
 import de.danoeh.antennapod.storage.preferences.UserPreferences;
 import de.danoeh.antennapod.net.common.NetworkUtils;
 
@@ -50,38 +45,8 @@ public class AutomaticDownloadAlgorithm {
 
                 Log.d(TAG, "Performing auto-dl of undownloaded episodes");
 
-                final List<FeedItem> newItems = DBReader.getEpisodes(0, Integer.MAX_VALUE,
-                        new FeedItemFilter(FeedItemFilter.NEW), SortOrder.DATE_NEW_OLD);
-                final List<FeedItem> candidates = new ArrayList<>();
-                for (FeedItem newItem : newItems) {
-                    FeedPreferences feedPrefs = newItem.getFeed().getPreferences();
-                    if (feedPrefs.isAutoDownload(UserPreferences.isEnableAutodownloadGlobal())
-                            && !candidates.contains(newItem)
-                            && feedPrefs.getFilter().shouldAutoDownload(newItem)) {
-                        candidates.add(newItem);
-                    }
-                }
-
-                if (UserPreferences.isEnableAutodownloadQueue()) {
-                    final List<FeedItem> queue = DBReader.getQueue();
-                    for (FeedItem item : queue) {
-                        if (!candidates.contains(item)) {
-                            candidates.add(item);
-                        }
-                    }
-                }
-
-                // filter items that are not auto downloadable
-                Iterator<FeedItem> it = candidates.iterator();
-                while (it.hasNext()) {
-                    FeedItem item = it.next();
-                    if (!item.isAutoDownloadEnabled()
-                            || item.isDownloaded()
-                            || !item.hasMedia()
-                            || item.getFeed().isLocalFeed()) {
-                        it.remove();
-                    }
-                }
+                final LongList candidates = DBReader.getAutoDownloadCandidateIds(
+                        UserPreferences.isEnableAutodownloadGlobal(), UserPreferences.isEnableAutodownloadQueue());
 
                 int autoDownloadableEpisodes = candidates.size();
                 int downloadedEpisodes = DBReader.getTotalEpisodeCount(new FeedItemFilter(FeedItemFilter.DOWNLOADED));
@@ -98,13 +63,16 @@ public class AutomaticDownloadAlgorithm {
                 } else {
                     episodeSpaceLeft = episodeCacheSize - (downloadedEpisodes - deletedEpisodes);
                 }
+                episodeSpaceLeft = Math.min(episodeSpaceLeft, autoDownloadableEpisodes);
 
-                List<FeedItem> itemsToDownload = candidates.subList(0, episodeSpaceLeft);
-                if (!itemsToDownload.isEmpty()) {
-                    Log.d(TAG, "Enqueueing " + itemsToDownload.size() + " items for download");
+                if (episodeSpaceLeft > 0) {
+                    Log.d(TAG, "Enqueueing " + episodeSpaceLeft + " items for download");
 
-                    for (FeedItem episode : itemsToDownload) {
-                        DownloadServiceInterface.get().download(context, episode);
+                    for (int i = 0; i < episodeSpaceLeft; i++) {
+                        FeedItem episode = DBReader.getFeedItem(candidates.get(i));
+                        if (episode != null) {
+                            DownloadServiceInterface.get().download(context, episode);
+                        }
                     }
                 }
             }
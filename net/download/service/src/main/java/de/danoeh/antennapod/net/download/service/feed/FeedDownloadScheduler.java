@@ -0,0 +1,160 @@
+package de.danoeh.antennapod.net.download.service.feed;
+
+import androidx.annotation.Nullable;
+import de.danoeh.antennapod.model.feed.Feed;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides which feed to download next. Feeds are grouped by host and only a few downloads per host run at the
+ * same time, so that large hosts are not hit by all download threads at once while other hosts wait.
+ * Hosts with many remaining feeds are preferred, so they do not end up as the long tail of a refresh.
+ * The first download from a host runs alone. Further downloads can then reuse its connection, which
+ * OkHttp multiplexes if the server speaks HTTP/2, instead of each opening a new connection.
+ *
+ * <p>The overall number of parallel downloads adapts to the observed throughput: it grows as long as finishing
+ * more feeds per second, and turns around when throughput drops.
+ */
+class FeedDownloadScheduler {
+    private static final double THROUGHPUT_TOLERANCE = 0.9;
+    private static final int MIN_WINDOW_SIZE = 4;
+
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final List<Host> hostList = new ArrayList<>();
+    private final int maxConcurrency;
+    private final int maxPerHost;
+    private int pending;
+    private int running = 0;
+    private int limit;
+
+    private int direction = 1;
+    private int windowCompleted = 0;
+    private long windowStart = System.nanoTime();
+    private double previousThroughput = -1;
+
+    FeedDownloadScheduler(List<Feed> feeds, int maxConcurrency, int maxPerHost) {
+        this.maxConcurrency = maxConcurrency;
+        this.maxPerHost = maxPerHost;
+        this.limit = Math.max(1, maxConcurrency / 2);
+        for (Feed feed : feeds) {
+            String key = getHostKey(feed);
+            Host host = hosts.get(key);
+            if (host == null) {
+                host = new Host();
+                hosts.put(key, host);
+                hostList.add(host);
+            }
+            host.feeds.add(feed);
+        }
+        pending = feeds.size();
+    }
+
+    /**
+     * Waits until a feed may be downloaded without exceeding the limits.
+     *
+     * @return The next feed, or null if all feeds were handed out.
+     */
+    @Nullable
+    synchronized Feed take() throws InterruptedException {
+        while (pending > 0) {
+            if (running < limit) {
+                Host host = findHost();
+                if (host != null) {
+                    pending--;
+                    running++;
+                    host.running++;
+                    return host.feeds.poll();
+                }
+            }
+            wait();
+        }
+        return null;
+    }
+
+    /**
+     * Must be called when the download of a feed returned by {@link #take()} is done.
+     */
+    synchronized void release(Feed feed) {
+        running--;
+        Host host = hosts.get(getHostKey(feed));
+        host.running--;
+        host.completed++;
+        windowCompleted++;
+        if (windowCompleted >= Math.max(MIN_WINDOW_SIZE, 2 * limit)) {
+            adaptLimit();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Removes all feeds that were not handed out yet.
+     */
+    synchronized List<Feed> drain() {
+        List<Feed> remaining = new ArrayList<>(pending);
+        for (Host host : hostList) {
+            remaining.addAll(host.feeds);
+            host.feeds.clear();
+        }
+        pending = 0;
+        notifyAll();
+        return remaining;
+    }
+
+    synchronized int getConcurrencyLimit() {
+        return limit;
+    }
+
+    private void adaptLimit() {
+        long now = System.nanoTime();
+        double throughput = windowCompleted / (double) Math.max(1, now - windowStart);
+        if (previousThroughput >= 0 && throughput < previousThroughput * THROUGHPUT_TOLERANCE) {
+            direction = -direction;
+        }
+        limit = Math.max(1, Math.min(maxConcurrency, limit + direction));
+        if (limit == 1) {
+            direction = 1; // Never get stuck with a single download
+        }
+        previousThroughput = throughput;
+        windowCompleted = 0;
+        windowStart = now;
+    }
+
+    @Nullable
+    private Host findHost() {
+        Host best = null;
+        for (Host host : hostList) {
+            int hostLimit = host.completed > 0 ? maxPerHost : 1;
+            if (!host.feeds.isEmpty() && host.running < hostLimit
+                    && (best == null || host.feeds.size() > best.feeds.size())) {
+                best = host;
+            }
+        }
+        return best;
+    }
+
+    private static String getHostKey(Feed feed) {
+        String url = feed.getDownloadUrl();
+        if (url == null) {
+            return "";
+        }
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host.toLowerCase(Locale.US) : url;
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    private static class Host {
+        final ArrayDeque<Feed> feeds = new ArrayDeque<>();
+        int running = 0;
+        int completed = 0;
+    }
+}
@@ -0,0 +1,342 @@
+package de.danoeh.antennapod.net.download.service.feed;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.danoeh.antennapod.model.feed.Feed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refreshes feeds in three stages. Downloads and parsing run on separate thread pools, so that slow servers
+ * do not hold back parsing and vice versa. A single writer stores the parsed feeds in batches.
+ * Bounded hand-overs between the stages limit how many feeds are waiting to be parsed or stored.
+ * The order of downloads is decided by {@link FeedDownloadScheduler}.
+ *
+ * @param <D> Result of the download stage
+ * @param <P> Result of the parse stage
+ */
+class FeedRefreshPipeline<D, P> {
+    interface Stages<D, P> {
+        /**
+         * @return The downloaded feed, or null if there is nothing to parse.
+         */
+        @Nullable
+        D download(Feed feed) throws Exception;
+
+        /**
+         * @return The parsed feed, or null if there is nothing to store.
+         */
+        @Nullable
+        P parse(Feed feed, D downloaded) throws Exception;
+
+        /**
+         * Stores a batch of parsed feeds. Called from the single writer thread only.
+         */
+        void store(List<P> parsed) throws Exception;
+
+        /**
+         * Called when a stage failed for the feed.
+         */
+        void onFailure(Feed feed, Exception e);
+
+        /**
+         * Called exactly once per feed, when it left the pipeline.
+         */
+        void onFinished(Feed feed);
+    }
+
+    /**
+     * Checked before each stage. Feeds of a cancelled refresh skip their remaining stages.
+     */
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    private static final long WRITER_POLL_MILLIS = 100;
+
+    private final Stages<D, P> stages;
+    private final Cancellation cancellation;
+    private final int maxDownloads;
+    private final int maxDownloadsPerHost;
+    private final int parseThreads;
+    private final int batchSize;
+
+    private final Statistics downloadStatistics = new Statistics("download");
+    private final Statistics parseStatistics = new Statistics("parse");
+    private final Statistics storeStatistics = new Statistics("store");
+    private volatile int concurrencyLimit;
+
+    /**
+     * @param maxDownloads        Upper bound for parallel downloads. The actual number adapts to the throughput.
+     * @param maxDownloadsPerHost Number of parallel downloads from the same host
+     */
+    FeedRefreshPipeline(Stages<D, P> stages, Cancellation cancellation, int maxDownloads,
+                        int maxDownloadsPerHost, int parseThreads, int batchSize) {
+        this.stages = stages;
+        this.cancellation = cancellation;
+        this.maxDownloads = maxDownloads;
+        this.maxDownloadsPerHost = maxDownloadsPerHost;
+        this.parseThreads = parseThreads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs all feeds through the pipeline and returns when every feed has been processed.
+     */
+    void run(List<Feed> feeds) {
+        FeedDownloadScheduler scheduler = new FeedDownloadScheduler(feeds, maxDownloads, maxDownloadsPerHost);
+        ExecutorService downloadExecutor = Executors.newFixedThreadPool(maxDownloads,
+                r -> new Thread(r, "FeedRefreshDownload"));
+        ExecutorService parseExecutor = Executors.newFixedThreadPool(parseThreads,
+                r -> new Thread(r, "FeedRefreshParse"));
+        // Limits the number of downloaded feeds that wait for a parser thread
+        Semaphore downloadedFeeds = new Semaphore(maxDownloads + 2 * parseThreads);
+        // Parse threads block when the writer falls behind
+        BlockingQueue<Job<P>> parsedFeeds = new ArrayBlockingQueue<>(2 * batchSize);
+        CountDownLatch remaining = new CountDownLatch(feeds.size());
+
+        for (int i = 0; i < maxDownloads; i++) {
+            downloadExecutor.submit(() -> {
+                Feed feed;
+                while ((feed = takeFeed(scheduler, downloadedFeeds)) != null) {
+                    download(feed, scheduler, downloadedFeeds, parseExecutor, parsedFeeds, remaining);
+                }
+                for (Feed skipped : scheduler.drain()) {
+                    finish(skipped, remaining);
+                }
+            });
+        }
+
+        try {
+            runWriter(parsedFeeds, remaining);
+        } finally {
+            downloadExecutor.shutdown();
+            parseExecutor.shutdown();
+            concurrencyLimit = scheduler.getConcurrencyLimit();
+        }
+    }
+
+    private void download(Feed feed, FeedDownloadScheduler scheduler, Semaphore downloadedFeeds,
+                          ExecutorService parseExecutor, BlockingQueue<Job<P>> parsedFeeds,
+                          CountDownLatch remaining) {
+        boolean handedOver = false;
+        try {
+            D downloaded;
+            try {
+                downloaded = runStage(downloadStatistics, feed, () -> stages.download(feed));
+            } finally {
+                scheduler.release(feed);
+            }
+            if (downloaded != null) {
+                parseExecutor.submit(() -> parse(feed, downloaded, downloadedFeeds, parsedFeeds, remaining));
+                handedOver = true;
+            }
+        } finally {
+            if (!handedOver) {
+                downloadedFeeds.release();
+                finish(feed, remaining);
+            }
+        }
+    }
+
+    private void parse(Feed feed, D downloaded, Semaphore downloadedFeeds, BlockingQueue<Job<P>> parsedFeeds,
+                       CountDownLatch remaining) {
+        boolean handedOver = false;
+        try {
+            P parsed = runStage(parseStatistics, feed, () -> stages.parse(feed, downloaded));
+            handedOver = parsed != null && put(parsedFeeds, new Job<>(feed, parsed));
+        } finally {
+            downloadedFeeds.release();
+            if (!handedOver) {
+                finish(feed, remaining);
+            }
+        }
+    }
+
+    /**
+     * @return The next feed to download, or null if there are no more feeds or the thread was interrupted.
+     */
+    @Nullable
+    private Feed takeFeed(FeedDownloadScheduler scheduler, Semaphore downloadedFeeds) {
+        if (!acquire(downloadedFeeds)) {
+            return null;
+        }
+        Feed feed;
+        try {
+            feed = scheduler.take();
+        } catch (InterruptedException e) {
+            feed = null;
+        }
+        if (feed == null) {
+            downloadedFeeds.release();
+        }
+        return feed;
+    }
+
+    private void runWriter(BlockingQueue<Job<P>> parsedFeeds, CountDownLatch remaining) {
+        List<Job<P>> batch = new ArrayList<>(batchSize);
+        List<P> values = new ArrayList<>(batchSize);
+        while (remaining.getCount() > 0) {
+            Job<P> first;
+            try {
+                first = parsedFeeds.poll(WRITER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            parsedFeeds.drainTo(batch, batchSize - 1);
+            for (Job<P> job : batch) {
+                values.add(job.value);
+            }
+
+            long start = System.nanoTime();
+            try {
+                stages.store(values);
+            } catch (Throwable e) {
+                for (Job<P> job : batch) {
+                    stages.onFailure(job.feed, asException(e));
+                }
+            } finally {
+                storeStatistics.add(System.nanoTime() - start, batch.size());
+                for (Job<P> job : batch) {
+                    finish(job.feed, remaining);
+                }
+                batch.clear();
+                values.clear();
+            }
+        }
+    }
+
+    @Nullable
+    private <T> T runStage(Statistics statistics, Feed feed, StageCall<T> call) {
+        if (cancellation.isCancelled()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (Throwable e) {
+            // Errors such as running out of memory on a huge feed must not stop the other feeds
+            stages.onFailure(feed, asException(e));
+            return null;
+        } finally {
+            statistics.add(System.nanoTime() - start, 1);
+        }
+    }
+
+    private static Exception asException(Throwable throwable) {
+        return throwable instanceof Exception ? (Exception) throwable : new Exception(throwable);
+    }
+
+    private void finish(Feed feed, CountDownLatch remaining) {
+        try {
+            stages.onFinished(feed);
+        } finally {
+            remaining.countDown();
+        }
+    }
+
+    private boolean acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private boolean put(BlockingQueue<Job<P>> queue, Job<P> job) {
+        try {
+            queue.put(job);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Number of parallel downloads the last run had settled on.
+     */
+    int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    Statistics getDownloadStatistics() {
+        return downloadStatistics;
+    }
+
+    Statistics getParseStatistics() {
+        return parseStatistics;
+    }
+
+    Statistics getStoreStatistics() {
+        return storeStatistics;
+    }
+
+    private interface StageCall<T> {
+        T call() throws Exception;
+    }
+
+    private static class Job<T> {
+        final Feed feed;
+        final T value;
+
+        Job(Feed feed, T value) {
+            this.feed = feed;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Time spent in a stage, summed over all of its threads.
+     */
+    static class Statistics {
+        private final String name;
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong feeds = new AtomicLong();
+
+        Statistics(String name) {
+            this.name = name;
+        }
+
+        void add(long durationNanos, int feedCount) {
+            nanos.addAndGet(durationNanos);
+            calls.incrementAndGet();
+            feeds.addAndGet(feedCount);
+        }
+
+        long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+        }
+
+        long getCalls() {
+            return calls.get();
+        }
+
+        long getFeeds() {
+            return feeds.get();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %d feeds in %d calls, %d ms", name, getFeeds(), getCalls(),
+                    getMillis());
+        }
+    }
+}
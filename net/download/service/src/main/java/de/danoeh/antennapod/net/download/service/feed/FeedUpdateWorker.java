@@ -39,16 +39,20 @@ import de.danoeh.antennapod.parser.feed.FeedHandlerResult;
 import de.danoeh.antennapod.storage.database.NonSubscribedFeedsCleaner;
 import de.danoeh.antennapod.storage.preferences.UserPreferences;
 import de.danoeh.antennapod.ui.notifications.NotificationUtils;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FeedUpdateWorker extends Worker {
     private static final String TAG = "FeedUpdateWorker";
     private static final long JOB_SCHEDULE_TIME_VARIATION = TimeUnit.MINUTES.toMillis(15);
+    private static final int MAX_DOWNLOADS = 8;
+    private static final int MAX_DOWNLOADS_PER_HOST = 2;
+    private static final int MAX_PARSE_THREADS = 4;
+    private static final int STORE_BATCH_SIZE = 8;
 
     private final NewEpisodesNotification newEpisodesNotification;
     private final NotificationManagerCompat notificationManager;
@@ -161,47 +165,20 @@ public class FeedUpdateWorker extends Worker {
     private void refreshFeeds(List<Feed> toUpdate, boolean force) {
         List<Feed> notificationRemainingFeeds = new ArrayList<>(toUpdate);
         updateNotification(notificationRemainingFeeds);
-        ExecutorService executor = Executors.newFixedThreadPool(4);
-        for (Feed feed : toUpdate) {
-            executor.submit(() -> {
-                if (isStopped()) {
-                    return;
-                }
-                try {
-                    Feed savedFeed;
-                    if (feed.isLocalFeed()) {
-                        savedFeed = LocalFeedUpdater.updateFeed(feed, getApplicationContext(), null);
-                    } else {
-                        savedFeed = refreshFeed(feed, force);
-                    }
-                    if (savedFeed != null) {
-                        newEpisodesNotification.showIfNeeded(getApplicationContext(), savedFeed);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    DBWriter.setFeedLastUpdateFailed(feed.getId(), true);
-                    DownloadResult status = new DownloadResult(feed.getTitle(),
-                            feed.getId(), Feed.FEEDFILETYPE_FEED, false,
-                            DownloadError.ERROR_IO_ERROR, e.getMessage());
-                    DBWriter.addDownloadStatus(status);
-                }
-                synchronized (notificationRemainingFeeds) {
-                    notificationRemainingFeeds.remove(feed);
-                    if (!notificationRemainingFeeds.isEmpty()) {
-                        updateNotification(notificationRemainingFeeds);
-                    }
-                }
-            });
-        }
-        executor.shutdown();
-        try {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            //~300 years have elapsed
-        }
+        RefreshStages stages = new RefreshStages(force, notificationRemainingFeeds);
+        int parseThreads = Math.max(1, Math.min(MAX_PARSE_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        FeedRefreshPipeline<DownloadedFeed, ParsedFeed> pipeline = new FeedRefreshPipeline<>(stages,
+                this::isStopped, MAX_DOWNLOADS, MAX_DOWNLOADS_PER_HOST, parseThreads, STORE_BATCH_SIZE);
+        long start = System.currentTimeMillis();
+        pipeline.run(toUpdate);
+        Log.d(TAG, "Refreshed " + toUpdate.size() + " feeds in " + (System.currentTimeMillis() - start) + " ms ("
+                + pipeline.getDownloadStatistics() + ", " + pipeline.getConcurrencyLimit() + " in parallel at the end; "
+                + pipeline.getParseStatistics() + "; " + pipeline.getStoreStatistics() + "; unchanged: "
+                + stages.unchangedFeeds.get() + " of " + stages.downloadedFeeds.get() + " downloaded feeds)");
     }
 
-    Feed refreshFeed(Feed feed, boolean force) throws Exception {
+    @Nullable
+    private DownloadedFeed downloadFeed(Feed feed, boolean force) throws Exception {
         boolean nextPage = getInputData().getBoolean(FeedUpdateManagerImpl.EXTRA_NEXT_PAGE, false)
                 && feed.getNextPageLink() != null;
         if (nextPage) {
@@ -229,31 +206,172 @@ public class FeedUpdateWorker extends Worker {
             DBWriter.addDownloadStatus(downloader.getResult());
             return null;
         }
+        boolean unchanged = !force && !nextPage && !feed.hasLastUpdateFailed() && downloader.contentHash != null
+                && downloader.contentHash.equals(feed.getContentHash());
+        return new DownloadedFeed(request, downloader, unchanged);
+    }
+
+    /**
+     * The server sent exactly the same file as last time, so there is nothing to parse or merge.
+     */
+    private void skipUnchangedFeed(DownloadedFeed downloaded) {
+        Log.d(TAG, "Feed content unchanged: " + downloaded.request.getSource());
+        File feedFile = new File(downloaded.request.getDestination());
+        if (feedFile.exists() && !feedFile.delete()) {
+            Log.w(TAG, "Unable to delete unchanged feed file " + feedFile);
+        }
+        DBWriter.setFeedRefreshedUnchanged(downloaded.request.getFeedfileId(), downloaded.request.getLastModified());
+    }
 
-        FeedParserTask parserTask = new FeedParserTask(request);
+    @Nullable
+    private ParsedFeed parseFeed(DownloadedFeed downloaded) {
+        FeedParserTask parserTask = new FeedParserTask(downloaded.request);
         FeedHandlerResult feedHandlerResult = parserTask.call();
         if (!parserTask.isSuccessful()) {
-            DBWriter.setFeedLastUpdateFailed(request.getFeedfileId(), true);
+            DBWriter.setFeedLastUpdateFailed(downloaded.request.getFeedfileId(), true);
             DBWriter.addDownloadStatus(parserTask.getDownloadStatus());
             return null;
         }
         feedHandlerResult.feed.setLastRefreshAttempt(System.currentTimeMillis());
-        Feed savedFeed = FeedDatabaseWriter.updateFeed(getApplicationContext(), feedHandlerResult.feed, false);
+        feedHandlerResult.feed.setContentHash(downloaded.downloader.contentHash);
+        return new ParsedFeed(downloaded, parserTask, feedHandlerResult);
+    }
 
-        if (request.getFeedfileId() == 0) {
-            return savedFeed; // No download logs for new subscriptions
+    /**
+     * Merges the parsed feeds into the database in one transaction.
+     *
+     * @return The feeds that were stored successfully.
+     */
+    private List<Feed> storeFeeds(List<ParsedFeed> parsedFeeds) {
+        List<Feed> newFeeds = new ArrayList<>();
+        for (ParsedFeed parsed : parsedFeeds) {
+            newFeeds.add(parsed.result.feed);
         }
-        // we create a 'successful' download log if the feed's last refresh failed
-        List<DownloadResult> log = DBReader.getFeedDownloadLog(request.getFeedfileId(), 1);
-        if (!log.isEmpty() && !log.get(0).isSuccessful()) {
-            DBWriter.addDownloadStatus(parserTask.getDownloadStatus());
+        List<Feed> savedFeeds = FeedDatabaseWriter.updateFeeds(getApplicationContext(), newFeeds);
+
+        List<Feed> successful = new ArrayList<>();
+        for (int i = 0; i < parsedFeeds.size(); i++) {
+            ParsedFeed parsed = parsedFeeds.get(i);
+            DownloadRequest request = parsed.downloaded.request;
+            Feed savedFeed = savedFeeds.get(i);
+            if (savedFeed == null) {
+                DBWriter.setFeedLastUpdateFailed(request.getFeedfileId(), true);
+                DBWriter.addDownloadStatus(new DownloadResult(request.getTitle(), request.getFeedfileId(),
+                        Feed.FEEDFILETYPE_FEED, false, DownloadError.ERROR_DB_ACCESS_ERROR, request.getSource()));
+                continue;
+            }
+            successful.add(savedFeed);
+            if (request.getFeedfileId() == 0) {
+                continue; // No download logs for new subscriptions
+            }
+            // we create a 'successful' download log if the feed's last refresh failed
+            List<DownloadResult> log = DBReader.getFeedDownloadLog(request.getFeedfileId(), 1);
+            if (!log.isEmpty() && !log.get(0).isSuccessful()) {
+                DBWriter.addDownloadStatus(parsed.parserTask.getDownloadStatus());
+            }
+            Downloader downloader = parsed.downloaded.downloader;
+            if (downloader.permanentRedirectUrl != null) {
+                DBWriter.updateFeedDownloadURL(request.getSource(), downloader.permanentRedirectUrl);
+            } else if (parsed.result.redirectUrl != null
+                    && !parsed.result.redirectUrl.equals(request.getSource())) {
+                DBWriter.updateFeedDownloadURL(request.getSource(), parsed.result.redirectUrl);
+            }
+        }
+        return successful;
+    }
+
+    /**
+     * Runs the download, parse and store steps of a refresh for the pipeline.
+     */
+    private class RefreshStages implements FeedRefreshPipeline.Stages<DownloadedFeed, ParsedFeed> {
+        private final boolean force;
+        private final List<Feed> notificationRemainingFeeds;
+        final AtomicInteger downloadedFeeds = new AtomicInteger();
+        final AtomicInteger unchangedFeeds = new AtomicInteger();
+
+        RefreshStages(boolean force, List<Feed> notificationRemainingFeeds) {
+            this.force = force;
+            this.notificationRemainingFeeds = notificationRemainingFeeds;
+        }
+
+        @Nullable
+        @Override
+        public DownloadedFeed download(Feed feed) throws Exception {
+            if (feed.isLocalFeed()) {
+                Feed savedFeed = LocalFeedUpdater.updateFeed(feed, getApplicationContext(), null);
+                if (savedFeed != null) {
+                    newEpisodesNotification.showIfNeeded(getApplicationContext(), savedFeed);
+                }
+                return null;
+            }
+            DownloadedFeed downloaded = downloadFeed(feed, force);
+            if (downloaded == null) {
+                return null;
+            }
+            downloadedFeeds.incrementAndGet();
+            if (downloaded.unchanged) {
+                unchangedFeeds.incrementAndGet();
+                skipUnchangedFeed(downloaded);
+                return null;
+            }
+            return downloaded;
+        }
+
+        @Nullable
+        @Override
+        public ParsedFeed parse(Feed feed, DownloadedFeed downloaded) {
+            return parseFeed(downloaded);
+        }
+
+        @Override
+        public void store(List<ParsedFeed> parsed) {
+            for (Feed savedFeed : storeFeeds(parsed)) {
+                newEpisodesNotification.showIfNeeded(getApplicationContext(), savedFeed);
+            }
+        }
+
+        @Override
+        public void onFailure(Feed feed, Exception e) {
+            e.printStackTrace();
+            DBWriter.setFeedLastUpdateFailed(feed.getId(), true);
+            DownloadResult status = new DownloadResult(feed.getTitle(),
+                    feed.getId(), Feed.FEEDFILETYPE_FEED, false,
+                    DownloadError.ERROR_IO_ERROR, e.getMessage());
+            DBWriter.addDownloadStatus(status);
+        }
+
+        @Override
+        public void onFinished(Feed feed) {
+            synchronized (notificationRemainingFeeds) {
+                notificationRemainingFeeds.remove(feed);
+                if (!notificationRemainingFeeds.isEmpty()) {
+                    updateNotification(notificationRemainingFeeds);
+                }
+            }
+        }
+    }
+
+    private static class DownloadedFeed {
+        final DownloadRequest request;
+        final Downloader downloader;
+        final boolean unchanged;
+
+        DownloadedFeed(DownloadRequest request, Downloader downloader, boolean unchanged) {
+            this.request = request;
+            this.downloader = downloader;
+            this.unchanged = unchanged;
         }
-        if (downloader.permanentRedirectUrl != null) {
-            DBWriter.updateFeedDownloadURL(request.getSource(), downloader.permanentRedirectUrl);
-        } else if (feedHandlerResult.redirectUrl != null
-                && !feedHandlerResult.redirectUrl.equals(request.getSource())) {
-            DBWriter.updateFeedDownloadURL(request.getSource(), feedHandlerResult.redirectUrl);
+    }
+
+    private static class ParsedFeed {
+        final DownloadedFeed downloaded;
+        final FeedParserTask parserTask;
+        final FeedHandlerResult result;
+
+        ParsedFeed(DownloadedFeed downloaded, FeedParserTask parserTask, FeedHandlerResult result) {
+            this.downloaded = downloaded;
+            this.parserTask = parserTask;
+            this.result = result;
         }
-        return savedFeed;
     }
 }
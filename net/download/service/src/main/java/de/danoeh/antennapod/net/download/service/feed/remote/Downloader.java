@@ -18,6 +18,10 @@ public abstract class Downloader implements Callable<Downloader> {
     private volatile boolean finished;
     public volatile boolean cancelled;
     public String permanentRedirectUrl = null;
+    /**
+     * SHA-256 of the downloaded feed file, or null if it was not computed.
+     */
+    public String contentHash = null;
 
     @NonNull
     final DownloadRequest request;
@@ -24,10 +24,13 @@ import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Locale;
 
+import de.danoeh.antennapod.model.feed.Feed;
 import de.danoeh.antennapod.model.feed.FeedMedia;
 import de.danoeh.antennapod.parser.feed.util.DateUtils;
 import de.danoeh.antennapod.model.download.DownloadError;
@@ -53,6 +56,7 @@ public class HttpDownloader extends Downloader {
 
         RandomAccessFile out = null;
         InputStream connection;
+        MessageDigest digest = null;
         ResponseBody responseBody = null;
 
         try {
@@ -139,6 +143,9 @@ public class HttpDownloader extends Downloader {
                     throw new IOException("Unable to recreate partially downloaded file");
                 }
                 out = new RandomAccessFile(destination, "rw");
+                if (request.getFeedfileType() == Feed.FEEDFILETYPE_FEED) {
+                    digest = createDigest();
+                }
             }
 
             byte[] buffer = new byte[BUFFER_SIZE];
@@ -162,6 +169,9 @@ public class HttpDownloader extends Downloader {
             try {
                 while (!cancelled && (count = connection.read(buffer)) != -1) {
                     out.write(buffer, 0, count);
+                    if (digest != null) {
+                        digest.update(buffer, 0, count);
+                    }
                     request.setSoFar(request.getSoFar() + count);
                     int progressPercent = (int) (100.0 * request.getSoFar() / request.getSize());
                     request.setProgressPercent(progressPercent);
@@ -189,6 +199,9 @@ public class HttpDownloader extends Downloader {
                 } else {
                     request.setLastModified(response.header("ETag"));
                 }
+                if (digest != null) {
+                    contentHash = toHex(digest.digest());
+                }
                 onSuccess();
             }
 
@@ -241,6 +254,24 @@ public class HttpDownloader extends Downloader {
         }
     }
 
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "Unable to hash feed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     private boolean isContentTypeTextAndSmallerThan100kb(Response response) {
         int contentLength = -1;
         String contentLen = response.header("Content-Length");
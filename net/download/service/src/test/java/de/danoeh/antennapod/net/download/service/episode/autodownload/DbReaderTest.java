@@ -14,11 +14,14 @@ import androidx.test.platform.app.InstrumentationRegistry;
 
 import de.danoeh.antennapod.model.feed.Feed;
 import de.danoeh.antennapod.model.feed.FeedCounter;
+import de.danoeh.antennapod.model.feed.FeedFilter;
 import de.danoeh.antennapod.model.feed.FeedItem;
 import de.danoeh.antennapod.model.feed.FeedItemFilter;
 import de.danoeh.antennapod.model.feed.FeedMedia;
 import de.danoeh.antennapod.model.feed.FeedOrder;
+import de.danoeh.antennapod.model.feed.FeedPreferences;
 import de.danoeh.antennapod.model.feed.SortOrder;
+import de.danoeh.antennapod.model.feed.VolumeAdaptionSetting;
 import de.danoeh.antennapod.storage.database.DBReader;
 import de.danoeh.antennapod.storage.database.DBWriter;
 import de.danoeh.antennapod.storage.database.NavDrawerData;
@@ -218,6 +221,62 @@ public class DbReaderTest {
             }
         }
 
+        @Test
+        public void testGetAutoDownloadCandidateIds() {
+            List<Feed> feeds = saveFeedlist(2, 4, true);
+            Feed feed = feeds.get(0);
+            Feed disabledFeed = feeds.get(1);
+            FeedPreferences prefs = new FeedPreferences(feed.getId(), FeedPreferences.AutoDownloadSetting.ENABLED,
+                    FeedPreferences.AutoDeleteAction.GLOBAL, VolumeAdaptionSetting.OFF,
+                    FeedPreferences.NewEpisodesAction.GLOBAL, null, null);
+            prefs.setFilter(new FeedFilter("", "\"item 1\""));
+            FeedPreferences disabledPrefs = new FeedPreferences(disabledFeed.getId(),
+                    FeedPreferences.AutoDownloadSetting.DISABLED, FeedPreferences.AutoDeleteAction.GLOBAL,
+                    VolumeAdaptionSetting.OFF, FeedPreferences.NewEpisodesAction.GLOBAL, null, null);
+            FeedItem downloaded = feed.getItems().get(2);
+            downloaded.getMedia().setDownloaded(true, System.currentTimeMillis());
+
+            PodDBAdapter adapter = PodDBAdapter.getInstance();
+            adapter.open();
+            adapter.setFeedPreferences(prefs);
+            adapter.setFeedPreferences(disabledPrefs);
+            adapter.setMedia(downloaded.getMedia());
+            adapter.setFeedItemRead(FeedItem.NEW, feed.getItems().get(0).getId(), feed.getItems().get(1).getId(),
+                    downloaded.getId(), disabledFeed.getItems().get(0).getId());
+            adapter.setQueue(Arrays.asList(disabledFeed.getItems().get(1), feed.getItems().get(1),
+                    feed.getItems().get(0)));
+            adapter.close();
+
+            // The excluded episode and the episode of the disabled feed are only downloaded from the queue
+            LongList expected = LongList.of(feed.getItems().get(0).getId(), disabledFeed.getItems().get(1).getId(),
+                    feed.getItems().get(1).getId());
+            assertEquals(expected, DBReader.getAutoDownloadCandidateIds(false, true));
+            assertEquals(LongList.of(feed.getItems().get(0).getId()),
+                    DBReader.getAutoDownloadCandidateIds(false, false));
+        }
+
+        @Test
+        public void testGetAutoDownloadCandidateIdsSkipsArchivedFeed() {
+            List<Feed> feeds = saveFeedlist(2, 1, true);
+            Feed feed = feeds.get(0);
+            Feed archivedFeed = feeds.get(1);
+
+            PodDBAdapter adapter = PodDBAdapter.getInstance();
+            adapter.open();
+            for (Feed f : feeds) {
+                adapter.setFeedPreferences(new FeedPreferences(f.getId(), FeedPreferences.AutoDownloadSetting.ENABLED,
+                        FeedPreferences.AutoDeleteAction.GLOBAL, VolumeAdaptionSetting.OFF,
+                        FeedPreferences.NewEpisodesAction.GLOBAL, null, null));
+            }
+            adapter.setFeedState(archivedFeed.getId(), Feed.STATE_ARCHIVED);
+            adapter.setFeedItemRead(FeedItem.NEW, feed.getItems().get(0).getId(),
+                    archivedFeed.getItems().get(0).getId());
+            adapter.close();
+
+            assertEquals(LongList.of(feed.getItems().get(0).getId()),
+                    DBReader.getAutoDownloadCandidateIds(false, false));
+        }
+
         @SuppressWarnings("SameParameterValue")
         private List<FeedItem> saveDownloadedItems(int numItems) {
             if (numItems <= 0) {
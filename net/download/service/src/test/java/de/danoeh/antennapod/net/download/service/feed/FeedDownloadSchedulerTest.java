@@ -0,0 +1,202 @@
+package de.danoeh.antennapod.net.download.service.feed;
+
+import androidx.annotation.NonNull;
+import de.danoeh.antennapod.model.feed.Feed;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FeedDownloadSchedulerTest {
+    private MockWebServer server;
+    private FakeHostDispatcher dispatcher;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        dispatcher = new FakeHostDispatcher();
+        server.setDispatcher(dispatcher);
+        server.start();
+        // Every virtual host resolves to the mock server
+        client = new OkHttpClient.Builder()
+                .dns(hostname -> Collections.singletonList(InetAddress.getByName(server.getHostName())))
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testLargestHostFirst() throws Exception {
+        List<Feed> feeds = new ArrayList<>();
+        feeds.add(createFeed("small.example.com", 0));
+        feeds.add(createFeed("large.example.com", 1));
+        feeds.add(createFeed("large.example.com", 2));
+        FeedDownloadScheduler scheduler = new FeedDownloadScheduler(feeds, 4, 2);
+
+        assertSame(feeds.get(1), scheduler.take());
+        // Only one download until the first connection to the host was established
+        assertSame(feeds.get(0), scheduler.take());
+        scheduler.release(feeds.get(1));
+        assertSame(feeds.get(2), scheduler.take());
+        assertNull(scheduler.take());
+    }
+
+    @Test
+    public void testDrainReturnsRemainingFeeds() throws Exception {
+        List<Feed> feeds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            feeds.add(createFeed("host" + i + ".example.com", i));
+        }
+        FeedDownloadScheduler scheduler = new FeedDownloadScheduler(feeds, 4, 2);
+        assertNotNull(scheduler.take());
+        assertEquals(4, scheduler.drain().size());
+        assertNull(scheduler.take());
+    }
+
+    @Test
+    public void testConcurrencyPerHostIsLimited() {
+        List<Feed> feeds = createSkewedFeeds();
+        FetchStages stages = new FetchStages();
+        new FeedRefreshPipeline<>(stages, () -> false, 8, 2, 2, 8).run(feeds);
+
+        assertEquals(feeds.size(), stages.fetched.get());
+        for (Map.Entry<String, Integer> entry : dispatcher.maxConcurrent.entrySet()) {
+            assertTrue(entry.getKey() + ": " + entry.getValue(), entry.getValue() <= 2);
+        }
+    }
+
+    @Test
+    public void testDownloadsFromDifferentHostsOverlap() {
+        List<Feed> feeds = createSkewedFeeds();
+        FetchStages stages = new FetchStages();
+        FeedRefreshPipeline<Feed, Feed> pipeline = new FeedRefreshPipeline<>(stages, () -> false, 8, 2, 2, 8);
+        pipeline.run(feeds);
+
+        assertEquals(feeds.size(), stages.fetched.get());
+        assertTrue("Max parallel " + dispatcher.maxTotal.get(), dispatcher.maxTotal.get() > 1);
+        assertTrue("Max parallel " + dispatcher.maxTotal.get(), dispatcher.maxTotal.get() <= 8);
+        assertTrue(pipeline.getConcurrencyLimit() >= 1);
+        assertTrue(pipeline.getConcurrencyLimit() <= 8);
+    }
+
+    /**
+     * Three large hosts that slow down under parallel load and many small hosts, some of them slow.
+     */
+    private List<Feed> createSkewedFeeds() {
+        List<Feed> feeds = new ArrayList<>();
+        int id = 0;
+        for (int host = 0; host < 3; host++) {
+            for (int i = 0; i < 15; i++) {
+                feeds.add(createFeed("large" + host + ".test", id++));
+            }
+        }
+        for (int host = 0; host < 30; host++) {
+            feeds.add(createFeed("small" + host + ".test", id++));
+        }
+        return feeds;
+    }
+
+    private Feed createFeed(String host, int id) {
+        String url = "http://" + host + ":" + server.getPort() + "/feed" + id;
+        Feed feed = new Feed(url, null, "Feed " + id);
+        feed.setId(id + 1);
+        return feed;
+    }
+
+    private void fetch(Feed feed) {
+        Request request = new Request.Builder().url(feed.getDownloadUrl()).build();
+        try (Response response = client.newCall(request).execute()) {
+            assertTrue(response.isSuccessful());
+            response.body().string();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class FetchStages implements FeedRefreshPipeline.Stages<Feed, Feed> {
+        final AtomicInteger fetched = new AtomicInteger();
+
+        @Override
+        public Feed download(Feed feed) {
+            fetch(feed);
+            fetched.incrementAndGet();
+            return feed;
+        }
+
+        @Override
+        public Feed parse(Feed feed, Feed downloaded) {
+            return downloaded;
+        }
+
+        @Override
+        public void store(List<Feed> parsed) {
+        }
+
+        @Override
+        public void onFailure(Feed feed, Exception e) {
+            throw new AssertionError(e);
+        }
+
+        @Override
+        public void onFinished(Feed feed) {
+        }
+    }
+
+    private static class FakeHostDispatcher extends Dispatcher {
+        final Map<String, Integer> maxConcurrent = new ConcurrentHashMap<>();
+        final AtomicInteger maxTotal = new AtomicInteger();
+        private final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        private final AtomicInteger runningTotal = new AtomicInteger();
+
+        @NonNull
+        @Override
+        public MockResponse dispatch(@NonNull RecordedRequest request) throws InterruptedException {
+            String host = request.getHeader("Host");
+            host = host.substring(0, host.indexOf(':'));
+            AtomicInteger counter = running.computeIfAbsent(host, h -> new AtomicInteger());
+            int concurrent = counter.incrementAndGet();
+            maxConcurrent.merge(host, concurrent, Math::max);
+            maxTotal.accumulateAndGet(runningTotal.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(getLatencyMillis(host, concurrent));
+            } finally {
+                counter.decrementAndGet();
+                runningTotal.decrementAndGet();
+            }
+            return new MockResponse().setBody("<rss/>");
+        }
+
+        private static long getLatencyMillis(String host, int concurrent) {
+            if (host.startsWith("large")) {
+                return 20L * concurrent * concurrent; // Throttles parallel requests
+            }
+            int number = Integer.parseInt(host.substring("small".length(), host.indexOf('.')));
+            return number % 5 == 0 ? 300 : 10;
+        }
+    }
+}
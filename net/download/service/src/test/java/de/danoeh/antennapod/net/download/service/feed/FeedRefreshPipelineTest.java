@@ -0,0 +1,183 @@
+package de.danoeh.antennapod.net.download.service.feed;
+
+import de.danoeh.antennapod.model.feed.Feed;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FeedRefreshPipelineTest {
+    private static final int FEED_COUNT = 60;
+    private static final int BATCH_SIZE = 8;
+
+    @Test
+    public void testEveryFeedFinishesOnce() {
+        FakeStages stages = new FakeStages(0, 0, 0);
+        List<Feed> feeds = createFeeds(FEED_COUNT);
+        stages.failingParse.add(feeds.get(3));
+        stages.skippedDownload.add(feeds.get(7));
+
+        new FeedRefreshPipeline<>(stages, () -> false, 4, 4, 2, BATCH_SIZE).run(feeds);
+
+        assertEquals(FEED_COUNT, stages.finished.size());
+        for (Integer count : stages.finished.values()) {
+            assertEquals(1, (int) count);
+        }
+        assertEquals(FEED_COUNT - 2, stages.stored.size());
+        assertEquals(Collections.singletonList(feeds.get(3)), stages.failed);
+        assertTrue(stages.largestBatch <= BATCH_SIZE);
+    }
+
+    @Test
+    public void testParsedFeedsAreBounded() {
+        // The writer is much slower than parsing, so parsers have to wait for it
+        FakeStages stages = new FakeStages(0, 0, 20);
+        new FeedRefreshPipeline<>(stages, () -> false, 4, 4, 2, BATCH_SIZE).run(createFeeds(FEED_COUNT));
+
+        assertEquals(FEED_COUNT, stages.stored.size());
+        // Queue capacity, one batch being stored and one feed per parse thread waiting to be queued
+        assertTrue("Max pending " + stages.maxPending, stages.maxPending <= 2 * BATCH_SIZE + BATCH_SIZE + 2);
+    }
+
+    @Test
+    public void testCancelledRefreshSkipsRemainingFeeds() {
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        FakeStages stages = new FakeStages(5, 0, 0);
+        stages.onDownload = () -> cancelled.set(true);
+        new FeedRefreshPipeline<>(stages, cancelled::get, 1, 1, 1, BATCH_SIZE).run(createFeeds(FEED_COUNT));
+
+        assertEquals(FEED_COUNT, stages.finished.size());
+        assertTrue(stages.downloads.get() < FEED_COUNT);
+    }
+
+    @Test
+    public void testDownloadsOverlapAndStoresAreBatched() {
+        final int feedCount = 40;
+        FakeStages stages = new FakeStages(10, 0, 5);
+        FeedRefreshPipeline<Feed, Feed> pipeline = new FeedRefreshPipeline<>(stages, () -> false, 4, 4, 2, BATCH_SIZE);
+        pipeline.run(createFeeds(feedCount));
+
+        assertEquals(feedCount, stages.stored.size());
+        assertEquals(feedCount, pipeline.getDownloadStatistics().getFeeds());
+        assertTrue("Max downloads " + stages.maxActiveDownloads, stages.maxActiveDownloads > 1);
+        assertTrue("Max downloads " + stages.maxActiveDownloads, stages.maxActiveDownloads <= 4);
+        assertEquals(feedCount, pipeline.getStoreStatistics().getFeeds());
+        assertTrue(pipeline.getStoreStatistics().getCalls() < feedCount);
+    }
+
+    @Test
+    public void testEveryFeedFinishesWhenStagesThrowErrors() {
+        FakeStages stages = new FakeStages(0, 0, 0);
+        List<Feed> feeds = createFeeds(FEED_COUNT);
+        stages.erroringDownload.add(feeds.get(2));
+        stages.erroringParse.add(feeds.get(5));
+
+        new FeedRefreshPipeline<>(stages, () -> false, 4, 4, 2, BATCH_SIZE).run(feeds);
+
+        assertEquals(FEED_COUNT, stages.finished.size());
+        assertEquals(FEED_COUNT - 2, stages.stored.size());
+        assertEquals(2, stages.failed.size());
+    }
+
+    private static List<Feed> createFeeds(int count) {
+        List<Feed> feeds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Feed feed = new Feed("https://host" + (i % 8) + ".example.com/feed" + i, null, "Feed " + i);
+            feed.setId(i + 1);
+            feeds.add(feed);
+        }
+        return feeds;
+    }
+
+    private static void sleep(long millis) {
+        if (millis == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class FakeStages implements FeedRefreshPipeline.Stages<Feed, Feed> {
+        final long downloadMillis;
+        final long parseMillis;
+        final long storeMillis;
+        final List<Feed> failingParse = new ArrayList<>();
+        final List<Feed> skippedDownload = new ArrayList<>();
+        final List<Feed> erroringDownload = new ArrayList<>();
+        final List<Feed> erroringParse = new ArrayList<>();
+        final Map<Feed, Integer> finished = new ConcurrentHashMap<>();
+        final List<Feed> stored = Collections.synchronizedList(new ArrayList<>());
+        final List<Feed> failed = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger downloads = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger activeDownloads = new AtomicInteger();
+        Runnable onDownload = () -> { };
+        volatile int maxPending = 0;
+        volatile int largestBatch = 0;
+        volatile int maxActiveDownloads = 0;
+
+        FakeStages(long downloadMillis, long parseMillis, long storeMillis) {
+            this.downloadMillis = downloadMillis;
+            this.parseMillis = parseMillis;
+            this.storeMillis = storeMillis;
+        }
+
+        @Override
+        public Feed download(Feed feed) {
+            downloads.incrementAndGet();
+            onDownload.run();
+            synchronized (this) {
+                maxActiveDownloads = Math.max(maxActiveDownloads, activeDownloads.incrementAndGet());
+            }
+            sleep(downloadMillis);
+            activeDownloads.decrementAndGet();
+            if (erroringDownload.contains(feed)) {
+                throw new AssertionError("Broken download");
+            }
+            return skippedDownload.contains(feed) ? null : feed;
+        }
+
+        @Override
+        public Feed parse(Feed feed, Feed downloaded) {
+            sleep(parseMillis);
+            if (failingParse.contains(feed)) {
+                throw new IllegalStateException("Unparseable");
+            } else if (erroringParse.contains(feed)) {
+                throw new StackOverflowError();
+            }
+            synchronized (this) {
+                maxPending = Math.max(maxPending, pending.incrementAndGet());
+            }
+            return downloaded;
+        }
+
+        @Override
+        public void store(List<Feed> parsed) {
+            largestBatch = Math.max(largestBatch, parsed.size());
+            sleep(storeMillis);
+            stored.addAll(parsed);
+            pending.addAndGet(-parsed.size());
+        }
+
+        @Override
+        public void onFailure(Feed feed, Exception e) {
+            failed.add(feed);
+        }
+
+        @Override
+        public void onFinished(Feed feed) {
+            finished.merge(feed, 1, Integer::sum);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package de.danoeh.antennapod.net.sync.service;
+
+import android.util.Log;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedItemFilter;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.model.feed.SortOrder;
+import de.danoeh.antennapod.net.sync.serviceinterface.EpisodeAction;
+import de.danoeh.antennapod.net.sync.serviceinterface.ISyncService;
+import de.danoeh.antennapod.net.sync.serviceinterface.SyncServiceException;
+import de.danoeh.antennapod.net.sync.serviceinterface.UploadChangesResponse;
+import de.danoeh.antennapod.storage.database.DBReader;
+import de.danoeh.antennapod.storage.preferences.SynchronizationSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uploads the state of all played episodes on the first sync. The episodes are loaded and uploaded
+ * one page at a time. The last uploaded episode is remembered, so an interrupted upload continues
+ * with the next page instead of starting over.
+ */
+class PlayedEpisodesUploader {
+    private static final String TAG = "PlayedEpisodesUploader";
+    /**
+     * Multiple of the number of actions that the services send per request.
+     */
+    static final int PAGE_SIZE = 300;
+
+    private final ISyncService syncService;
+    private final int pageSize;
+
+    PlayedEpisodesUploader(ISyncService syncService, int pageSize) {
+        this.syncService = syncService;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return The timestamp of the last upload, or 0 if there was nothing to upload
+     */
+    long upload() throws SyncServiceException {
+        FeedItem lastItem = null;
+        long lastUploadedId = SynchronizationSettings.getLastUploadedPlayedEpisode();
+        if (lastUploadedId != 0) {
+            lastItem = DBReader.getFeedItem(lastUploadedId);
+            Log.d(TAG, lastItem != null ? "Continuing upload after episode " + lastUploadedId
+                    : "Last uploaded episode was deleted, starting over");
+        }
+        FeedItemFilter filter = new FeedItemFilter(FeedItemFilter.PLAYED);
+        long timestamp = 0;
+        int numUploaded = 0;
+        while (true) {
+            List<FeedItem> items = DBReader.getEpisodesAfter(lastItem, pageSize, filter, SortOrder.DATE_NEW_OLD);
+            if (items.isEmpty()) {
+                break;
+            }
+            List<EpisodeAction> actions = new ArrayList<>(items.size());
+            for (FeedItem item : items) {
+                FeedMedia media = item.getMedia();
+                if (media == null) {
+                    continue;
+                }
+                actions.add(new EpisodeAction.Builder(item, EpisodeAction.PLAY)
+                        .currentTimestamp()
+                        .started(media.getDuration() / 1000)
+                        .position(media.getDuration() / 1000)
+                        .total(media.getDuration() / 1000)
+                        .build());
+            }
+            if (!actions.isEmpty()) {
+                UploadChangesResponse response = syncService.uploadEpisodeActions(actions);
+                timestamp = response.timestamp;
+                numUploaded += actions.size();
+            }
+            lastItem = items.get(items.size() - 1);
+            SynchronizationSettings.setLastUploadedPlayedEpisode(lastItem.getId());
+            if (items.size() < pageSize) {
+                break;
+            }
+        }
+        Log.d(TAG, "Uploaded state of " + numUploaded + " played episodes");
+        return timestamp;
+    }
+}
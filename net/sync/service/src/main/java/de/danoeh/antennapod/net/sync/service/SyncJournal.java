@@ -0,0 +1,133 @@
+package de.danoeh.antennapod.net.sync.service;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file with one JSON object per line. Adding an entry only appends a line instead of
+ * rewriting everything. Lines that were cut off by a crash are skipped when reading.
+ * The owner decides when the journal is compacted by rewriting it with fewer entries.
+ */
+class SyncJournal {
+    private static final String TAG = "SyncJournal";
+    private static final long MIN_COMPACTION_LENGTH = 64 * 1024;
+
+    private final File file;
+    private long compactionLength = MIN_COMPACTION_LENGTH;
+    /**
+     * Length of the file after the last write, so that changes by a crashed process can be detected.
+     */
+    private long knownLength = -1;
+
+    SyncJournal(File file) {
+        this.file = file;
+    }
+
+    synchronized void append(JSONObject entry) throws IOException {
+        byte[] line = (entry.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        if (file.length() != knownLength) {
+            line = endPreviousLine(line);
+        }
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(line);
+        }
+        knownLength = file.length();
+    }
+
+    /**
+     * Makes sure that a line that was cut off by a crash does not swallow the new entry.
+     */
+    private byte[] endPreviousLine(byte[] line) throws IOException {
+        if (file.length() == 0) {
+            return line;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(in.length() - 1);
+            if (in.read() == '\n') {
+                return line;
+            }
+        }
+        byte[] result = new byte[line.length + 1];
+        result[0] = '\n';
+        System.arraycopy(line, 0, result, 1, line.length);
+        return result;
+    }
+
+    synchronized List<JSONObject> read() {
+        List<JSONObject> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    entries.add(new JSONObject(line));
+                } catch (JSONException e) {
+                    Log.w(TAG, "Skipping damaged entry in " + file.getName());
+                }
+            }
+        } catch (FileNotFoundException e) {
+            return entries;
+        } catch (IOException e) {
+            Log.e(TAG, Log.getStackTraceString(e));
+        }
+        return entries;
+    }
+
+    /**
+     * Replaces all entries. The new file is written next to the journal and then renamed,
+     * so a crash leaves either the old or the new entries.
+     */
+    synchronized void rewrite(List<JSONObject> entries) throws IOException {
+        if (entries.isEmpty()) {
+            clear();
+            return;
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            StringBuilder content = new StringBuilder();
+            for (JSONObject entry : entries) {
+                content.append(entry.toString()).append('\n');
+            }
+            out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Unable to replace " + file.getName());
+        }
+        knownLength = file.length();
+        compactionLength = Math.max(MIN_COMPACTION_LENGTH, 2 * knownLength);
+    }
+
+    synchronized void clear() {
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Unable to delete " + file.getName());
+        }
+        knownLength = 0;
+        compactionLength = MIN_COMPACTION_LENGTH;
+    }
+
+    /**
+     * @return true if the journal has grown to twice its size after the last compaction
+     */
+    synchronized boolean needsCompaction() {
+        return file.length() > compactionLength;
+    }
+}
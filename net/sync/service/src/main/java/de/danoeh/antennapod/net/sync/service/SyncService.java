@@ -20,9 +20,7 @@ import de.danoeh.antennapod.event.MessageEvent;
 import de.danoeh.antennapod.event.SyncServiceEvent;
 import de.danoeh.antennapod.model.feed.Feed;
 import de.danoeh.antennapod.model.feed.FeedItem;
-import de.danoeh.antennapod.model.feed.FeedItemFilter;
 import de.danoeh.antennapod.model.feed.FeedMedia;
-import de.danoeh.antennapod.model.feed.SortOrder;
 import de.danoeh.antennapod.net.common.AntennapodHttpClient;
 import de.danoeh.antennapod.net.common.RedirectChecker;
 import de.danoeh.antennapod.net.common.UrlChecker;
@@ -39,7 +37,7 @@ import de.danoeh.antennapod.net.sync.serviceinterface.UploadChangesResponse;
 import de.danoeh.antennapod.storage.database.DBReader;
 import de.danoeh.antennapod.storage.database.DBWriter;
 import de.danoeh.antennapod.storage.database.FeedDatabaseWriter;
-import de.danoeh.antennapod.storage.database.LongList;
+import de.danoeh.antennapod.storage.database.LongHashSet;
 import de.danoeh.antennapod.storage.preferences.SynchronizationCredentials;
 import de.danoeh.antennapod.storage.preferences.SynchronizationSettings;
 import de.danoeh.antennapod.storage.preferences.UserPreferences;
@@ -49,6 +47,8 @@ import org.greenrobot.eventbus.EventBus;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -222,25 +222,6 @@ public class SyncService extends Worker {
         // upload local actions
         EventBus.getDefault().postSticky(new SyncServiceEvent(R.string.sync_status_episodes_upload));
         List<EpisodeAction> queuedEpisodeActions = synchronizationQueueStorage.getQueuedEpisodeActions();
-        if (lastSync == 0) {
-            EventBus.getDefault().postSticky(new SyncServiceEvent(R.string.sync_status_upload_played));
-            List<FeedItem> readItems = DBReader.getEpisodes(0, Integer.MAX_VALUE,
-                    new FeedItemFilter(FeedItemFilter.PLAYED), SortOrder.DATE_NEW_OLD);
-            Log.d(TAG, "First sync. Upload state for all " + readItems.size() + " played episodes");
-            for (FeedItem item : readItems) {
-                FeedMedia media = item.getMedia();
-                if (media == null) {
-                    continue;
-                }
-                EpisodeAction played = new EpisodeAction.Builder(item, EpisodeAction.PLAY)
-                        .currentTimestamp()
-                        .started(media.getDuration() / 1000)
-                        .position(media.getDuration() / 1000)
-                        .total(media.getDuration() / 1000)
-                        .build();
-                queuedEpisodeActions.add(played);
-            }
-        }
         if (!queuedEpisodeActions.isEmpty()) {
             LockingAsyncExecutor.lock();
             try {
@@ -254,6 +235,14 @@ public class SyncService extends Worker {
                 LockingAsyncExecutor.unlock();
             }
         }
+        if (lastSync == 0) {
+            EventBus.getDefault().postSticky(new SyncServiceEvent(R.string.sync_status_upload_played));
+            long uploadTimestamp = new PlayedEpisodesUploader(syncServiceImpl, PlayedEpisodesUploader.PAGE_SIZE)
+                    .upload();
+            if (uploadTimestamp != 0) {
+                newTimeStamp = uploadTimestamp;
+            }
+        }
         SynchronizationSettings.setLastEpisodeActionSynchronizationAttemptTimestamp(newTimeStamp);
     }
 
@@ -266,11 +255,21 @@ public class SyncService extends Worker {
         Map<Pair<String, String>, EpisodeAction> playActionsToUpdate = EpisodeActionFilter
                 .getRemoteActionsOverridingLocalActions(remoteActions,
                         synchronizationQueueStorage.getQueuedEpisodeActions());
-        LongList queueToBeRemoved = new LongList();
-        List<FeedItem> updatedItems = new ArrayList<>();
-        for (EpisodeAction action : playActionsToUpdate.values()) {
-            String guid = GuidValidator.isValidGuid(action.getGuid()) ? action.getGuid() : null;
-            FeedItem feedItem = DBReader.getFeedItemByGuidOrEpisodeUrl(guid, action.getEpisode());
+        List<EpisodeAction> actions = new ArrayList<>(playActionsToUpdate.values());
+        List<String> guids = new ArrayList<>(actions.size());
+        List<String> episodeUrls = new ArrayList<>(actions.size());
+        for (EpisodeAction action : actions) {
+            guids.add(GuidValidator.isValidGuid(action.getGuid()) ? action.getGuid() : null);
+            episodeUrls.add(action.getEpisode());
+        }
+        List<FeedItem> feedItems = DBReader.getFeedItemsByGuidOrEpisodeUrl(guids, episodeUrls);
+
+        // Several actions can belong to the same episode, the last one wins
+        Map<Long, FeedItem> itemsToUpdate = new LinkedHashMap<>();
+        Map<Long, EpisodeAction> actionsOfItems = new HashMap<>();
+        for (int i = 0; i < actions.size(); i++) {
+            EpisodeAction action = actions.get(i);
+            FeedItem feedItem = feedItems.get(i);
             if (feedItem == null) {
                 Log.i(TAG, "Unknown feed item: " + action);
                 continue;
@@ -279,9 +278,17 @@ public class SyncService extends Worker {
                 Log.i(TAG, "Feed item has no media: " + action);
                 continue;
             }
+            itemsToUpdate.put(feedItem.getId(), feedItem);
+            actionsOfItems.put(feedItem.getId(), action);
+        }
+
+        LongHashSet queueToBeRemoved = new LongHashSet();
+        List<FeedItem> updatedItems = new ArrayList<>(itemsToUpdate.values());
+        int smartMarkAsPlayedSecs = UserPreferences.getSmartMarkAsPlayedSecs();
+        for (FeedItem feedItem : updatedItems) {
+            EpisodeAction action = actionsOfItems.get(feedItem.getId());
             FeedMedia media = feedItem.getMedia();
             media.setPosition(action.getPosition() * 1000);
-            int smartMarkAsPlayedSecs = UserPreferences.getSmartMarkAsPlayedSecs();
             boolean almostEnded = media.getDuration() > 0
                     && media.getPosition() >= media.getDuration() - smartMarkAsPlayedSecs * 1000;
             if (almostEnded) {
@@ -292,11 +299,9 @@ public class SyncService extends Worker {
             } else {
                 Log.d(TAG, "Setting position: " + action);
             }
-            updatedItems.add(feedItem);
         }
-        DBWriter.removeQueueItem(getApplicationContext(), false, queueToBeRemoved.toArray());
         DBReader.loadAdditionalFeedItemListData(updatedItems);
-        DBWriter.setItemList(updatedItems);
+        DBWriter.setItemListAndRemoveQueueItems(getApplicationContext(), updatedItems, queueToBeRemoved.toArray());
     }
 
     private void clearErrorNotifications() {
@@ -3,112 +3,191 @@ package de.danoeh.antennapod.net.sync.service;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import androidx.annotation.NonNull;
+import androidx.core.util.Pair;
 import de.danoeh.antennapod.net.sync.serviceinterface.EpisodeAction;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.danoeh.antennapod.storage.preferences.SynchronizationSettings;
 
+/**
+ * Stores the changes that still need to be uploaded in journals, see {@link SyncJournal}.
+ * Queues from older versions, which were stored in the shared preferences, are moved to the journals.
+ */
 public class SynchronizationQueueStorage {
 
     private static final String NAME = "synchronization";
     private static final String QUEUED_EPISODE_ACTIONS = "sync_queued_episode_actions";
     private static final String QUEUED_FEEDS_REMOVED = "sync_removed";
     private static final String QUEUED_FEEDS_ADDED = "sync_added";
+    private static final String JOURNAL_DIRECTORY = "sync";
+    private static final String JOURNAL_EPISODE_ACTIONS = "episode_actions.journal";
+    private static final String JOURNAL_FEEDS = "feeds.journal";
+    private static final String ENTRY_FEED_ADDED = "add";
+    private static final String ENTRY_FEED_REMOVED = "remove";
+    private static final String ENTRY_ALL_FEEDS_ADDED = "added";
+    private static final String ENTRY_ALL_FEEDS_REMOVED = "removed";
+
+    private static File journalDirectory;
+    private static SyncJournal episodeActionJournal;
+    private static SyncJournal feedJournal;
+
     private final SharedPreferences sharedPreferences;
 
     public SynchronizationQueueStorage(Context context) {
         this.sharedPreferences = context.getSharedPreferences(NAME, Context.MODE_PRIVATE);
+        initJournals(new File(context.getFilesDir(), JOURNAL_DIRECTORY), sharedPreferences);
     }
 
-    public ArrayList<EpisodeAction> getQueuedEpisodeActions() {
-        ArrayList<EpisodeAction> actions = new ArrayList<>();
+    private static synchronized void initJournals(File directory, SharedPreferences sharedPreferences) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalStateException("Unable to create " + directory);
+        }
+        if (!directory.equals(journalDirectory)) {
+            journalDirectory = directory;
+            episodeActionJournal = new SyncJournal(new File(directory, JOURNAL_EPISODE_ACTIONS));
+            feedJournal = new SyncJournal(new File(directory, JOURNAL_FEEDS));
+        }
+        if (sharedPreferences.contains(QUEUED_EPISODE_ACTIONS) || sharedPreferences.contains(QUEUED_FEEDS_ADDED)
+                || sharedPreferences.contains(QUEUED_FEEDS_REMOVED)) {
+            moveQueuesToJournals(sharedPreferences);
+        }
+    }
+
+    /**
+     * Each preference is only removed after its entries were written, so that a failed move is retried
+     * the next time. The old entries go before the journal's, as they were queued earlier.
+     */
+    private static void moveQueuesToJournals(SharedPreferences sharedPreferences) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
         try {
-            String json = getSharedPreferences()
-                    .getString(QUEUED_EPISODE_ACTIONS, "[]");
-            JSONArray queue = new JSONArray(json);
-            for (int i = 0; i < queue.length(); i++) {
-                actions.add(EpisodeAction.readFromJsonObject(queue.getJSONObject(i)));
+            JSONArray actions = new JSONArray(sharedPreferences.getString(QUEUED_EPISODE_ACTIONS, "[]"));
+            List<JSONObject> entries = new ArrayList<>();
+            for (int i = 0; i < actions.length(); i++) {
+                entries.add(actions.getJSONObject(i));
             }
+            prependToJournal(episodeActionJournal, entries);
+            editor.remove(QUEUED_EPISODE_ACTIONS);
         } catch (JSONException e) {
             e.printStackTrace();
+            editor.remove(QUEUED_EPISODE_ACTIONS); // Damaged, trying again does not help
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return actions;
-    }
-
-    public ArrayList<String> getQueuedRemovedFeeds() {
-        ArrayList<String> removedFeedUrls = new ArrayList<>();
         try {
-            String json = getSharedPreferences()
-                    .getString(QUEUED_FEEDS_REMOVED, "[]");
-            JSONArray queue = new JSONArray(json);
-            for (int i = 0; i < queue.length(); i++) {
-                removedFeedUrls.add(queue.getString(i));
+            JSONArray added = new JSONArray(sharedPreferences.getString(QUEUED_FEEDS_ADDED, "[]"));
+            JSONArray removed = new JSONArray(sharedPreferences.getString(QUEUED_FEEDS_REMOVED, "[]"));
+            if (added.length() > 0 || removed.length() > 0) {
+                prependToJournal(feedJournal, Collections.singletonList(new JSONObject()
+                        .put(ENTRY_ALL_FEEDS_ADDED, added)
+                        .put(ENTRY_ALL_FEEDS_REMOVED, removed)));
             }
+            editor.remove(QUEUED_FEEDS_ADDED).remove(QUEUED_FEEDS_REMOVED);
         } catch (JSONException e) {
             e.printStackTrace();
+            editor.remove(QUEUED_FEEDS_ADDED).remove(QUEUED_FEEDS_REMOVED);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return removedFeedUrls;
+        editor.apply();
+    }
+
+    /**
+     * Writes the entries in one step, so that they are either all in the journal or none of them.
+     */
+    private static void prependToJournal(SyncJournal journal, List<JSONObject> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<JSONObject> allEntries = new ArrayList<>(entries);
+        allEntries.addAll(journal.read());
+        journal.rewrite(allEntries);
+    }
+
+    public ArrayList<EpisodeAction> getQueuedEpisodeActions() {
+        ArrayList<EpisodeAction> actions = new ArrayList<>();
+        for (JSONObject entry : episodeActionJournal.read()) {
+            EpisodeAction action = EpisodeAction.readFromJsonObject(entry);
+            if (action != null) {
+                actions.add(action);
+            }
+        }
+        return actions;
+    }
 
+    public ArrayList<String> getQueuedRemovedFeeds() {
+        ArrayList<String> removedFeedUrls = new ArrayList<>();
+        readFeedQueues(new ArrayList<>(), removedFeedUrls);
+        return removedFeedUrls;
     }
 
     public ArrayList<String> getQueuedAddedFeeds() {
         ArrayList<String> addedFeedUrls = new ArrayList<>();
+        readFeedQueues(addedFeedUrls, new ArrayList<>());
+        return addedFeedUrls;
+    }
+
+    /**
+     * Replays the feed journal. Adding a feed cancels a queued removal and the other way round.
+     */
+    private void readFeedQueues(List<String> addedFeedUrls, List<String> removedFeedUrls) {
         try {
-            String json = getSharedPreferences()
-                    .getString(QUEUED_FEEDS_ADDED, "[]");
-            JSONArray queue = new JSONArray(json);
-            for (int i = 0; i < queue.length(); i++) {
-                addedFeedUrls.add(queue.getString(i));
+            for (JSONObject entry : feedJournal.read()) {
+                if (entry.has(ENTRY_FEED_ADDED)) {
+                    String downloadUrl = entry.getString(ENTRY_FEED_ADDED);
+                    addedFeedUrls.add(downloadUrl);
+                    removedFeedUrls.remove(downloadUrl);
+                } else if (entry.has(ENTRY_FEED_REMOVED)) {
+                    String downloadUrl = entry.getString(ENTRY_FEED_REMOVED);
+                    removedFeedUrls.add(downloadUrl);
+                    addedFeedUrls.remove(downloadUrl);
+                } else {
+                    addedFeedUrls.clear();
+                    addedFeedUrls.addAll(toList(entry.getJSONArray(ENTRY_ALL_FEEDS_ADDED)));
+                    removedFeedUrls.clear();
+                    removedFeedUrls.addAll(toList(entry.getJSONArray(ENTRY_ALL_FEEDS_REMOVED)));
+                }
             }
         } catch (JSONException e) {
             e.printStackTrace();
         }
-        return addedFeedUrls;
     }
 
-    public void clearEpisodeActionQueue() {
-        getSharedPreferences().edit()
-                .putString(QUEUED_EPISODE_ACTIONS, "[]").apply();
+    private static List<String> toList(JSONArray array) throws JSONException {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getString(i));
+        }
+        return list;
+    }
 
+    public void clearEpisodeActionQueue() {
+        episodeActionJournal.clear();
     }
 
     public void clearFeedQueues() {
-        getSharedPreferences().edit()
-                .putString(QUEUED_FEEDS_ADDED, "[]")
-                .putString(QUEUED_FEEDS_REMOVED, "[]")
-                .apply();
+        feedJournal.clear();
     }
 
     protected void clearQueue() {
         SynchronizationSettings.resetTimestamps();
-        getSharedPreferences().edit()
-                .putString(QUEUED_EPISODE_ACTIONS, "[]")
-                .putString(QUEUED_FEEDS_ADDED, "[]")
-                .putString(QUEUED_FEEDS_REMOVED, "[]")
-                .apply();
-
+        episodeActionJournal.clear();
+        feedJournal.clear();
     }
 
     protected void enqueueFeedAdded(String downloadUrl) {
-        SharedPreferences sharedPreferences = getSharedPreferences();
-        try {
-            JSONArray addedQueue = new JSONArray(sharedPreferences.getString(QUEUED_FEEDS_ADDED, "[]"));
-            addedQueue.put(downloadUrl);
-            JSONArray removedQueue = new JSONArray(sharedPreferences.getString(QUEUED_FEEDS_REMOVED, "[]"));
-            removedQueue.remove(indexOf(downloadUrl, removedQueue));
-            sharedPreferences.edit()
-                    .putString(QUEUED_FEEDS_ADDED, addedQueue.toString())
-                    .putString(QUEUED_FEEDS_REMOVED, removedQueue.toString())
-                    .apply();
-
-        } catch (JSONException jsonException) {
-            jsonException.printStackTrace();
-        }
+        appendFeedEntry(ENTRY_FEED_ADDED, downloadUrl);
     }
 
     /** Remove feed entries that conflict with the given list of current local subscriptions.
@@ -117,60 +196,103 @@ public class SynchronizationQueueStorage {
      * and `enqueueFeedAdded` already take care of removing conflicting entries.
      * */
     protected void removeLegacyConflictingFeedEntries(Collection<String> currentLocalSubscriptions) {
-        List<String> removedQueue = this.getQueuedRemovedFeeds();
-        List<String> addedQueue = this.getQueuedAddedFeeds();
-        removedQueue.removeAll(currentLocalSubscriptions);
-        addedQueue.removeAll(removedQueue);
-        sharedPreferences.edit()
-                .putString(QUEUED_FEEDS_ADDED, addedQueue.toString())
-                .putString(QUEUED_FEEDS_REMOVED, removedQueue.toString())
-                .apply();
+        synchronized (feedJournal) {
+            List<String> removedQueue = this.getQueuedRemovedFeeds();
+            List<String> addedQueue = this.getQueuedAddedFeeds();
+            removedQueue.removeAll(currentLocalSubscriptions);
+            addedQueue.removeAll(removedQueue);
+            writeFeedQueues(addedQueue, removedQueue);
+        }
     }
 
     protected void enqueueFeedRemoved(String downloadUrl) {
-        SharedPreferences sharedPreferences = getSharedPreferences();
-        try {
-            JSONArray removedQueue = new JSONArray(sharedPreferences.getString(QUEUED_FEEDS_REMOVED, "[]"));
-            removedQueue.put(downloadUrl);
-            JSONArray addedQueue = new JSONArray(sharedPreferences.getString(QUEUED_FEEDS_ADDED, "[]"));
-            addedQueue.remove(indexOf(downloadUrl, addedQueue));
-            sharedPreferences.edit()
-                    .putString(QUEUED_FEEDS_ADDED, addedQueue.toString())
-                    .putString(QUEUED_FEEDS_REMOVED, removedQueue.toString())
-                    .apply();
-        } catch (JSONException jsonException) {
-            jsonException.printStackTrace();
+        appendFeedEntry(ENTRY_FEED_REMOVED, downloadUrl);
+    }
+
+    private void appendFeedEntry(String type, String downloadUrl) {
+        synchronized (feedJournal) {
+            try {
+                feedJournal.append(new JSONObject().put(type, downloadUrl));
+            } catch (JSONException | IOException e) {
+                e.printStackTrace();
+            }
+            if (feedJournal.needsCompaction()) {
+                writeFeedQueues(getQueuedAddedFeeds(), getQueuedRemovedFeeds());
+            }
         }
     }
 
-    private int indexOf(String string, JSONArray array) {
+    private void writeFeedQueues(List<String> addedFeedUrls, List<String> removedFeedUrls) {
+        List<JSONObject> entries = new ArrayList<>();
         try {
-            for (int i = 0; i < array.length(); i++) {
-                if (array.getString(i).equals(string)) {
-                    return i;
-                }
+            if (!addedFeedUrls.isEmpty() || !removedFeedUrls.isEmpty()) {
+                entries.add(new JSONObject()
+                        .put(ENTRY_ALL_FEEDS_ADDED, new JSONArray(addedFeedUrls))
+                        .put(ENTRY_ALL_FEEDS_REMOVED, new JSONArray(removedFeedUrls)));
             }
-        } catch (JSONException jsonException) {
-            jsonException.printStackTrace();
+            feedJournal.rewrite(entries);
+        } catch (JSONException | IOException e) {
+            e.printStackTrace();
         }
-        return -1;
     }
 
     protected void enqueueEpisodeAction(EpisodeAction action) {
-        SharedPreferences sharedPreferences = getSharedPreferences();
-        String json = sharedPreferences.getString(QUEUED_EPISODE_ACTIONS, "[]");
-        try {
-            JSONArray queue = new JSONArray(json);
-            queue.put(action.writeToJsonObject());
-            sharedPreferences.edit().putString(
-                    QUEUED_EPISODE_ACTIONS, queue.toString()
-            ).apply();
-        } catch (JSONException jsonException) {
-            jsonException.printStackTrace();
+        JSONObject json = action.writeToJsonObject();
+        if (json == null) {
+            return;
+        }
+        synchronized (episodeActionJournal) {
+            try {
+                episodeActionJournal.append(json);
+                if (episodeActionJournal.needsCompaction()) {
+                    List<JSONObject> entries = new ArrayList<>();
+                    for (EpisodeAction queuedAction : compact(getQueuedEpisodeActions())) {
+                        entries.add(queuedAction.writeToJsonObject());
+                    }
+                    episodeActionJournal.rewrite(entries);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
-    private SharedPreferences getSharedPreferences() {
-        return sharedPreferences;
+    /**
+     * Drops play actions that are followed by a more recent play action of the same episode.
+     * Only the position of the most recent one matters for the server and for resolving conflicts,
+     * see {@link EpisodeActionFilter}. Other actions are kept.
+     */
+    @NonNull
+    static List<EpisodeAction> compact(List<EpisodeAction> actions) {
+        Map<Pair<String, String>, EpisodeAction> mostRecentPlayActions = new HashMap<>();
+        for (EpisodeAction action : actions) {
+            if (action.getAction() != EpisodeAction.PLAY) {
+                continue;
+            }
+            Pair<String, String> key = new Pair<>(action.getPodcast(), action.getEpisode());
+            EpisodeAction mostRecent = mostRecentPlayActions.get(key);
+            if (mostRecent == null || !isBefore(action, mostRecent)) {
+                mostRecentPlayActions.put(key, action);
+            }
+        }
+        List<EpisodeAction> result = new ArrayList<>();
+        for (EpisodeAction action : actions) {
+            Pair<String, String> key = new Pair<>(action.getPodcast(), action.getEpisode());
+            if (action.getAction() != EpisodeAction.PLAY || mostRecentPlayActions.get(key) == action) {
+                result.add(action);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Actions without a timestamp are older than all others. Of two actions with the same timestamp,
+     * the one that was queued later wins.
+     */
+    private static boolean isBefore(EpisodeAction action, EpisodeAction other) {
+        if (action.getTimestamp() == null) {
+            return other.getTimestamp() != null;
+        }
+        return other.getTimestamp() != null && action.getTimestamp().before(other.getTimestamp());
     }
 }
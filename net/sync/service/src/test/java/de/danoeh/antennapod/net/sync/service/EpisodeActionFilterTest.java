@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import de.danoeh.antennapod.net.sync.serviceinterface.EpisodeAction;
 
@@ -209,4 +210,34 @@ public class EpisodeActionFilterTest extends TestCase {
                 .getRemoteActionsOverridingLocalActions(remoteActions, episodeActions);
         assertSame(1, uniqueList.size());
     }
+
+    public void testLargeHistoryKeepsOnlyRemoteActionsAfterLocalActions() {
+        final int numActions = 2000;
+        final int numEpisodes = 200;
+        Random random = new Random(1);
+        List<EpisodeAction> remoteActions = new ArrayList<>();
+        for (int i = 0; i < numActions; i++) {
+            remoteActions.add(new EpisodeAction
+                    .Builder("podcast." + (i % 5), "episode." + random.nextInt(numEpisodes), EpisodeAction.Action.PLAY)
+                    .timestamp(new Date(1000L * i))
+                    .position(10)
+                    .build());
+        }
+        List<EpisodeAction> localActions = new ArrayList<>();
+        for (int i = 0; i < numActions / 10; i++) {
+            localActions.add(new EpisodeAction
+                    .Builder("podcast." + (i % 5), "episode." + random.nextInt(numEpisodes), EpisodeAction.Action.PLAY)
+                    .timestamp(new Date(1000L * random.nextInt(numActions)))
+                    .position(20)
+                    .build());
+        }
+
+        Map<Pair<String, String>, EpisodeAction> result = episodeActionFilter
+                .getRemoteActionsOverridingLocalActions(remoteActions, localActions);
+        assertFalse(result.isEmpty());
+        for (EpisodeAction localAction : localActions) {
+            EpisodeAction remoteAction = result.get(new Pair<>(localAction.getPodcast(), localAction.getEpisode()));
+            assertTrue(remoteAction == null || !remoteAction.getTimestamp().before(localAction.getTimestamp()));
+        }
+    }
 }
@@ -0,0 +1,164 @@
+package de.danoeh.antennapod.net.sync.service;
+
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.net.sync.serviceinterface.EpisodeAction;
+import de.danoeh.antennapod.net.sync.serviceinterface.EpisodeActionChanges;
+import de.danoeh.antennapod.net.sync.serviceinterface.ISyncService;
+import de.danoeh.antennapod.net.sync.serviceinterface.SubscriptionChanges;
+import de.danoeh.antennapod.net.sync.serviceinterface.SyncServiceException;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.net.sync.serviceinterface.UploadChangesResponse;
+import de.danoeh.antennapod.storage.database.FeedDatabaseWriter;
+import de.danoeh.antennapod.storage.database.PodDBAdapter;
+import de.danoeh.antennapod.storage.preferences.SynchronizationSettings;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class PlayedEpisodesUploaderTest {
+    private static final int PAGE_SIZE = 100;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        SynchronizationSettings.init(context);
+        SynchronizationSettings.resetTimestamps();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        PodDBAdapter.tearDownTests();
+    }
+
+    @Test
+    public void testInterruptedUploadContinues() throws SyncServiceException {
+        final int numPlayed = 1000;
+        insertFeed(numPlayed, 50);
+        StubServer server = new StubServer();
+        server.failAfterRequests = 4;
+        try {
+            new PlayedEpisodesUploader(server, PAGE_SIZE).upload();
+            fail("Upload should have been interrupted");
+        } catch (SyncServiceException e) {
+            assertNotEquals(0, SynchronizationSettings.getLastUploadedPlayedEpisode());
+        }
+
+        server.failAfterRequests = Integer.MAX_VALUE;
+        long timestamp = new PlayedEpisodesUploader(server, PAGE_SIZE).upload();
+        assertEquals(server.numRequests, timestamp);
+        assertEquals(numPlayed, server.episodes.size());
+        // No page was uploaded twice and no request was larger than a page
+        assertEquals(numPlayed, server.numActionsReceived);
+        assertTrue(server.maxActionsPerRequest <= PAGE_SIZE);
+
+        SynchronizationSettings.setLastEpisodeActionSynchronizationAttemptTimestamp(timestamp);
+        assertEquals(0, SynchronizationSettings.getLastUploadedPlayedEpisode());
+    }
+
+    @Test
+    public void testUploadStartsOverIfLastEpisodeWasDeleted() throws SyncServiceException {
+        insertFeed(10, 0);
+        SynchronizationSettings.setLastUploadedPlayedEpisode(12345);
+        StubServer server = new StubServer();
+        new PlayedEpisodesUploader(server, 3).upload();
+        assertEquals(10, server.episodes.size());
+        assertEquals(4, server.numRequests);
+    }
+
+    @Test
+    public void testNothingToUpload() throws SyncServiceException {
+        insertFeed(0, 5);
+        StubServer server = new StubServer();
+        assertEquals(0, new PlayedEpisodesUploader(server, PAGE_SIZE).upload());
+        assertEquals(0, server.numRequests);
+    }
+
+    private void insertFeed(int numPlayed, int numUnplayed) {
+        Feed feed = new Feed("https://example.com/feed", null, "Feed");
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < numPlayed + numUnplayed; i++) {
+            int state = i < numPlayed ? FeedItem.PLAYED : FeedItem.UNPLAYED;
+            // Several episodes share a date, so paging has to keep them apart by ID
+            FeedItem item = new FeedItem(0, "Item " + i, "item" + i, "link", new Date(i / 3), state, feed);
+            item.setMedia(new FeedMedia(item, "https://example.com/" + i + ".mp3", 1000, "audio/mpeg"));
+            item.getMedia().setDuration(300_000);
+            feed.getItems().add(item);
+        }
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+    }
+
+    /**
+     * Keeps the most recent action per episode, like a gpodder server does.
+     */
+    private static class StubServer implements ISyncService {
+        final Map<String, EpisodeAction> episodes = new HashMap<>();
+        int failAfterRequests = Integer.MAX_VALUE;
+        int numRequests = 0;
+        int numActionsReceived = 0;
+        int maxActionsPerRequest = 0;
+
+        @Override
+        public UploadChangesResponse uploadEpisodeActions(List<EpisodeAction> actions) throws SyncServiceException {
+            if (numRequests >= failAfterRequests) {
+                throw new SyncServiceException("Connection lost");
+            }
+            numRequests++;
+            numActionsReceived += actions.size();
+            maxActionsPerRequest = Math.max(maxActionsPerRequest, actions.size());
+            for (EpisodeAction action : actions) {
+                episodes.put(action.getPodcast() + " " + action.getEpisode(), action);
+            }
+            return new UploadChangesResponse(numRequests) { };
+        }
+
+        @Override
+        public void login() {
+        }
+
+        @Override
+        public SubscriptionChanges getSubscriptionChanges(long lastSync) {
+            return new SubscriptionChanges(Collections.emptyList(), Collections.emptyList(), numRequests);
+        }
+
+        @Override
+        public UploadChangesResponse uploadSubscriptionChanges(List<String> addedFeeds, List<String> removedFeeds) {
+            return new UploadChangesResponse(numRequests) { };
+        }
+
+        @Override
+        public EpisodeActionChanges getEpisodeActionChanges(long lastSync) {
+            return new EpisodeActionChanges(new ArrayList<>(episodes.values()), numRequests);
+        }
+
+        @Override
+        public void logout() {
+        }
+    }
+}
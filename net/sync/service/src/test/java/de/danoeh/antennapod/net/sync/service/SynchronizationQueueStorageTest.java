@@ -0,0 +1,154 @@
+package de.danoeh.antennapod.net.sync.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import de.danoeh.antennapod.net.sync.serviceinterface.EpisodeAction;
+import org.json.JSONArray;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SynchronizationQueueStorageTest {
+    private Context context;
+    private SynchronizationQueueStorage storage;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        storage = new SynchronizationQueueStorage(context);
+    }
+
+    @Test
+    public void testFeedQueues() {
+        storage.enqueueFeedAdded("a");
+        storage.enqueueFeedAdded("b");
+        storage.enqueueFeedRemoved("a");
+        storage.enqueueFeedRemoved("c");
+        assertEquals(Collections.singletonList("b"), storage.getQueuedAddedFeeds());
+        assertEquals(Arrays.asList("a", "c"), storage.getQueuedRemovedFeeds());
+
+        storage.removeLegacyConflictingFeedEntries(Collections.singletonList("c"));
+        storage.enqueueFeedAdded("d");
+        assertEquals(Arrays.asList("b", "d"), storage.getQueuedAddedFeeds());
+        assertEquals(Collections.singletonList("a"), storage.getQueuedRemovedFeeds());
+
+        storage.clearFeedQueues();
+        assertTrue(storage.getQueuedAddedFeeds().isEmpty());
+        assertTrue(storage.getQueuedRemovedFeeds().isEmpty());
+    }
+
+    @Test
+    public void testDamagedEntryIsSkipped() throws IOException {
+        storage.enqueueEpisodeAction(play("episode1", 10, new Date(1000)));
+        // Like a crash in the middle of writing an entry
+        File journal = new File(new File(context.getFilesDir(), "sync"), "episode_actions.journal");
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write("{\"podcast\":\"pod".getBytes(StandardCharsets.UTF_8));
+        }
+        storage = new SynchronizationQueueStorage(context);
+        assertEquals(1, storage.getQueuedEpisodeActions().size());
+
+        storage.enqueueEpisodeAction(play("episode2", 20, new Date(2000)));
+        List<EpisodeAction> actions = storage.getQueuedEpisodeActions();
+        assertEquals(2, actions.size());
+        assertEquals("episode2", actions.get(1).getEpisode());
+
+        storage.clearEpisodeActionQueue();
+        assertTrue(storage.getQueuedEpisodeActions().isEmpty());
+    }
+
+    @Test
+    public void testQueuesAreMovedFromSharedPreferences() {
+        SharedPreferences preferences = context.getSharedPreferences("synchronization", Context.MODE_PRIVATE);
+        preferences.edit()
+                .putString("sync_queued_episode_actions",
+                        new JSONArray().put(play("episode", 30, new Date(1000)).writeToJsonObject()).toString())
+                .putString("sync_added", new JSONArray().put("a").toString())
+                .putString("sync_removed", new JSONArray().put("b").toString())
+                .apply();
+        storage = new SynchronizationQueueStorage(context);
+
+        assertEquals(30, storage.getQueuedEpisodeActions().get(0).getPosition());
+        assertEquals(Collections.singletonList("a"), storage.getQueuedAddedFeeds());
+        assertEquals(Collections.singletonList("b"), storage.getQueuedRemovedFeeds());
+        assertTrue(preferences.getAll().isEmpty());
+    }
+
+    @Test
+    public void testFailedMoveFromSharedPreferencesIsRetried() {
+        SharedPreferences preferences = context.getSharedPreferences("synchronization", Context.MODE_PRIVATE);
+        preferences.edit()
+                .putString("sync_queued_episode_actions",
+                        new JSONArray().put(play("episode", 30, new Date(1000)).writeToJsonObject()).toString())
+                .putString("sync_added", new JSONArray().put("a").toString())
+                .apply();
+        // Writing the feed journal fails, because its temporary file can not be created
+        File blocker = new File(new File(context.getFilesDir(), "sync"), "feeds.journal.tmp");
+        assertTrue(blocker.mkdirs());
+        storage = new SynchronizationQueueStorage(context);
+
+        assertEquals(1, storage.getQueuedEpisodeActions().size());
+        assertTrue(storage.getQueuedAddedFeeds().isEmpty());
+        assertFalse(preferences.contains("sync_queued_episode_actions"));
+        assertTrue(preferences.contains("sync_added"));
+
+        assertTrue(blocker.delete());
+        storage = new SynchronizationQueueStorage(context);
+        assertEquals(1, storage.getQueuedEpisodeActions().size()); // Not moved twice
+        assertEquals(Collections.singletonList("a"), storage.getQueuedAddedFeeds());
+        assertTrue(preferences.getAll().isEmpty());
+    }
+
+    @Test
+    public void testCompactKeepsMostRecentPlayAction() {
+        EpisodeAction download = new EpisodeAction.Builder("podcast", "episode1", EpisodeAction.DOWNLOAD)
+                .timestamp(new Date(1000)).build();
+        EpisodeAction recent = play("episode1", 20, new Date(3000));
+        EpisodeAction older = play("episode1", 10, new Date(2000));
+        EpisodeAction other = play("episode2", 10, new Date(1000));
+        EpisodeAction sameTime = play("episode2", 15, new Date(1000));
+        List<EpisodeAction> compacted = SynchronizationQueueStorage.compact(
+                Arrays.asList(download, recent, other, older, sameTime));
+        assertEquals(Arrays.asList(download, recent, sameTime), compacted);
+    }
+
+    @Test
+    public void testManyQueuedActionsAreCompacted() {
+        final int numActions = 1000;
+        final int numEpisodes = 50;
+        for (int i = 0; i < numActions; i++) {
+            storage.enqueueEpisodeAction(play("episode" + (i % numEpisodes), i, new Date(1000L * i)));
+        }
+
+        List<EpisodeAction> compacted = SynchronizationQueueStorage.compact(storage.getQueuedEpisodeActions());
+        assertEquals(numEpisodes, compacted.size());
+        assertEquals(numActions - 1, compacted.get(compacted.size() - 1).getPosition());
+        storage = new SynchronizationQueueStorage(context);
+        assertEquals(compacted, SynchronizationQueueStorage.compact(storage.getQueuedEpisodeActions()));
+    }
+
+    private static EpisodeAction play(String episode, int position, Date timestamp) {
+        return new EpisodeAction.Builder("podcast", episode, EpisodeAction.PLAY)
+                .timestamp(timestamp)
+                .started(0)
+                .position(position)
+                .total(10_000)
+                .build();
+    }
+}
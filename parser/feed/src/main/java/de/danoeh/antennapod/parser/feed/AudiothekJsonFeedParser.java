@@ -1,15 +1,14 @@
 package de.danoeh.antennapod.parser.feed;
 
 import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -20,6 +19,10 @@ import de.danoeh.antennapod.model.feed.FeedMedia;
 import de.danoeh.antennapod.parser.feed.util.DateUtils;
 import de.danoeh.antennapod.parser.feed.util.MimeTypeUtils;
 
+/**
+ * Parses program sets and editorial collections of the ARD Audiothek GraphQL API.
+ * The file is read as a token stream, so only one episode is held in memory as JSON at a time.
+ */
 class AudiothekJsonFeedParser {
 
     private static final int IMAGE_WIDTH = 300;
@@ -27,119 +30,296 @@ class AudiothekJsonFeedParser {
     private AudiothekJsonFeedParser() {
     }
 
-    static FeedHandlerResult parse(Feed feed) throws IOException, JSONException, UnsupportedFeedtypeException {
-        File file = new File(feed.getLocalFileUrl());
-        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
-        JSONObject root = new JSONObject(json);
+    static FeedHandlerResult parse(Feed feed, InputStream in) throws IOException, UnsupportedFeedtypeException {
+        FeedRoot programSet = null;
+        FeedRoot editorialCollection = null;
+        boolean hasData = false;
 
-        JSONObject data = root.optJSONObject("data");
-        if (data == null) {
-            throw new UnsupportedFeedtypeException("json", "Missing data");
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"data".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                hasData = true;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("programSet".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        programSet = readFeedRoot(reader, feed);
+                    } else if ("editorialCollection".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        editorialCollection = readFeedRoot(reader, feed);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            // Thrown by JsonReader when a token has an unexpected type
+            throw new IOException(e);
         }
 
-        JSONObject programSet = data.optJSONObject("programSet");
-        JSONObject editorialCollection = data.optJSONObject("editorialCollection");
+        if (!hasData) {
+            throw new UnsupportedFeedtypeException("json", "Missing data");
+        }
         if (programSet == null && editorialCollection == null) {
             throw new UnsupportedFeedtypeException("json", "Missing data.programSet");
         }
 
         feed.setType(Feed.TYPE_RSS2);
 
-        JSONObject feedRoot = programSet != null ? programSet : editorialCollection;
-        feed.setTitle(feedRoot.optString("title", feed.getTitle()));
-        feed.setDescription(feedRoot.optString("synopsis", null));
-        feed.setLink(feedRoot.optString("sharingUrl", null));
+        FeedRoot feedRoot = programSet != null ? programSet : editorialCollection;
+        if (feedRoot.title != null) {
+            feed.setTitle(feedRoot.title);
+        }
+        feed.setDescription(feedRoot.synopsis);
+        feed.setLink(feedRoot.sharingUrl);
+        if (feedRoot.imageUrl != null) {
+            feed.setImageUrl(feedRoot.imageUrl);
+        }
 
-        JSONObject image = feedRoot.optJSONObject("image");
-        if (image != null) {
-            String imageUrl = image.optString("url1X1", null);
-            if (imageUrl == null) {
-                imageUrl = image.optString("url", null);
-            }
-            if (imageUrl != null) {
-                feed.setImageUrl(imageUrl.replace("{width}", String.valueOf(IMAGE_WIDTH)));
+        feed.setItems(feedRoot.items);
+        return new FeedHandlerResult(feed, Collections.emptyMap(), null);
+    }
+
+    private static FeedRoot readFeedRoot(JsonReader reader, Feed feed) throws IOException {
+        FeedRoot feedRoot = new FeedRoot();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    feedRoot.title = readOptString(reader);
+                    break;
+                case "synopsis":
+                    feedRoot.synopsis = readOptString(reader);
+                    break;
+                case "sharingUrl":
+                    feedRoot.sharingUrl = readOptString(reader);
+                    break;
+                case "image":
+                    feedRoot.imageUrl = readImageUrl(reader);
+                    break;
+                case "items":
+                    readItems(reader, feed, feedRoot.items);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
         }
+        reader.endObject();
+        return feedRoot;
+    }
 
-        JSONArray nodes = null;
-        if (programSet != null) {
-            JSONObject itemsObj = programSet.optJSONObject("items");
-            nodes = itemsObj != null ? itemsObj.optJSONArray("nodes") : null;
-        } else {
-            JSONObject itemsObj = editorialCollection.optJSONObject("items");
-            nodes = itemsObj != null ? itemsObj.optJSONArray("nodes") : null;
+    private static void readItems(JsonReader reader, Feed feed, List<FeedItem> items) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
         }
-
-        List<FeedItem> items = new ArrayList<>();
-        if (nodes != null) {
-            for (int i = 0; i < nodes.length(); i++) {
-                JSONObject node = nodes.optJSONObject(i);
-                if (node == null) {
-                    continue;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"nodes".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            items.clear();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    items.add(readItem(reader, feed));
+                } else {
+                    reader.skipValue();
                 }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
 
-                FeedItem item = new FeedItem();
-                item.setFeed(feed);
+    private static FeedItem readItem(JsonReader reader, Feed feed) throws IOException {
+        String title = null;
+        String synopsis = null;
+        String sharingUrl = null;
+        String publicationDate = null;
+        String publicationId = null;
+        String assetId = null;
+        String id = null;
+        String imageUrl = null;
+        String audioUrl = null;
+        int durationSeconds = 0;
 
-                item.setTitle(node.optString("title", null));
-                item.setDescriptionIfLonger(node.optString("synopsis", null));
-                item.setLink(node.optString("sharingUrl", null));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    title = readOptString(reader);
+                    break;
+                case "synopsis":
+                    synopsis = readOptString(reader);
+                    break;
+                case "sharingUrl":
+                    sharingUrl = readOptString(reader);
+                    break;
+                case "publicationStartDateAndTime":
+                    publicationDate = readOptString(reader);
+                    break;
+                case "publicationId":
+                    publicationId = readOptString(reader);
+                    break;
+                case "assetId":
+                    assetId = readOptString(reader);
+                    break;
+                case "id":
+                    id = readOptString(reader);
+                    break;
+                case "image":
+                    imageUrl = readImageUrl(reader);
+                    break;
+                case "audios":
+                    audioUrl = readAudioUrl(reader);
+                    break;
+                case "duration":
+                    durationSeconds = readOptInt(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
 
-                String publicationDate = node.optString("publicationStartDateAndTime", null);
-                if (!TextUtils.isEmpty(publicationDate)) {
-                    item.setPubDate(DateUtils.parseOrNullIfFuture(publicationDate));
-                }
+        FeedItem item = new FeedItem();
+        item.setFeed(feed);
 
-                String identifier = node.optString("publicationId", null);
-                if (TextUtils.isEmpty(identifier)) {
-                    identifier = node.optString("assetId", null);
-                }
-                if (TextUtils.isEmpty(identifier)) {
-                    identifier = node.optString("id", null);
-                }
-                if (!TextUtils.isEmpty(identifier)) {
-                    item.setItemIdentifier(identifier);
-                }
+        item.setTitle(title);
+        item.setDescriptionIfLonger(synopsis);
+        item.setLink(sharingUrl);
 
-                JSONObject itemImage = node.optJSONObject("image");
-                if (itemImage != null) {
-                    String itemImageUrl = itemImage.optString("url1X1", null);
-                    if (itemImageUrl == null) {
-                        itemImageUrl = itemImage.optString("url", null);
-                    }
-                    if (itemImageUrl != null) {
-                        item.setImageUrl(itemImageUrl.replace("{width}", String.valueOf(IMAGE_WIDTH)));
-                    }
-                }
+        if (!TextUtils.isEmpty(publicationDate)) {
+            item.setPubDate(DateUtils.parseOrNullIfFuture(publicationDate));
+        }
 
-                FeedMedia media = createMedia(item, node);
-                if (media != null) {
-                    item.setMedia(media);
-                }
+        String identifier = publicationId;
+        if (TextUtils.isEmpty(identifier)) {
+            identifier = assetId;
+        }
+        if (TextUtils.isEmpty(identifier)) {
+            identifier = id;
+        }
+        if (!TextUtils.isEmpty(identifier)) {
+            item.setItemIdentifier(identifier);
+        }
 
-                items.add(item);
-            }
+        if (imageUrl != null) {
+            item.setImageUrl(imageUrl);
         }
 
-        feed.setItems(items);
-        return new FeedHandlerResult(feed, Collections.emptyMap(), null);
+        FeedMedia media = createMedia(item, audioUrl, durationSeconds);
+        if (media != null) {
+            item.setMedia(media);
+        }
+        return item;
     }
 
-    private static FeedMedia createMedia(FeedItem item, JSONObject node) {
-        JSONArray audios = node.optJSONArray("audios");
-        if (audios == null || audios.length() == 0) {
+    /**
+     * Reads an image object and returns its square url (or the plain url), sized for display.
+     */
+    private static String readImageUrl(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
             return null;
         }
+        String url1X1 = null;
+        String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("url1X1".equals(name)) {
+                url1X1 = readOptString(reader);
+            } else if ("url".equals(name)) {
+                url = readOptString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        String imageUrl = url1X1 != null ? url1X1 : url;
+        return imageUrl != null ? imageUrl.replace("{width}", String.valueOf(IMAGE_WIDTH)) : null;
+    }
 
-        JSONObject audio = audios.optJSONObject(0);
-        if (audio == null) {
+    /**
+     * Reads the audios array and returns the url of the first entry.
+     */
+    private static String readAudioUrl(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
             return null;
         }
+        String result = null;
+        boolean first = true;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                first = false;
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            String downloadUrl = null;
+            String url = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("downloadUrl".equals(name)) {
+                    downloadUrl = readOptString(reader);
+                } else if ("url".equals(name)) {
+                    url = readOptString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            result = TextUtils.isEmpty(downloadUrl) ? url : downloadUrl;
+        }
+        reader.endArray();
+        return result;
+    }
 
-        String url = audio.optString("downloadUrl", null);
-        if (TextUtils.isEmpty(url)) {
-            url = audio.optString("url", null);
+    /**
+     * Reads a scalar value as string. Returns null for null values, objects and arrays.
+     */
+    private static String readOptString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    private static int readOptInt(JsonReader reader) throws IOException {
+        String value = readOptString(reader);
+        if (value == null) {
+            return 0;
         }
+        try {
+            return new BigDecimal(value.trim()).intValue();
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static FeedMedia createMedia(FeedItem item, String url, int durationSeconds) {
         if (TextUtils.isEmpty(url)) {
             return null;
         }
@@ -151,7 +331,6 @@ class AudiothekJsonFeedParser {
 
         FeedMedia media = new FeedMedia(item, url, 0, mimeType);
 
-        int durationSeconds = node.optInt("duration", 0);
         if (durationSeconds > 0) {
             long durationMs = durationSeconds * 1000L;
             if (durationMs <= Integer.MAX_VALUE) {
@@ -161,4 +340,12 @@ class AudiothekJsonFeedParser {
 
         return media;
     }
+
+    private static class FeedRoot {
+        String title;
+        String synopsis;
+        String sharingUrl;
+        String imageUrl;
+        final List<FeedItem> items = new ArrayList<>();
+    }
 }
@@ -1,15 +1,16 @@
 package de.danoeh.antennapod.parser.feed;
 
+import de.danoeh.antennapod.parser.feed.util.DateUtils;
 import de.danoeh.antennapod.parser.feed.util.TypeGetter;
 import org.apache.commons.io.input.XmlStreamReader;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -18,42 +19,60 @@ import javax.xml.parsers.SAXParserFactory;
 import de.danoeh.antennapod.model.feed.Feed;
 
 public class FeedHandler {
+    /**
+     * Number of bytes that can be re-read after determining the feed type.
+     * The root element of XML feeds is expected to be within this range.
+     */
+    private static final int SNIFF_BUFFER_SIZE = 64 * 1024;
+
     public FeedHandlerResult parseFeed(Feed feed) throws SAXException, IOException,
             ParserConfigurationException, UnsupportedFeedtypeException {
-        File file = new File(feed.getLocalFileUrl());
-        if (isJsonFile(file)) {
-            try {
-                return AudiothekJsonFeedParser.parse(feed);
-            } catch (org.json.JSONException e) {
-                throw new IOException(e);
-            }
+        try (InputStream in = new FileInputStream(feed.getLocalFileUrl())) {
+            return parseFeed(feed, in);
+        }
+    }
+
+    /**
+     * Parses the feed from the given stream, reading it only once. The type (JSON, RSS or Atom) and the
+     * encoding are determined from the beginning of the stream, which is then replayed to the actual parser.
+     */
+    FeedHandlerResult parseFeed(Feed feed, InputStream stream) throws SAXException, IOException,
+            ParserConfigurationException, UnsupportedFeedtypeException {
+        DateUtils.resetPatternHint();
+        BufferedInputStream in = new BufferedInputStream(stream, SNIFF_BUFFER_SIZE);
+        in.mark(SNIFF_BUFFER_SIZE);
+        boolean isJson = startsWithJsonObject(in);
+        in.reset();
+        if (isJson) {
+            return AudiothekJsonFeedParser.parse(feed, in);
         }
 
         TypeGetter tg = new TypeGetter();
-        TypeGetter.Type type = tg.getType(feed);
-        SyndHandler handler = new SyndHandler(feed, type);
+        in.mark(SNIFF_BUFFER_SIZE);
+        TypeGetter.Type type = tg.getType(feed, new XmlStreamReader(in));
+        InputStream parserInput = in;
+        try {
+            in.reset();
+        } catch (IOException e) {
+            // Root element was further in than the buffer, read the file again
+            parserInput = new FileInputStream(feed.getLocalFileUrl());
+        }
 
+        SyndHandler handler = new SyndHandler(feed, type);
         SAXParserFactory factory = SAXParserFactory.newInstance();
         factory.setNamespaceAware(true);
         SAXParser saxParser = factory.newSAXParser();
-        Reader inputStreamReader = new XmlStreamReader(file);
-        InputSource inputSource = new InputSource(inputStreamReader);
-
-        saxParser.parse(inputSource, handler);
-        inputStreamReader.close();
+        try (Reader inputStreamReader = new XmlStreamReader(parserInput)) {
+            saxParser.parse(new InputSource(inputStreamReader), handler);
+        }
         return new FeedHandlerResult(handler.state.feed, handler.state.alternateUrls, handler.state.redirectUrl);
     }
 
-    private static boolean isJsonFile(File file) {
-        try {
-            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
-            int i = 0;
-            while (i < content.length() && Character.isWhitespace(content.charAt(i))) {
-                i++;
-            }
-            return i < content.length() && content.charAt(i) == '{';
-        } catch (Exception e) {
-            return false;
+    private static boolean startsWithJsonObject(InputStream in) throws IOException {
+        int c = in.read();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            c = in.read();
         }
+        return c == '{';
     }
 }
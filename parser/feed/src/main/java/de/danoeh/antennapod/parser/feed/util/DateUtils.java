@@ -9,6 +9,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.regex.Pattern;
 
 /**
  * Parses several date formats.
@@ -24,26 +25,104 @@ public abstract class DateUtils {
         }
     };
 
+    private static final String[] PATTERNS = {
+            "dd MMM yy HH:mm:ss Z",
+            "dd MMM yy HH:mm Z",
+            "EEE, dd MMM yyyy HH:mm:ss Z",
+            "EEE, dd MMM yyyy HH:mm:ss",
+            "EEE, dd MMMM yyyy HH:mm:ss Z",
+            "EEE, dd MMMM yyyy HH:mm:ss",
+            "EEEE, dd MMM yyyy HH:mm:ss Z",
+            "EEEE, dd MMM yy HH:mm:ss Z",
+            "EEEE, dd MMM yyyy HH:mm:ss",
+            "EEEE, dd MMM yy HH:mm:ss",
+            "EEE MMM d HH:mm:ss yyyy",
+            "EEE, dd MMM yyyy HH:mm Z",
+            "EEE, dd MMM yyyy HH:mm",
+            "EEE, dd MMMM yyyy HH:mm Z",
+            "EEE, dd MMMM yyyy HH:mm",
+            "EEEE, dd MMM yyyy HH:mm Z",
+            "EEEE, dd MMM yy HH:mm Z",
+            "EEEE, dd MMM yyyy HH:mm",
+            "EEEE, dd MMM yy HH:mm",
+            "EEE MMM d HH:mm yyyy",
+            "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm:ss.SSS Z",
+            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'",
+            "yyyy-MM-dd'T'HH:mm:ss.SSS",
+            "yyyy-MM-dd'T'HH:mm:ssZ",
+            "yyyy-MM-dd'T'HH:mm:ss'Z'",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
+            "yyyy-MM-ddZ",
+            "yyyy-MM-dd",
+            "EEE d MMM yyyy HH:mm:ss 'GMT'Z (z)"
+    };
+    private static final Pattern MULTIPLE_SPACES = Pattern.compile("( ){2,}+");
+    private static final Pattern TIME_ZONE_COLON = Pattern.compile("([+-]\\d\\d):(\\d\\d)$");
+    private static final Pattern CEST = Pattern.compile("CEST$");
+    private static final Pattern CET = Pattern.compile("CET$");
+    private static final Pattern SEPT = Pattern.compile("\\bSept\\b");
+    private static final Pattern WEEKDAY_PREFIX = Pattern.compile("^\\w+, .*$");
+
+    /**
+     * Compiled formats of {@link #PATTERNS}, created on first use.
+     */
+    private static final ThreadLocal<SimpleDateFormat[]> PATTERN_FORMATS = new ThreadLocal<>() {
+        @Override
+        protected SimpleDateFormat[] initialValue() {
+            return new SimpleDateFormat[PATTERNS.length];
+        }
+    };
+
+    /**
+     * Index of the pattern that matched last. Dates within a feed are usually formatted the same way,
+     * so this pattern is tried first.
+     */
+    private static final ThreadLocal<int[]> LAST_PATTERN = new ThreadLocal<>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] {-1};
+        }
+    };
+
     public static Date parse(final String input) {
         if (input == null) {
             throw new IllegalArgumentException("Date must not be null");
         }
+        Date result = FastDateParser.parse(input);
+        if (result != null) {
+            return result;
+        }
+        return parseWithPatterns(input);
+    }
+
+    /**
+     * Forgets which pattern matched last. Called before parsing a new feed.
+     */
+    public static void resetPatternHint() {
+        LAST_PATTERN.get()[0] = -1;
+    }
+
+    /**
+     * Parses the date without the fast path for common formats.
+     */
+    static Date parseWithPatterns(final String input) {
         try {
             return RFC822_DATE_FORMAT.get().parse(input);
         } catch (ParseException ignored) {
             // Feed not following the specification? Now start all our expensive workarounds.
         }
-        String date = input.trim().replace('/', '-').replaceAll("( ){2,}+", " ");
+        String date = MULTIPLE_SPACES.matcher(input.trim().replace('/', '-')).replaceAll(" ");
 
         // remove colon from timezone to avoid differences between Android and Java SimpleDateFormat
-        date = date.replaceAll("([+-]\\d\\d):(\\d\\d)$", "$1$2");
+        date = TIME_ZONE_COLON.matcher(date).replaceAll("$1$2");
 
         // CEST is widely used but not in the "ISO 8601 Time zone" list. Let's hack around.
-        date = date.replaceAll("CEST$", "+0200");
-        date = date.replaceAll("CET$", "+0100");
+        date = CEST.matcher(date).replaceAll("+0200");
+        date = CET.matcher(date).replaceAll("+0100");
 
         // some generators use "Sept" for September
-        date = date.replaceAll("\\bSept\\b", "Sep");
+        date = SEPT.matcher(date).replaceAll("Sep");
 
         // if datetime is more precise than seconds, make sure the value is in ms
         if (date.contains(".")) {
@@ -69,59 +148,28 @@ public abstract class DateUtils {
                 }
             }
         }
-        final String[] patterns = {
-                "dd MMM yy HH:mm:ss Z",
-                "dd MMM yy HH:mm Z",
-                "EEE, dd MMM yyyy HH:mm:ss Z",
-                "EEE, dd MMM yyyy HH:mm:ss",
-                "EEE, dd MMMM yyyy HH:mm:ss Z",
-                "EEE, dd MMMM yyyy HH:mm:ss",
-                "EEEE, dd MMM yyyy HH:mm:ss Z",
-                "EEEE, dd MMM yy HH:mm:ss Z",
-                "EEEE, dd MMM yyyy HH:mm:ss",
-                "EEEE, dd MMM yy HH:mm:ss",
-                "EEE MMM d HH:mm:ss yyyy",
-                "EEE, dd MMM yyyy HH:mm Z",
-                "EEE, dd MMM yyyy HH:mm",
-                "EEE, dd MMMM yyyy HH:mm Z",
-                "EEE, dd MMMM yyyy HH:mm",
-                "EEEE, dd MMM yyyy HH:mm Z",
-                "EEEE, dd MMM yy HH:mm Z",
-                "EEEE, dd MMM yyyy HH:mm",
-                "EEEE, dd MMM yy HH:mm",
-                "EEE MMM d HH:mm yyyy",
-                "yyyy-MM-dd'T'HH:mm:ss",
-                "yyyy-MM-dd'T'HH:mm:ss.SSS Z",
-                "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'",
-                "yyyy-MM-dd'T'HH:mm:ss.SSS",
-                "yyyy-MM-dd'T'HH:mm:ssZ",
-                "yyyy-MM-dd'T'HH:mm:ss'Z'",
-                "yyyy-MM-dd'T'HH:mm:ss.SSSZ",
-                "yyyy-MM-ddZ",
-                "yyyy-MM-dd",
-                "EEE d MMM yyyy HH:mm:ss 'GMT'Z (z)"
-        };
-
-        SimpleDateFormat parser = new SimpleDateFormat("", Locale.US);
-        parser.setLenient(false);
-        parser.setTimeZone(TIME_ZONE_GMT);
 
         ParsePosition pos = new ParsePosition(0);
-        for (String pattern : patterns) {
-            parser.applyPattern(pattern);
-            pos.setIndex(0);
-            try {
-                Date result = parser.parse(date, pos);
-                if (result != null && pos.getIndex() == date.length()) {
-                    return result;
-                }
-            } catch (Exception ignored) {
-                // Ignore
+        int[] lastPattern = LAST_PATTERN.get();
+        if (lastPattern[0] >= 0) {
+            Date result = parseWithPattern(lastPattern[0], date, pos);
+            if (result != null) {
+                return result;
+            }
+        }
+        for (int i = 0; i < PATTERNS.length; i++) {
+            if (i == lastPattern[0]) {
+                continue;
+            }
+            Date result = parseWithPattern(i, date, pos);
+            if (result != null) {
+                lastPattern[0] = i;
+                return result;
             }
         }
 
         // if date string starts with a weekday, try parsing date string without it
-        if (date.matches("^\\w+, .*$")) {
+        if (WEEKDAY_PREFIX.matcher(date).matches()) {
             return parse(date.substring(date.indexOf(',') + 1));
         }
 
@@ -129,6 +177,27 @@ public abstract class DateUtils {
         return null;
     }
 
+    @Nullable
+    private static Date parseWithPattern(int index, String date, ParsePosition pos) {
+        SimpleDateFormat[] formats = PATTERN_FORMATS.get();
+        if (formats[index] == null) {
+            formats[index] = new SimpleDateFormat(PATTERNS[index], Locale.US);
+            formats[index].setLenient(false);
+            formats[index].setTimeZone(TIME_ZONE_GMT);
+        }
+        pos.setIndex(0);
+        pos.setErrorIndex(-1);
+        try {
+            Date result = formats[index].parse(date, pos);
+            if (result != null && pos.getIndex() == date.length()) {
+                return result;
+            }
+        } catch (Exception ignored) {
+            // Ignore
+        }
+        return null;
+    }
+
     /**
      * Parses the date but if the date is in the future, returns null.
      */
@@ -0,0 +1,327 @@
+package de.danoeh.antennapod.parser.feed.util;
+
+import androidx.annotation.Nullable;
+
+import java.util.Date;
+
+/**
+ * Parses the common RFC 822 and ISO 8601 date forms by hand, without regular expressions or SimpleDateFormat.
+ * Returns null for anything unusual, so that callers can fall back to the more tolerant pattern based parser.
+ */
+final class FastDateParser {
+    private static final String[] MONTHS = {
+        "january", "february", "march", "april", "may", "june",
+        "july", "august", "september", "october", "november", "december"
+    };
+    private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final int NO_VALUE = -1;
+    private static final int INVALID_ZONE = Integer.MIN_VALUE;
+
+    private final String s;
+    private int pos = 0;
+
+    private FastDateParser(String s) {
+        this.s = s;
+    }
+
+    @Nullable
+    static Date parse(String input) {
+        String date = input.trim();
+        if (date.length() < 10) {
+            return null;
+        }
+        FastDateParser parser = new FastDateParser(date);
+        if (isDigit(date.charAt(0)) && date.charAt(4) == '-') {
+            return parser.parseIso8601();
+        }
+        return parser.parseRfc822();
+    }
+
+    /**
+     * [Weekday, ]d[d] Mon[th] yyyy H[H]:mm[:ss][ zone]
+     */
+    @Nullable
+    private Date parseRfc822() {
+        if (isLetter(peek())) {
+            skipLetters();
+            if (peek() != ',') {
+                return null;
+            }
+            pos++;
+            skipSpaces();
+        }
+        int day = readNumber(1, 2);
+        if (day == NO_VALUE || skipSpaces() == 0) {
+            return null;
+        }
+        int month = readMonth();
+        if (month == NO_VALUE || skipSpaces() == 0) {
+            return null;
+        }
+        int year = readNumber(4, 4);
+        if (year == NO_VALUE || skipSpaces() == 0) {
+            return null;
+        }
+        int hour = readNumber(1, 2);
+        if (hour == NO_VALUE || peek() != ':') {
+            return null;
+        }
+        pos++;
+        int minute = readNumber(2, 2);
+        if (minute == NO_VALUE) {
+            return null;
+        }
+        int second = 0;
+        if (peek() == ':') {
+            pos++;
+            second = readNumber(2, 2);
+            if (second == NO_VALUE) {
+                return null;
+            }
+        }
+        int offsetMinutes = 0;
+        if (skipSpaces() > 0 && !atEnd()) {
+            offsetMinutes = readZone();
+        }
+        if (offsetMinutes == INVALID_ZONE || !atEnd()) {
+            return null;
+        }
+        return toDate(year, month, day, hour, minute, second, 0, offsetMinutes);
+    }
+
+    /**
+     * yyyy-MM-dd[THH:mm:ss[.fraction][Z|+hh:mm|+hhmm]]
+     */
+    @Nullable
+    private Date parseIso8601() {
+        int year = readNumber(4, 4);
+        if (year == NO_VALUE || !consume('-')) {
+            return null;
+        }
+        int month = readNumber(2, 2);
+        if (month == NO_VALUE || !consume('-')) {
+            return null;
+        }
+        int day = readNumber(2, 2);
+        if (day == NO_VALUE) {
+            return null;
+        }
+        if (atEnd()) {
+            return toDate(year, month - 1, day, 0, 0, 0, 0, 0);
+        }
+        if (!consume('T')) {
+            return null;
+        }
+        int hour = readNumber(2, 2);
+        if (hour == NO_VALUE || !consume(':')) {
+            return null;
+        }
+        int minute = readNumber(2, 2);
+        if (minute == NO_VALUE || !consume(':')) {
+            return null;
+        }
+        int second = readNumber(2, 2);
+        if (second == NO_VALUE) {
+            return null;
+        }
+        int millis = 0;
+        if (consume('.')) {
+            int digits = 0;
+            while (isDigit(peek())) {
+                if (digits < 3) {
+                    millis = millis * 10 + (s.charAt(pos) - '0');
+                }
+                digits++;
+                pos++;
+            }
+            if (digits == 0) {
+                return null;
+            }
+            for (int i = digits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+        int offsetMinutes = 0;
+        if (consume('Z')) {
+            offsetMinutes = 0;
+        } else if (peek() == '+' || peek() == '-') {
+            offsetMinutes = readNumericZone();
+        }
+        if (offsetMinutes == INVALID_ZONE || !atEnd()) {
+            return null;
+        }
+        return toDate(year, month - 1, day, hour, minute, second, millis, offsetMinutes);
+    }
+
+    private int readZone() {
+        char c = peek();
+        if (c == '+' || c == '-') {
+            return readNumericZone();
+        }
+        int start = pos;
+        skipLetters();
+        switch (s.substring(start, pos)) {
+            case "GMT":
+            case "UT":
+            case "UTC":
+            case "Z":
+                return 0;
+            case "EST":
+                return -5 * 60;
+            case "EDT":
+                return -4 * 60;
+            case "CST":
+                return -6 * 60;
+            case "CDT":
+                return -5 * 60;
+            case "MST":
+                return -7 * 60;
+            case "MDT":
+                return -6 * 60;
+            case "PST":
+                return -8 * 60;
+            case "PDT":
+                return -7 * 60;
+            case "CET":
+                return 60;
+            case "CEST":
+                return 2 * 60;
+            default:
+                return INVALID_ZONE;
+        }
+    }
+
+    /**
+     * +hhmm or +hh:mm
+     */
+    private int readNumericZone() {
+        int sign = s.charAt(pos) == '-' ? -1 : 1;
+        pos++;
+        int hours = readDigits(2);
+        consume(':');
+        int minutes = readDigits(2);
+        if (hours == NO_VALUE || minutes == NO_VALUE || hours > 23 || minutes > 59) {
+            return INVALID_ZONE;
+        }
+        return sign * (hours * 60 + minutes);
+    }
+
+    private int readMonth() {
+        int start = pos;
+        skipLetters();
+        int length = pos - start;
+        if (length < 3) {
+            return NO_VALUE;
+        }
+        for (int i = 0; i < MONTHS.length; i++) {
+            String name = MONTHS[i];
+            if (length == 3 || length == name.length()) {
+                if (s.regionMatches(true, start, name, 0, length)) {
+                    return i;
+                }
+            } else if (length == 4 && i == 8 && s.regionMatches(true, start, "sept", 0, 4)) {
+                return i;
+            }
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Reads exactly the given number of digits, regardless of what follows.
+     */
+    private int readDigits(int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            if (!isDigit(peek())) {
+                return NO_VALUE;
+            }
+            value = value * 10 + (s.charAt(pos) - '0');
+            pos++;
+        }
+        return value;
+    }
+
+    /**
+     * Reads a number that is not followed by further digits.
+     */
+    private int readNumber(int minDigits, int maxDigits) {
+        int value = 0;
+        int digits = 0;
+        while (digits < maxDigits && isDigit(peek())) {
+            value = value * 10 + (s.charAt(pos) - '0');
+            pos++;
+            digits++;
+        }
+        if (digits < minDigits || isDigit(peek())) {
+            return NO_VALUE;
+        }
+        return value;
+    }
+
+    private int skipSpaces() {
+        int start = pos;
+        while (peek() == ' ') {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private void skipLetters() {
+        while (isLetter(peek())) {
+            pos++;
+        }
+    }
+
+    private boolean consume(char c) {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private char peek() {
+        return pos < s.length() ? s.charAt(pos) : '\0';
+    }
+
+    private boolean atEnd() {
+        return pos >= s.length();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    @Nullable
+    private static Date toDate(int year, int month, int day, int hour, int minute, int second, int millis,
+                               int offsetMinutes) {
+        if (month < 0 || month > 11 || day < 1 || day > DAYS_IN_MONTH[month]
+                || (month == 1 && day == 29 && !isLeapYear(year))
+                || hour > 23 || minute > 59 || second > 59) {
+            return null; // Let the lenient parser decide what to make of it
+        }
+        long days = daysSinceEpoch(year, month + 1, day);
+        long seconds = ((days * 24 + hour) * 60 + minute - offsetMinutes) * 60 + second;
+        return new Date(seconds * 1000 + millis);
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * Days between 1970-01-01 and the given date of the proleptic Gregorian calendar.
+     */
+    private static long daysSinceEpoch(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -29,67 +29,10 @@ public class TypeGetter {
     private static final String RSS_ROOT = "rss";
 
     public Type getType(Feed feed) throws UnsupportedFeedtypeException {
-        XmlPullParserFactory factory;
         if (feed.getLocalFileUrl() != null) {
-            Reader reader = null;
+            Reader reader = createReader(feed);
             try {
-                factory = XmlPullParserFactory.newInstance();
-                factory.setNamespaceAware(true);
-                XmlPullParser xpp = factory.newPullParser();
-                reader = createReader(feed);
-                xpp.setInput(reader);
-                int eventType = xpp.getEventType();
-
-                while (eventType != XmlPullParser.END_DOCUMENT) {
-                    if (eventType == XmlPullParser.START_TAG) {
-                        String tag = xpp.getName();
-                        switch (tag) {
-                            case ATOM_ROOT:
-                                feed.setType(Feed.TYPE_ATOM1);
-                                Log.d(TAG, "Recognized type Atom");
-
-                                String strLang = xpp.getAttributeValue("http://www.w3.org/XML/1998/namespace", "lang");
-                                if (strLang != null) {
-                                    feed.setLanguage(strLang);
-                                }
-
-                                return Type.ATOM;
-                            case RSS_ROOT:
-                                String strVersion = xpp.getAttributeValue(null, "version");
-                                if (strVersion == null) {
-                                    feed.setType(Feed.TYPE_RSS2);
-                                    Log.d(TAG, "Assuming type RSS 2.0");
-                                    return Type.RSS20;
-                                } else if (strVersion.equals("2.0")) {
-                                    feed.setType(Feed.TYPE_RSS2);
-                                    Log.d(TAG, "Recognized type RSS 2.0");
-                                    return Type.RSS20;
-                                } else if (strVersion.equals("0.91") || strVersion.equals("0.92")) {
-                                    Log.d(TAG, "Recognized type RSS 0.91/0.92");
-                                    return Type.RSS091;
-                                }
-                                throw new UnsupportedFeedtypeException("Unsupported rss version");
-                            default:
-                                Log.d(TAG, "Type is invalid: " + tag);
-                                throwExceptionIfWebsite(feed);
-                                throw new UnsupportedFeedtypeException(tag, null);
-                        }
-                    } else {
-                        try {
-                            eventType = xpp.next();
-                        } catch (RuntimeException e) {
-                            // Apparently this happens on some devices...
-                            throw new UnsupportedFeedtypeException("Unable to get type");
-                        }
-                    }
-                }
-            } catch (XmlPullParserException e) {
-                e.printStackTrace();
-                throwExceptionIfWebsite(feed);
-                throw new UnsupportedFeedtypeException(e.getMessage());
-
-            } catch (IOException e) {
-                e.printStackTrace();
+                return getType(feed, reader);
             } finally {
                 if (reader != null) {
                     try {
@@ -104,6 +47,74 @@ public class TypeGetter {
         throw new UnsupportedFeedtypeException("Unknown problem when trying to determine feed type");
     }
 
+    /**
+     * Determines the type by reading from the given reader until the root element is found.
+     * The reader is not closed, so callers can use it to only sniff the beginning of a stream.
+     */
+    public Type getType(Feed feed, Reader reader) throws UnsupportedFeedtypeException {
+        XmlPullParserFactory factory;
+        try {
+            factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XmlPullParser xpp = factory.newPullParser();
+            xpp.setInput(reader);
+            int eventType = xpp.getEventType();
+
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    String tag = xpp.getName();
+                    switch (tag) {
+                        case ATOM_ROOT:
+                            feed.setType(Feed.TYPE_ATOM1);
+                            Log.d(TAG, "Recognized type Atom");
+
+                            String strLang = xpp.getAttributeValue("http://www.w3.org/XML/1998/namespace", "lang");
+                            if (strLang != null) {
+                                feed.setLanguage(strLang);
+                            }
+
+                            return Type.ATOM;
+                        case RSS_ROOT:
+                            String strVersion = xpp.getAttributeValue(null, "version");
+                            if (strVersion == null) {
+                                feed.setType(Feed.TYPE_RSS2);
+                                Log.d(TAG, "Assuming type RSS 2.0");
+                                return Type.RSS20;
+                            } else if (strVersion.equals("2.0")) {
+                                feed.setType(Feed.TYPE_RSS2);
+                                Log.d(TAG, "Recognized type RSS 2.0");
+                                return Type.RSS20;
+                            } else if (strVersion.equals("0.91") || strVersion.equals("0.92")) {
+                                Log.d(TAG, "Recognized type RSS 0.91/0.92");
+                                return Type.RSS091;
+                            }
+                            throw new UnsupportedFeedtypeException("Unsupported rss version");
+                        default:
+                            Log.d(TAG, "Type is invalid: " + tag);
+                            throwExceptionIfWebsite(feed);
+                            throw new UnsupportedFeedtypeException(tag, null);
+                    }
+                } else {
+                    try {
+                        eventType = xpp.next();
+                    } catch (RuntimeException e) {
+                        // Apparently this happens on some devices...
+                        throw new UnsupportedFeedtypeException("Unable to get type");
+                    }
+                }
+            }
+        } catch (XmlPullParserException e) {
+            e.printStackTrace();
+            throwExceptionIfWebsite(feed);
+            throw new UnsupportedFeedtypeException(e.getMessage());
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Log.d(TAG, "Type is invalid");
+        throw new UnsupportedFeedtypeException("Unknown problem when trying to determine feed type");
+    }
+
     private Reader createReader(Feed feed) {
         Reader reader;
         try {
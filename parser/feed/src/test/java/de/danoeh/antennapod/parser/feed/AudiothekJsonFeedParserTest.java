@@ -2,9 +2,12 @@ package de.danoeh.antennapod.parser.feed;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
@@ -13,6 +16,7 @@ import java.nio.file.Files;
 import de.danoeh.antennapod.model.feed.Feed;
 import de.danoeh.antennapod.model.feed.FeedItem;
 
+@RunWith(RobolectricTestRunner.class)
 public class AudiothekJsonFeedParserTest {
 
     @Test
@@ -67,4 +71,68 @@ public class AudiothekJsonFeedParserTest {
         //noinspection ResultOfMethodCallIgnored
         tmp.delete();
     }
+
+    @Test
+    public void parseFeed_editorialCollectionWithFieldsAfterItems() throws Exception {
+        String json = "{\"data\":{\"editorialCollection\":{"
+                + "\"items\":{\"totalCount\":2,\"nodes\":["
+                + "{\"id\":\"item-1\",\"assetId\":\"\",\"title\":\"First\",\"duration\":\"90\","
+                + "\"image\":{\"url\":\"https://img.example/{width}/a.jpg\"},"
+                + "\"audios\":[{\"url\":\"https://example.com/a.mp3\",\"downloadUrl\":\"\"},"
+                + "{\"url\":\"https://example.com/ignored.mp3\"}]},"
+                + "null,"
+                + "{\"publicationId\":\"pub-2\",\"title\":\"Second\",\"synopsis\":null,"
+                + "\"audios\":[null,{\"url\":\"https://example.com/ignored.mp3\"}]}"
+                + "]},"
+                + "\"title\":\"Collection\",\"sharingUrl\":null,"
+                + "\"unknown\":{\"nested\":[1,2,{\"x\":true}]}"
+                + "}}}";
+
+        Feed feed = parse(json);
+        assertEquals("Collection", feed.getTitle());
+        assertNull(feed.getLink());
+        assertNull(feed.getDescription());
+        assertEquals(2, feed.getItems().size());
+
+        FeedItem first = feed.getItems().get(0);
+        assertEquals("First", first.getTitle());
+        assertEquals("item-1", first.getItemIdentifier());
+        assertEquals("https://img.example/300/a.jpg", first.getImageUrl());
+        assertEquals("https://example.com/a.mp3", first.getMedia().getDownloadUrl());
+        assertEquals(90000, first.getMedia().getDuration());
+
+        FeedItem second = feed.getItems().get(1);
+        assertEquals("pub-2", second.getItemIdentifier());
+        assertNull(second.getMedia());
+    }
+
+    @Test
+    public void parseFeed_prefersProgramSetOverEditorialCollection() throws Exception {
+        String json = "{\"data\":{"
+                + "\"editorialCollection\":{\"title\":\"Collection\",\"items\":{\"nodes\":[{\"id\":\"a\"}]}},"
+                + "\"programSet\":{\"title\":\"Program\",\"items\":{\"nodes\":[]}}"
+                + "}}";
+
+        Feed feed = parse(json);
+        assertEquals("Program", feed.getTitle());
+        assertEquals(0, feed.getItems().size());
+    }
+
+    @Test(expected = UnsupportedFeedtypeException.class)
+    public void parseFeed_missingProgramSet() throws Exception {
+        parse("{\"data\":{\"programSet\":null}}");
+    }
+
+    private static Feed parse(String json) throws Exception {
+        File tmp = File.createTempFile("audiothek", ".json");
+        try {
+            Files.writeString(tmp.toPath(), json, StandardCharsets.UTF_8);
+            Feed feed = new Feed("https://api.ardaudiothek.de/programsets/1", null);
+            feed.setLocalFileUrl(tmp.getAbsolutePath());
+            return new FeedHandler().parseFeed(feed).feed;
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+    }
 }
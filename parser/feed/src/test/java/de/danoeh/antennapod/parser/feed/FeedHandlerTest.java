@@ -0,0 +1,97 @@
+package de.danoeh.antennapod.parser.feed;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import de.danoeh.antennapod.model.feed.Feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that FeedHandler determines the feed type without reading the file more than once.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FeedHandlerTest {
+    private static final String[] FIXTURES = {
+        "feed-atom-testAtomBasic.xml",
+        "feed-atom-testEmptyRelLinks.xml",
+        "feed-atom-testLogoWithWhitespace.xml",
+        "feed-rss-testImageWithWhitespace.xml",
+        "feed-rss-testMediaContentMime.xml",
+        "feed-rss-testMultipleFundingTags.xml",
+        "feed-rss-testPodcastIndexTranscript.xml",
+        "feed-rss-testRss2Basic.xml",
+        "feed-rss-testUnsupportedElements.xml",
+    };
+
+    @Test
+    public void testFixturesAreReadOnce() throws Exception {
+        for (String fixture : FIXTURES) {
+            File file = getFeedFile(fixture);
+            Feed feed = createFeed(file);
+            CountingInputStream in = new CountingInputStream(new FileInputStream(file));
+            new FeedHandler().parseFeed(feed, in);
+
+            String expectedType = fixture.startsWith("feed-atom") ? Feed.TYPE_ATOM1 : Feed.TYPE_RSS2;
+            assertEquals(fixture, expectedType, feed.getType());
+            assertEquals(fixture + ": " + file.length() + " bytes on disk, " + in.getByteCount() + " bytes read",
+                    file.length(), in.getByteCount());
+        }
+    }
+
+    @Test
+    public void testRootElementAfterSniffBuffer() throws Exception {
+        File file = File.createTempFile("feed", ".xml");
+        try (Writer writer = new FileWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!--");
+            for (int i = 0; i < 100 * 1024; i++) {
+                writer.write('x');
+            }
+            writer.write("-->\n<rss version=\"2.0\"><channel><title>Late root</title></channel></rss>");
+        }
+        try {
+            Feed feed = createFeed(file);
+            FeedHandlerResult result = new FeedHandler().parseFeed(feed);
+            assertEquals(Feed.TYPE_RSS2, feed.getType());
+            assertEquals("Late root", result.feed.getTitle());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testJsonWithLeadingWhitespaceIsDetected() throws Exception {
+        File file = File.createTempFile("feed", ".json");
+        Files.writeString(file.toPath(), "\n  {\"data\":{\"programSet\":{\"title\":\"Json\"}}}", StandardCharsets.UTF_8);
+        try {
+            FeedHandlerResult result = new FeedHandler().parseFeed(createFeed(file));
+            assertEquals("Json", result.feed.getTitle());
+            assertTrue(result.feed.getItems().isEmpty());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static Feed createFeed(File file) {
+        Feed feed = new Feed("http://example.com/feed", null);
+        feed.setLocalFileUrl(file.getAbsolutePath());
+        return feed;
+    }
+
+    private static File getFeedFile(String fileName) {
+        //noinspection ConstantConditions
+        return new File(FeedHandlerTest.class.getClassLoader().getResource(fileName).getFile());
+    }
+}
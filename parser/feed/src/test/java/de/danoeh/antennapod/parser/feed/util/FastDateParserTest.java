@@ -0,0 +1,73 @@
+package de.danoeh.antennapod.parser.feed.util;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link FastDateParser} agrees with the pattern based parser of {@link DateUtils}.
+ */
+public class FastDateParserTest {
+    private static final String[] CORPUS = {
+        "Sat, 28 Mar 2015 01:31:04 +0000",
+        "Sat, 28 Mar 2015 01:31:04 -0400",
+        "Sat, 28 Mar 2015 01:31:04 GMT",
+        "Sat, 28 Mar 2015 01:31:04 UT",
+        "Sat, 28 Mar 2015 01:31:04 EST",
+        "Sat, 28 Mar 2015 01:31:04 PDT",
+        "Sat, 28 Mar 2015 01:31 +0100",
+        "Sat, 28 Mar 2015 01:31:04",
+        "Sat,  28  Mar  2015  01:31:04  +0000",
+        "Sat, 28 March 2015 08:16:12 -0400",
+        "Tue, 01 Sept 2015 08:16:12 +0200",
+        "Fri, 01 Sep 2015 08:16:12 +0200",
+        "1 Mar 2015 01:31:04 +0000",
+        "Mon, 29 Feb 2016 23:59:59 +0000",
+        "Wed, 31 Dec 1969 23:59:59 +0000",
+        "Sat, 28 Mar 2015 01:31:04 -08:00",
+        "Sat, 28 Mar 2015 01:31:04 CET",
+        "Sat, 28 Mar 2015 01:31:04 CEST",
+        "2015-03-28",
+        "2015-03-28T13:31:04",
+        "2015-03-28T13:31:04Z",
+        "2015-03-28T13:31:04+0200",
+        "2015-03-28T13:31:04-05:00",
+        "2015-03-28T13:31:04.9Z",
+        "2015-03-28T13:31:04.96",
+        "2015-03-28T13:31:04.963870",
+        "2024-05-08T22:18:52.485Z",
+        "2000-02-29T00:00:00Z",
+    };
+
+    private static final String[] NOT_HANDLED = {
+        "Sat, 28 Mar 15 01:31:04 +0000",
+        "Sun 01 Mar 2015 01:00:00 GMT-0400 (EDT)",
+        "Sat, 32 Mar 2015 01:31:04 +0000",
+        "Thu, 29 Feb 2015 01:31:04 +0000",
+        "Sat, 28 Mar 2015 01:31:04 XYZ",
+        "2015-03-28T13:31:04.963870 +0700",
+        "2015/03/28",
+        "2015-03-28T13:31",
+        "Sat, 28 Mrz 2015 01:31:04 +0000",
+    };
+
+    @Test
+    public void testAgreesWithPatternParser() {
+        for (String date : CORPUS) {
+            Date fast = FastDateParser.parse(date);
+            assertNotNull(date, fast);
+            assertEquals(date, DateUtils.parseWithPatterns(date), fast);
+        }
+    }
+
+    @Test
+    public void testUnusualFormatsAreLeftToPatternParser() {
+        for (String date : NOT_HANDLED) {
+            assertNull(date, FastDateParser.parse(date));
+        }
+    }
+}
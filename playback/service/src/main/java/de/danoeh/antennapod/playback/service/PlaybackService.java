@@ -59,6 +59,7 @@ import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
 import de.danoeh.antennapod.playback.service.internal.ClockSleepTimer;
 import de.danoeh.antennapod.playback.service.internal.EpisodeSleepTimer;
 import de.danoeh.antennapod.playback.service.internal.LocalPSMP;
+import de.danoeh.antennapod.playback.service.internal.NextEpisodePrefetcher;
 import de.danoeh.antennapod.playback.service.internal.PlayableUtils;
 import de.danoeh.antennapod.playback.service.internal.PlaybackServiceNotificationBuilder;
 import de.danoeh.antennapod.playback.service.internal.PlaybackServiceStateManager;
@@ -164,6 +165,7 @@ public class PlaybackService extends MediaBrowserServiceCompat {
 
     private PlaybackServiceMediaPlayer mediaPlayer;
     private PlaybackServiceTaskManager taskManager;
+    private NextEpisodePrefetcher nextEpisodePrefetcher;
     private SleepTimer sleepTimer;
     private PlaybackServiceStateManager stateManager;
     private Disposable positionEventTimer;
@@ -255,6 +257,7 @@ public class PlaybackService extends MediaBrowserServiceCompat {
         registerReceiver(audioBecomingNoisy, new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY));
         EventBus.getDefault().register(this);
         taskManager = new PlaybackServiceTaskManager(this, taskManagerCallback);
+        nextEpisodePrefetcher = new NextEpisodePrefetcher(this);
 
         recreateMediaSessionIfNeeded();
         castStateListener = new CastStateListener(this) {
@@ -342,6 +345,7 @@ public class PlaybackService extends MediaBrowserServiceCompat {
         unregisterReceiver(audioBecomingNoisy);
         mediaPlayer.shutdown();
         taskManager.shutdown();
+        nextEpisodePrefetcher.cancel();
         disableSleepTimer();
         EventBus.getDefault().unregister(this);
     }
@@ -827,6 +831,10 @@ public class PlaybackService extends MediaBrowserServiceCompat {
         @Override
         public void positionSaverTick() {
             saveCurrentPosition(true, null, Playable.INVALID_TIME);
+            Playable playable = mediaPlayer.getPlayable();
+            if (playable instanceof FeedMedia && !mediaPlayer.isCasting()) {
+                nextEpisodePrefetcher.onPositionUpdate((FeedMedia) playable, getCurrentPosition(), getDuration());
+            }
         }
 
         @Override
@@ -3,6 +3,7 @@ package de.danoeh.antennapod.playback.service.internal;
 import android.content.Context;
 import android.media.audiofx.LoudnessEnhancer;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.SurfaceHolder;
@@ -66,6 +67,7 @@ public class ExoPlayerWrapper {
     public static final int BUFFERING_STARTED = -1;
     public static final int BUFFERING_ENDED = -2;
     private static final String TAG = "ExoPlayerWrapper";
+    private static SimpleCache streamingCache;
 
     private final Context context;
     private final Disposable bufferingUpdateDisposable;
@@ -78,6 +80,9 @@ public class ExoPlayerWrapper {
     private PlaybackParameters playbackParameters;
     private DefaultTrackSelector trackSelector;
     private SimpleCache simpleCache;
+    private boolean isStream = false;
+    private boolean startIsCached = false;
+    private long prepareStartTime = 0;
     @Nullable
     private LoudnessEnhancer loudnessEnhancer = null;
 
@@ -109,6 +114,10 @@ public class ExoPlayerWrapper {
         exoPlayer.addListener(new Player.Listener() {
             @Override
             public void onPlaybackStateChanged(@Player.State int playbackState) {
+                if (playbackState == Player.STATE_READY && prepareStartTime != 0) {
+                    StreamingStartupStats.record(startIsCached, SystemClock.elapsedRealtime() - prepareStartTime);
+                    prepareStartTime = 0;
+                }
                 if (audioCompletionListener != null && playbackState == Player.STATE_ENDED) {
                     audioCompletionListener.run();
                 } else if (bufferingUpdateListener != null && playbackState == Player.STATE_BUFFERING) {
@@ -158,11 +167,35 @@ public class ExoPlayerWrapper {
                 initLoudnessEnhancer(audioSessionId);
             }
         });
-        simpleCache = new SimpleCache(new File(context.getCacheDir(), "streaming"),
-                new LeastRecentlyUsedCacheEvictor(100 * 1024 * 1024), new StandaloneDatabaseProvider(context));
+        simpleCache = getStreamingCache(context);
         initLoudnessEnhancer(exoPlayer.getAudioSessionId());
     }
 
+    /**
+     * A cache directory can only be opened once, so the players and {@link NextEpisodePrefetcher} share the cache.
+     */
+    static synchronized SimpleCache getStreamingCache(Context context) {
+        if (streamingCache == null) {
+            streamingCache = new SimpleCache(new File(context.getCacheDir(), "streaming"),
+                    new LeastRecentlyUsedCacheEvictor(100 * 1024 * 1024), new StandaloneDatabaseProvider(context));
+        }
+        return streamingCache;
+    }
+
+    static DefaultHttpDataSource.Factory createHttpDataSourceFactory(String user, String password) {
+        final DefaultHttpDataSource.Factory httpDataSourceFactory = new DefaultHttpDataSource.Factory();
+        httpDataSourceFactory.setUserAgent(UserAgentInterceptor.USER_AGENT);
+        httpDataSourceFactory.setAllowCrossProtocolRedirects(true);
+        httpDataSourceFactory.setKeepPostFor302Redirects(true);
+
+        if (!TextUtils.isEmpty(user) && !TextUtils.isEmpty(password)) {
+            final HashMap<String, String> requestProperties = new HashMap<>();
+            requestProperties.put("Authorization", HttpCredentialEncoder.encode(user, password, "ISO-8859-1"));
+            httpDataSourceFactory.setDefaultRequestProperties(requestProperties);
+        }
+        return httpDataSourceFactory;
+    }
+
     public int getCurrentPosition() {
         return (int) exoPlayer.getCurrentPosition();
     }
@@ -191,6 +224,9 @@ public class ExoPlayerWrapper {
     }
 
     public void prepare() throws IllegalStateException {
+        if (isStream) {
+            prepareStartTime = SystemClock.elapsedRealtime();
+        }
         exoPlayer.setMediaSource(mediaSource, false);
         exoPlayer.prepare();
     }
@@ -200,10 +236,7 @@ public class ExoPlayerWrapper {
         if (exoPlayer != null) {
             exoPlayer.release();
         }
-        if (simpleCache != null) {
-            simpleCache.release();
-            simpleCache = null;
-        }
+        simpleCache = null;
         audioSeekCompleteListener = null;
         audioCompletionListener = null;
         audioErrorListener = null;
@@ -212,10 +245,6 @@ public class ExoPlayerWrapper {
 
     public void reset() {
         exoPlayer.release();
-        if (simpleCache != null) {
-            simpleCache.release();
-            simpleCache = null;
-        }
         createPlayer();
     }
 
@@ -238,21 +267,16 @@ public class ExoPlayerWrapper {
     public void setDataSource(String s, String user, String password)
             throws IllegalArgumentException, IllegalStateException {
         Log.d(TAG, "setDataSource: " + s);
-        final DefaultHttpDataSource.Factory httpDataSourceFactory = new DefaultHttpDataSource.Factory();
-        httpDataSourceFactory.setUserAgent(UserAgentInterceptor.USER_AGENT);
-        httpDataSourceFactory.setAllowCrossProtocolRedirects(true);
-        httpDataSourceFactory.setKeepPostFor302Redirects(true);
-
-        if (!TextUtils.isEmpty(user) && !TextUtils.isEmpty(password)) {
-            final HashMap<String, String> requestProperties = new HashMap<>();
-            requestProperties.put("Authorization", HttpCredentialEncoder.encode(user, password, "ISO-8859-1"));
-            httpDataSourceFactory.setDefaultRequestProperties(requestProperties);
-        }
+        final DefaultHttpDataSource.Factory httpDataSourceFactory = createHttpDataSourceFactory(user, password);
         DataSource.Factory dataSourceFactory = new DefaultDataSource.Factory(context, httpDataSourceFactory);
-        if (s.startsWith("http")) {
+        isStream = s.startsWith("http");
+        startIsCached = false;
+        prepareStartTime = 0;
+        if (isStream) {
             dataSourceFactory = new CacheDataSource.Factory()
                     .setCache(simpleCache)
                     .setUpstreamDataSourceFactory(httpDataSourceFactory);
+            startIsCached = simpleCache.getCachedLength(s, 0, 1) > 0;
         }
         DefaultExtractorsFactory extractorsFactory = new DefaultExtractorsFactory();
         extractorsFactory.setConstantBitrateSeekingEnabled(true);
@@ -0,0 +1,133 @@
+package de.danoeh.antennapod.playback.service.internal;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheWriter;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.model.feed.FeedPreferences;
+import de.danoeh.antennapod.net.common.NetworkUtils;
+import de.danoeh.antennapod.storage.database.DBReader;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the start of the next episode in the queue into the streaming cache when the current episode
+ * is about to end, so that continuing with the next episode does not have to wait for the network.
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class NextEpisodePrefetcher {
+    private static final String TAG = "NextEpisodePrefetcher";
+    private static final long PREFETCH_BEFORE_END_MS = TimeUnit.MINUTES.toMillis(2);
+    private static final int PREFETCH_SECONDS = 60;
+    private static final long DEFAULT_BYTES_PER_SECOND = 128 * 1000 / 8;
+    /**
+     * ID3 tags at the start of the file often contain images and need to be loaded before the audio.
+     */
+    private static final long HEADER_BYTES = 512 * 1024;
+
+    private final Context context;
+    private long currentMediaId = -1;
+    private Disposable disposable;
+    private volatile CacheWriter cacheWriter;
+
+    public NextEpisodePrefetcher(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Starts prefetching the episode after the current one once the current one is close to its end.
+     * Prefetching is only started once per episode.
+     */
+    public void onPositionUpdate(FeedMedia current, int position, int duration) {
+        if (duration <= 0 || duration - position > PREFETCH_BEFORE_END_MS || current.getId() == currentMediaId) {
+            return;
+        }
+        currentMediaId = current.getId();
+        cancel();
+        disposable = startPrefetch(current);
+    }
+
+    Disposable startPrefetch(FeedMedia current) {
+        return Completable.fromAction(() -> prefetchNext(current))
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> { }, error -> Log.d(TAG, "Prefetching stopped: " + error.getMessage()));
+    }
+
+    private void prefetchNext(FeedMedia current) throws IOException {
+        boolean followQueue = UserPreferences.isFollowQueue();
+        FeedItem nextItem = null;
+        if (followQueue) {
+            FeedItem item = current.getItem() != null ? current.getItem() : DBReader.getFeedItem(current.getItemId());
+            nextItem = item != null ? DBReader.getNextInQueue(item) : null;
+        }
+        FeedMedia media = getMediaToPrefetch(nextItem, followQueue, NetworkUtils.isStreamingAllowed());
+        if (media == null) {
+            return;
+        }
+
+        String url = media.getStreamUrl();
+        FeedPreferences preferences = nextItem.getFeed().getPreferences();
+        CacheDataSource dataSource = new CacheDataSource.Factory()
+                .setCache(ExoPlayerWrapper.getStreamingCache(context))
+                .setUpstreamDataSourceFactory(ExoPlayerWrapper.createHttpDataSourceFactory(
+                        preferences != null ? preferences.getUsername() : null,
+                        preferences != null ? preferences.getPassword() : null))
+                .createDataSource();
+        long length = getPrefetchLength(media);
+        DataSpec dataSpec = new DataSpec.Builder().setUri(Uri.parse(url)).setLength(length).build();
+        cacheWriter = new CacheWriter(dataSource, dataSpec, null, null);
+        long start = System.currentTimeMillis();
+        cacheWriter.cache();
+        Log.d(TAG, "Prefetched " + length + " bytes of " + url + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return The media of the next episode if it would be streamed, or null if there is nothing to prefetch
+     */
+    @Nullable
+    static FeedMedia getMediaToPrefetch(@Nullable FeedItem nextItem, boolean followQueue, boolean streamingAllowed) {
+        if (!followQueue || !streamingAllowed
+                || nextItem == null || nextItem.getMedia() == null || nextItem.getFeed() == null) {
+            return null;
+        }
+        FeedMedia media = nextItem.getMedia();
+        String url = media.getStreamUrl();
+        if (media.localFileAvailable() || url == null || !url.startsWith("http")) {
+            return null;
+        }
+        return media;
+    }
+
+    /**
+     * @return The number of bytes that contain the first {@link #PREFETCH_SECONDS} seconds of the episode
+     */
+    static long getPrefetchLength(FeedMedia media) {
+        long bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+        if (media.getSize() > 0 && media.getDuration() > 0) {
+            bytesPerSecond = media.getSize() * 1000 / media.getDuration();
+        }
+        return HEADER_BYTES + PREFETCH_SECONDS * bytesPerSecond;
+    }
+
+    public void cancel() {
+        if (disposable != null) {
+            disposable.dispose();
+        }
+        CacheWriter writer = cacheWriter;
+        if (writer != null) {
+            writer.cancel();
+        }
+    }
+}
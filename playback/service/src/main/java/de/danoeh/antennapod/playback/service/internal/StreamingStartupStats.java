@@ -0,0 +1,46 @@
+package de.danoeh.antennapod.playback.service.internal;
+
+import android.util.Log;
+
+/**
+ * Time from preparing a stream until it is ready to play. Streams whose start was already in the cache,
+ * for example because {@link NextEpisodePrefetcher} loaded it, are counted separately from cold starts.
+ */
+public class StreamingStartupStats {
+    private static final String TAG = "StreamingStartupStats";
+
+    private static int numCachedStarts = 0;
+    private static long cachedStartMillis = 0;
+    private static int numColdStarts = 0;
+    private static long coldStartMillis = 0;
+
+    private StreamingStartupStats() {
+    }
+
+    static synchronized void record(boolean startIsCached, long millis) {
+        if (startIsCached) {
+            numCachedStarts++;
+            cachedStartMillis += millis;
+        } else {
+            numColdStarts++;
+            coldStartMillis += millis;
+        }
+        Log.d(TAG, "Stream was ready after " + millis + " ms, start was cached: " + startIsCached
+                + ". Average with cached start: " + getAverageMillis(true) + " ms (" + numCachedStarts
+                + "), cold start: " + getAverageMillis(false) + " ms (" + numColdStarts + ")");
+    }
+
+    /**
+     * @return The average startup time in milliseconds, or 0 if no stream was started that way yet
+     */
+    public static synchronized long getAverageMillis(boolean startIsCached) {
+        if (startIsCached) {
+            return numCachedStarts == 0 ? 0 : cachedStartMillis / numCachedStarts;
+        }
+        return numColdStarts == 0 ? 0 : coldStartMillis / numColdStarts;
+    }
+
+    public static synchronized int getCount(boolean startIsCached) {
+        return startIsCached ? numCachedStarts : numColdStarts;
+    }
+}
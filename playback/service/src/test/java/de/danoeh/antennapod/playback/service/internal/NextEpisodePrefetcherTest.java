@@ -0,0 +1,132 @@
+package de.danoeh.antennapod.playback.service.internal;
+
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import io.reactivex.rxjava3.disposables.Disposable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class NextEpisodePrefetcherTest {
+
+    @Test
+    public void prefetchLengthFollowsBitrate() {
+        // 1 hour at 64 kbit/s
+        FeedMedia media = new FeedMedia(null, "https://example.com/episode.mp3", 28_800_000, "audio/mpeg");
+        media.setDuration(3_600_000);
+        assertEquals(512 * 1024 + 60 * 8000, NextEpisodePrefetcher.getPrefetchLength(media));
+    }
+
+    @Test
+    public void prefetchLengthWithoutSize() {
+        FeedMedia media = new FeedMedia(null, "https://example.com/episode.mp3", 0, "audio/mpeg");
+        media.setDuration(3_600_000);
+        assertEquals(512 * 1024 + 60 * 16_000, NextEpisodePrefetcher.getPrefetchLength(media));
+    }
+
+    @Test
+    public void prefetchesStreamedNextEpisode() {
+        FeedItem nextItem = createNextItem("https://example.com/next.mp3");
+        assertSame(nextItem.getMedia(), NextEpisodePrefetcher.getMediaToPrefetch(nextItem, true, true));
+    }
+
+    @Test
+    public void noPrefetchWithoutFollowQueue() {
+        FeedItem nextItem = createNextItem("https://example.com/next.mp3");
+        assertNull(NextEpisodePrefetcher.getMediaToPrefetch(nextItem, false, true));
+    }
+
+    @Test
+    public void noPrefetchWhenStreamingIsNotAllowed() {
+        FeedItem nextItem = createNextItem("https://example.com/next.mp3");
+        assertNull(NextEpisodePrefetcher.getMediaToPrefetch(nextItem, true, false));
+    }
+
+    @Test
+    public void noPrefetchWhenNextEpisodeIsDownloaded() {
+        FeedItem nextItem = createNextItem("https://example.com/next.mp3");
+        nextItem.getMedia().setLocalFileUrl("/sdcard/next.mp3");
+        nextItem.getMedia().setDownloaded(true, 1000);
+        assertNull(NextEpisodePrefetcher.getMediaToPrefetch(nextItem, true, true));
+    }
+
+    @Test
+    public void noPrefetchWithoutNextEpisode() {
+        assertNull(NextEpisodePrefetcher.getMediaToPrefetch(null, true, true));
+        assertNull(NextEpisodePrefetcher.getMediaToPrefetch(createNextItem("content://episode"), true, true));
+    }
+
+    @Test
+    public void startsOncePerEpisodeCloseToEnd() {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        FeedMedia current = createMedia(1);
+        prefetcher.onPositionUpdate(current, 0, 3_600_000);
+        assertEquals(0, prefetcher.started.size());
+
+        prefetcher.onPositionUpdate(current, 3_500_000, 3_600_000);
+        prefetcher.onPositionUpdate(current, 3_550_000, 3_600_000);
+        assertEquals(1, prefetcher.started.size());
+
+        prefetcher.onPositionUpdate(createMedia(2), 3_500_000, 3_600_000);
+        assertEquals(2, prefetcher.started.size());
+        assertTrue(prefetcher.started.get(0).isDisposed());
+        assertFalse(prefetcher.started.get(1).isDisposed());
+    }
+
+    @Test
+    public void doesNotStartWithoutDuration() {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        prefetcher.onPositionUpdate(createMedia(1), 0, 0);
+        assertEquals(0, prefetcher.started.size());
+    }
+
+    @Test
+    public void cancelStopsPrefetching() {
+        TestPrefetcher prefetcher = new TestPrefetcher();
+        prefetcher.onPositionUpdate(createMedia(1), 3_500_000, 3_600_000);
+        prefetcher.cancel();
+        assertTrue(prefetcher.started.get(0).isDisposed());
+
+        // Cancelling does not make the same episode prefetch again
+        prefetcher.onPositionUpdate(createMedia(1), 3_550_000, 3_600_000);
+        assertEquals(1, prefetcher.started.size());
+    }
+
+    private static FeedItem createNextItem(String url) {
+        FeedItem item = new FeedItem();
+        item.setFeed(new Feed("https://example.com/feed.xml", null));
+        item.setMedia(new FeedMedia(item, url, 28_800_000, "audio/mpeg"));
+        return item;
+    }
+
+    private static FeedMedia createMedia(long id) {
+        FeedMedia media = new FeedMedia(null, "https://example.com/" + id + ".mp3", 0, "audio/mpeg");
+        media.setId(id);
+        return media;
+    }
+
+    private static class TestPrefetcher extends NextEpisodePrefetcher {
+        final List<Disposable> started = new ArrayList<>();
+
+        TestPrefetcher() {
+            super(mock(Context.class));
+        }
+
+        @Override
+        Disposable startPrefetch(FeedMedia current) {
+            Disposable disposable = Disposable.empty();
+            started.add(disposable);
+            return disposable;
+        }
+    }
+}
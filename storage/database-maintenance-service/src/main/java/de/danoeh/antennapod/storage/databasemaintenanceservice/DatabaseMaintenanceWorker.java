@@ -36,6 +36,8 @@ public class DatabaseMaintenanceWorker extends Worker {
         PodDBAdapter adapter = PodDBAdapter.getInstance();
         adapter.open();
         adapter.clearOldDownloadLog();
+        adapter.repairFeedCounters();
+        adapter.repairStatistics();
         adapter.close();
         return Result.success();
     }
@@ -5,18 +5,22 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.collection.ArrayMap;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import de.danoeh.antennapod.model.feed.Chapter;
 import de.danoeh.antennapod.model.feed.Feed;
 import de.danoeh.antennapod.model.feed.FeedCounter;
+import de.danoeh.antennapod.model.feed.FeedFilter;
 import de.danoeh.antennapod.model.feed.FeedItem;
 import de.danoeh.antennapod.model.feed.FeedItemFilter;
 import de.danoeh.antennapod.model.feed.FeedMedia;
@@ -44,6 +48,12 @@ public final class DBReader {
      */
     private static final int DOWNLOAD_LOG_SIZE = 200;
 
+    /**
+     * Number of values per query in {@link #getFeedItemMergeCandidates}. Each value is used in several IN clauses.
+     */
+    private static final int MERGE_CANDIDATE_CHUNK_SIZE = 150;
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
 
     private DBReader() {
     }
@@ -105,8 +115,8 @@ public final class DBReader {
     }
 
     private static void loadTagsOfFeedItemList(List<FeedItem> items) {
-        LongList favoriteIds = getFavoriteIDList();
-        LongList queueIds = getQueueIDList();
+        LongHashSet favoriteIds = LongHashSet.of(getFavoriteIDList());
+        LongHashSet queueIds = LongHashSet.of(getQueueIDList());
 
         for (FeedItem item : items) {
             if (favoriteIds.contains(item.getId())) {
@@ -126,14 +136,10 @@ public final class DBReader {
      * @param items The FeedItems whose Feed-objects should be loaded.
      */
     private static void loadFeedDataOfFeedItemList(List<FeedItem> items) {
-        List<Feed> feeds = getFeedList();
-
-        Map<Long, Feed> feedIndex = new ArrayMap<>(feeds.size());
-        for (Feed feed : feeds) {
-            feedIndex.put(feed.getId(), feed);
-        }
+        FeedCatalog catalog = FeedCatalog.getInstance();
+        Map<Long, Feed> feedCopies = new HashMap<>();
         for (FeedItem item : items) {
-            Feed feed = feedIndex.get(item.getFeedId());
+            Feed feed = copyFeed(catalog, item.getFeedId(), feedCopies);
             if (feed == null) {
                 Log.w(TAG, "No match found for item with ID " + item.getId() + ". Feed ID was " + item.getFeedId());
                 feed = new Feed("", "", "Error: Item without feed");
@@ -142,6 +148,23 @@ public final class DBReader {
         }
     }
 
+    /**
+     * Copies the feed from the catalog, once for all episodes of a list that belong to it.
+     */
+    @Nullable
+    private static Feed copyFeed(FeedCatalog catalog, long feedId, Map<Long, Feed> feedCopies) {
+        Feed copy = feedCopies.get(feedId);
+        if (copy == null) {
+            Feed feed = catalog.getFeed(feedId);
+            if (feed == null) {
+                return null;
+            }
+            copy = FeedCatalog.copyOf(feed);
+            feedCopies.put(feedId, copy);
+        }
+        return copy;
+    }
+
     /**
      * Loads the list of FeedItems for a certain Feed-object.
      * This method should NOT be used if the FeedItems are not used.
@@ -272,6 +295,53 @@ public final class DBReader {
         }
     }
 
+    /**
+     * Loads a page of episodes, starting after the last episode of the previous page. Unlike
+     * {@link #getEpisodes(int, int, FeedItemFilter, SortOrder)}, loading a page takes the same time
+     * no matter how many pages were loaded before it.
+     *
+     * @param lastItem The last episode of the previous page, or null to load the first page.
+     * @param limit The maximum number of episodes that should be loaded.
+     * @param filter The filter describing which episodes to filter out.
+     */
+    @NonNull
+    public static List<FeedItem> getEpisodesAfter(@Nullable FeedItem lastItem, int limit,
+                                                  FeedItemFilter filter, SortOrder sortOrder) {
+        Log.d(TAG, "getEpisodesAfter() called with: lastItem=" + (lastItem != null ? lastItem.getId() : 0)
+                + ", limit=" + limit);
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try (FeedItemCursor cursor = new FeedItemCursor(
+                adapter.getEpisodesAfterCursor(lastItem, limit, filter, sortOrder))) {
+            List<FeedItem> items = extractItemlistFromCursor(cursor);
+            loadAdditionalFeedItemListData(items);
+            return items;
+        } finally {
+            adapter.close();
+        }
+    }
+
+    /**
+     * Like {@link #getEpisodesAfter}, but for showing the episodes in a list. The link, payment link and
+     * chapter URL of the episodes are not loaded. Use {@link #getFeedItem(long)} when an episode is opened.
+     */
+    @NonNull
+    public static List<FeedItem> getEpisodeRowsAfter(@Nullable FeedItem lastItem, int limit,
+                                                     FeedItemFilter filter, SortOrder sortOrder) {
+        Log.d(TAG, "getEpisodeRowsAfter() called with: lastItem=" + (lastItem != null ? lastItem.getId() : 0)
+                + ", limit=" + limit);
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try (FeedItemCursor cursor = new FeedItemCursor(
+                adapter.getEpisodeRowsAfterCursor(lastItem, limit, filter, sortOrder))) {
+            List<FeedItem> items = extractItemlistFromCursor(cursor);
+            loadAdditionalFeedItemListData(items);
+            return items;
+        } finally {
+            adapter.close();
+        }
+    }
+
     public static int getTotalEpisodeCount(FeedItemFilter filter) {
         PodDBAdapter adapter = PodDBAdapter.getInstance();
         adapter.open();
@@ -417,6 +487,51 @@ public final class DBReader {
         return null;
     }
 
+    /**
+     * Loads the IDs of the episodes that can be downloaded automatically, in the order in which they should
+     * be downloaded: new episodes of feeds with automatic downloads that pass the feed's filter, newest first,
+     * followed by the queue.
+     *
+     * @param autoDownloadGlobal Whether feeds that use the global setting should download automatically
+     * @param includeQueue       Whether episodes in the queue should be downloaded
+     */
+    @NonNull
+    public static LongList getAutoDownloadCandidateIds(boolean autoDownloadGlobal, boolean includeQueue) {
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try {
+            LongList candidates = new LongList();
+            LongHashSet candidateSet = new LongHashSet();
+            Map<Long, FeedFilter> filters = new HashMap<>();
+            try (Cursor cursor = adapter.getAutoDownloadNewEpisodesCursor(autoDownloadGlobal)) {
+                while (cursor.moveToNext()) {
+                    long feedId = cursor.getLong(3);
+                    FeedFilter filter = filters.get(feedId);
+                    if (filter == null) {
+                        filter = new FeedFilter(cursor.getString(4), cursor.getString(5), cursor.getInt(6));
+                        filters.put(feedId, filter);
+                    }
+                    String title = cursor.isNull(1) ? "" : cursor.getString(1);
+                    if (filter.shouldAutoDownload(title, cursor.getInt(2)) && candidateSet.add(cursor.getLong(0))) {
+                        candidates.add(cursor.getLong(0));
+                    }
+                }
+            }
+            if (includeQueue) {
+                try (Cursor cursor = adapter.getAutoDownloadQueuedEpisodesCursor()) {
+                    while (cursor.moveToNext()) {
+                        if (candidateSet.add(cursor.getLong(0))) {
+                            candidates.add(cursor.getLong(0));
+                        }
+                    }
+                }
+            }
+            return candidates;
+        } finally {
+            adapter.close();
+        }
+    }
+
     /**
      * Get next feed item in queue following a particular feeditem
      *
@@ -478,6 +593,66 @@ public final class DBReader {
         }
     }
 
+    /**
+     * Like {@link #getFeedItemByGuidOrEpisodeUrl}, for many episodes at once. All GUIDs and episode URLs
+     * are looked up with a few queries, each item is only loaded once.
+     *
+     * @param guids The GUID of each episode, or null to find the episode by its URL
+     * @param episodeUrls The media URL of each episode
+     * @return The item of each episode, or null if it is not in the database, in the same order as the parameters
+     */
+    @NonNull
+    public static List<FeedItem> getFeedItemsByGuidOrEpisodeUrl(List<String> guids, List<String> episodeUrls) {
+        Set<String> guidSet = new LinkedHashSet<>();
+        Set<String> episodeUrlSet = new LinkedHashSet<>();
+        for (int i = 0; i < guids.size(); i++) {
+            if (guids.get(i) != null) {
+                guidSet.add(guids.get(i));
+            } else if (episodeUrls.get(i) != null) {
+                episodeUrlSet.add(episodeUrls.get(i));
+            }
+        }
+        Map<String, FeedItem> itemsByGuid = new HashMap<>();
+        Map<String, FeedItem> itemsByEpisodeUrl = new HashMap<>();
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try {
+            List<String> guidList = new ArrayList<>(guidSet);
+            for (int i = 0; i < guidList.size(); i += LOOKUP_CHUNK_SIZE) {
+                List<String> chunk = guidList.subList(i, Math.min(guidList.size(), i + LOOKUP_CHUNK_SIZE));
+                try (FeedItemCursor cursor = new FeedItemCursor(adapter.getFeedItemCursorByGuids(chunk))) {
+                    while (cursor.moveToNext()) {
+                        FeedItem item = cursor.getFeedItem();
+                        if (!itemsByGuid.containsKey(item.getItemIdentifier())) {
+                            itemsByGuid.put(item.getItemIdentifier(), item);
+                        }
+                    }
+                }
+            }
+            List<String> urlList = new ArrayList<>(episodeUrlSet);
+            for (int i = 0; i < urlList.size(); i += LOOKUP_CHUNK_SIZE) {
+                List<String> chunk = urlList.subList(i, Math.min(urlList.size(), i + LOOKUP_CHUNK_SIZE));
+                try (FeedItemCursor cursor = new FeedItemCursor(adapter.getFeedItemCursorByUrl(chunk))) {
+                    while (cursor.moveToNext()) {
+                        FeedItem item = cursor.getFeedItem();
+                        String url = item.getMedia() != null ? item.getMedia().getDownloadUrl() : null;
+                        if (url != null && !itemsByEpisodeUrl.containsKey(url)) {
+                            itemsByEpisodeUrl.put(url, item);
+                        }
+                    }
+                }
+            }
+        } finally {
+            adapter.close();
+        }
+        List<FeedItem> result = new ArrayList<>(guids.size());
+        for (int i = 0; i < guids.size(); i++) {
+            String guid = guids.get(i);
+            result.add(guid != null ? itemsByGuid.get(guid) : itemsByEpisodeUrl.get(episodeUrls.get(i)));
+        }
+        return result;
+    }
+
     /**
      * Loads shownotes information about a FeedItem.
      *
@@ -549,6 +724,71 @@ public final class DBReader {
         }
     }
 
+    /**
+     * Loads the items of a feed that might be the same episodes as the given new items. These are the only
+     * saved items that {@link FeedDatabaseWriter} looks at when merging a refreshed feed incrementally.
+     *
+     * @return The candidates, most recent first. The Feed-attribute of the items is set to the given feed.
+     */
+    static List<FeedItem> getFeedItemMergeCandidates(final Feed feed, List<FeedItem> newItems) {
+        Set<String> values = new LinkedHashSet<>();
+        for (FeedItem item : newItems) {
+            addIfNotEmpty(values, item.getIdentifyingValue());
+            addIfNotEmpty(values, item.getTitle());
+            addIfNotEmpty(values, FeedItemDuplicateGuesser.canonicalizeTitle(item.getTitle()));
+            if (item.getMedia() != null) {
+                addIfNotEmpty(values, item.getMedia().getStreamUrl());
+            }
+        }
+        List<String> valueList = new ArrayList<>(values);
+        Map<Long, FeedItem> candidates = new LinkedHashMap<>();
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try {
+            for (int i = 0; i < valueList.size(); i += MERGE_CANDIDATE_CHUNK_SIZE) {
+                List<String> chunk = valueList.subList(i, Math.min(valueList.size(), i + MERGE_CANDIDATE_CHUNK_SIZE));
+                try (FeedItemCursor cursor = new FeedItemCursor(
+                        adapter.getFeedItemCandidatesCursor(feed.getId(), chunk))) {
+                    while (cursor.moveToNext()) {
+                        FeedItem item = cursor.getFeedItem();
+                        if (!candidates.containsKey(item.getId())) {
+                            item.setFeed(feed);
+                            candidates.put(item.getId(), item);
+                        }
+                    }
+                }
+            }
+        } finally {
+            adapter.close();
+        }
+        List<FeedItem> result = new ArrayList<>(candidates.values());
+        Collections.sort(result, new FeedItemPubdateComparator());
+        return result;
+    }
+
+    private static void addIfNotEmpty(Set<String> values, @Nullable String value) {
+        if (value != null && !value.isEmpty()) {
+            values.add(value);
+        }
+    }
+
+    /**
+     * Returns the publication date of the most recent item of the feed, or null if no item has a date.
+     */
+    @Nullable
+    static Date getMostRecentPubDate(long feedId) {
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try (Cursor cursor = adapter.getMostRecentPubDateCursor(feedId)) {
+            if (cursor.moveToFirst() && !cursor.isNull(0) && cursor.getLong(0) > 0) {
+                return new Date(cursor.getLong(0));
+            }
+            return null;
+        } finally {
+            adapter.close();
+        }
+    }
+
     public static List<FeedItem> getFeedItemsWithUrl(List<String> urls) {
         PodDBAdapter adapter = PodDBAdapter.getInstance();
         adapter.open();
@@ -632,7 +872,6 @@ public final class DBReader {
         long sixMonthsAgo = System.currentTimeMillis() - (long) (1000L * 3600 * 24 * 30.44 * 6);
         try (FeedCursor cursor = new FeedCursor(adapter.getFeedStatisticsCursor(
                 includeMarkedAsPlayed, timeFilterFrom, timeFilterTo, sixMonthsAgo))) {
-            int indexOldestDate = cursor.getColumnIndexOrThrow("oldest_date");
             int indexNumEpisodes = cursor.getColumnIndexOrThrow("num_episodes");
             int indexEpisodesStarted = cursor.getColumnIndexOrThrow("episodes_started");
             int indexTotalTime = cursor.getColumnIndexOrThrow("total_time");
@@ -650,17 +889,16 @@ public final class DBReader {
                 long episodesStarted = cursor.getLong(indexEpisodesStarted);
                 long totalDownloadSize = cursor.getLong(indexDownloadSize);
                 long episodesDownloadCount = cursor.getLong(indexNumDownloaded);
-                long oldestDate = cursor.getLong(indexOldestDate);
                 boolean hasRecentUnplayed = cursor.getLong(indexNumRecentUnplayed) > 0;
 
-                if (episodes > 0 && oldestDate < Long.MAX_VALUE) {
-                    result.oldestDate = Math.min(result.oldestDate, oldestDate);
-                }
-
                 result.feedTime.add(new StatisticsItem(feed, feedTotalTime, feedPlayedTime, episodes,
                         episodesStarted, totalDownloadSize, episodesDownloadCount, hasRecentUnplayed));
             }
         }
+        long oldestDate = adapter.getOldestPlaybackTime();
+        if (oldestDate < Long.MAX_VALUE) {
+            result.oldestDate = Math.min(result.oldestDate, oldestDate);
+        }
         adapter.close();
         return result;
     }
@@ -688,7 +926,7 @@ public final class DBReader {
         adapter.open();
 
         final Map<Long, Integer> feedCounters = adapter.getFeedCounters(feedCounter);
-        List<Feed> allFeeds = getFeedList();
+        List<Feed> allFeeds = FeedCatalog.getInstance().copyFeeds();
         List<Feed> typeFilteredFeeds = new ArrayList<>();
         for (Feed feed : allFeeds) {
             if (feed.getState() == feedState) {
@@ -703,9 +941,10 @@ public final class DBReader {
         Comparator<Feed> comparator;
         switch (feedOrder) {
             case COUNTER:
+                final LongIntMap counters = LongIntMap.of(feedCounters);
                 comparator = (lhs, rhs) -> {
-                    long counterLhs = feedCounters.containsKey(lhs.getId()) ? feedCounters.get(lhs.getId()) : 0;
-                    long counterRhs = feedCounters.containsKey(rhs.getId()) ? feedCounters.get(rhs.getId()) : 0;
+                    long counterLhs = counters.get(lhs.getId(), 0);
+                    long counterRhs = counters.get(rhs.getId(), 0);
                     if (counterLhs > counterRhs) {
                         // reverse natural order: podcast with most unplayed episodes first
                         return -1;
@@ -730,10 +969,10 @@ public final class DBReader {
                 };
                 break;
             case MOST_PLAYED:
-                final Map<Long, Integer> playedCounters = adapter.getPlayedEpisodesCounters();
+                final LongIntMap playedCounters = LongIntMap.of(adapter.getPlayedEpisodesCounters());
                 comparator = (lhs, rhs) -> {
-                    long counterLhs = playedCounters.containsKey(lhs.getId()) ? playedCounters.get(lhs.getId()) : 0;
-                    long counterRhs = playedCounters.containsKey(rhs.getId()) ? playedCounters.get(rhs.getId()) : 0;
+                    long counterLhs = playedCounters.get(lhs.getId(), 0);
+                    long counterRhs = playedCounters.get(rhs.getId(), 0);
                     if (counterLhs > counterRhs) {
                         // podcast with most played episodes first
                         return -1;
@@ -756,8 +995,8 @@ public final class DBReader {
 
         Collections.sort(feeds, comparator);
         final int queueSize = adapter.getQueueSize();
-        final int numNewItems = getTotalEpisodeCount(new FeedItemFilter(FeedItemFilter.NEW));
-        final int numDownloadedItems = getTotalEpisodeCount(new FeedItemFilter(FeedItemFilter.DOWNLOADED));
+        final int numNewItems = adapter.getTotalFeedCounter(FeedCounter.SHOW_NEW);
+        final int numDownloadedItems = adapter.getTotalFeedCounter(FeedCounter.SHOW_DOWNLOADED);
 
         NavDrawerData.TagItem untaggedTag = new NavDrawerData.TagItem(FeedPreferences.TAG_UNTAGGED);
         Map<String, NavDrawerData.TagItem> tags = new HashMap<>();
@@ -789,7 +1028,7 @@ public final class DBReader {
 
     public static List<NavDrawerData.TagItem> getAllTags(int feedState) {
         Map<String, NavDrawerData.TagItem> tags = new HashMap<>();
-        List<Feed> allFeeds = getFeedList();
+        List<Feed> allFeeds = FeedCatalog.getInstance().copyFeeds();
         List<Feed> feeds = new ArrayList<>();
         for (Feed feed : allFeeds) {
             if (feed.getState() == feedState) {
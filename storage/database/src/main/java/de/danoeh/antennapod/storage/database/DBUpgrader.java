@@ -355,6 +355,26 @@ class DBUpgrader {
             db.execSQL("DELETE FROM " + PodDBAdapter.TABLE_NAME_FAVORITES + " WHERE " + PodDBAdapter.KEY_FEEDITEM
                     + " NOT IN (SELECT " + PodDBAdapter.KEY_ID + " FROM " + PodDBAdapter.TABLE_NAME_FEED_ITEMS + ")");
         }
+        if (oldVersion < 3120000) {
+            db.execSQL("ALTER TABLE " + PodDBAdapter.TABLE_NAME_FEEDS
+                    + " ADD COLUMN " + PodDBAdapter.KEY_CONTENT_HASH + " TEXT");
+        }
+        if (oldVersion < 3130000) {
+            SearchIndex.create(db);
+            SearchIndex.rebuild(db);
+        }
+        if (oldVersion < 3140000) {
+            FeedCounterTable.create(db);
+            FeedCounterTable.rebuild(db);
+        }
+        if (oldVersion < 3150000) {
+            db.execSQL(PodDBAdapter.CREATE_INDEX_FEEDMEDIA_LAST_PLAYED_TIME);
+            StatisticsTable.create(db);
+            StatisticsTable.rebuild(db);
+        }
+        if (oldVersion < 3160000) {
+            StatisticsTable.recreateMediaUpdateTriggers(db);
+        }
     }
 
 }
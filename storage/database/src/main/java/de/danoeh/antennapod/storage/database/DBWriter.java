@@ -30,9 +30,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
 
 import de.danoeh.antennapod.event.FavoritesEvent;
@@ -58,20 +57,25 @@ import de.danoeh.antennapod.net.sync.serviceinterface.EpisodeAction;
  * In general, DBWriter-methods will be executed on an internal ExecutorService.
  * Some methods return a Future-object which the caller can use for waiting for the method's completion. The returned Future's
  * will NOT contain any results.
+ * Small writes that happen often, like playback positions, are collected by a {@link WriteCoalescer}
+ * and committed in batches.
  */
 public class DBWriter {
 
     private static final String TAG = "DBWriter";
 
-    private static final ExecutorService dbExec;
+    private static final ScheduledThreadPoolExecutor dbExec;
+    private static final WriteCoalescer writeCoalescer;
 
     static {
-        dbExec = Executors.newSingleThreadExecutor(r -> {
+        dbExec = new ScheduledThreadPoolExecutor(1, r -> {
             Thread t = new Thread(r);
             t.setName("DatabaseExecutor");
             t.setPriority(Thread.MIN_PRIORITY);
             return t;
         });
+        dbExec.setRemoveOnCancelPolicy(true);
+        writeCoalescer = new WriteCoalescer(dbExec);
     }
 
     private DBWriter() {
@@ -89,7 +93,10 @@ public class DBWriter {
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-        dbExec.submit(() -> available.release());
+        dbExec.submit(() -> {
+            writeCoalescer.flush();
+            available.release();
+        });
         try {
             available.acquire();
         } catch (InterruptedException e) {
@@ -213,11 +220,13 @@ public class DBWriter {
      * Deleting media also removes the download log entries.
      */
     private static void deleteFeedItemsSynchronous(@NonNull Context context, @NonNull List<FeedItem> items) {
-        List<FeedItem> queue = DBReader.getQueue();
+        LongHashSet queueIds = LongHashSet.of(DBReader.getQueueIDList());
         List<FeedItem> removedFromQueue = new ArrayList<>();
+        LongList removedFromQueueIds = new LongList();
         for (FeedItem item : items) {
-            if (queue.remove(item)) {
+            if (queueIds.contains(item.getId())) {
                 removedFromQueue.add(item);
+                removedFromQueueIds.add(item.getId());
             }
             if (item.getMedia() != null) {
                 if (item.getMedia().getId() == PlaybackPreferences.getCurrentlyPlayingFeedMediaId()) {
@@ -238,9 +247,7 @@ public class DBWriter {
 
         PodDBAdapter adapter = PodDBAdapter.getInstance();
         adapter.open();
-        if (!removedFromQueue.isEmpty()) {
-            adapter.setQueue(queue);
-        }
+        adapter.removeQueueItems(removedFromQueueIds.toArray());
         adapter.removeFeedItems(items);
         adapter.close();
 
@@ -326,14 +333,7 @@ public class DBWriter {
      * @param status The DownloadStatus object.
      */
     public static Future<?> addDownloadStatus(final DownloadResult status) {
-        return runOnDbThread(() -> {
-            PodDBAdapter adapter = PodDBAdapter.getInstance();
-            adapter.open();
-            adapter.setDownloadStatus(status);
-            adapter.close();
-            EventBus.getDefault().post(DownloadLogEvent.listUpdated());
-        });
-
+        return writeCoalescer.addDownloadStatus(status);
     }
 
     /**
@@ -343,19 +343,16 @@ public class DBWriter {
      * @param context             A context that is used for opening a database connection.
      * @param itemId              ID of the FeedItem that should be added to the queue.
      * @param index               Destination index. Must be in range 0..queue.size()
-     * @throws IndexOutOfBoundsException if index < 0 || index >= queue.size()
      */
     public static Future<?> addQueueItemAt(final Context context, final long itemId, final int index) {
         return runOnDbThread(() -> {
             final PodDBAdapter adapter = PodDBAdapter.getInstance();
             adapter.open();
-            final List<FeedItem> queue = DBReader.getQueue();
 
-            if (!itemListContains(queue, itemId)) {
+            if (!DBReader.getQueueIDList().contains(itemId)) {
                 FeedItem item = DBReader.getFeedItem(itemId);
                 if (item != null) {
-                    queue.add(index, item);
-                    adapter.setQueue(queue);
+                    adapter.addQueueItem(index, item);
                     item.addTag(FeedItem.TAG_QUEUE);
                     EventBus.getDefault().post(QueueEvent.added(item, index));
                     EventBus.getDefault().post(FeedItemEvent.updated(item));
@@ -386,6 +383,10 @@ public class DBWriter {
             final PodDBAdapter adapter = PodDBAdapter.getInstance();
             adapter.open();
             final List<FeedItem> queue = DBReader.getQueue();
+            LongHashSet queueIds = new LongHashSet(queue.size() + items.length);
+            for (FeedItem item : queue) {
+                queueIds.add(item.getId());
+            }
 
             LongList markAsUnplayedIds = new LongList();
             List<QueueEvent> events = new ArrayList<>();
@@ -395,12 +396,13 @@ public class DBWriter {
             Playable currentlyPlaying = DBReader.getFeedMedia(PlaybackPreferences.getCurrentlyPlayingFeedMediaId());
             int insertPosition = positionCalculator.calcPosition(queue, currentlyPlaying);
             for (FeedItem item : items) {
-                if (itemListContains(queue, item.getId())) {
+                if (queueIds.contains(item.getId())) {
                     continue;
                 } else if (!item.hasMedia()) {
                     continue;
                 }
                 queue.add(insertPosition, item);
+                queueIds.add(item.getId());
                 events.add(QueueEvent.added(item, insertPosition));
 
                 item.addTag(FeedItem.TAG_QUEUE);
@@ -411,8 +413,14 @@ public class DBWriter {
                 insertPosition++;
             }
             if (!updatedItems.isEmpty()) {
-                applySortOrder(queue, events);
-                adapter.setQueue(queue);
+                if (applySortOrder(queue, events)) {
+                    adapter.setQueue(queue);
+                } else {
+                    // Only the ADDED events are left, in the order in which the items were inserted
+                    for (QueueEvent event : events) {
+                        adapter.addQueueItem(event.position, event.item);
+                    }
+                }
                 for (QueueEvent event : events) {
                     EventBus.getDefault().post(event);
                 }
@@ -432,18 +440,19 @@ public class DBWriter {
      *
      * @param queue  The queue to be sorted.
      * @param events Replaces the events by a single SORT event if the list has to be sorted automatically.
+     * @return true if the queue was sorted
      */
-    private static void applySortOrder(List<FeedItem> queue, List<QueueEvent> events) {
+    private static boolean applySortOrder(List<FeedItem> queue, List<QueueEvent> events) {
         if (!UserPreferences.isQueueKeepSorted()) {
             // queue is not in keep sorted mode, there's nothing to do
-            return;
+            return false;
         }
 
         // Sort queue by configured sort order
         SortOrder sortOrder = UserPreferences.getQueueKeepSortedOrder();
         if (sortOrder == SortOrder.RANDOM) {
             // do not shuffle the list on every change
-            return;
+            return false;
         }
         Permutor<FeedItem> permutor = FeedItemPermutors.getPermutor(sortOrder);
         permutor.reorder(queue);
@@ -451,6 +460,7 @@ public class DBWriter {
         // Replace ADDED events by a single SORTED event
         events.clear();
         events.add(QueueEvent.sorted(queue));
+        return true;
     }
 
     /**
@@ -492,21 +502,22 @@ public class DBWriter {
         }
         final PodDBAdapter adapter = PodDBAdapter.getInstance();
         adapter.open();
-        final List<FeedItem> queue = DBReader.getQueue();
+        final LongHashSet queueIds = LongHashSet.of(DBReader.getQueueIDList());
 
         boolean queueModified = false;
         List<QueueEvent> events = new ArrayList<>();
         List<FeedItem> updatedItems = new ArrayList<>();
+        LongList removedIds = new LongList();
         for (long itemId : itemIds) {
-            int position = indexInItemList(queue, itemId);
-            if (position >= 0) {
+            if (queueIds.contains(itemId)) {
                 final FeedItem item = DBReader.getFeedItem(itemId);
                 if (item == null) {
                     Log.e(TAG, "removeQueueItem - item in queue but somehow cannot be loaded."
                             + " Item ignored. It should never happen. id:" + itemId);
                     continue;
                 }
-                queue.remove(position);
+                queueIds.remove(itemId);
+                removedIds.add(itemId);
                 item.removeTag(FeedItem.TAG_QUEUE);
                 events.add(QueueEvent.removed(item));
                 updatedItems.add(item);
@@ -516,7 +527,7 @@ public class DBWriter {
             }
         }
         if (queueModified) {
-            adapter.setQueue(queue);
+            adapter.removeQueueItems(removedIds.toArray());
             for (QueueEvent event : events) {
                 EventBus.getDefault().post(event);
             }
@@ -573,15 +584,13 @@ public class DBWriter {
         return runOnDbThread(() -> {
             final PodDBAdapter adapter = PodDBAdapter.getInstance();
             adapter.open();
-            final List<FeedItem> queue = DBReader.getQueue();
+            final LongList queueIds = DBReader.getQueueIDList();
 
-            if (from >= 0 && from < queue.size() && to >= 0 && to < queue.size()) {
-                final FeedItem item = queue.remove(from);
-                queue.add(to, item);
-
-                adapter.setQueue(queue);
+            if (from >= 0 && from < queueIds.size() && to >= 0 && to < queueIds.size()) {
+                final long itemId = queueIds.get(from);
+                adapter.moveQueueItem(itemId, to);
                 if (broadcastUpdate) {
-                    EventBus.getDefault().post(QueueEvent.moved(item, to));
+                    EventBus.getDefault().post(QueueEvent.moved(DBReader.getFeedItem(itemId), to));
                 }
             }
             adapter.close();
@@ -613,6 +622,10 @@ public class DBWriter {
         boolean queueModified = false;
         List<QueueEvent> events = new ArrayList<>();
 
+        LongHashSet queuedIds = new LongHashSet(queue.size());
+        for (FeedItem item : queue) {
+            queuedIds.add(item.getId());
+        }
         queue.removeAll(selectedItems);
         events.add(QueueEvent.setQueue(queue));
 
@@ -624,7 +637,15 @@ public class DBWriter {
         }
 
         if (queueModified) {
-            adapter.setQueue(queue);
+            for (FeedItem item : selectedItems) {
+                int index = moveToTop ? 0 : Integer.MAX_VALUE;
+                if (queuedIds.contains(item.getId())) {
+                    adapter.moveQueueItem(item.getId(), index);
+                } else {
+                    // Selected items that are not in the queue are added, matching the events
+                    adapter.addQueueItem(index, item);
+                }
+            }
             for (QueueEvent event : events) {
                 EventBus.getDefault().post(event);
             }
@@ -665,15 +686,7 @@ public class DBWriter {
      */
     public static Future<?> markItemPlayed(final int played, final boolean broadcastUpdate,
                                            final long... itemIds) {
-        return runOnDbThread(() -> {
-            final PodDBAdapter adapter = PodDBAdapter.getInstance();
-            adapter.open();
-            adapter.setFeedItemRead(played, itemIds);
-            adapter.close();
-            if (broadcastUpdate) {
-                EventBus.getDefault().post(new UnreadItemsUpdateEvent());
-            }
-        });
+        return writeCoalescer.markItemPlayed(played, broadcastUpdate, itemIds);
     }
 
     /**
@@ -753,6 +766,31 @@ public class DBWriter {
         });
     }
 
+    /**
+     * Runs the given writes on the database thread, each in its own transaction. DBWriter methods called from a
+     * runnable are executed synchronously as part of its transaction. A runnable that throws is rolled back
+     * without affecting the others. A single transaction with a savepoint per runnable is not possible:
+     * SQLiteDatabase has no savepoint API and handles a ROLLBACK TO statement like a rollback of the whole
+     * transaction. The writes still share one task on the database thread and one open database.
+     *
+     * @param committed Receives for each runnable whether its transaction was committed
+     */
+    static Future<?> runInSeparateTransactions(final List<Runnable> runnables, final boolean[] committed) {
+        return runOnDbThread(() -> {
+            PodDBAdapter adapter = PodDBAdapter.getInstance();
+            adapter.open();
+            for (int i = 0; i < runnables.size(); i++) {
+                try {
+                    adapter.runInTransaction(runnables.get(i));
+                    committed[i] = true;
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Rolled back transaction: " + Log.getStackTraceString(e));
+                }
+            }
+            adapter.close();
+        });
+    }
+
     public static Future<?> setItemList(final List<FeedItem> items) {
         return runOnDbThread(() -> {
             PodDBAdapter adapter = PodDBAdapter.getInstance();
@@ -763,6 +801,23 @@ public class DBWriter {
         });
     }
 
+    /**
+     * Saves the items like {@link #setItemList} and removes some of them from the queue, in a single transaction.
+     */
+    public static Future<?> setItemListAndRemoveQueueItems(final Context context, final List<FeedItem> items,
+                                                           final long... queueItemIds) {
+        return runOnDbThread(() -> {
+            PodDBAdapter adapter = PodDBAdapter.getInstance();
+            adapter.open();
+            adapter.runInTransaction(() -> {
+                removeQueueItemSynchronous(context, false, queueItemIds);
+                adapter.storeFeedItemlist(items);
+            });
+            adapter.close();
+            EventBus.getDefault().post(FeedItemEvent.updated(items));
+        });
+    }
+
     /**
      * Saves a FeedMedia object in the database. This method will save all attributes of the FeedMedia object. The
      * contents of FeedComponent-attributes (e.g. the FeedMedia's 'item'-attribute) will not be saved.
@@ -784,12 +839,7 @@ public class DBWriter {
      * @param media The FeedMedia object.
      */
     public static Future<?> setFeedMediaPlaybackInformation(final FeedMedia media) {
-        return runOnDbThread(() -> {
-            PodDBAdapter adapter = PodDBAdapter.getInstance();
-            adapter.open();
-            adapter.setFeedMediaPlaybackInformation(media);
-            adapter.close();
-        });
+        return writeCoalescer.setFeedMediaPlaybackInformation(media);
     }
 
     /**
@@ -836,20 +886,6 @@ public class DBWriter {
         });
     }
 
-    private static boolean itemListContains(List<FeedItem> items, long itemId) {
-        return indexInItemList(items, itemId) >= 0;
-    }
-
-    private static int indexInItemList(List<FeedItem> items, long itemId) {
-        for (int i = 0; i < items.size(); i++) {
-            FeedItem item = items.get(i);
-            if (item.getId() == itemId) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     /**
      * Saves if a feed's last update failed
      *
@@ -866,6 +902,21 @@ public class DBWriter {
         });
     }
 
+    /**
+     * Updates the refresh time of a feed whose downloaded content did not change since the last refresh.
+     *
+     * @param lastModified The Last-Modified or ETag header of the download
+     */
+    public static Future<?> setFeedRefreshedUnchanged(final long feedId, final String lastModified) {
+        return runOnDbThread(() -> {
+            PodDBAdapter adapter = PodDBAdapter.getInstance();
+            adapter.open();
+            adapter.setFeedRefreshedUnchanged(feedId, lastModified);
+            adapter.close();
+            EventBus.getDefault().post(new FeedListUpdateEvent(feedId));
+        });
+    }
+
     public static Future<?> setFeedCustomTitle(Feed feed) {
         return runOnDbThread(() -> {
             PodDBAdapter adapter = PodDBAdapter.getInstance();
@@ -1010,11 +1061,29 @@ public class DBWriter {
      * just execute synchronously
      */
     private static Future<?> runOnDbThread(Runnable runnable) {
-        if ("DatabaseExecutor".equals(Thread.currentThread().getName())) {
+        if (isOnDbThread()) {
+            writeCoalescer.flush();
             runnable.run();
             return Futures.immediateFuture(null);
         } else {
-            return dbExec.submit(runnable);
+            // Coalesced writes that were submitted before this one need to be committed first
+            WriteCoalescer.Batch pendingWrites = writeCoalescer.takePending();
+            return dbExec.submit(() -> {
+                writeCoalescer.commit(pendingWrites);
+                runnable.run();
+            });
         }
     }
+
+    static boolean isOnDbThread() {
+        return "DatabaseExecutor".equals(Thread.currentThread().getName());
+    }
+
+    /**
+     * Returns how many writes wait for the database and how long committing them took.
+     */
+    @NonNull
+    public static WriteQueueStats getWriteQueueStats() {
+        return writeCoalescer.getStats(dbExec.getQueue().size());
+    }
 }
@@ -0,0 +1,131 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.text.TextUtils;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedFilter;
+import de.danoeh.antennapod.model.feed.FeedFunding;
+import de.danoeh.antennapod.model.feed.FeedPreferences;
+import de.danoeh.antennapod.storage.database.mapper.FeedCursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps all feeds in memory, so that loading a list of episodes does not need to load all feeds each time.
+ * The Feed objects are shared between all readers and must not be modified, so DBReader hands out copies.
+ * PodDBAdapter invalidates the catalog whenever it writes to the feeds table.
+ */
+final class FeedCatalog {
+    private static final Object lock = new Object();
+    private static long generation = 0;
+    private static volatile FeedCatalog instance;
+
+    private final List<Feed> feeds;
+    private final Map<Long, Feed> feedsById;
+    private final Map<String, Feed> feedsByIdentifyingValue;
+
+    private FeedCatalog(List<Feed> feeds) {
+        this.feeds = Collections.unmodifiableList(feeds);
+        feedsById = new HashMap<>(feeds.size());
+        feedsByIdentifyingValue = new HashMap<>(feeds.size());
+        for (Feed feed : feeds) {
+            feedsById.put(feed.getId(), feed);
+            String identifyingValue = feed.getIdentifyingValue();
+            if (!feedsByIdentifyingValue.containsKey(identifyingValue)) {
+                feedsByIdentifyingValue.put(identifyingValue, feed);
+            }
+        }
+    }
+
+    @NonNull
+    static FeedCatalog getInstance() {
+        FeedCatalog catalog = instance;
+        if (catalog != null) {
+            return catalog;
+        }
+        long loadedGeneration;
+        synchronized (lock) {
+            loadedGeneration = generation;
+        }
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        // Feeds read inside an open transaction might still be rolled back, so they are not kept
+        final boolean uncommitted = adapter.isInTransaction();
+        List<Feed> feeds = new ArrayList<>();
+        // Waits for write transactions on other threads, which invalidate the catalog before they commit
+        adapter.runInTransaction(() -> {
+            try (FeedCursor cursor = new FeedCursor(adapter.getAllFeedsCursor())) {
+                while (cursor.moveToNext()) {
+                    feeds.add(cursor.getFeed());
+                }
+            }
+        });
+        adapter.close();
+        catalog = new FeedCatalog(feeds);
+        synchronized (lock) {
+            if (generation == loadedGeneration && !uncommitted) {
+                instance = catalog;
+            }
+        }
+        return catalog;
+    }
+
+    static void invalidate() {
+        synchronized (lock) {
+            generation++;
+            instance = null;
+        }
+    }
+
+    /**
+     * @return Copies of all feeds that may be modified, ordered by title
+     */
+    @NonNull
+    List<Feed> copyFeeds() {
+        List<Feed> copies = new ArrayList<>(feeds.size());
+        for (Feed feed : feeds) {
+            copies.add(copyOf(feed));
+        }
+        return copies;
+    }
+
+    @Nullable
+    Feed getFeed(long feedId) {
+        return feedsById.get(feedId);
+    }
+
+    @Nullable
+    Feed getFeedByIdentifyingValue(String identifyingValue) {
+        return feedsByIdentifyingValue.get(identifyingValue);
+    }
+
+    /**
+     * Copies the attributes that are stored in the feeds table, like {@link FeedCursor} reads them.
+     */
+    @NonNull
+    static Feed copyOf(Feed feed) {
+        String filter = feed.getItemFilter() != null ? TextUtils.join(",", feed.getItemFilter().getValues()) : null;
+        Feed copy = new Feed(feed.getId(), feed.getLastModified(), feed.getFeedTitle(), feed.getCustomTitle(),
+                feed.getLink(), feed.getDescription(), FeedFunding.getPaymentLinksAsString(feed.getPaymentLinks()),
+                feed.getAuthor(), feed.getLanguage(), feed.getType(), feed.getFeedIdentifier(), feed.getImageUrl(),
+                feed.getLocalFileUrl(), feed.getDownloadUrl(), feed.getLastRefreshAttempt(), feed.isPaged(),
+                feed.getNextPageLink(), filter, feed.getSortOrder(), feed.hasLastUpdateFailed(), feed.getState());
+        copy.setContentHash(feed.getContentHash());
+        FeedPreferences prefs = feed.getPreferences();
+        if (prefs != null) {
+            copy.setPreferences(new FeedPreferences(prefs.getFeedID(), prefs.getAutoDownload(),
+                    prefs.getKeepUpdated(), prefs.getAutoDeleteAction(), prefs.getVolumeAdaptionSetting(),
+                    prefs.getUsername(), prefs.getPassword(), new FeedFilter(prefs.getFilter().getIncludeFilterRaw(),
+                            prefs.getFilter().getExcludeFilterRaw(), prefs.getFilter().getMinimalDurationFilter()),
+                    prefs.getFeedPlaybackSpeed(), prefs.getFeedSkipIntro(), prefs.getFeedSkipEnding(),
+                    prefs.getFeedSkipSilence(), prefs.getShowEpisodeNotification(), prefs.getNewEpisodesAction(),
+                    prefs.getTags()));
+        }
+        return copy;
+    }
+}
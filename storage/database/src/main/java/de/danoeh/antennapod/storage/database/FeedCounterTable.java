@@ -0,0 +1,183 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import de.danoeh.antennapod.model.feed.FeedItem;
+
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_DOWNLOAD_DATE;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_FEED;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_FEEDITEM;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_ID;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_PUBDATE;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_READ;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEEDS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_COUNTERS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_ITEMS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_MEDIA;
+
+/**
+ * Number of episodes in each state per feed, so that the subscription list does not need to count all episodes.
+ * Triggers keep the counters up to date, so writers do not need to care about them.
+ * Feeds without episodes do not have a row.
+ */
+final class FeedCounterTable {
+    static final String KEY_NUM_EPISODES = "num_episodes";
+    static final String KEY_NUM_NEW = "num_new";
+    static final String KEY_NUM_UNPLAYED = "num_unplayed";
+    static final String KEY_NUM_PLAYED = "num_played";
+    static final String KEY_NUM_DOWNLOADED = "num_downloaded";
+    static final String KEY_NUM_DOWNLOADED_UNPLAYED = "num_downloaded_unplayed";
+    static final String KEY_MOST_RECENT_PUBDATE = "most_recent_pubdate";
+
+    private static final String COLUMNS = KEY_FEED + ", " + KEY_NUM_EPISODES + ", " + KEY_NUM_NEW + ", "
+            + KEY_NUM_UNPLAYED + ", " + KEY_NUM_PLAYED + ", " + KEY_NUM_DOWNLOADED + ", "
+            + KEY_NUM_DOWNLOADED_UNPLAYED + ", " + KEY_MOST_RECENT_PUBDATE;
+
+    private static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME_FEED_COUNTERS + " ("
+            + KEY_FEED + " INTEGER PRIMARY KEY, "
+            + KEY_NUM_EPISODES + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_NUM_NEW + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_NUM_UNPLAYED + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_NUM_PLAYED + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_NUM_DOWNLOADED + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_NUM_DOWNLOADED_UNPLAYED + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_MOST_RECENT_PUBDATE + " INTEGER)";
+
+    /**
+     * The counters as they follow from the episodes, in the same column order as the table.
+     */
+    private static final String SELECT_EXPECTED_COUNTERS = "SELECT " + KEY_FEED + ", COUNT(*), "
+            + "SUM(" + isNew(TABLE_NAME_FEED_ITEMS) + "), "
+            + "SUM(" + isUnplayed(TABLE_NAME_FEED_ITEMS) + "), "
+            + "SUM(" + isPlayed(TABLE_NAME_FEED_ITEMS) + "), "
+            + "SUM(" + countDownloadedMedia(TABLE_NAME_FEED_ITEMS) + "), "
+            + "SUM(" + countDownloadedMedia(TABLE_NAME_FEED_ITEMS) + " * " + isUnplayed(TABLE_NAME_FEED_ITEMS) + "), "
+            + "MAX(" + KEY_PUBDATE + ")"
+            + " FROM " + TABLE_NAME_FEED_ITEMS
+            + " WHERE " + KEY_FEED + " IS NOT NULL"
+            + " GROUP BY " + KEY_FEED;
+
+    private FeedCounterTable() {
+    }
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE);
+
+        createTrigger(db, "item_insert", "AFTER INSERT ON " + TABLE_NAME_FEED_ITEMS, addEpisode("new"));
+        createTrigger(db, "item_update", "AFTER UPDATE OF " + KEY_READ + ", " + KEY_PUBDATE + ", " + KEY_FEED
+                + " ON " + TABLE_NAME_FEED_ITEMS
+                + " WHEN old." + KEY_READ + " IS NOT new." + KEY_READ
+                + " OR old." + KEY_PUBDATE + " IS NOT new." + KEY_PUBDATE
+                + " OR old." + KEY_FEED + " IS NOT new." + KEY_FEED,
+                removeEpisode("old") + addEpisode("new"));
+        createTrigger(db, "item_delete", "AFTER DELETE ON " + TABLE_NAME_FEED_ITEMS, removeEpisode("old"));
+
+        // The media is either inserted after its item or counted when the item is inserted
+        createTrigger(db, "media_insert", "AFTER INSERT ON " + TABLE_NAME_FEED_MEDIA, updateDownloaded("new", "+"));
+        createTrigger(db, "media_update", "AFTER UPDATE OF " + KEY_DOWNLOAD_DATE + ", " + KEY_FEEDITEM
+                + " ON " + TABLE_NAME_FEED_MEDIA
+                + " WHEN " + isDownloaded("old") + " IS NOT " + isDownloaded("new")
+                + " OR old." + KEY_FEEDITEM + " IS NOT new." + KEY_FEEDITEM,
+                updateDownloaded("old", "-") + updateDownloaded("new", "+"));
+        createTrigger(db, "media_delete", "AFTER DELETE ON " + TABLE_NAME_FEED_MEDIA, updateDownloaded("old", "-"));
+
+        createTrigger(db, "feed_delete", "AFTER DELETE ON " + TABLE_NAME_FEEDS,
+                "DELETE FROM " + TABLE_NAME_FEED_COUNTERS + " WHERE " + KEY_FEED + "=old." + KEY_ID + ";");
+    }
+
+    /**
+     * Counts all episodes that are already in the database.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_NAME_FEED_COUNTERS);
+        db.execSQL("INSERT INTO " + TABLE_NAME_FEED_COUNTERS + " (" + COLUMNS + ") " + SELECT_EXPECTED_COUNTERS);
+    }
+
+    /**
+     * Compares the counters with the result of counting all episodes. This is slow.
+     */
+    static boolean isConsistent(SQLiteDatabase db) {
+        String selectCounters = "SELECT " + COLUMNS + " FROM " + TABLE_NAME_FEED_COUNTERS;
+        String query = "SELECT"
+                + " (SELECT COUNT(*) FROM (" + SELECT_EXPECTED_COUNTERS + " EXCEPT " + selectCounters + "))"
+                + " + (SELECT COUNT(*) FROM (" + selectCounters + " EXCEPT " + SELECT_EXPECTED_COUNTERS + "))";
+        return DatabaseUtils.longForQuery(db, query, null) == 0;
+    }
+
+    private static void createTrigger(SQLiteDatabase db, String name, String event, String statements) {
+        db.execSQL("CREATE TRIGGER " + TABLE_NAME_FEED_COUNTERS + "_" + name + " " + event
+                + " BEGIN " + statements + " END");
+    }
+
+    private static String addEpisode(String item) {
+        return "INSERT OR IGNORE INTO " + TABLE_NAME_FEED_COUNTERS + " (" + KEY_FEED + ")"
+                + " SELECT " + item + "." + KEY_FEED + " WHERE " + item + "." + KEY_FEED + " IS NOT NULL;"
+                + updateEpisodeCounters(item, "+")
+                + "UPDATE " + TABLE_NAME_FEED_COUNTERS
+                + " SET " + KEY_MOST_RECENT_PUBDATE + "=" + item + "." + KEY_PUBDATE
+                + " WHERE " + KEY_FEED + "=" + item + "." + KEY_FEED + " AND (" + KEY_MOST_RECENT_PUBDATE + " IS NULL"
+                + " OR " + KEY_MOST_RECENT_PUBDATE + "<" + item + "." + KEY_PUBDATE + ");";
+    }
+
+    private static String removeEpisode(String item) {
+        // Only look at the other episodes if the most recent one is gone
+        return updateEpisodeCounters(item, "-")
+                + "UPDATE " + TABLE_NAME_FEED_COUNTERS + " SET " + KEY_MOST_RECENT_PUBDATE + "="
+                + "(SELECT MAX(" + KEY_PUBDATE + ") FROM " + TABLE_NAME_FEED_ITEMS
+                + " WHERE " + TABLE_NAME_FEED_ITEMS + "." + KEY_FEED + "=" + item + "." + KEY_FEED + ")"
+                + " WHERE " + KEY_FEED + "=" + item + "." + KEY_FEED
+                + " AND " + KEY_MOST_RECENT_PUBDATE + "=" + item + "." + KEY_PUBDATE + ";"
+                + "DELETE FROM " + TABLE_NAME_FEED_COUNTERS
+                + " WHERE " + KEY_FEED + "=" + item + "." + KEY_FEED + " AND " + KEY_NUM_EPISODES + "=0;";
+    }
+
+    private static String updateEpisodeCounters(String item, String sign) {
+        String downloaded = countDownloadedMedia(item);
+        return "UPDATE " + TABLE_NAME_FEED_COUNTERS + " SET "
+                + KEY_NUM_EPISODES + "=" + KEY_NUM_EPISODES + sign + "1, "
+                + KEY_NUM_NEW + "=" + KEY_NUM_NEW + sign + isNew(item) + ", "
+                + KEY_NUM_UNPLAYED + "=" + KEY_NUM_UNPLAYED + sign + isUnplayed(item) + ", "
+                + KEY_NUM_PLAYED + "=" + KEY_NUM_PLAYED + sign + isPlayed(item) + ", "
+                + KEY_NUM_DOWNLOADED + "=" + KEY_NUM_DOWNLOADED + sign + downloaded + ", "
+                + KEY_NUM_DOWNLOADED_UNPLAYED + "=" + KEY_NUM_DOWNLOADED_UNPLAYED
+                + sign + "(" + downloaded + " * " + isUnplayed(item) + ")"
+                + " WHERE " + KEY_FEED + "=" + item + "." + KEY_FEED + ";";
+    }
+
+    /**
+     * Does nothing if the media is not downloaded or its item does not exist (yet).
+     */
+    private static String updateDownloaded(String media, String sign) {
+        String itemOfMedia = " FROM " + TABLE_NAME_FEED_ITEMS
+                + " WHERE " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + "=" + media + "." + KEY_FEEDITEM + ")";
+        return "UPDATE " + TABLE_NAME_FEED_COUNTERS + " SET "
+                + KEY_NUM_DOWNLOADED + "=" + KEY_NUM_DOWNLOADED + sign + "1, "
+                + KEY_NUM_DOWNLOADED_UNPLAYED + "=" + KEY_NUM_DOWNLOADED_UNPLAYED
+                + sign + "(SELECT " + isUnplayed(TABLE_NAME_FEED_ITEMS) + itemOfMedia
+                + " WHERE " + KEY_FEED + "=(SELECT " + TABLE_NAME_FEED_ITEMS + "." + KEY_FEED + itemOfMedia
+                + " AND " + isDownloaded(media) + ";";
+    }
+
+    private static String countDownloadedMedia(String item) {
+        return "(SELECT COUNT(*) FROM " + TABLE_NAME_FEED_MEDIA
+                + " WHERE " + TABLE_NAME_FEED_MEDIA + "." + KEY_FEEDITEM + "=" + item + "." + KEY_ID
+                + " AND " + isDownloaded(TABLE_NAME_FEED_MEDIA) + ")";
+    }
+
+    private static String isDownloaded(String media) {
+        return "(" + media + "." + KEY_DOWNLOAD_DATE + ">0)";
+    }
+
+    private static String isNew(String item) {
+        return "(" + item + "." + KEY_READ + " IS " + FeedItem.NEW + ")";
+    }
+
+    private static String isUnplayed(String item) {
+        return "(" + item + "." + KEY_READ + " IS " + FeedItem.NEW
+                + " OR " + item + "." + KEY_READ + " IS " + FeedItem.UNPLAYED + ")";
+    }
+
+    private static String isPlayed(String item) {
+        return "(" + item + "." + KEY_READ + " IS " + FeedItem.PLAYED + ")";
+    }
+}
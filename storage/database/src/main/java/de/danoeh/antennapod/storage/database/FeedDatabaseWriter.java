@@ -16,6 +16,7 @@ import de.danoeh.antennapod.storage.preferences.UserPreferences;
 import org.greenrobot.eventbus.EventBus;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
@@ -31,17 +32,41 @@ public abstract class FeedDatabaseWriter {
     private static Feed searchFeedByIdentifyingValueOrID(Feed feed) {
         if (feed.getId() != 0) {
             return DBReader.getFeed(feed.getId(), false, 0, Integer.MAX_VALUE);
+        }
+        Feed savedFeed = loadFeedByIdentifyingValue(feed);
+        if (savedFeed != null) {
+            savedFeed.setItems(DBReader.getFeedItemList(savedFeed, FeedItemFilter.unfiltered(),
+                    SortOrder.DATE_NEW_OLD, 0, Integer.MAX_VALUE));
+        }
+        return savedFeed;
+    }
+
+    /**
+     * Looks up the feed in the catalog, but loads a copy that may be modified.
+     */
+    private static Feed loadFeedByIdentifyingValue(Feed feed) {
+        Feed catalogFeed = FeedCatalog.getInstance().getFeedByIdentifyingValue(feed.getIdentifyingValue());
+        if (catalogFeed == null) {
+            return null;
+        }
+        return DBReader.getFeed(catalogFeed.getId(), false, 0, 0);
+    }
+
+    /**
+     * Like {@link #searchFeedByIdentifyingValueOrID(Feed)}, but only loads the saved items that might match
+     * one of the items of the new feed.
+     */
+    private static Feed searchFeedWithMergeCandidates(Feed feed) {
+        Feed savedFeed = null;
+        if (feed.getId() != 0) {
+            savedFeed = DBReader.getFeed(feed.getId(), false, 0, 0);
         } else {
-            List<Feed> feeds = DBReader.getFeedList();
-            for (Feed f : feeds) {
-                if (f.getIdentifyingValue().equals(feed.getIdentifyingValue())) {
-                    f.setItems(DBReader.getFeedItemList(f, FeedItemFilter.unfiltered(),
-                            SortOrder.DATE_NEW_OLD, 0, Integer.MAX_VALUE));
-                    return f;
-                }
-            }
+            savedFeed = loadFeedByIdentifyingValue(feed);
+        }
+        if (savedFeed != null) {
+            savedFeed.setItems(DBReader.getFeedItemMergeCandidates(savedFeed, feed.getItems()));
         }
-        return null;
+        return savedFeed;
     }
 
     /**
@@ -56,15 +81,88 @@ public abstract class FeedDatabaseWriter {
      * @return The updated Feed from the database if it already existed, or the new Feed from the parameters otherwise.
      */
     public static synchronized Feed updateFeed(Context context, Feed newFeed, boolean removeUnlistedItems) {
-        Feed resultFeed;
-        List<FeedItem> unlistedItems = new ArrayList<>();
         List<FeedItem> itemsToAddToQueue = new ArrayList<>();
-
         PodDBAdapter adapter = PodDBAdapter.getInstance();
         adapter.open();
+        Feed resultFeed;
+        try {
+            resultFeed = mergeFeed(context, newFeed, removeUnlistedItems, false, itemsToAddToQueue);
+        } finally {
+            adapter.close();
+        }
+        // We need to add to queue after items are saved to database
+        DBWriter.addQueueItem(context, itemsToAddToQueue.toArray(new FeedItem[0]));
+        if (resultFeed != null) {
+            EventBus.getDefault().post(new FeedListUpdateEvent(resultFeed));
+        } else {
+            EventBus.getDefault().post(new FeedListUpdateEvent(Collections.emptyList()));
+        }
+        return resultFeed;
+    }
+
+    /**
+     * Like {@link #updateFeed(Context, Feed, boolean)} for several feeds, but stores all of them in a single
+     * task on the database thread. Each feed is merged in its own transaction, so a feed that fails to merge
+     * is rolled back without preventing the others from being stored. Events are posted after the commits.
+     *
+     * <p>Existing feeds are merged incrementally: instead of loading the whole episode history, only the saved
+     * items that match one of the new items by identifier, title, link or media URL are loaded and written back.
+     * Local feeds still use the full merge.</p>
+     *
+     * @return The updated feeds in the order of the parameter, or null for feeds that could not be merged.
+     *         The item lists of existing feeds only contain the merged items, not the full history.
+     */
+    public static synchronized List<Feed> updateFeeds(Context context, List<Feed> newFeeds) {
+        // Holding the lock while waiting for the database thread is fine: it only calls the unlocked merge
+        final Feed[] resultFeeds = new Feed[newFeeds.size()];
+        final boolean[] committed = new boolean[newFeeds.size()];
+        List<List<FeedItem>> itemsToAddToQueue = new ArrayList<>();
+        List<Runnable> merges = new ArrayList<>();
+        for (int i = 0; i < resultFeeds.length; i++) {
+            final int index = i;
+            itemsToAddToQueue.add(new ArrayList<>());
+            merges.add(() -> resultFeeds[index] = mergeFeed(context, newFeeds.get(index), false, true,
+                    itemsToAddToQueue.get(index)));
+        }
+        try {
+            DBWriter.runInSeparateTransactions(merges, committed).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+
+        List<Feed> storedFeeds = new ArrayList<>();
+        List<FeedItem> storedItemsToAddToQueue = new ArrayList<>();
+        for (int i = 0; i < resultFeeds.length; i++) {
+            if (!committed[i]) {
+                Log.e(TAG, "Unable to merge " + newFeeds.get(i).getDownloadUrl());
+                resultFeeds[i] = null;
+                continue;
+            }
+            storedFeeds.add(resultFeeds[i]);
+            storedItemsToAddToQueue.addAll(itemsToAddToQueue.get(i));
+        }
+        DBWriter.addQueueItem(context, storedItemsToAddToQueue.toArray(new FeedItem[0]));
+        if (!storedFeeds.isEmpty()) {
+            EventBus.getDefault().post(new FeedListUpdateEvent(storedFeeds));
+        }
+        return Arrays.asList(resultFeeds);
+    }
+
+    /**
+     * Stores the new feed. Does not post events, so it can run inside a transaction.
+     *
+     * @param itemsToAddToQueue Receives the new items that need to be added to the queue once the feed is stored
+     */
+    private static Feed mergeFeed(Context context, Feed newFeed, boolean removeUnlistedItems, boolean incremental,
+                                  List<FeedItem> itemsToAddToQueue) {
+        // Removing unlisted items needs to see all saved items
+        incremental = incremental && !removeUnlistedItems && !newFeed.isLocalFeed();
+        Feed resultFeed;
+        List<FeedItem> unlistedItems = new ArrayList<>();
 
         // Look up feed in the feedslist
-        final Feed savedFeed = searchFeedByIdentifyingValueOrID(newFeed);
+        final Feed savedFeed = incremental
+                ? searchFeedWithMergeCandidates(newFeed) : searchFeedByIdentifyingValueOrID(newFeed);
         if (savedFeed == null) {
             Log.d(TAG, "Found no existing Feed with title "
                             + newFeed.getTitle() + ". Adding as new one.");
@@ -88,10 +186,17 @@ public abstract class FeedDatabaseWriter {
             }
 
             // get the most recent date now, before we start changing the list
-            FeedItem priorMostRecent = savedFeed.getMostRecentItem();
             Date priorMostRecentDate = new Date();
-            if (priorMostRecent != null) {
-                priorMostRecentDate = priorMostRecent.getPubDate();
+            if (incremental) {
+                Date mostRecentPubDate = DBReader.getMostRecentPubDate(savedFeed.getId());
+                if (mostRecentPubDate != null) {
+                    priorMostRecentDate = mostRecentPubDate;
+                }
+            } else {
+                FeedItem priorMostRecent = savedFeed.getMostRecentItem();
+                if (priorMostRecent != null) {
+                    priorMostRecentDate = priorMostRecent.getPubDate();
+                }
             }
 
             // Look for new or updated Items
@@ -197,6 +302,7 @@ public abstract class FeedDatabaseWriter {
 
             // update attributes
             savedFeed.setLastModified(newFeed.getLastModified());
+            savedFeed.setContentHash(newFeed.getContentHash());
             savedFeed.setType(newFeed.getType());
             savedFeed.setLastUpdateFailed(false);
 
@@ -217,18 +323,6 @@ public abstract class FeedDatabaseWriter {
         } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
         }
-
-        // We need to add to queue after items are saved to database
-        DBWriter.addQueueItem(context, itemsToAddToQueue.toArray(new FeedItem[0]));
-
-        adapter.close();
-
-        if (savedFeed != null) {
-            EventBus.getDefault().post(new FeedListUpdateEvent(savedFeed));
-        } else {
-            EventBus.getDefault().post(new FeedListUpdateEvent(Collections.emptyList()));
-        }
-
         return resultFeed;
     }
 
@@ -13,6 +13,8 @@ import org.apache.commons.lang3.StringUtils;
  * even if their feed explicitly says that the episodes are different.
  */
 public class FeedItemDuplicateGuesser {
+    static final String TITLE_WHITESPACE = " \t\n\r";
+
     public static boolean seemDuplicates(FeedItem item1, FeedItem item2) {
         if (sameAndNotEmpty(item1.getItemIdentifier(), item2.getItemIdentifier())) {
             return true;
@@ -69,12 +71,15 @@ public class FeedItemDuplicateGuesser {
         return sameAndNotEmpty(canonicalizeTitle(item1.getTitle()), canonicalizeTitle(item2.getTitle()));
     }
 
+    /**
+     * Only strips the whitespace that {@link PodDBAdapter#getFeedItemCandidatesCursor} strips in SQL,
+     * so that the database finds all titles that look similar.
+     */
     public static String canonicalizeTitle(String title) {
         if (title == null) {
             return "";
         }
-        return title
-                .trim()
+        return StringUtils.strip(title, TITLE_WHITESPACE)
                 .replace('“', '"')
                 .replace('”', '"')
                 .replace('„', '"')
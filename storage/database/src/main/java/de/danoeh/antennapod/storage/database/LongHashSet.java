@@ -0,0 +1,187 @@
+package de.danoeh.antennapod.storage.database;
+
+/**
+ * Fast and memory efficient set of long values, using open addressing with linear probing.
+ * Unlike {@link LongList#contains(long)}, lookups take constant time.
+ */
+public final class LongHashSet {
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private int size;
+    private boolean containsEmptyKey;
+
+    /**
+     * Constructs an empty instance with a default initial capacity.
+     */
+    public LongHashSet() {
+        this(4);
+    }
+
+    /**
+     * Constructs an empty instance.
+     *
+     * @param expectedSize {@code >= 0;} number of values that can be added without resizing
+     */
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expected size must be 0 or higher");
+        }
+        keys = new long[capacityFor(expectedSize)];
+    }
+
+    public static LongHashSet of(LongList values) {
+        LongHashSet result = new LongHashSet(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            result.add(values.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of elements in this set.
+     */
+    public int size() {
+        return containsEmptyKey ? size + 1 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Adds a value to the set. This will increase the set's capacity if necessary.
+     *
+     * @param value the value to add
+     * @return {@code true} if the value was not contained in the set before, {@code false} otherwise
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsEmptyKey;
+            containsEmptyKey = true;
+            return added;
+        }
+        int slot = findSlot(keys, value);
+        if (keys[slot] == value) {
+            return false;
+        }
+        keys[slot] = value;
+        size++;
+        if (2 * size > keys.length) {
+            rehash(2 * keys.length);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given value is contained in the set
+     *
+     * @param value value to look for
+     * @return {@code true} if this set contains {@code value}, {@code false} otherwise
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmptyKey;
+        }
+        return keys[findSlot(keys, value)] == value;
+    }
+
+    /**
+     * Removes value from this set.
+     *
+     * @param value  value to remove
+     * @return {@code true} if the value was removed, {@code false} otherwise
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            boolean removed = containsEmptyKey;
+            containsEmptyKey = false;
+            return removed;
+        }
+        int slot = findSlot(keys, value);
+        if (keys[slot] != value) {
+            return false;
+        }
+        size--;
+        // Move following values of the same probe sequence back, so that lookups do not stop at the gap
+        int mask = keys.length - 1;
+        int gap = slot;
+        int i = (gap + 1) & mask;
+        while (keys[i] != EMPTY) {
+            int home = hash(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        return true;
+    }
+
+    /**
+     * Removes all values from this set.
+     */
+    public void clear() {
+        keys = new long[capacityFor(4)];
+        size = 0;
+        containsEmptyKey = false;
+    }
+
+    /**
+     * Returns an array with a copy of this set's values, in no particular order
+     *
+     * @return array with a copy of this set's values
+     */
+    public long[] toArray() {
+        long[] result = new long[size()];
+        int index = 0;
+        if (containsEmptyKey) {
+            result[index++] = EMPTY;
+        }
+        for (long key : keys) {
+            if (key != EMPTY) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+
+    private void rehash(int capacity) {
+        long[] newKeys = new long[capacity];
+        for (long key : keys) {
+            if (key != EMPTY) {
+                newKeys[findSlot(newKeys, key)] = key;
+            }
+        }
+        keys = newKeys;
+    }
+
+    /**
+     * @return The slot that contains the value, or the empty slot where it would be inserted
+     */
+    private static int findSlot(long[] keys, long value) {
+        int mask = keys.length - 1;
+        int slot = hash(value, mask);
+        while (keys[slot] != EMPTY && keys[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    static int hash(long value, int mask) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * @return A power of two that keeps the load factor at 0.5 or lower
+     */
+    static int capacityFor(int expectedSize) {
+        int capacity = 4;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
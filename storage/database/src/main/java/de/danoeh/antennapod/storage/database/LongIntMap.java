@@ -0,0 +1,119 @@
+package de.danoeh.antennapod.storage.database;
+
+import java.util.Map;
+
+/**
+ * Fast and memory efficient map from long keys to int values, using open addressing with linear probing.
+ * Works like {@link LongHashSet}, without boxing keys and values like a {@code Map<Long, Integer>}.
+ */
+public final class LongIntMap {
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean containsEmptyKey;
+    private int emptyKeyValue;
+
+    /**
+     * Constructs an empty instance with a default initial capacity.
+     */
+    public LongIntMap() {
+        this(4);
+    }
+
+    /**
+     * Constructs an empty instance.
+     *
+     * @param expectedSize {@code >= 0;} number of keys that can be added without resizing
+     */
+    public LongIntMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expected size must be 0 or higher");
+        }
+        int capacity = LongHashSet.capacityFor(expectedSize);
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    public static LongIntMap of(Map<Long, Integer> map) {
+        LongIntMap result = new LongIntMap(map.size());
+        for (Map.Entry<Long, Integer> entry : map.entrySet()) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of keys in this map.
+     */
+    public int size() {
+        return containsEmptyKey ? size + 1 : size;
+    }
+
+    /**
+     * Associates the value with the key, replacing the previous value.
+     * This will increase the map's capacity if necessary.
+     */
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            containsEmptyKey = true;
+            emptyKeyValue = value;
+            return;
+        }
+        int slot = findSlot(keys, key);
+        values[slot] = value;
+        if (keys[slot] == key) {
+            return;
+        }
+        keys[slot] = key;
+        size++;
+        if (2 * size > keys.length) {
+            rehash(2 * keys.length);
+        }
+    }
+
+    /**
+     * Returns the value associated with the key.
+     *
+     * @param key key to look for
+     * @param defaultValue value to return if the map does not contain the key
+     */
+    public int get(long key, int defaultValue) {
+        if (key == EMPTY) {
+            return containsEmptyKey ? emptyKeyValue : defaultValue;
+        }
+        int slot = findSlot(keys, key);
+        return keys[slot] == key ? values[slot] : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) {
+            return containsEmptyKey;
+        }
+        return keys[findSlot(keys, key)] == key;
+    }
+
+    private void rehash(int capacity) {
+        long[] newKeys = new long[capacity];
+        int[] newValues = new int[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                int slot = findSlot(newKeys, keys[i]);
+                newKeys[slot] = keys[i];
+                newValues[slot] = values[i];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static int findSlot(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = LongHashSet.hash(key, mask);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
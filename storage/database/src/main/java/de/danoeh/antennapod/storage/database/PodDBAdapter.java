@@ -12,6 +12,7 @@ import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -24,6 +25,7 @@ import de.danoeh.antennapod.model.feed.FeedFunding;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -54,13 +56,24 @@ public class PodDBAdapter {
 
     private static final String TAG = "PodDBAdapter";
     public static final String DATABASE_NAME = "Antennapod.db";
-    public static final int VERSION = 3110000;
+    public static final int VERSION = 3160000;
 
     /**
      * Maximum number of arguments for IN-operator.
      */
     private static final int IN_OPERATOR_MAXIMUM = 800;
 
+    /**
+     * Distance between the IDs of neighboring queue items after the queue was written as a whole.
+     */
+    private static final long QUEUE_POSITION_GAP = 1 << 20;
+
+    /**
+     * How often a checkpoint is tried while other connections keep the write-ahead log busy.
+     */
+    private static final int CHECKPOINT_ATTEMPTS = 10;
+    private static final long CHECKPOINT_RETRY_MILLIS = 100;
+
     // Key-constants
     public static final String KEY_ID = "id";
     public static final String KEY_TITLE = "title";
@@ -81,6 +94,7 @@ public class PodDBAdapter {
     public static final String KEY_DOWNLOAD_DATE = "downloaded";
     public static final String KEY_LAST_REFRESH_ATTEMPT = "downloaded";
     public static final String KEY_LASTUPDATE = "last_update";
+    public static final String KEY_CONTENT_HASH = "content_hash";
     public static final String KEY_FEEDFILE = "feedfile";
     public static final String KEY_REASON = "reason";
     public static final String KEY_SUCCESSFUL = "successful";
@@ -137,6 +151,10 @@ public class PodDBAdapter {
     public static final String TABLE_NAME_QUEUE = "Queue";
     public static final String TABLE_NAME_SIMPLECHAPTERS = "SimpleChapters";
     public static final String TABLE_NAME_FAVORITES = "Favorites";
+    public static final String TABLE_NAME_FEED_ITEMS_SEARCH = "FeedItemsSearch";
+    public static final String TABLE_NAME_FEEDS_SEARCH = "FeedsSearch";
+    public static final String TABLE_NAME_FEED_COUNTERS = "FeedCounters";
+    public static final String TABLE_NAME_FEED_STATISTICS = "FeedStatistics";
 
     // SQL Statements for creating new tables
     private static final String TABLE_PRIMARY_KEY = KEY_ID
@@ -152,6 +170,7 @@ public class PodDBAdapter {
             + KEY_DESCRIPTION + " TEXT,"
             + KEY_PAYMENT_LINK + " TEXT,"
             + KEY_LASTUPDATE + " TEXT,"
+            + KEY_CONTENT_HASH + " TEXT,"
             + KEY_LANGUAGE + " TEXT,"
             + KEY_AUTHOR + " TEXT,"
             + KEY_IMAGE_URL + " TEXT,"
@@ -242,6 +261,10 @@ public class PodDBAdapter {
             + TABLE_NAME_FEED_MEDIA + "_" + KEY_FEEDITEM + " ON " + TABLE_NAME_FEED_MEDIA + " ("
             + KEY_FEEDITEM + ")";
 
+    static final String CREATE_INDEX_FEEDMEDIA_LAST_PLAYED_TIME = "CREATE INDEX "
+            + TABLE_NAME_FEED_MEDIA + "_" + KEY_LAST_PLAYED_TIME_STATISTICS + " ON " + TABLE_NAME_FEED_MEDIA + " ("
+            + KEY_LAST_PLAYED_TIME_STATISTICS + ")";
+
     static final String CREATE_INDEX_SIMPLECHAPTERS_FEEDITEM = "CREATE INDEX "
             + TABLE_NAME_SIMPLECHAPTERS + "_" + KEY_FEEDITEM + " ON " + TABLE_NAME_SIMPLECHAPTERS + " ("
             + KEY_FEEDITEM + ")";
@@ -260,7 +283,9 @@ public class PodDBAdapter {
             TABLE_NAME_DOWNLOAD_LOG,
             TABLE_NAME_QUEUE,
             TABLE_NAME_SIMPLECHAPTERS,
-            TABLE_NAME_FAVORITES
+            TABLE_NAME_FAVORITES,
+            TABLE_NAME_FEED_COUNTERS,
+            TABLE_NAME_FEED_STATISTICS
     };
 
     public static final String SELECT_KEY_ITEM_ID = "item_id";
@@ -285,6 +310,25 @@ public class PodDBAdapter {
             + TABLE_NAME_FEED_ITEMS + "." + KEY_PODCASTINDEX_TRANSCRIPT_TYPE + ", "
             + TABLE_NAME_FEED_ITEMS + "." + KEY_PODCASTINDEX_TRANSCRIPT_URL;
 
+    /**
+     * The item columns that episode lists show or act on. The link, payment link and chapter URL are only
+     * used when an episode is opened, so lists leave them out.
+     */
+    private static final String KEYS_FEED_ITEM_LIST_ROW =
+            TABLE_NAME_FEED_ITEMS + "." + KEY_ID + " AS " + SELECT_KEY_ITEM_ID + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_TITLE + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_PUBDATE + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_READ + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_MEDIA + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_FEED + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_HAS_CHAPTERS + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_ITEM_IDENTIFIER + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_IMAGE_URL + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_AUTO_DOWNLOAD_ENABLED + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_SOCIAL_INTERACT_URL + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_PODCASTINDEX_TRANSCRIPT_TYPE + ", "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_PODCASTINDEX_TRANSCRIPT_URL;
+
     private static final String KEYS_FEED_MEDIA =
             TABLE_NAME_FEED_MEDIA + "." + KEY_ID + " AS " + SELECT_KEY_MEDIA_ID + ", "
             + TABLE_NAME_FEED_MEDIA + "." + KEY_DURATION + ", "
@@ -311,6 +355,7 @@ public class PodDBAdapter {
             + TABLE_NAME_FEEDS + "." + KEY_DESCRIPTION + ", "
             + TABLE_NAME_FEEDS + "." + KEY_PAYMENT_LINK + ", "
             + TABLE_NAME_FEEDS + "." + KEY_LASTUPDATE + ", "
+            + TABLE_NAME_FEEDS + "." + KEY_CONTENT_HASH + ", "
             + TABLE_NAME_FEEDS + "." + KEY_LANGUAGE + ", "
             + TABLE_NAME_FEEDS + "." + KEY_AUTHOR + ", "
             + TABLE_NAME_FEEDS + "." + KEY_IMAGE_URL + ", "
@@ -342,6 +387,21 @@ public class PodDBAdapter {
     private static final String JOIN_FEED_ITEM_AND_MEDIA = " LEFT JOIN " + TABLE_NAME_FEED_MEDIA
             + " ON " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + "=" + TABLE_NAME_FEED_MEDIA + "." + KEY_FEEDITEM + " ";
 
+    private static final String FROM_FEED_ITEMS_WITH_MEDIA_AND_FEED = " FROM " + TABLE_NAME_FEED_ITEMS
+            + " INNER JOIN " + TABLE_NAME_FEED_MEDIA
+            + " ON " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + "=" + TABLE_NAME_FEED_MEDIA + "." + KEY_FEEDITEM
+            + " INNER JOIN " + TABLE_NAME_FEEDS
+            + " ON " + TABLE_NAME_FEED_ITEMS + "." + KEY_FEED + "=" + TABLE_NAME_FEEDS + "." + KEY_ID;
+
+    /**
+     * Episodes with media that is not downloaded yet, which were not excluded from automatic downloads
+     * and do not belong to a local feed.
+     */
+    private static final String WHERE_AUTO_DOWNLOAD_CANDIDATE = " WHERE "
+            + TABLE_NAME_FEED_ITEMS + "." + KEY_AUTO_DOWNLOAD_ENABLED + " > 0"
+            + " AND " + TABLE_NAME_FEED_MEDIA + "." + KEY_DOWNLOAD_DATE + " <= 0"
+            + " AND " + TABLE_NAME_FEEDS + "." + KEY_DOWNLOAD_URL + " NOT LIKE '" + Feed.PREFIX_LOCAL_FOLDER + "%'";
+
     private static final String SELECT_FEED_ITEMS_AND_MEDIA_WITH_DESCRIPTION =
             "SELECT " + KEYS_FEED_ITEM_WITHOUT_DESCRIPTION + ", " + KEYS_FEED_MEDIA + ", "
                     + TABLE_NAME_FEED_ITEMS + "." + KEY_DESCRIPTION
@@ -354,9 +414,13 @@ public class PodDBAdapter {
     public static final String SELECT_WHERE_FEED_IS_SUBSCRIBED = TABLE_NAME_FEED_ITEMS + "." + KEY_FEED
             + " IN (SELECT " + KEY_ID + " FROM " + TABLE_NAME_FEEDS
             + " WHERE " + KEY_STATE + "=" + Feed.STATE_SUBSCRIBED + ")";
+    private static final String SELECT_WHERE_COUNTER_FEED_IS_SUBSCRIBED = TABLE_NAME_FEED_COUNTERS + "." + KEY_FEED
+            + " IN (SELECT " + KEY_ID + " FROM " + TABLE_NAME_FEEDS
+            + " WHERE " + KEY_STATE + "=" + Feed.STATE_SUBSCRIBED + ")";
 
     private static Context context;
     private static PodDBAdapter instance;
+    private static boolean writeAheadLogging = false;
 
     private final SQLiteDatabase db;
     private final PodDBHelper dbHelper;
@@ -365,6 +429,15 @@ public class PodDBAdapter {
         PodDBAdapter.context = context.getApplicationContext();
     }
 
+    /**
+     * In write-ahead logging mode, SQLite keeps a pool of read-only connections next to the writing one.
+     * Reads outside of transactions then no longer wait for writers, for example during a feed refresh.
+     * Needs to be called before the database is opened for the first time.
+     */
+    public static void setWriteAheadLoggingEnabled(boolean enabled) {
+        writeAheadLogging = enabled;
+    }
+
     public static synchronized PodDBAdapter getInstance() {
         if (instance == null) {
             instance = new PodDBAdapter();
@@ -381,7 +454,9 @@ public class PodDBAdapter {
         SQLiteDatabase newDb;
         try {
             newDb = dbHelper.getWritableDatabase();
-            newDb.disableWriteAheadLogging();
+            if (!writeAheadLogging || !newDb.enableWriteAheadLogging()) {
+                newDb.disableWriteAheadLogging();
+            }
         } catch (SQLException ex) {
             Log.e(TAG, Log.getStackTraceString(ex));
             newDb = dbHelper.getReadableDatabase();
@@ -429,6 +504,32 @@ public class PodDBAdapter {
     public static void tearDownTests() {
         getInstance().dbHelper.close();
         instance = null;
+        FeedCatalog.invalidate();
+    }
+
+    /**
+     * Moves all changes from the write-ahead log to the database file, so that the file can be copied.
+     *
+     * @return false if other connections kept the checkpoint from completing, even after retrying
+     */
+    public static boolean checkpointWriteAheadLog() {
+        PodDBAdapter adapter = getInstance();
+        adapter.open();
+        try {
+            for (int attempt = 0; attempt < CHECKPOINT_ATTEMPTS; attempt++) {
+                try (Cursor cursor = adapter.db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+                    // The first column is 1 if the checkpoint could not copy everything
+                    if (cursor.moveToFirst() && cursor.getInt(0) == 0) {
+                        return true;
+                    }
+                }
+                Log.d(TAG, "Write-ahead log is busy, retrying checkpoint");
+                SystemClock.sleep(CHECKPOINT_RETRY_MILLIS);
+            }
+            return false;
+        } finally {
+            adapter.close();
+        }
     }
 
     public static boolean deleteDatabase() {
@@ -438,6 +539,7 @@ public class PodDBAdapter {
             for (String tableName : ALL_TABLES) {
                 adapter.db.delete(tableName, "1", null);
             }
+            FeedCatalog.invalidate();
             return true;
         } finally {
             adapter.close();
@@ -463,6 +565,7 @@ public class PodDBAdapter {
         values.put(KEY_DOWNLOAD_URL, feed.getDownloadUrl());
         values.put(KEY_LAST_REFRESH_ATTEMPT, feed.getLastRefreshAttempt());
         values.put(KEY_LASTUPDATE, feed.getLastModified());
+        values.put(KEY_CONTENT_HASH, feed.getContentHash());
         values.put(KEY_TYPE, feed.getType());
         values.put(KEY_FEED_IDENTIFIER, feed.getFeedIdentifier());
         values.put(KEY_STATE, feed.getState());
@@ -485,6 +588,7 @@ public class PodDBAdapter {
             db.update(TABLE_NAME_FEEDS, values, KEY_ID + "=?",
                     new String[]{String.valueOf(feed.getId())});
         }
+        FeedCatalog.invalidate();
         return feed.getId();
     }
 
@@ -510,6 +614,7 @@ public class PodDBAdapter {
         values.put(KEY_EPISODE_NOTIFICATION, prefs.getShowEpisodeNotification());
         values.put(KEY_NEW_EPISODES_ACTION, prefs.getNewEpisodesAction().code);
         db.update(TABLE_NAME_FEEDS, values, KEY_ID + "=?", new String[]{String.valueOf(prefs.getFeedID())});
+        FeedCatalog.invalidate();
     }
 
     public void setFeedItemFilter(long feedId, Set<String> filterValues) {
@@ -519,12 +624,14 @@ public class PodDBAdapter {
         ContentValues values = new ContentValues();
         values.put(KEY_HIDE, valuesList);
         db.update(TABLE_NAME_FEEDS, values, KEY_ID + "=?", new String[]{String.valueOf(feedId)});
+        FeedCatalog.invalidate();
     }
 
     public void setFeedItemSortOrder(long feedId, @Nullable SortOrder sortOrder) {
         ContentValues values = new ContentValues();
         values.put(KEY_SORT_ORDER, toCodeString(sortOrder));
         db.update(TABLE_NAME_FEEDS, values, KEY_ID + "=?", new String[]{String.valueOf(feedId)});
+        FeedCatalog.invalidate();
     }
 
     /**
@@ -588,6 +695,27 @@ public class PodDBAdapter {
         }
     }
 
+    /**
+     * Runs the given writes in a single transaction. Transactions started by the writes themselves are nested
+     * into it, so nothing is committed before the runnable returns.
+     */
+    public void runInTransaction(Runnable runnable) {
+        try {
+            db.beginTransactionNonExclusive();
+            runnable.run();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return Whether the current thread is inside a transaction that is not committed yet
+     */
+    boolean isInTransaction() {
+        return db.inTransaction();
+    }
+
     public void resetAllMediaPlayedDuration() {
         try {
             db.beginTransactionNonExclusive();
@@ -607,6 +735,8 @@ public class PodDBAdapter {
      * transaction
      */
     public void setCompleteFeed(Feed... feeds) {
+        // Ending a nested transaction without success makes the outer one roll back silently when it commits
+        final boolean nested = db.inTransaction();
         try {
             db.beginTransactionNonExclusive();
             for (Feed feed : feeds) {
@@ -623,6 +753,9 @@ public class PodDBAdapter {
             db.setTransactionSuccessful();
         } catch (SQLException e) {
             Log.e(TAG, Log.getStackTraceString(e));
+            if (nested) {
+                throw e;
+            }
         } finally {
             db.endTransaction();
         }
@@ -635,6 +768,7 @@ public class PodDBAdapter {
         ContentValues values = new ContentValues();
         values.put(KEY_DOWNLOAD_URL, updated);
         db.update(TABLE_NAME_FEEDS, values, KEY_DOWNLOAD_URL + "=?", new String[]{original});
+        FeedCatalog.invalidate();
     }
 
     public void storeFeedItemlist(List<FeedItem> items) {
@@ -681,12 +815,17 @@ public class PodDBAdapter {
 
         ContentValues values = new ContentValues();
         values.put(KEY_TITLE, item.getTitle());
-        values.put(KEY_LINK, item.getLink());
+        // Items from episode lists do not contain all columns, see KEYS_FEED_ITEM_LIST_ROW
+        if (item.getLink() != null) {
+            values.put(KEY_LINK, item.getLink());
+        }
         if (item.getDescription() != null) {
             values.put(KEY_DESCRIPTION, item.getDescription());
         }
         values.put(KEY_PUBDATE, item.getPubDate().getTime());
-        values.put(KEY_PAYMENT_LINK, item.getPaymentLink());
+        if (item.getPaymentLink() != null) {
+            values.put(KEY_PAYMENT_LINK, item.getPaymentLink());
+        }
         if (saveFeed && item.getFeed() != null) {
             setFeed(item.getFeed());
         }
@@ -702,7 +841,9 @@ public class PodDBAdapter {
         values.put(KEY_ITEM_IDENTIFIER, item.getItemIdentifier());
         values.put(KEY_AUTO_DOWNLOAD_ENABLED, item.isAutoDownloadEnabled());
         values.put(KEY_IMAGE_URL, item.getImageUrl());
-        values.put(KEY_PODCASTINDEX_CHAPTER_URL, item.getPodcastIndexChapterUrl());
+        if (item.getPodcastIndexChapterUrl() != null) {
+            values.put(KEY_PODCASTINDEX_CHAPTER_URL, item.getPodcastIndexChapterUrl());
+        }
         values.put(KEY_SOCIAL_INTERACT_URL, item.getSocialInteractUrl());
 
         // We only store one transcript url, we prefer JSON if it exists
@@ -761,6 +902,8 @@ public class PodDBAdapter {
      * @param itemIds items to change the value of
      */
     public void setFeedItemRead(int read, long... itemIds) {
+        // Like in setCompleteFeed, a failure must not make a surrounding transaction roll back silently
+        final boolean nested = db.inTransaction();
         try {
             db.beginTransactionNonExclusive();
             ContentValues values = new ContentValues();
@@ -772,6 +915,9 @@ public class PodDBAdapter {
             db.setTransactionSuccessful();
         } catch (SQLException e) {
             Log.e(TAG, Log.getStackTraceString(e));
+            if (nested) {
+                throw e;
+            }
         } finally {
             db.endTransaction();
         }
@@ -799,6 +945,7 @@ public class PodDBAdapter {
                 + " SET " + KEY_NEXT_PAGE_LINK + "=" + KEY_DOWNLOAD_URL
                 + " WHERE " + KEY_ID + "=" + feed.getId();
         db.execSQL(sql);
+        FeedCatalog.invalidate();
     }
 
     public void setFeedLastUpdateFailed(long feedId, boolean failed) {
@@ -807,18 +954,33 @@ public class PodDBAdapter {
                 + "," + KEY_LAST_REFRESH_ATTEMPT + "=" + System.currentTimeMillis()
                 + " WHERE " + KEY_ID + "=" + feedId;
         db.execSQL(sql);
+        FeedCatalog.invalidate();
+    }
+
+    /**
+     * Records a successful refresh that did not change the feed's content.
+     */
+    public void setFeedRefreshedUnchanged(long feedId, String lastModified) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_LAST_UPDATE_FAILED, 0);
+        values.put(KEY_LAST_REFRESH_ATTEMPT, System.currentTimeMillis());
+        values.put(KEY_LASTUPDATE, lastModified);
+        db.update(TABLE_NAME_FEEDS, values, KEY_ID + "=?", new String[]{String.valueOf(feedId)});
+        FeedCatalog.invalidate();
     }
 
     public void setFeedCustomTitle(long feedId, String customTitle) {
         ContentValues values = new ContentValues();
         values.put(KEY_CUSTOM_TITLE, customTitle);
         db.update(TABLE_NAME_FEEDS, values, KEY_ID + "=?", new String[]{String.valueOf(feedId)});
+        FeedCatalog.invalidate();
     }
 
     public void setFeedState(long feedId, int state) {
         ContentValues values = new ContentValues();
         values.put(KEY_STATE, state);
         db.update(TABLE_NAME_FEEDS, values, KEY_ID + "=?", new String[]{String.valueOf(feedId)});
+        FeedCatalog.invalidate();
     }
 
     /**
@@ -897,7 +1059,7 @@ public class PodDBAdapter {
             db.delete(TABLE_NAME_QUEUE, null, null);
             for (int i = 0; i < queue.size(); i++) {
                 FeedItem item = queue.get(i);
-                values.put(KEY_ID, i);
+                values.put(KEY_ID, i * QUEUE_POSITION_GAP);
                 values.put(KEY_FEEDITEM, item.getId());
                 values.put(KEY_FEED, item.getFeed().getId());
                 db.insertWithOnConflict(TABLE_NAME_QUEUE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
@@ -910,6 +1072,108 @@ public class PodDBAdapter {
         }
     }
 
+    /**
+     * Inserts an item into the queue, so that it ends up at the given position. Only the new row is written,
+     * unless there is no free position key between its neighbors.
+     */
+    public void addQueueItem(int index, FeedItem item) {
+        try {
+            db.beginTransactionNonExclusive();
+            ContentValues values = new ContentValues();
+            values.put(KEY_ID, findFreeQueuePosition(index, 0));
+            values.put(KEY_FEEDITEM, item.getId());
+            values.put(KEY_FEED, item.getFeed().getId());
+            db.insert(TABLE_NAME_QUEUE, null, values);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Moves an item that is in the queue to a new position. Like with {@link List#add(int, Object)},
+     * the position refers to the queue without the item.
+     */
+    public void moveQueueItem(long itemId, int index) {
+        try {
+            db.beginTransactionNonExclusive();
+            ContentValues values = new ContentValues();
+            values.put(KEY_ID, findFreeQueuePosition(index, itemId));
+            db.update(TABLE_NAME_QUEUE, values, KEY_FEEDITEM + "=?", new String[]{String.valueOf(itemId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void removeQueueItems(long... itemIds) {
+        if (itemIds.length == 0) {
+            return;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (long id : itemIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(id);
+        }
+        db.delete(TABLE_NAME_QUEUE, KEY_FEEDITEM + " IN (" + ids + ")", null);
+    }
+
+    /**
+     * The queue is ordered by the ID column. IDs are spread out, so that an item can be inserted between two
+     * others by choosing an ID in the middle. If no ID is left between them, all IDs are spread out again.
+     *
+     * @param index Position in the queue, not counting the item with ID excludedItemId.
+     * @return The ID for a row at the given position.
+     */
+    private long findFreeQueuePosition(int index, long excludedItemId) {
+        String where = " WHERE " + KEY_FEEDITEM + "!=" + excludedItemId;
+        int size = (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + TABLE_NAME_QUEUE + where, null);
+        index = Math.max(0, Math.min(index, size));
+        if (size == 0) {
+            return 0;
+        }
+        String selectPositions = "SELECT " + KEY_ID + " FROM " + TABLE_NAME_QUEUE + where + " ORDER BY " + KEY_ID;
+        if (index == 0) {
+            return DatabaseUtils.longForQuery(db, selectPositions + " LIMIT 1", null) - QUEUE_POSITION_GAP;
+        } else if (index == size) {
+            return DatabaseUtils.longForQuery(db, selectPositions + " DESC LIMIT 1", null) + QUEUE_POSITION_GAP;
+        }
+        long previous;
+        long next;
+        try (Cursor cursor = db.rawQuery(selectPositions + " LIMIT 2 OFFSET " + (index - 1), null)) {
+            cursor.moveToFirst();
+            previous = cursor.getLong(0);
+            cursor.moveToNext();
+            next = cursor.getLong(0);
+        }
+        if (next - previous > 1) {
+            return previous + (next - previous) / 2;
+        }
+        Log.d(TAG, "Spreading out queue positions");
+        spreadQueuePositions();
+        return findFreeQueuePosition(index, excludedItemId);
+    }
+
+    private void spreadQueuePositions() {
+        List<ContentValues> rows = new ArrayList<>();
+        try (Cursor cursor = db.query(TABLE_NAME_QUEUE, new String[]{KEY_FEEDITEM, KEY_FEED},
+                null, null, null, null, KEY_ID)) {
+            while (cursor.moveToNext()) {
+                ContentValues values = new ContentValues();
+                values.put(KEY_ID, rows.size() * QUEUE_POSITION_GAP);
+                values.put(KEY_FEEDITEM, cursor.getLong(0));
+                values.put(KEY_FEED, cursor.getLong(1));
+                rows.add(values);
+            }
+        }
+        db.delete(TABLE_NAME_QUEUE, null, null);
+        for (ContentValues values : rows) {
+            db.insert(TABLE_NAME_QUEUE, null, values);
+        }
+    }
+
     public void clearQueue() {
         db.delete(TABLE_NAME_QUEUE, null, null);
     }
@@ -955,15 +1219,16 @@ public class PodDBAdapter {
     public void removeFeed(Feed feed) {
         try {
             db.beginTransactionNonExclusive();
+            // Delete the feed first, so that the counters do not need to be updated for each removed item
+            db.delete(TABLE_NAME_FEEDS, KEY_ID + "=?",
+                    new String[]{String.valueOf(feed.getId())});
+            FeedCatalog.invalidate();
             if (feed.getItems() != null) {
                 removeFeedItems(feed.getItems());
             }
             // delete download log entries for feed
             db.delete(TABLE_NAME_DOWNLOAD_LOG, KEY_FEEDFILE + "=? AND " + KEY_FEEDFILETYPE + "=?",
                     new String[]{String.valueOf(feed.getId()), String.valueOf(Feed.FEEDFILETYPE_FEED)});
-
-            db.delete(TABLE_NAME_FEEDS, KEY_ID + "=?",
-                    new String[]{String.valueOf(feed.getId())});
             db.setTransactionSuccessful();
         } catch (SQLException e) {
             Log.e(TAG, Log.getStackTraceString(e));
@@ -1022,6 +1287,42 @@ public class PodDBAdapter {
         return db.rawQuery(query, null);
     }
 
+    /**
+     * Returns the items of a feed that might be the same episodes as some new items: items whose identifier,
+     * title, canonical title (see {@link FeedItemDuplicateGuesser#canonicalizeTitle}), link or media URL is one
+     * of the given values. The lookup is restricted to the feed's rows through the feed index.
+     */
+    public final Cursor getFeedItemCandidatesCursor(long feedId, List<String> values) {
+        if (values.size() > IN_OPERATOR_MAXIMUM) {
+            throw new IllegalArgumentException("number of values must not be larger than " + IN_OPERATOR_MAXIMUM);
+        }
+        StringBuilder valuesString = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i != 0) {
+                valuesString.append(",");
+            }
+            valuesString.append(DatabaseUtils.sqlEscapeString(values.get(i)));
+        }
+        // Strips the same characters as FeedItemDuplicateGuesser.TITLE_WHITESPACE
+        final String canonicalTitle = "TRIM(REPLACE(REPLACE(REPLACE(REPLACE(" + TABLE_NAME_FEED_ITEMS + "." + KEY_TITLE
+                + ", '“', '\"'), '”', '\"'), '„', '\"'), '—', '-'), ' '||char(9)||char(10)||char(13))";
+        final String query = SELECT_FEED_ITEMS_AND_MEDIA
+                + " WHERE " + TABLE_NAME_FEED_ITEMS + "." + KEY_FEED + "=" + feedId
+                + " AND (" + TABLE_NAME_FEED_ITEMS + "." + KEY_ITEM_IDENTIFIER + " IN (" + valuesString + ")"
+                + " OR " + TABLE_NAME_FEED_ITEMS + "." + KEY_TITLE + " IN (" + valuesString + ")"
+                + " OR " + canonicalTitle + " IN (" + valuesString + ")"
+                + " OR " + TABLE_NAME_FEED_ITEMS + "." + KEY_LINK + " IN (" + valuesString + ")"
+                + " OR " + TABLE_NAME_FEED_MEDIA + "." + KEY_DOWNLOAD_URL + " IN (" + valuesString + "))"
+                + " ORDER BY " + TABLE_NAME_FEED_ITEMS + "." + KEY_PUBDATE + " DESC";
+        return db.rawQuery(query, null);
+    }
+
+    public final Cursor getMostRecentPubDateCursor(long feedId) {
+        final String query = "SELECT MAX(" + KEY_PUBDATE + ") FROM " + TABLE_NAME_FEED_ITEMS
+                + " WHERE " + KEY_FEED + "=" + feedId;
+        return db.rawQuery(query, null);
+    }
+
     /**
      * Return the description and content_encoded of item
      */
@@ -1122,6 +1423,47 @@ public class PodDBAdapter {
         db.execSQL(sql);
     }
 
+    /**
+     * Selects the new episodes that can be downloaded automatically, newest first. The feed's include
+     * and exclude filters are returned along with the episodes, because they cannot be evaluated in SQL.
+     *
+     * @param autoDownloadGlobal Whether feeds that use the global setting should download automatically
+     */
+    public final Cursor getAutoDownloadNewEpisodesCursor(boolean autoDownloadGlobal) {
+        String feedAutoDownload = TABLE_NAME_FEEDS + "." + KEY_AUTO_DOWNLOAD_ENABLED;
+        String autoDownloadEnabled = feedAutoDownload + "=" + FeedPreferences.AutoDownloadSetting.ENABLED.code;
+        if (autoDownloadGlobal) {
+            autoDownloadEnabled += " OR " + feedAutoDownload + "=" + FeedPreferences.AutoDownloadSetting.GLOBAL.code;
+        }
+        final String query = "SELECT " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + ", "
+                + TABLE_NAME_FEED_ITEMS + "." + KEY_TITLE + ", "
+                + TABLE_NAME_FEED_MEDIA + "." + KEY_DURATION + ", "
+                + TABLE_NAME_FEEDS + "." + KEY_ID + ", "
+                + TABLE_NAME_FEEDS + "." + KEY_INCLUDE_FILTER + ", "
+                + TABLE_NAME_FEEDS + "." + KEY_EXCLUDE_FILTER + ", "
+                + TABLE_NAME_FEEDS + "." + KEY_MINIMAL_DURATION_FILTER
+                + FROM_FEED_ITEMS_WITH_MEDIA_AND_FEED
+                + WHERE_AUTO_DOWNLOAD_CANDIDATE
+                + " AND " + TABLE_NAME_FEED_ITEMS + "." + KEY_READ + "=" + FeedItem.NEW
+                + " AND " + SELECT_WHERE_FEED_IS_SUBSCRIBED
+                + " AND (" + autoDownloadEnabled + ")"
+                + " ORDER BY " + TABLE_NAME_FEED_ITEMS + "." + KEY_PUBDATE + " DESC";
+        return db.rawQuery(query, null);
+    }
+
+    /**
+     * Selects the IDs of the queued episodes that can be downloaded automatically, in queue order.
+     */
+    public final Cursor getAutoDownloadQueuedEpisodesCursor() {
+        final String query = "SELECT " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID
+                + FROM_FEED_ITEMS_WITH_MEDIA_AND_FEED
+                + " INNER JOIN " + TABLE_NAME_QUEUE
+                + " ON " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + "=" + TABLE_NAME_QUEUE + "." + KEY_FEEDITEM
+                + WHERE_AUTO_DOWNLOAD_CANDIDATE
+                + " ORDER BY " + TABLE_NAME_QUEUE + "." + KEY_ID;
+        return db.rawQuery(query, null);
+    }
+
     public final Cursor getEpisodesCursor(int offset, int limit, FeedItemFilter filter, SortOrder sortOrder) {
         String orderByQuery = FeedItemSortQuery.generateFrom(sortOrder);
         String filterQuery = FeedItemFilterQuery.generateFrom(filter);
@@ -1131,6 +1473,50 @@ public class PodDBAdapter {
         return db.rawQuery(query, null);
     }
 
+    /**
+     * Selects the episodes that come after lastItem in the given sort order. Unlike with an offset,
+     * the cost of selecting a page does not grow with the number of pages before it.
+     *
+     * @param lastItem The last episode of the previous page, or null to select the first page.
+     */
+    public final Cursor getEpisodesAfterCursor(@Nullable FeedItem lastItem, int limit,
+                                               FeedItemFilter filter, SortOrder sortOrder) {
+        final String query = SELECT_FEED_ITEMS_AND_MEDIA
+                + generateEpisodesAfterQuery(lastItem, limit, filter, sortOrder);
+        return db.rawQuery(query, null);
+    }
+
+    /**
+     * Like {@link #getEpisodesAfterCursor}, but only selects the item columns of {@link #KEYS_FEED_ITEM_LIST_ROW}.
+     */
+    public final Cursor getEpisodeRowsAfterCursor(@Nullable FeedItem lastItem, int limit,
+                                                  FeedItemFilter filter, SortOrder sortOrder) {
+        String itemColumns = KEYS_FEED_ITEM_LIST_ROW;
+        if (sortOrder == SortOrder.EPISODE_FILENAME_A_Z || sortOrder == SortOrder.EPISODE_FILENAME_Z_A) {
+            // The next page starts after the link of the last item
+            itemColumns += ", " + TABLE_NAME_FEED_ITEMS + "." + KEY_LINK;
+        }
+        final String query = "SELECT " + itemColumns + ", " + KEYS_FEED_MEDIA
+                + " FROM " + TABLE_NAME_FEED_ITEMS
+                + JOIN_FEED_ITEM_AND_MEDIA
+                + generateEpisodesAfterQuery(lastItem, limit, filter, sortOrder);
+        return db.rawQuery(query, null);
+    }
+
+    private static String generateEpisodesAfterQuery(@Nullable FeedItem lastItem, int limit,
+                                                     FeedItemFilter filter, SortOrder sortOrder) {
+        List<String> conditions = new ArrayList<>();
+        String filterQuery = FeedItemFilterQuery.generateFrom(filter);
+        if (!"".equals(filterQuery)) {
+            conditions.add(filterQuery);
+        }
+        if (lastItem != null) {
+            conditions.add(FeedItemSortQuery.generateAfter(sortOrder, lastItem));
+        }
+        String whereClause = conditions.isEmpty() ? "" : " WHERE " + TextUtils.join(" AND ", conditions);
+        return whereClause + " ORDER BY " + FeedItemSortQuery.generateWithTieBreakerFrom(sortOrder) + " LIMIT " + limit;
+    }
+
     public final Cursor getEpisodeCountCursor(FeedItemFilter filter) {
         String filterQuery = FeedItemFilterQuery.generateFrom(filter);
         String whereClause = "".equals(filterQuery) ? "" : " WHERE " + filterQuery;
@@ -1214,6 +1600,22 @@ public class PodDBAdapter {
         return db.rawQuery(query, null);
     }
 
+    public final Cursor getFeedItemCursorByGuids(List<String> guids) {
+        if (guids.size() > IN_OPERATOR_MAXIMUM) {
+            throw new IllegalArgumentException("number of GUIDs must not be larger than " + IN_OPERATOR_MAXIMUM);
+        }
+        StringBuilder guidsString = new StringBuilder();
+        for (int i = 0; i < guids.size(); i++) {
+            if (i != 0) {
+                guidsString.append(",");
+            }
+            guidsString.append(DatabaseUtils.sqlEscapeString(guids.get(i)));
+        }
+        final String query = SELECT_FEED_ITEMS_AND_MEDIA
+                + " WHERE " + TABLE_NAME_FEED_ITEMS + "." + KEY_ITEM_IDENTIFIER + " IN (" + guidsString + ")";
+        return db.rawQuery(query, null);
+    }
+
     public final Cursor getFeedItemCursor(final String guid, final String episodeUrl) {
         String escapedEpisodeUrl = DatabaseUtils.sqlEscapeString(episodeUrl);
         String whereClauseCondition = TABLE_NAME_FEED_MEDIA + "." + KEY_DOWNLOAD_URL + "=" + escapedEpisodeUrl;
@@ -1231,60 +1633,64 @@ public class PodDBAdapter {
     }
 
     public final Cursor getMonthlyStatisticsCursor() {
-        final String query = "SELECT SUM(" + KEY_PLAYED_DURATION + ") AS total_duration"
-                + ", strftime('%m', datetime(" + KEY_LAST_PLAYED_TIME_STATISTICS + "/1000, 'unixepoch')) AS month"
-                + ", strftime('%Y', datetime(" + KEY_LAST_PLAYED_TIME_STATISTICS + "/1000, 'unixepoch')) AS year"
-                + " FROM " + TABLE_NAME_FEED_MEDIA
-                + " WHERE " + KEY_LAST_PLAYED_TIME_STATISTICS + " > 0 AND " + KEY_PLAYED_DURATION + " > 0"
-                + " GROUP BY year, month"
-                + " ORDER BY year, month";
+        final String monthStart = StatisticsTable.KEY_MONTH_START + "/1000, 'unixepoch'";
+        final String query = "SELECT played_time AS total_duration"
+                + ", strftime('%m', " + monthStart + ") AS month"
+                + ", strftime('%Y', " + monthStart + ") AS year"
+                + " FROM (" + StatisticsTable.selectMonthlyPlayedTime() + ")"
+                + " ORDER BY " + StatisticsTable.KEY_MONTH_START;
         return db.rawQuery(query, null);
     }
 
+    /**
+     * Selects the statistics of all subscribed feeds that have episodes. Most values are read from
+     * the statistics table and the feed counters, see {@link StatisticsTable}.
+     */
     public final Cursor getFeedStatisticsCursor(boolean includeMarkedAsPlayed, long timeFilterFrom,
                                                 long timeFilterTo, long sixMonthsAgo) {
-        final String lastPlayedTimeStatistics = TABLE_NAME_FEED_MEDIA + "." + KEY_LAST_PLAYED_TIME_STATISTICS;
-        String wasStarted = TABLE_NAME_FEED_MEDIA + "." + KEY_LAST_PLAYED_TIME_HISTORY + " > 0"
-                + " AND " + TABLE_NAME_FEED_MEDIA + "." + KEY_PLAYED_DURATION + " > 0";
-        if (includeMarkedAsPlayed) {
-            wasStarted = "(" + wasStarted + ") OR "
-                    + TABLE_NAME_FEED_ITEMS + "." + KEY_READ + "=" + FeedItem.PLAYED + " OR "
-                    + TABLE_NAME_FEED_MEDIA + "." + KEY_POSITION + "> 0";
-        }
-        final String timeFilter = lastPlayedTimeStatistics + ">=" + timeFilterFrom
-                + " AND " + lastPlayedTimeStatistics + "<" + timeFilterTo;
-        String playedTime = TABLE_NAME_FEED_MEDIA + "." + KEY_PLAYED_DURATION;
+        String episodesStarted = "IFNULL(statistics.episodes_started, 0)";
         if (includeMarkedAsPlayed) {
-            playedTime = "(CASE WHEN " + playedTime + " != 0"
-                    + " THEN " + playedTime + " ELSE ("
-                            + "CASE WHEN " + TABLE_NAME_FEED_ITEMS + "." + KEY_READ + "=" + FeedItem.PLAYED
-                                + " THEN " + TABLE_NAME_FEED_MEDIA + "." + KEY_DURATION + " ELSE 0 END"
-                    + ") END)";
+            episodesStarted += " + " + TABLE_NAME_FEED_COUNTERS + "." + FeedCounterTable.KEY_NUM_PLAYED;
         }
-
         final String query = "SELECT " + KEYS_FEED + ", "
-                        + "COUNT(*) AS num_episodes, "
-                        + "MIN(CASE WHEN " + lastPlayedTimeStatistics + " > 0"
-                                + " THEN " + lastPlayedTimeStatistics
-                                + " ELSE " + Long.MAX_VALUE + " END) AS oldest_date, "
-                        + "SUM(CASE WHEN (" + wasStarted + ") THEN 1 ELSE 0 END) AS episodes_started, "
-                        + "IFNULL(SUM(CASE WHEN (" + timeFilter + ")"
-                                + " THEN (" + playedTime + ") ELSE 0 END), 0) AS played_time, "
-                        + "IFNULL(SUM(" + TABLE_NAME_FEED_MEDIA + "." + KEY_DURATION + "), 0) AS total_time, "
-                        + "SUM(CASE WHEN " + TABLE_NAME_FEED_MEDIA + "." + KEY_DOWNLOAD_DATE + " > 0"
-                                + " THEN 1 ELSE 0 END) AS num_downloaded, "
-                        + "SUM(CASE WHEN " + TABLE_NAME_FEED_MEDIA + "." + KEY_DOWNLOAD_DATE + " > 0"
-                                + " THEN " + TABLE_NAME_FEED_MEDIA + "." + KEY_SIZE + " ELSE 0 END) AS download_size, "
-                        + "SUM(CASE WHEN " + TABLE_NAME_FEED_ITEMS + "." + KEY_READ + " != " + FeedItem.PLAYED
-                                + " AND " + TABLE_NAME_FEED_ITEMS + "." + KEY_PUBDATE + " >= " + sixMonthsAgo
-                                + " THEN 1 ELSE 0 END) AS num_recent_unplayed "
-                + " FROM " + TABLE_NAME_FEED_ITEMS
-                + JOIN_FEED_ITEM_AND_MEDIA
+                        + TABLE_NAME_FEED_COUNTERS + "." + FeedCounterTable.KEY_NUM_EPISODES + " AS num_episodes, "
+                        + episodesStarted + " AS episodes_started, "
+                        + "IFNULL(statistics.played_time, 0) AS played_time, "
+                        + "IFNULL(statistics.total_time, 0) AS total_time, "
+                        + TABLE_NAME_FEED_COUNTERS + "." + FeedCounterTable.KEY_NUM_DOWNLOADED + " AS num_downloaded, "
+                        + "IFNULL(statistics.download_size, 0) AS download_size, "
+                        + "IFNULL(recent.num_recent_unplayed, 0) AS num_recent_unplayed"
+                + " FROM " + TABLE_NAME_FEEDS
+                + " INNER JOIN " + TABLE_NAME_FEED_COUNTERS
+                + " ON " + TABLE_NAME_FEED_COUNTERS + "." + KEY_FEED + "=" + TABLE_NAME_FEEDS + "." + KEY_ID
+                + " LEFT JOIN (" + StatisticsTable.selectFeedStatistics(db, includeMarkedAsPlayed,
+                        timeFilterFrom, timeFilterTo) + ") AS statistics"
+                + " ON statistics." + KEY_FEED + "=" + TABLE_NAME_FEEDS + "." + KEY_ID
+                + " LEFT JOIN (SELECT " + KEY_FEED + ", COUNT(*) AS num_recent_unplayed FROM " + TABLE_NAME_FEED_ITEMS
+                        + " WHERE " + KEY_PUBDATE + " >= " + sixMonthsAgo
+                        + " AND " + KEY_READ + " != " + FeedItem.PLAYED
+                        + " GROUP BY " + KEY_FEED + ") AS recent"
+                + " ON recent." + KEY_FEED + "=" + TABLE_NAME_FEEDS + "." + KEY_ID
+                + " WHERE " + TABLE_NAME_FEEDS + "." + KEY_STATE + "!=" + Feed.STATE_NOT_SUBSCRIBED;
+        return db.rawQuery(query, null);
+    }
+
+    /**
+     * @return The earliest last played time of an episode of a subscribed feed, or Long.MAX_VALUE if
+     *         no episode was played.
+     */
+    public final long getOldestPlaybackTime() {
+        final String lastPlayedTime = TABLE_NAME_FEED_MEDIA + "." + KEY_LAST_PLAYED_TIME_STATISTICS;
+        final String query = "SELECT IFNULL((SELECT " + lastPlayedTime
+                + " FROM " + TABLE_NAME_FEED_MEDIA
+                + " INNER JOIN " + TABLE_NAME_FEED_ITEMS
+                + " ON " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + "=" + TABLE_NAME_FEED_MEDIA + "." + KEY_FEEDITEM
                 + " INNER JOIN " + TABLE_NAME_FEEDS
                 + " ON " + TABLE_NAME_FEED_ITEMS + "." + KEY_FEED + "=" + TABLE_NAME_FEEDS + "." + KEY_ID
-                + " WHERE " + TABLE_NAME_FEEDS + "." + KEY_STATE + "!=" + Feed.STATE_NOT_SUBSCRIBED
-                + " GROUP BY " + TABLE_NAME_FEEDS + "." + KEY_ID;
-        return db.rawQuery(query, null);
+                + " WHERE " + lastPlayedTime + " > 0"
+                + " AND " + TABLE_NAME_FEEDS + "." + KEY_STATE + "!=" + Feed.STATE_NOT_SUBSCRIBED
+                + " ORDER BY " + lastPlayedTime + " LIMIT 1), " + Long.MAX_VALUE + ")";
+        return DatabaseUtils.longForQuery(db, query, null);
     }
 
     public final Cursor getTimeBetweenReleaseAndPlayback(long timeFilterFrom, long timeFilterTo) {
@@ -1314,32 +1720,45 @@ public class PodDBAdapter {
     }
 
     public final Map<Long, Integer> getFeedCounters(FeedCounter setting, long... feedIds) {
-        String whereRead;
+        String column = getCounterColumn(setting);
+        if (column == null) {
+            return new HashMap<>();
+        }
+        return feedCounterRead(column, feedIds);
+    }
+
+    /**
+     * @return The sum of the counter over all subscribed feeds
+     */
+    public final int getTotalFeedCounter(FeedCounter setting) {
+        String column = getCounterColumn(setting);
+        if (column == null) {
+            return 0;
+        }
+        final String query = "SELECT SUM(" + column + ") FROM " + TABLE_NAME_FEED_COUNTERS
+                + " WHERE " + SELECT_WHERE_COUNTER_FEED_IS_SUBSCRIBED;
+        return (int) DatabaseUtils.longForQuery(db, query, null);
+    }
+
+    @Nullable
+    private static String getCounterColumn(FeedCounter setting) {
         switch (setting) {
             case SHOW_NEW:
-                whereRead = KEY_READ + "=" + FeedItem.NEW;
-                break;
+                return FeedCounterTable.KEY_NUM_NEW;
             case SHOW_UNPLAYED:
-                whereRead = "(" + KEY_READ + "=" + FeedItem.NEW
-                        + " OR " + KEY_READ + "=" + FeedItem.UNPLAYED + ")";
-                break;
+                return FeedCounterTable.KEY_NUM_UNPLAYED;
             case SHOW_DOWNLOADED:
-                whereRead = KEY_DOWNLOAD_DATE + ">0";
-                break;
+                return FeedCounterTable.KEY_NUM_DOWNLOADED;
             case SHOW_DOWNLOADED_UNPLAYED:
-                whereRead = "(" + KEY_READ + "=" + FeedItem.NEW
-                        + " OR " + KEY_READ + "=" + FeedItem.UNPLAYED + ")"
-                        + " AND " + KEY_DOWNLOAD_DATE + ">0";
-                break;
+                return FeedCounterTable.KEY_NUM_DOWNLOADED_UNPLAYED;
             case SHOW_NONE:
                 // deliberate fall-through
             default: // NONE
-                return new HashMap<>();
+                return null;
         }
-        return conditionalFeedCounterRead(whereRead, feedIds);
     }
 
-    private Map<Long, Integer> conditionalFeedCounterRead(String whereRead, long... feedIds) {
+    private Map<Long, Integer> feedCounterRead(String column, long... feedIds) {
         String limitFeeds;
         if (feedIds.length > 0) {
             // work around TextUtils.join wanting only boxed items
@@ -1351,17 +1770,13 @@ public class PodDBAdapter {
             }
             // there's an extra ',', get rid of it
             builder.deleteCharAt(builder.length() - 1);
-            limitFeeds = KEY_FEED + " IN (" + builder.toString() + ") AND ";
+            limitFeeds = KEY_FEED + " IN (" + builder.toString() + ")";
         } else {
-            limitFeeds = SELECT_WHERE_FEED_IS_SUBSCRIBED + " AND ";
+            limitFeeds = SELECT_WHERE_COUNTER_FEED_IS_SUBSCRIBED;
         }
 
-        final String query = "SELECT " + KEY_FEED + ", COUNT(" + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + ") AS count "
-                + " FROM " + TABLE_NAME_FEED_ITEMS
-                + " LEFT JOIN " + TABLE_NAME_FEED_MEDIA + " ON "
-                + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + "=" + TABLE_NAME_FEED_MEDIA + "." + KEY_FEEDITEM
-                + " WHERE " + limitFeeds + " "
-                + whereRead + " GROUP BY " + KEY_FEED;
+        final String query = "SELECT " + KEY_FEED + ", " + column + " FROM " + TABLE_NAME_FEED_COUNTERS
+                + " WHERE " + limitFeeds + " AND " + column + ">0";
 
         Cursor c = db.rawQuery(query, null);
         Map<Long, Integer> result = new HashMap<>();
@@ -1377,15 +1792,12 @@ public class PodDBAdapter {
     }
 
     public final Map<Long, Integer> getPlayedEpisodesCounters(long... feedIds) {
-        String whereRead = KEY_READ + "=" + FeedItem.PLAYED;
-        return conditionalFeedCounterRead(whereRead, feedIds);
+        return feedCounterRead(FeedCounterTable.KEY_NUM_PLAYED, feedIds);
     }
 
     public final Map<Long, Long> getMostRecentItemDates() {
-        final String query = "SELECT " + KEY_FEED + ","
-                + " MAX(" + TABLE_NAME_FEED_ITEMS + "." + KEY_PUBDATE + ") AS most_recent_pubdate"
-                + " FROM " + TABLE_NAME_FEED_ITEMS
-                + " GROUP BY " + KEY_FEED;
+        final String query = "SELECT " + KEY_FEED + ", " + FeedCounterTable.KEY_MOST_RECENT_PUBDATE
+                + " FROM " + TABLE_NAME_FEED_COUNTERS;
 
         Cursor c = db.rawQuery(query, null);
         Map<Long, Long> result = new HashMap<>();
@@ -1401,94 +1813,163 @@ public class PodDBAdapter {
     }
 
     /**
-     * Uses DatabaseUtils to escape a search query and removes ' at the
-     * beginning and the end of the string returned by the escape method.
+     * Recounts the episodes of all feeds if the counters do not match. They are normally kept up to date
+     * by triggers, so this is only a safety net that should run rarely.
+     *
+     * @return true if the counters had to be repaired
      */
-    private String[] prepareSearchQuery(String query) {
-        String[] queryWords = query.split("\\s+");
-        for (int i = 0; i < queryWords.length; ++i) {
-            StringBuilder builder = new StringBuilder();
-            DatabaseUtils.appendEscapedSQLString(builder, queryWords[i]);
-            builder.deleteCharAt(0);
-            builder.deleteCharAt(builder.length() - 1);
-            queryWords[i] = builder.toString();
+    public boolean repairFeedCounters() {
+        if (FeedCounterTable.isConsistent(db)) {
+            return false;
+        }
+        Log.w(TAG, "Feed counters do not match the episodes, recounting");
+        db.beginTransactionNonExclusive();
+        try {
+            FeedCounterTable.rebuild(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        return true;
+    }
 
-        return queryWords;
+    /**
+     * Sums up the statistics of all media if they do not match. They are normally kept up to date
+     * by triggers, so this is only a safety net that should run rarely.
+     *
+     * @return true if the statistics had to be repaired
+     */
+    public boolean repairStatistics() {
+        if (StatisticsTable.isConsistent(db)) {
+            return false;
+        }
+        Log.w(TAG, "Statistics do not match the episodes, summing up again");
+        db.beginTransactionNonExclusive();
+        try {
+            StatisticsTable.rebuild(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return true;
     }
 
     /**
-     * Searches for the given query in various values of all items or the items
-     * of a specified feed.
+     * Searches for the given query in the title and description of all items or the items
+     * of a specified feed. Items with all words in the title come first. If no item contains
+     * the words as word prefixes, items that contain them anywhere, like in compound words, are returned.
      *
      * @return A cursor with all search results in SEL_FI_EXTRA selection.
      */
     public Cursor searchItems(long feedID, String searchQuery, int state) {
-        final String[] queryWords = prepareSearchQuery(searchQuery);
+        String matchAll = SearchIndex.toMatchQuery(searchQuery, null);
+        if (matchAll == null) {
+            return db.rawQuery(SELECT_FEED_ITEMS_AND_MEDIA_WITH_DESCRIPTION + " WHERE 0", null);
+        }
+        String matchTitle = SearchIndex.toMatchQuery(searchQuery, KEY_TITLE);
+        String selectMatches = "SELECT docid FROM " + TABLE_NAME_FEED_ITEMS_SEARCH
+                + " WHERE " + TABLE_NAME_FEED_ITEMS_SEARCH + " MATCH ?";
 
-        String queryFeedId;
+        String query = SELECT_FEED_ITEMS_AND_MEDIA_WITH_DESCRIPTION
+                + " WHERE " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + " IN (" + selectMatches + ")";
         if (feedID != 0) {
             // search items in specific feed
-            queryFeedId = KEY_FEED + " = " + feedID;
-        } else {
-            // search through all items
-            queryFeedId = "1 = 1";
+            query += " AND " + KEY_FEED + " = " + feedID;
+        } else if (state == Feed.STATE_SUBSCRIBED) {
+            query += " AND " + SELECT_WHERE_FEED_IS_SUBSCRIBED;
+        }
+        query += " ORDER BY " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + " IN (" + selectMatches + ") DESC, "
+                + KEY_PUBDATE + " DESC LIMIT 300";
+        Cursor cursor = db.rawQuery(query, new String[] {matchAll, matchTitle});
+        if (cursor.getCount() > 0) {
+            return cursor;
         }
+        cursor.close();
+        return searchItemsBySubstring(feedID, searchQuery, state);
+    }
 
-        String queryStart = SELECT_FEED_ITEMS_AND_MEDIA_WITH_DESCRIPTION + " WHERE " + queryFeedId;
-        if (state == Feed.STATE_SUBSCRIBED && feedID == 0) {
-            queryStart += " AND " + SELECT_WHERE_FEED_IS_SUBSCRIBED;
+    /**
+     * Slow search that scans all items, but also finds words in the middle of other words.
+     */
+    private Cursor searchItemsBySubstring(long feedID, String searchQuery, int state) {
+        final String[] queryWords = prepareSearchQuery(searchQuery);
+        String queryStart = SELECT_FEED_ITEMS_AND_MEDIA_WITH_DESCRIPTION + " WHERE ";
+        if (feedID != 0) {
+            queryStart += KEY_FEED + " = " + feedID;
+        } else if (state == Feed.STATE_SUBSCRIBED) {
+            queryStart += SELECT_WHERE_FEED_IS_SUBSCRIBED;
+        } else {
+            queryStart += "1 = 1";
         }
-        queryStart += " AND (";
         StringBuilder sb = new StringBuilder(queryStart);
-
-        for (int i = 0; i < queryWords.length; i++) {
-            sb
-                    .append("(")
-                    .append(KEY_DESCRIPTION + " LIKE '%").append(queryWords[i])
-                    .append("%' OR ")
-                    .append(KEY_TITLE).append(" LIKE '%").append(queryWords[i])
-                    .append("%') ");
-
-            if (i != queryWords.length - 1) {
-                sb.append("AND ");
-            }
+        for (String word : queryWords) {
+            sb.append(" AND (")
+                    .append(KEY_DESCRIPTION).append(" LIKE '%").append(word).append("%' OR ")
+                    .append(KEY_TITLE).append(" LIKE '%").append(word).append("%')");
         }
-
-        sb.append(") ORDER BY " + KEY_PUBDATE + " DESC LIMIT 300");
-
+        sb.append(" ORDER BY " + KEY_PUBDATE + " DESC LIMIT 300");
         return db.rawQuery(sb.toString(), null);
     }
 
     /**
-     * Searches for the given query in various values of all feeds.
+     * Searches for the given query in various values of all feeds. Feeds with all words in the title come first.
+     * Falls back to a substring search like {@link #searchItems(long, String, int)}.
      *
      * @return A cursor with all search results in SEL_FI_EXTRA selection.
      */
     public Cursor searchFeeds(String searchQuery, int state) {
-        final String[] queryWords = prepareSearchQuery(searchQuery);
         String queryStart = "SELECT " + KEYS_FEED + " FROM " + TABLE_NAME_FEEDS
                 + " WHERE " + KEY_STATE + " = " + state;
-        StringBuilder sb = new StringBuilder(queryStart);
-
-        for (int i = 0; i < queryWords.length; i++) {
-            sb
-                    .append(" AND (")
-                    .append(KEY_TITLE).append(" LIKE '%").append(queryWords[i])
-                    .append("%' OR ")
-                    .append(KEY_CUSTOM_TITLE).append(" LIKE '%").append(queryWords[i])
-                    .append("%' OR ")
-                    .append(KEY_AUTHOR).append(" LIKE '%").append(queryWords[i])
-                    .append("%' OR ")
-                    .append(KEY_DESCRIPTION).append(" LIKE '%").append(queryWords[i])
-                    .append("%') ");
+        String matchAll = SearchIndex.toMatchQuery(searchQuery, null);
+        if (matchAll == null) {
+            return db.rawQuery(queryStart + " AND 0", null);
+        }
+        String matchTitle = SearchIndex.toMatchQuery(searchQuery, KEY_TITLE);
+        String selectMatches = "SELECT docid FROM " + TABLE_NAME_FEEDS_SEARCH
+                + " WHERE " + TABLE_NAME_FEEDS_SEARCH + " MATCH ?";
+
+        String query = queryStart + " AND " + TABLE_NAME_FEEDS + "." + KEY_ID + " IN (" + selectMatches + ")"
+                + " ORDER BY " + TABLE_NAME_FEEDS + "." + KEY_ID + " IN (" + selectMatches + ") DESC, "
+                + KEY_TITLE + " ASC LIMIT 300";
+        Cursor cursor = db.rawQuery(query, new String[] {matchAll, matchTitle});
+        if (cursor.getCount() > 0) {
+            return cursor;
         }
+        cursor.close();
+        return searchFeedsBySubstring(searchQuery, state);
+    }
 
+    private Cursor searchFeedsBySubstring(String searchQuery, int state) {
+        final String[] queryWords = prepareSearchQuery(searchQuery);
+        StringBuilder sb = new StringBuilder("SELECT " + KEYS_FEED + " FROM " + TABLE_NAME_FEEDS
+                + " WHERE " + KEY_STATE + " = " + state);
+        for (String word : queryWords) {
+            sb.append(" AND (")
+                    .append(KEY_TITLE).append(" LIKE '%").append(word).append("%' OR ")
+                    .append(KEY_CUSTOM_TITLE).append(" LIKE '%").append(word).append("%' OR ")
+                    .append(KEY_AUTHOR).append(" LIKE '%").append(word).append("%' OR ")
+                    .append(KEY_DESCRIPTION).append(" LIKE '%").append(word).append("%')");
+        }
         sb.append(" ORDER BY " + KEY_TITLE + " ASC LIMIT 300");
-
         return db.rawQuery(sb.toString(), null);
     }
 
+    /**
+     * Uses DatabaseUtils to escape a search query and removes ' at the
+     * beginning and the end of the string returned by the escape method.
+     */
+    private static String[] prepareSearchQuery(String query) {
+        String[] queryWords = query.trim().split("\\s+");
+        for (int i = 0; i < queryWords.length; ++i) {
+            StringBuilder builder = new StringBuilder();
+            DatabaseUtils.appendEscapedSQLString(builder, queryWords[i]);
+            builder.deleteCharAt(0);
+            builder.deleteCharAt(builder.length() - 1);
+            queryWords[i] = builder.toString();
+        }
+        return queryWords;
+    }
+
     /**
      * Insert raw data to the database.
      * Call method only for unit tests.
@@ -1551,6 +2032,10 @@ public class PodDBAdapter {
             db.execSQL(CREATE_INDEX_FEEDMEDIA_FEEDITEM);
             db.execSQL(CREATE_INDEX_QUEUE_FEEDITEM);
             db.execSQL(CREATE_INDEX_SIMPLECHAPTERS_FEEDITEM);
+            db.execSQL(CREATE_INDEX_FEEDMEDIA_LAST_PLAYED_TIME);
+            SearchIndex.create(db);
+            FeedCounterTable.create(db);
+            StatisticsTable.create(db);
         }
 
         @Override
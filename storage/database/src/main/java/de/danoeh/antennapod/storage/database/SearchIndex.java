@@ -0,0 +1,108 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import androidx.annotation.Nullable;
+
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_AUTHOR;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_CUSTOM_TITLE;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_DESCRIPTION;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_ID;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_TITLE;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEEDS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEEDS_SEARCH;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_ITEMS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_ITEMS_SEARCH;
+
+/**
+ * Full text search tables for episodes and feeds. The FTS4 tables only hold the index and read the text from
+ * the original tables. Triggers keep the index up to date, so writers do not need to care about it.
+ */
+final class SearchIndex {
+    private static final String[] FEED_ITEM_COLUMNS = {KEY_TITLE, KEY_DESCRIPTION};
+    private static final String[] FEED_COLUMNS = {KEY_TITLE, KEY_CUSTOM_TITLE, KEY_AUTHOR, KEY_DESCRIPTION};
+
+    private SearchIndex() {
+    }
+
+    static void create(SQLiteDatabase db) {
+        create(db, TABLE_NAME_FEED_ITEMS_SEARCH, TABLE_NAME_FEED_ITEMS, FEED_ITEM_COLUMNS);
+        create(db, TABLE_NAME_FEEDS_SEARCH, TABLE_NAME_FEEDS, FEED_COLUMNS);
+    }
+
+    /**
+     * Indexes all rows that are already in the database.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        for (String table : new String[] {TABLE_NAME_FEED_ITEMS_SEARCH, TABLE_NAME_FEEDS_SEARCH}) {
+            db.execSQL("INSERT INTO " + table + "(" + table + ") VALUES('rebuild')");
+        }
+    }
+
+    private static void create(SQLiteDatabase db, String searchTable, String contentTable, String[] columns) {
+        String columnList = TextUtils.join(", ", columns);
+        String newValues = "new." + TextUtils.join(", new.", columns);
+        String insert = "INSERT INTO " + searchTable + "(docid, " + columnList + ")"
+                + " VALUES (new." + KEY_ID + ", " + newValues + ");";
+        // The index reads the old text from the content table, so it has to be removed before the row changes
+        String delete = "DELETE FROM " + searchTable + " WHERE docid = old." + KEY_ID + ";";
+
+        db.execSQL("CREATE VIRTUAL TABLE " + searchTable + " USING fts4("
+                + "content=\"" + contentTable + "\", " + columnList + ")");
+        db.execSQL("CREATE TRIGGER " + searchTable + "_after_insert AFTER INSERT ON " + contentTable
+                + " BEGIN " + insert + " END");
+        db.execSQL("CREATE TRIGGER " + searchTable + "_before_update BEFORE UPDATE OF " + columnList
+                + " ON " + contentTable + " BEGIN " + delete + " END");
+        db.execSQL("CREATE TRIGGER " + searchTable + "_after_update AFTER UPDATE OF " + columnList
+                + " ON " + contentTable + " BEGIN " + insert + " END");
+        db.execSQL("CREATE TRIGGER " + searchTable + "_before_delete BEFORE DELETE ON " + contentTable
+                + " BEGIN " + delete + " END");
+    }
+
+    /**
+     * Converts a user entered query to an FTS query that requires every word to appear as a word prefix.
+     * Words are split the same way as the index' tokenizer does, which also removes FTS operators.
+     *
+     * @param column Only match words in this column, or null to match in all columns
+     * @return The query, or null if it does not contain anything that can be searched for.
+     */
+    @Nullable
+    static String toMatchQuery(String query, @Nullable String column) {
+        StringBuilder match = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            boolean separator = i == query.length() || isSeparator(query.charAt(i));
+            if (!separator && start < 0) {
+                start = i;
+            } else if (separator && start >= 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                if (column != null) {
+                    match.append(column).append(':');
+                }
+                appendLowerCase(match, query, start, i);
+                match.append('*');
+                start = -1;
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * Lower case, so that words like "OR" are not taken as operators. Like the tokenizer, only changes ASCII letters.
+     */
+    private static void appendLowerCase(StringBuilder builder, String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            builder.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+    /**
+     * The "simple" tokenizer splits at all ASCII characters that are not letters or digits.
+     */
+    private static boolean isSeparator(char c) {
+        return c < 128 && !Character.isLetterOrDigit(c);
+    }
+}
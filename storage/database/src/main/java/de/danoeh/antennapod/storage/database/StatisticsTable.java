@@ -0,0 +1,354 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import de.danoeh.antennapod.model.feed.FeedItem;
+
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_DOWNLOAD_DATE;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_DURATION;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_FEED;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_FEEDITEM;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_ID;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_LAST_PLAYED_TIME_HISTORY;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_LAST_PLAYED_TIME_STATISTICS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_PLAYED_DURATION;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_POSITION;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_READ;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.KEY_SIZE;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEEDS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_ITEMS;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_MEDIA;
+import static de.danoeh.antennapod.storage.database.PodDBAdapter.TABLE_NAME_FEED_STATISTICS;
+
+/**
+ * Playback and download statistics per feed and month, so that the statistics screens do not need to
+ * look at all episodes. The month is the month (UTC) in which the media was last played.
+ * Triggers keep the sums up to date, so writers do not need to care about them.
+ * Media without an episode are not counted.
+ */
+final class StatisticsTable {
+    static final String KEY_MONTH_START = "month_start";
+    static final String KEY_NUM_MEDIA = "num_media";
+    static final String KEY_PLAYED_TIME = "played_time";
+    static final String KEY_PLAYED_TIME_WITH_MARKED = "played_time_with_marked";
+    static final String KEY_NUM_STARTED = "num_started";
+    static final String KEY_NUM_STARTED_NOT_PLAYED = "num_started_not_played";
+    static final String KEY_TOTAL_TIME = "total_time";
+    static final String KEY_DOWNLOAD_SIZE = "download_size";
+
+    /**
+     * Month of media that were never played or have a last played time that SQLite can not handle.
+     */
+    static final long NO_MONTH = -1;
+    /**
+     * 10000-01-01, SQLite date functions do not work after that.
+     */
+    static final long MAX_TIME = 253402300800000L;
+
+    private static final String[] VALUE_COLUMNS = {KEY_NUM_MEDIA, KEY_PLAYED_TIME, KEY_PLAYED_TIME_WITH_MARKED,
+        KEY_NUM_STARTED, KEY_NUM_STARTED_NOT_PLAYED, KEY_TOTAL_TIME, KEY_DOWNLOAD_SIZE};
+
+    private static final String COLUMNS = KEY_FEED + ", " + KEY_MONTH_START + ", " + KEY_NUM_MEDIA + ", "
+            + KEY_PLAYED_TIME + ", " + KEY_PLAYED_TIME_WITH_MARKED + ", " + KEY_NUM_STARTED + ", "
+            + KEY_NUM_STARTED_NOT_PLAYED + ", " + KEY_TOTAL_TIME + ", " + KEY_DOWNLOAD_SIZE;
+
+    private static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME_FEED_STATISTICS + " ("
+            + KEY_FEED + " INTEGER NOT NULL, "
+            + KEY_MONTH_START + " INTEGER NOT NULL, "
+            + KEY_NUM_MEDIA + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_PLAYED_TIME + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_PLAYED_TIME_WITH_MARKED + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_NUM_STARTED + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_NUM_STARTED_NOT_PLAYED + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_TOTAL_TIME + " INTEGER NOT NULL DEFAULT 0, "
+            + KEY_DOWNLOAD_SIZE + " INTEGER NOT NULL DEFAULT 0, "
+            + "PRIMARY KEY (" + KEY_FEED + ", " + KEY_MONTH_START + "))";
+
+    /**
+     * The sums as they follow from the media, in the same column order as the table.
+     */
+    private static final String SELECT_EXPECTED_STATISTICS = "SELECT IFNULL(i." + KEY_FEED + ", 0), "
+            + monthOf("m") + ", "
+            + sumOfValues("m", "i")
+            + " FROM " + TABLE_NAME_FEED_MEDIA + " m"
+            + " INNER JOIN " + TABLE_NAME_FEED_ITEMS + " i ON i." + KEY_ID + "=m." + KEY_FEEDITEM
+            + " GROUP BY 1, 2";
+
+    private StatisticsTable() {
+    }
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE);
+
+        // The media is either inserted after its item or counted when the item is inserted
+        createTrigger(db, "media_insert", "AFTER INSERT ON " + TABLE_NAME_FEED_MEDIA, addMedia("new"));
+        createMediaUpdateTriggers(db);
+        createTrigger(db, "media_delete", "AFTER DELETE ON " + TABLE_NAME_FEED_MEDIA, removeMedia("old"));
+
+        createTrigger(db, "item_insert", "AFTER INSERT ON " + TABLE_NAME_FEED_ITEMS, addItem("new"));
+        String[] itemColumns = {KEY_READ, KEY_FEED};
+        createTrigger(db, "item_update", "AFTER UPDATE OF " + TextUtils.join(", ", itemColumns)
+                + " ON " + TABLE_NAME_FEED_ITEMS + " WHEN " + anyChanged(itemColumns),
+                removeItem("old") + addItem("new"));
+        createTrigger(db, "item_delete", "AFTER DELETE ON " + TABLE_NAME_FEED_ITEMS, removeItem("old"));
+
+        createTrigger(db, "feed_delete", "AFTER DELETE ON " + TABLE_NAME_FEEDS,
+                "DELETE FROM " + TABLE_NAME_FEED_STATISTICS + " WHERE " + KEY_FEED + "=old." + KEY_ID + ";");
+    }
+
+    /**
+     * The position is saved all the time during playback, but only whether it is 0 matters. Updates of the
+     * position alone therefore only do something when that changes. The two triggers never both run for
+     * the same update.
+     */
+    private static void createMediaUpdateTriggers(SQLiteDatabase db) {
+        String[] mediaColumns = {KEY_PLAYED_DURATION, KEY_LAST_PLAYED_TIME_STATISTICS, KEY_LAST_PLAYED_TIME_HISTORY,
+            KEY_DURATION, KEY_DOWNLOAD_DATE, KEY_SIZE, KEY_FEEDITEM};
+        createTrigger(db, "media_update", "AFTER UPDATE OF " + TextUtils.join(", ", mediaColumns)
+                + " ON " + TABLE_NAME_FEED_MEDIA + " WHEN " + anyChanged(mediaColumns),
+                removeMedia("old") + addMedia("new"));
+        createTrigger(db, "media_position_update", "AFTER UPDATE OF " + KEY_POSITION
+                + " ON " + TABLE_NAME_FEED_MEDIA + " WHEN (old." + KEY_POSITION + ">0) IS NOT (new." + KEY_POSITION
+                + ">0) AND NOT (" + anyChanged(mediaColumns) + ")",
+                removeMedia("old") + addMedia("new"));
+    }
+
+    /**
+     * Replaces the triggers of older versions that ran on every position update.
+     */
+    static void recreateMediaUpdateTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_NAME_FEED_STATISTICS + "_media_update");
+        db.execSQL("DROP TRIGGER IF EXISTS " + TABLE_NAME_FEED_STATISTICS + "_media_position_update");
+        createMediaUpdateTriggers(db);
+    }
+
+    /**
+     * Sums up all media that are already in the database.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_NAME_FEED_STATISTICS);
+        db.execSQL("INSERT INTO " + TABLE_NAME_FEED_STATISTICS + " (" + COLUMNS + ") " + SELECT_EXPECTED_STATISTICS);
+    }
+
+    /**
+     * Compares the table with the result of summing up all media. This is slow.
+     */
+    static boolean isConsistent(SQLiteDatabase db) {
+        String selectStatistics = "SELECT " + COLUMNS + " FROM " + TABLE_NAME_FEED_STATISTICS;
+        String query = "SELECT"
+                + " (SELECT COUNT(*) FROM (" + SELECT_EXPECTED_STATISTICS + " EXCEPT " + selectStatistics + "))"
+                + " + (SELECT COUNT(*) FROM (" + selectStatistics + " EXCEPT " + SELECT_EXPECTED_STATISTICS + "))";
+        return DatabaseUtils.longForQuery(db, query, null) == 0;
+    }
+
+    /**
+     * Selects the statistics per feed, with the columns feed, total_time, download_size, episodes_started
+     * and played_time. Months that are completely within the time filter are read from the table, only media
+     * that were last played at the start or end of the time filter are looked at individually.
+     *
+     * @param includeMarkedAsPlayed Count episodes that were marked as played as started, with their full duration
+     */
+    static String selectFeedStatistics(SQLiteDatabase db, boolean includeMarkedAsPlayed,
+                                       long timeFilterFrom, long timeFilterTo) {
+        long fullMonthsFrom = startOfFirstMonthFrom(db, timeFilterFrom);
+        long fullMonthsTo = timeFilterTo >= MAX_TIME ? MAX_TIME : startOfMonth(db, Math.max(timeFilterTo, 0));
+        if (fullMonthsFrom >= fullMonthsTo) {
+            fullMonthsFrom = timeFilterTo;
+            fullMonthsTo = timeFilterTo;
+        }
+        String playedTimeColumn = includeMarkedAsPlayed ? KEY_PLAYED_TIME_WITH_MARKED : KEY_PLAYED_TIME;
+        String lastPlayed = TABLE_NAME_FEED_MEDIA + "." + KEY_LAST_PLAYED_TIME_STATISTICS;
+        String values = valuesOf(TABLE_NAME_FEED_MEDIA, TABLE_NAME_FEED_ITEMS)[includeMarkedAsPlayed ? 2 : 1];
+        return "SELECT " + KEY_FEED + ", SUM(" + KEY_TOTAL_TIME + ") AS total_time, "
+                + "SUM(" + KEY_DOWNLOAD_SIZE + ") AS download_size, "
+                + "SUM(episodes_started) AS episodes_started, SUM(played_time) AS played_time FROM ("
+                    + "SELECT " + KEY_FEED + ", " + KEY_TOTAL_TIME + ", " + KEY_DOWNLOAD_SIZE + ", "
+                    + (includeMarkedAsPlayed ? KEY_NUM_STARTED_NOT_PLAYED : KEY_NUM_STARTED) + " AS episodes_started, "
+                    + "CASE WHEN " + KEY_MONTH_START + ">=" + fullMonthsFrom
+                            + " AND " + KEY_MONTH_START + "<" + fullMonthsTo
+                            + " THEN " + playedTimeColumn + " ELSE 0 END AS played_time"
+                    + " FROM " + TABLE_NAME_FEED_STATISTICS
+                    + " UNION ALL "
+                    + "SELECT " + TABLE_NAME_FEED_ITEMS + "." + KEY_FEED + ", 0, 0, 0, " + values
+                    + " FROM " + TABLE_NAME_FEED_MEDIA
+                    + " INNER JOIN " + TABLE_NAME_FEED_ITEMS
+                    + " ON " + TABLE_NAME_FEED_ITEMS + "." + KEY_ID + "=" + TABLE_NAME_FEED_MEDIA + "." + KEY_FEEDITEM
+                    + " WHERE (" + lastPlayed + ">=" + timeFilterFrom
+                            + " AND " + lastPlayed + "<" + fullMonthsFrom + ")"
+                    + " OR (" + lastPlayed + ">=" + fullMonthsTo + " AND " + lastPlayed + "<" + timeFilterTo + ")"
+                + ") GROUP BY " + KEY_FEED;
+    }
+
+    /**
+     * Selects the played time per month, with the columns month_start and played_time.
+     * Only media with a last played time after 1970-01-01 and a played duration are counted.
+     */
+    static String selectMonthlyPlayedTime() {
+        long startOfFebruary1970 = 31L * 24 * 3600 * 1000;
+        String lastPlayed = KEY_LAST_PLAYED_TIME_STATISTICS;
+        return "SELECT " + KEY_MONTH_START + ", SUM(" + KEY_PLAYED_TIME + ") AS played_time FROM ("
+                    + "SELECT " + KEY_MONTH_START + ", " + KEY_PLAYED_TIME + " FROM " + TABLE_NAME_FEED_STATISTICS
+                    + " WHERE " + KEY_MONTH_START + ">0"
+                    // The first month also contains media that were never played
+                    + " UNION ALL "
+                    + "SELECT 0, " + KEY_PLAYED_DURATION + " FROM " + TABLE_NAME_FEED_MEDIA
+                    + " WHERE " + lastPlayed + ">0 AND " + lastPlayed + "<" + startOfFebruary1970
+                    + " AND " + KEY_PLAYED_DURATION + ">0"
+                + ") GROUP BY " + KEY_MONTH_START
+                + " HAVING SUM(" + KEY_PLAYED_TIME + ")>0";
+    }
+
+    private static long startOfMonth(SQLiteDatabase db, long millis) {
+        return DatabaseUtils.longForQuery(db, "SELECT " + startOfMonthExpression(String.valueOf(millis)), null);
+    }
+
+    /**
+     * @return The start of the first month that starts at or after the given time
+     */
+    private static long startOfFirstMonthFrom(SQLiteDatabase db, long millis) {
+        if (millis <= 0) {
+            return 0;
+        } else if (millis >= MAX_TIME) {
+            return MAX_TIME;
+        }
+        long startOfMonth = startOfMonth(db, millis);
+        if (startOfMonth == millis) {
+            return millis;
+        }
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL(CAST(strftime('%s', " + millis + " / 1000.0, "
+                + "'unixepoch', 'start of month', '+1 month') AS INTEGER) * 1000, " + MAX_TIME + ")", null);
+    }
+
+    private static String startOfMonthExpression(String millis) {
+        return "CAST(strftime('%s', " + millis + " / 1000.0, 'unixepoch', 'start of month') AS INTEGER) * 1000";
+    }
+
+    private static String monthOf(String media) {
+        String lastPlayed = media + "." + KEY_LAST_PLAYED_TIME_STATISTICS;
+        return "(CASE WHEN " + lastPlayed + ">=0 AND " + lastPlayed + "<" + MAX_TIME
+                + " THEN " + startOfMonthExpression(lastPlayed) + " ELSE " + NO_MONTH + " END)";
+    }
+
+    /**
+     * What a media adds to each of the {@link #VALUE_COLUMNS}.
+     */
+    private static String[] valuesOf(String media, String item) {
+        String playedDuration = media + "." + KEY_PLAYED_DURATION;
+        String isPlayed = "(" + item + "." + KEY_READ + " IS " + FeedItem.PLAYED + ")";
+        String wasStarted = "(" + media + "." + KEY_LAST_PLAYED_TIME_HISTORY + ">0 AND " + playedDuration + ">0)";
+        return new String[] {
+            "1",
+            "IFNULL(" + playedDuration + ", 0)",
+            "IFNULL(CASE WHEN " + playedDuration + "!=0 THEN " + playedDuration
+                    + " ELSE (CASE WHEN " + item + "." + KEY_READ + "=" + FeedItem.PLAYED
+                    + " THEN " + media + "." + KEY_DURATION + " ELSE 0 END) END, 0)",
+            "IFNULL(" + wasStarted + ", 0)",
+            // Episodes that were marked as played are already counted by the feed counters
+            "IFNULL(NOT " + isPlayed + " AND (" + wasStarted + " OR " + media + "." + KEY_POSITION + ">0), 0)",
+            "IFNULL(" + media + "." + KEY_DURATION + ", 0)",
+            "(CASE WHEN " + media + "." + KEY_DOWNLOAD_DATE + ">0 THEN IFNULL(" + media + "." + KEY_SIZE + ", 0)"
+                    + " ELSE 0 END)"
+        };
+    }
+
+    private static String sumOfValues(String media, String item) {
+        String[] values = valuesOf(media, item);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            result.append(i == 0 ? "" : ", ").append("SUM(").append(values[i]).append(")");
+        }
+        return result.toString();
+    }
+
+    private static String anyChanged(String[] columns) {
+        StringBuilder result = new StringBuilder();
+        for (String column : columns) {
+            result.append(result.length() == 0 ? "" : " OR ")
+                    .append("old.").append(column).append(" IS NOT new.").append(column);
+        }
+        return result.toString();
+    }
+
+    private static void createTrigger(SQLiteDatabase db, String name, String event, String statements) {
+        db.execSQL("CREATE TRIGGER " + TABLE_NAME_FEED_STATISTICS + "_" + name + " " + event
+                + " BEGIN " + statements + " END");
+    }
+
+    /**
+     * Does nothing if the item of the media does not exist (yet).
+     */
+    private static String addMedia(String media) {
+        String itemOfMedia = itemOf(media);
+        return "INSERT OR IGNORE INTO " + TABLE_NAME_FEED_STATISTICS + " (" + KEY_FEED + ", " + KEY_MONTH_START + ")"
+                + " SELECT IFNULL(i." + KEY_FEED + ", 0), " + monthOf(media) + itemOfMedia + ";"
+                + updateMedia(media, "+");
+    }
+
+    private static String removeMedia(String media) {
+        return updateMedia(media, "-")
+                + "DELETE FROM " + TABLE_NAME_FEED_STATISTICS + " WHERE " + whereMedia(media)
+                + " AND " + KEY_NUM_MEDIA + "=0;";
+    }
+
+    private static String updateMedia(String media, String sign) {
+        String itemOfMedia = itemOf(media);
+        String[] values = valuesOf(media, "i");
+        StringBuilder result = new StringBuilder("UPDATE " + TABLE_NAME_FEED_STATISTICS + " SET ");
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            result.append(i == 0 ? "" : ", ").append(VALUE_COLUMNS[i]).append("=").append(VALUE_COLUMNS[i])
+                    .append(sign).append("(SELECT ").append(values[i]).append(itemOfMedia).append(")");
+        }
+        return result.append(" WHERE ").append(whereMedia(media)).append(";").toString();
+    }
+
+    private static String whereMedia(String media) {
+        return KEY_FEED + "=(SELECT IFNULL(i." + KEY_FEED + ", 0)" + itemOf(media) + ")"
+                + " AND " + KEY_MONTH_START + "=" + monthOf(media);
+    }
+
+    /**
+     * Selects from the item of the media, as "i".
+     */
+    private static String itemOf(String media) {
+        return " FROM " + TABLE_NAME_FEED_ITEMS + " i WHERE i." + KEY_ID + "=" + media + "." + KEY_FEEDITEM;
+    }
+
+    /**
+     * Selects from the media of the item, as "m".
+     */
+    private static String mediaOf(String item) {
+        return " FROM " + TABLE_NAME_FEED_MEDIA + " m WHERE m." + KEY_FEEDITEM + "=" + item + "." + KEY_ID;
+    }
+
+    private static String addItem(String item) {
+        String mediaOfItem = mediaOf(item);
+        return "INSERT OR IGNORE INTO " + TABLE_NAME_FEED_STATISTICS + " (" + KEY_FEED + ", " + KEY_MONTH_START + ")"
+                + " SELECT IFNULL(" + item + "." + KEY_FEED + ", 0), " + monthOf("m") + mediaOfItem + ";"
+                + updateItem(item, "+");
+    }
+
+    private static String removeItem(String item) {
+        return updateItem(item, "-")
+                + "DELETE FROM " + TABLE_NAME_FEED_STATISTICS
+                + " WHERE " + KEY_FEED + "=IFNULL(" + item + "." + KEY_FEED + ", 0) AND " + KEY_NUM_MEDIA + "=0;";
+    }
+
+    /**
+     * Does nothing if the item has no media (yet).
+     */
+    private static String updateItem(String item, String sign) {
+        String mediaOfItem = mediaOf(item);
+        String[] values = valuesOf("m", item);
+        StringBuilder result = new StringBuilder("UPDATE " + TABLE_NAME_FEED_STATISTICS + " SET ");
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            result.append(i == 0 ? "" : ", ").append(VALUE_COLUMNS[i]).append("=").append(VALUE_COLUMNS[i])
+                    .append(sign).append("IFNULL((SELECT SUM(").append(values[i]).append(")").append(mediaOfItem)
+                    .append(" AND ").append(monthOf("m")).append("=")
+                    .append(TABLE_NAME_FEED_STATISTICS).append(".").append(KEY_MONTH_START).append("), 0)");
+        }
+        return result.append(" WHERE ").append(KEY_FEED).append("=IFNULL(").append(item).append(".").append(KEY_FEED)
+                .append(", 0) AND ").append(KEY_MONTH_START).append(" IN (SELECT ").append(monthOf("m"))
+                .append(mediaOfItem).append(");").toString();
+    }
+}
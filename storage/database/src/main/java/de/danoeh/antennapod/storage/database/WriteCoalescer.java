@@ -0,0 +1,257 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.google.common.util.concurrent.SettableFuture;
+import de.danoeh.antennapod.event.DownloadLogEvent;
+import de.danoeh.antennapod.event.UnreadItemsUpdateEvent;
+import de.danoeh.antennapod.model.download.DownloadResult;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects small writes that arrive in quick succession, for example position updates during playback or
+ * download results during a feed refresh, and commits them in a single transaction on the database thread.
+ * Writes to the same row are merged, so that only the latest value is written. Each batch posts one event
+ * of each type instead of one event per write. If the batch fails, its writes are retried one at a time,
+ * so that only the failing write reports an error.
+ */
+final class WriteCoalescer {
+    private static final String TAG = "WriteCoalescer";
+    static final long WINDOW_MS = 50;
+
+    private final ScheduledExecutorService executor;
+    private Batch pending = new Batch();
+    private ScheduledFuture<?> scheduledFlush = null;
+
+    private long batchesCommitted = 0;
+    private long writesCommitted = 0;
+    private long writesMerged = 0;
+    private long lastCommitMillis = 0;
+    private long maxCommitMillis = 0;
+    private long totalCommitMillis = 0;
+
+    /**
+     * Writes that are committed together.
+     */
+    static final class Batch {
+        private final Map<Long, FeedMedia> playbackInformation = new LinkedHashMap<>();
+        private final Map<Long, Integer> playStates = new LinkedHashMap<>();
+        private final List<DownloadResult> downloadStatuses = new ArrayList<>();
+        // Every write in the order it arrived, unmerged, for retrying them one at a time
+        private final List<Write> writes = new ArrayList<>();
+        private boolean postUnreadItemsEvent = false;
+
+        boolean isEmpty() {
+            return writes.isEmpty();
+        }
+    }
+
+    private interface WriteAction {
+        void apply(PodDBAdapter adapter);
+    }
+
+    private static final class Write {
+        final WriteAction action;
+        final SettableFuture<Object> future = SettableFuture.create();
+
+        Write(WriteAction action) {
+            this.action = action;
+        }
+    }
+
+    WriteCoalescer(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    Future<?> setFeedMediaPlaybackInformation(FeedMedia media) {
+        Future<?> future;
+        synchronized (this) {
+            if (pending.playbackInformation.put(media.getId(), media) != null) {
+                writesMerged++;
+            }
+            future = enqueue(adapter -> adapter.setFeedMediaPlaybackInformation(media));
+        }
+        return flushIfOnDbThread(future);
+    }
+
+    Future<?> markItemPlayed(int played, boolean broadcastUpdate, long... itemIds) {
+        Future<?> future;
+        synchronized (this) {
+            for (long itemId : itemIds) {
+                if (pending.playStates.put(itemId, played) != null) {
+                    writesMerged++;
+                }
+            }
+            pending.postUnreadItemsEvent |= broadcastUpdate;
+            future = enqueue(adapter -> adapter.setFeedItemRead(played, itemIds));
+        }
+        return flushIfOnDbThread(future);
+    }
+
+    Future<?> addDownloadStatus(DownloadResult status) {
+        Future<?> future;
+        synchronized (this) {
+            pending.downloadStatuses.add(status);
+            future = enqueue(adapter -> adapter.setDownloadStatus(status));
+        }
+        return flushIfOnDbThread(future);
+    }
+
+    /**
+     * Removes the pending writes, so that later writes start a new batch. Used to keep the order of writes
+     * when another write is submitted to the database thread: the returned batch needs to be committed before it.
+     */
+    @NonNull
+    synchronized Batch takePending() {
+        Batch batch = pending;
+        pending = new Batch();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    /**
+     * Commits all pending writes. Must be called on the database thread.
+     */
+    void flush() {
+        commit(takePending());
+    }
+
+    /**
+     * Commits the writes of the batch in a single transaction. Must be called on the database thread.
+     */
+    void commit(@NonNull Batch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int succeeded = 0;
+        boolean nested = isInTransaction();
+        try {
+            runInTransaction(adapter -> {
+                for (DownloadResult status : batch.downloadStatuses) {
+                    adapter.setDownloadStatus(status);
+                }
+                for (Map.Entry<Integer, LongList> entry : groupByPlayState(batch.playStates).entrySet()) {
+                    adapter.setFeedItemRead(entry.getKey(), entry.getValue().toArray());
+                }
+                for (FeedMedia media : batch.playbackInformation.values()) {
+                    adapter.setFeedMediaPlaybackInformation(media);
+                }
+            });
+            for (Write write : batch.writes) {
+                write.future.set(null);
+            }
+            succeeded = batch.writes.size();
+        } catch (RuntimeException batchError) {
+            if (nested) {
+                // The surrounding transaction is rolled back anyway, so retrying would not help
+                for (Write write : batch.writes) {
+                    write.future.setException(batchError);
+                }
+                throw batchError;
+            }
+            Log.e(TAG, "Committing " + batch.writes.size() + " writes failed, retrying them one at a time",
+                    batchError);
+            for (Write write : batch.writes) {
+                try {
+                    runInTransaction(write.action);
+                    write.future.set(null);
+                    succeeded++;
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Write failed", e);
+                    write.future.setException(e);
+                }
+            }
+        }
+        long commitMillis = (System.nanoTime() - start) / 1_000_000;
+
+        synchronized (this) {
+            batchesCommitted++;
+            writesCommitted += succeeded;
+            lastCommitMillis = commitMillis;
+            maxCommitMillis = Math.max(maxCommitMillis, commitMillis);
+            totalCommitMillis += commitMillis;
+        }
+        if (succeeded == 0) {
+            return;
+        }
+        if (!batch.downloadStatuses.isEmpty()) {
+            EventBus.getDefault().post(DownloadLogEvent.listUpdated());
+        }
+        if (batch.postUnreadItemsEvent) {
+            EventBus.getDefault().post(new UnreadItemsUpdateEvent());
+        }
+    }
+
+    private static boolean isInTransaction() {
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try {
+            return adapter.isInTransaction();
+        } finally {
+            adapter.close();
+        }
+    }
+
+    private static void runInTransaction(WriteAction action) {
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try {
+            adapter.runInTransaction(() -> action.apply(adapter));
+        } finally {
+            adapter.close();
+        }
+    }
+
+    @NonNull
+    synchronized WriteQueueStats getStats(int queuedTasks) {
+        return new WriteQueueStats(pending.writes.size(), queuedTasks, batchesCommitted, writesCommitted,
+                writesMerged, lastCommitMillis, maxCommitMillis,
+                batchesCommitted == 0 ? 0 : totalCommitMillis / batchesCommitted);
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private Future<?> enqueue(WriteAction action) {
+        Write write = new Write(action);
+        pending.writes.add(write);
+        if (scheduledFlush == null && !DBWriter.isOnDbThread()) {
+            scheduledFlush = executor.schedule(this::flush, WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+        return write.future;
+    }
+
+    private Future<?> flushIfOnDbThread(Future<?> future) {
+        if (DBWriter.isOnDbThread()) {
+            flush();
+        }
+        return future;
+    }
+
+    private static Map<Integer, LongList> groupByPlayState(Map<Long, Integer> states) {
+        Map<Integer, LongList> result = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> entry : states.entrySet()) {
+            LongList ids = result.get(entry.getValue());
+            if (ids == null) {
+                ids = new LongList();
+                result.put(entry.getValue(), ids);
+            }
+            ids.add(entry.getKey());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package de.danoeh.antennapod.storage.database;
+
+/**
+ * Snapshot of the state of the database write queue, see {@link DBWriter#getWriteQueueStats()}.
+ */
+public final class WriteQueueStats {
+    /**
+     * Writes that wait to be committed with the next batch.
+     */
+    public final int pendingWrites;
+    /**
+     * Tasks that wait for the database thread.
+     */
+    public final int queuedTasks;
+    public final long batchesCommitted;
+    public final long writesCommitted;
+    /**
+     * Row updates that were replaced by a later update of the same row before being committed.
+     */
+    public final long writesMerged;
+    public final long lastCommitMillis;
+    public final long maxCommitMillis;
+    public final long averageCommitMillis;
+
+    public WriteQueueStats(int pendingWrites, int queuedTasks, long batchesCommitted, long writesCommitted,
+                           long writesMerged, long lastCommitMillis, long maxCommitMillis,
+                           long averageCommitMillis) {
+        this.pendingWrites = pendingWrites;
+        this.queuedTasks = queuedTasks;
+        this.batchesCommitted = batchesCommitted;
+        this.writesCommitted = writesCommitted;
+        this.writesMerged = writesMerged;
+        this.lastCommitMillis = lastCommitMillis;
+        this.maxCommitMillis = maxCommitMillis;
+        this.averageCommitMillis = averageCommitMillis;
+    }
+}
@@ -16,6 +16,7 @@ public class FeedCursor extends CursorWrapper {
     private final FeedPreferencesCursor preferencesCursor;
     private final int indexId;
     private final int indexLastUpdate;
+    private final int indexContentHash;
     private final int indexTitle;
     private final int indexCustomTitle;
     private final int indexLink;
@@ -41,6 +42,7 @@ public class FeedCursor extends CursorWrapper {
         preferencesCursor = (FeedPreferencesCursor) getWrappedCursor();
         indexId = cursor.getColumnIndexOrThrow(PodDBAdapter.SELECT_KEY_FEED_ID);
         indexLastUpdate = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_LASTUPDATE);
+        indexContentHash = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_CONTENT_HASH);
         indexTitle = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_TITLE);
         indexCustomTitle = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_CUSTOM_TITLE);
         indexLink = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_LINK);
@@ -89,6 +91,7 @@ public class FeedCursor extends CursorWrapper {
                 SortOrder.fromCodeString(getString(indexSortOrder)),
                 getInt(indexLastUpdateFailed) > 0,
                 getInt(indexState));
+        feed.setContentHash(getString(indexContentHash));
         feed.setPreferences(preferencesCursor.getFeedPreferences());
         return feed;
     }
@@ -35,16 +35,17 @@ public class FeedItemCursor extends CursorWrapper {
         feedMediaCursor = (FeedMediaCursor) getWrappedCursor();
         indexId = cursor.getColumnIndexOrThrow(PodDBAdapter.SELECT_KEY_ITEM_ID);
         indexTitle = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_TITLE);
-        indexLink = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_LINK);
+        // Episode lists do not select the link, payment link and chapter URL
+        indexLink = cursor.getColumnIndex(PodDBAdapter.KEY_LINK);
         indexPubDate = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_PUBDATE);
-        indexPaymentLink = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_PAYMENT_LINK);
+        indexPaymentLink = cursor.getColumnIndex(PodDBAdapter.KEY_PAYMENT_LINK);
         indexFeedId = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_FEED);
         indexHasChapters = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_HAS_CHAPTERS);
         indexRead = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_READ);
         indexItemIdentifier = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_ITEM_IDENTIFIER);
         indexAutoDownload = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_AUTO_DOWNLOAD_ENABLED);
         indexImageUrl = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_IMAGE_URL);
-        indexPodcastIndexChapterUrl = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_PODCASTINDEX_CHAPTER_URL);
+        indexPodcastIndexChapterUrl = cursor.getColumnIndex(PodDBAdapter.KEY_PODCASTINDEX_CHAPTER_URL);
         indexMediaId = cursor.getColumnIndexOrThrow(PodDBAdapter.SELECT_KEY_MEDIA_ID);
         indexSocialInteractUrl = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_SOCIAL_INTERACT_URL);
         indexPodcastIndexTranscriptType = cursor.getColumnIndexOrThrow(PodDBAdapter.KEY_PODCASTINDEX_TRANSCRIPT_TYPE);
@@ -59,16 +60,16 @@ public class FeedItemCursor extends CursorWrapper {
         FeedItem item = new FeedItem(
                 getInt(indexId),
                 getString(indexTitle),
-                getString(indexLink),
+                getStringOrNull(indexLink),
                 new Date(getLong(indexPubDate)),
-                getString(indexPaymentLink),
+                getStringOrNull(indexPaymentLink),
                 getLong(indexFeedId),
                 getInt(indexHasChapters) > 0,
                 getString(indexImageUrl),
                 getInt(indexRead),
                 getString(indexItemIdentifier),
                 getLong(indexAutoDownload) > 0,
-                getString(indexPodcastIndexChapterUrl),
+                getStringOrNull(indexPodcastIndexChapterUrl),
                 getString(indexPodcastIndexTranscriptType),
                 getString(indexPodcastIndexTranscriptUrl),
                 getString(indexSocialInteractUrl));
@@ -77,4 +78,8 @@ public class FeedItemCursor extends CursorWrapper {
         }
         return item;
     }
+
+    private String getStringOrNull(int index) {
+        return index < 0 ? null : getString(index);
+    }
 }
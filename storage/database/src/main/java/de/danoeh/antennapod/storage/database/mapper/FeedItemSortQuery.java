@@ -1,39 +1,131 @@
 package de.danoeh.antennapod.storage.database.mapper;
 
+import android.database.DatabaseUtils;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedMedia;
 import de.danoeh.antennapod.model.feed.SortOrder;
 import de.danoeh.antennapod.storage.database.PodDBAdapter;
 import de.danoeh.antennapod.storage.preferences.UserPreferences;
 
 public class FeedItemSortQuery {
+    private static final String KEY_ITEM_ID = PodDBAdapter.TABLE_NAME_FEED_ITEMS + "." + PodDBAdapter.KEY_ID;
+
     public static String generateFrom(SortOrder sortOrder) {
+        sortOrder = resolve(sortOrder);
+        return getColumn(sortOrder) + " " + (isAscending(sortOrder) ? "ASC" : "DESC");
+    }
+
+    /**
+     * Like {@link #generateFrom(SortOrder)}, but episodes with the same sort value are ordered by their ID.
+     * This makes the order unique, so that the next page can be selected with {@link #generateAfter}.
+     */
+    public static String generateWithTieBreakerFrom(SortOrder sortOrder) {
+        sortOrder = resolve(sortOrder);
+        String direction = isAscending(sortOrder) ? " ASC" : " DESC";
+        return getKeyColumn(sortOrder) + direction + ", " + KEY_ITEM_ID + direction;
+    }
+
+    /**
+     * Generates a condition that matches the episodes that come after the given episode
+     * in the order generated by {@link #generateWithTieBreakerFrom(SortOrder)}.
+     */
+    public static String generateAfter(SortOrder sortOrder, FeedItem item) {
+        sortOrder = resolve(sortOrder);
+        String column = getKeyColumn(sortOrder);
+        String value = getKeyValue(sortOrder, item);
+        String after = isAscending(sortOrder) ? " > " : " < ";
+        String afterOrEqual = isAscending(sortOrder) ? " >= " : " <= ";
+        // The first part allows using an index on the column, the rest excludes the items before the given one
+        return "(" + column + afterOrEqual + value
+                + " AND (" + column + after + value + " OR " + KEY_ITEM_ID + after + item.getId() + "))";
+    }
+
+    private static SortOrder resolve(SortOrder sortOrder) {
         if (sortOrder == null || SortOrder.GLOBAL_DEFAULT.equals(sortOrder)) {
-            sortOrder = UserPreferences.getPrefGlobalSortedOrder();
+            return UserPreferences.getPrefGlobalSortedOrder();
         }
+        return sortOrder;
+    }
+
+    private static String getColumn(SortOrder sortOrder) {
         switch (sortOrder) {
             case EPISODE_TITLE_A_Z:
-                return PodDBAdapter.TABLE_NAME_FEED_ITEMS + "." + PodDBAdapter.KEY_TITLE + " " + "ASC";
             case EPISODE_TITLE_Z_A:
-                return PodDBAdapter.TABLE_NAME_FEED_ITEMS + "." + PodDBAdapter.KEY_TITLE + " " + "DESC";
+                return PodDBAdapter.TABLE_NAME_FEED_ITEMS + "." + PodDBAdapter.KEY_TITLE;
             case DURATION_SHORT_LONG:
-                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "." + PodDBAdapter.KEY_DURATION + " " + "ASC";
             case DURATION_LONG_SHORT:
-                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "." + PodDBAdapter.KEY_DURATION + " " + "DESC";
+                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "." + PodDBAdapter.KEY_DURATION;
             case SIZE_SMALL_LARGE:
-                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "." + PodDBAdapter.KEY_SIZE + " " + "ASC";
             case SIZE_LARGE_SMALL:
-                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "." + PodDBAdapter.KEY_SIZE + " " + "DESC";
+                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "." + PodDBAdapter.KEY_SIZE;
             case COMPLETION_DATE_NEW_OLD:
-                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "."
-                        + PodDBAdapter.KEY_LAST_PLAYED_TIME_HISTORY + " " + "DESC";
-            case DATE_OLD_NEW:
-                return PodDBAdapter.TABLE_NAME_FEED_ITEMS + "." + PodDBAdapter.KEY_PUBDATE + " " + "ASC";
+                return PodDBAdapter.TABLE_NAME_FEED_MEDIA + "." + PodDBAdapter.KEY_LAST_PLAYED_TIME_HISTORY;
             case EPISODE_FILENAME_A_Z:
-                return PodDBAdapter.KEY_LINK + " " + "ASC";
             case EPISODE_FILENAME_Z_A:
-                return PodDBAdapter.KEY_LINK + " " + "DESC";
+                return PodDBAdapter.KEY_LINK;
+            case DATE_OLD_NEW:
             case DATE_NEW_OLD:
             default:
-                return PodDBAdapter.TABLE_NAME_FEED_ITEMS + "." + PodDBAdapter.KEY_PUBDATE + " " + "DESC";
+                return PodDBAdapter.TABLE_NAME_FEED_ITEMS + "." + PodDBAdapter.KEY_PUBDATE;
+        }
+    }
+
+    private static boolean isAscending(SortOrder sortOrder) {
+        switch (sortOrder) {
+            case EPISODE_TITLE_A_Z:
+            case DURATION_SHORT_LONG:
+            case SIZE_SMALL_LARGE:
+            case DATE_OLD_NEW:
+            case EPISODE_FILENAME_A_Z:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return The sort column, with NULL values replaced by the value that {@link #getKeyValue} uses for them
+     */
+    private static String getKeyColumn(SortOrder sortOrder) {
+        String column = getColumn(sortOrder);
+        switch (sortOrder) {
+            case EPISODE_TITLE_A_Z:
+            case EPISODE_TITLE_Z_A:
+            case EPISODE_FILENAME_A_Z:
+            case EPISODE_FILENAME_Z_A:
+                return "IFNULL(" + column + ", '')";
+            case DURATION_SHORT_LONG:
+            case DURATION_LONG_SHORT:
+            case SIZE_SMALL_LARGE:
+            case SIZE_LARGE_SMALL:
+            case COMPLETION_DATE_NEW_OLD:
+                // Episodes without media
+                return "IFNULL(" + column + ", 0)";
+            default:
+                return column;
+        }
+    }
+
+    private static String getKeyValue(SortOrder sortOrder, FeedItem item) {
+        FeedMedia media = item.getMedia();
+        switch (sortOrder) {
+            case EPISODE_TITLE_A_Z:
+            case EPISODE_TITLE_Z_A:
+                return DatabaseUtils.sqlEscapeString(item.getTitle() != null ? item.getTitle() : "");
+            case EPISODE_FILENAME_A_Z:
+            case EPISODE_FILENAME_Z_A:
+                return DatabaseUtils.sqlEscapeString(item.getLink() != null ? item.getLink() : "");
+            case DURATION_SHORT_LONG:
+            case DURATION_LONG_SHORT:
+                return String.valueOf(media != null ? media.getDuration() : 0);
+            case SIZE_SMALL_LARGE:
+            case SIZE_LARGE_SMALL:
+                return String.valueOf(media != null ? media.getSize() : 0);
+            case COMPLETION_DATE_NEW_OLD:
+                return String.valueOf(media != null && media.getLastPlayedTimeHistory() != null
+                        ? media.getLastPlayedTimeHistory().getTime() : 0);
+            default:
+                return String.valueOf(item.getPubDate().getTime());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,101 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class EpisodeLookupTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+    }
+
+    @Test
+    public void testLookupByGuidOrEpisodeUrl() {
+        insertEpisodes(3);
+        List<FeedItem> items = DBReader.getFeedItemsByGuidOrEpisodeUrl(
+                Arrays.asList("guid0", null, "unknown", null, "guid0"),
+                Arrays.asList("https://example.com/2.mp3", "https://example.com/1.mp3",
+                        "https://example.com/1.mp3", "https://example.com/unknown.mp3", null));
+        assertEquals(5, items.size());
+        assertEquals(1, items.get(0).getId());
+        assertEquals(2, items.get(1).getId());
+        // The GUID is used if there is one, like in getFeedItemByGuidOrEpisodeUrl
+        assertNull(items.get(2));
+        assertNull(items.get(3));
+        assertEquals(1, items.get(4).getId());
+        assertEquals("https://example.com/1.mp3", items.get(1).getMedia().getDownloadUrl());
+    }
+
+    @Test
+    public void testBatchLookupMatchesSingleLookups() {
+        final int numEpisodes = 200;
+        final int numActions = 1000;
+        insertEpisodes(numEpisodes);
+        Random random = new Random(1);
+        List<String> guids = new ArrayList<>();
+        List<String> episodeUrls = new ArrayList<>();
+        for (int i = 0; i < numActions; i++) {
+            // Some actions are for episodes that are not in the database
+            int episode = random.nextInt(numEpisodes + numEpisodes / 10);
+            guids.add(random.nextInt(3) == 0 ? null : "guid" + episode);
+            episodeUrls.add("https://example.com/" + episode + ".mp3");
+        }
+
+        List<FeedItem> items = DBReader.getFeedItemsByGuidOrEpisodeUrl(guids, episodeUrls);
+        assertEquals(numActions, items.size());
+        for (int i = 0; i < numActions; i++) {
+            FeedItem item = DBReader.getFeedItemByGuidOrEpisodeUrl(guids.get(i), episodeUrls.get(i));
+            assertEquals(item == null ? null : item.getId(), items.get(i) == null ? null : items.get(i).getId());
+        }
+    }
+
+    private void insertEpisodes(int numEpisodes) {
+        Feed feed = new Feed("url", null, "Feed");
+        feed.setItems(new ArrayList<>());
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        adapter.runInTransaction(() -> {
+            for (int i = 0; i < numEpisodes; i++) {
+                ContentValues values = new ContentValues();
+                values.put(PodDBAdapter.KEY_ID, i + 1);
+                values.put(PodDBAdapter.KEY_TITLE, "Episode " + i);
+                values.put(PodDBAdapter.KEY_PUBDATE, i);
+                values.put(PodDBAdapter.KEY_READ, FeedItem.UNPLAYED);
+                values.put(PodDBAdapter.KEY_FEED, feed.getId());
+                values.put(PodDBAdapter.KEY_ITEM_IDENTIFIER, "guid" + i);
+                adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_ITEMS, values);
+                values = new ContentValues();
+                values.put(PodDBAdapter.KEY_FEEDITEM, i + 1);
+                values.put(PodDBAdapter.KEY_DOWNLOAD_URL, "https://example.com/" + i + ".mp3");
+                adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_MEDIA, values);
+            }
+        });
+        adapter.close();
+    }
+}
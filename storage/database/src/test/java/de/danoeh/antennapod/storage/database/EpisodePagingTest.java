@@ -0,0 +1,114 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedItemFilter;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.model.feed.SortOrder;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class EpisodePagingTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+    }
+
+    @Test
+    public void testPagesContainEveryEpisodeOnce() {
+        Feed feed = new Feed("url", null, "Feed");
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < 50; i++) {
+            // Many episodes share the same date, title and duration
+            FeedItem item = new FeedItem(0, "Episode " + (i % 4), "item" + i, "link",
+                    new Date(i % 5), FeedItem.UNPLAYED, feed);
+            if (i % 3 != 0) {
+                item.setMedia(new FeedMedia(item, "https://example.com/" + i + ".mp3", 1000, "audio/mpeg"));
+                item.getMedia().setDuration(1000 * (i % 6));
+            }
+            feed.getItems().add(item);
+        }
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+
+        for (SortOrder sortOrder : new SortOrder[]{SortOrder.DATE_NEW_OLD, SortOrder.DATE_OLD_NEW,
+                SortOrder.EPISODE_TITLE_A_Z, SortOrder.DURATION_LONG_SHORT, SortOrder.SIZE_SMALL_LARGE}) {
+            List<FeedItem> all = DBReader.getEpisodesAfter(null, Integer.MAX_VALUE,
+                    FeedItemFilter.unfiltered(), sortOrder);
+            List<FeedItem> paged = new ArrayList<>();
+            List<FeedItem> page = DBReader.getEpisodesAfter(null, 7, FeedItemFilter.unfiltered(), sortOrder);
+            while (!page.isEmpty()) {
+                paged.addAll(page);
+                page = DBReader.getEpisodesAfter(page.get(page.size() - 1), 7,
+                        FeedItemFilter.unfiltered(), sortOrder);
+            }
+            assertEquals(50, all.size());
+            assertEquals(sortOrder.name(), ids(all), ids(paged));
+        }
+    }
+
+    /**
+     * Loads a page deep in the list after the previous page's last episode.
+     */
+    @Test
+    public void testDeepPageContinuesPreviousPages() {
+        final int numItems = 1000;
+        final int depth = 500;
+        final int pageSize = 50;
+        Feed feed = new Feed("url", null, "Feed");
+        feed.setItems(new ArrayList<>());
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        adapter.runInTransaction(() -> {
+            for (int i = 0; i < numItems; i++) {
+                ContentValues values = new ContentValues();
+                values.put(PodDBAdapter.KEY_TITLE, "Episode " + i);
+                values.put(PodDBAdapter.KEY_PUBDATE, i / 3);
+                values.put(PodDBAdapter.KEY_READ, FeedItem.UNPLAYED);
+                values.put(PodDBAdapter.KEY_FEED, feed.getId());
+                values.put(PodDBAdapter.KEY_ITEM_IDENTIFIER, "item" + i);
+                adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_ITEMS, values);
+            }
+        });
+        adapter.close();
+        FeedItemFilter filter = FeedItemFilter.unfiltered();
+        List<FeedItem> all = DBReader.getEpisodesAfter(null, depth + pageSize, filter, SortOrder.DATE_NEW_OLD);
+        FeedItem lastItem = all.get(depth - 1);
+
+        List<FeedItem> page = DBReader.getEpisodesAfter(lastItem, pageSize, filter, SortOrder.DATE_NEW_OLD);
+
+        assertEquals(pageSize, page.size());
+        assertTrue(page.get(0).getPubDate().getTime() <= lastItem.getPubDate().getTime());
+        assertEquals(ids(all.subList(depth, depth + pageSize)), ids(page));
+    }
+
+    private static List<Long> ids(List<FeedItem> items) {
+        List<Long> ids = new ArrayList<>();
+        for (FeedItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,114 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedItemFilter;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.model.feed.SortOrder;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class EpisodeRowsTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+
+        Feed feed = new Feed("url", null, "Feed");
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < 20; i++) {
+            FeedItem item = new FeedItem(0, "Episode " + i, "guid" + i, "https://example.com/" + (i % 7),
+                    new Date(i % 5), FeedItem.UNPLAYED, feed);
+            item.setPaymentLink("https://example.com/support");
+            item.setPodcastIndexChapterUrl("https://example.com/chapters" + i + ".json");
+            item.setMedia(new FeedMedia(item, "https://example.com/" + i + ".mp3", 1000, "audio/mpeg"));
+            feed.getItems().add(item);
+        }
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+    }
+
+    @Test
+    public void testRowsLeaveOutColumnsThatListsDoNotShow() {
+        List<FeedItem> items = DBReader.getEpisodesAfter(null, 100,
+                FeedItemFilter.unfiltered(), SortOrder.DATE_NEW_OLD);
+        List<FeedItem> rows = DBReader.getEpisodeRowsAfter(null, 100,
+                FeedItemFilter.unfiltered(), SortOrder.DATE_NEW_OLD);
+
+        assertEquals(20, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            FeedItem item = items.get(i);
+            FeedItem row = rows.get(i);
+            assertEquals(item.getId(), row.getId());
+            assertEquals(item.getTitle(), row.getTitle());
+            assertEquals(item.getItemIdentifier(), row.getItemIdentifier());
+            assertEquals(item.getPubDate(), row.getPubDate());
+            assertEquals(item.getFeed().getTitle(), row.getFeed().getTitle());
+            assertEquals(item.getMedia().getId(), row.getMedia().getId());
+            assertEquals(item.getMedia().getDownloadUrl(), row.getMedia().getDownloadUrl());
+            assertNotNull(item.getLink());
+            assertNull(row.getLink());
+            assertNull(row.getPaymentLink());
+            assertNull(row.getPodcastIndexChapterUrl());
+        }
+    }
+
+    @Test
+    public void testSavingRowKeepsColumnsThatWereLeftOut() throws Exception {
+        FeedItem row = DBReader.getEpisodeRowsAfter(null, 1,
+                FeedItemFilter.unfiltered(), SortOrder.DATE_NEW_OLD).get(0);
+        row.setPlayed(true);
+        DBWriter.setFeedItem(row).get();
+
+        FeedItem item = DBReader.getFeedItem(row.getId());
+        assertNotNull(item);
+        assertTrue(item.isPlayed());
+        assertNotNull(item.getLink());
+        assertEquals("https://example.com/support", item.getPaymentLink());
+        assertNotNull(item.getPodcastIndexChapterUrl());
+    }
+
+    @Test
+    public void testRowsCanBePagedByFilename() {
+        for (SortOrder sortOrder : new SortOrder[]{SortOrder.EPISODE_FILENAME_A_Z, SortOrder.EPISODE_FILENAME_Z_A}) {
+            List<FeedItem> all = DBReader.getEpisodesAfter(null, 100, FeedItemFilter.unfiltered(), sortOrder);
+            List<FeedItem> paged = new ArrayList<>();
+            List<FeedItem> page = DBReader.getEpisodeRowsAfter(null, 3, FeedItemFilter.unfiltered(), sortOrder);
+            while (!page.isEmpty()) {
+                paged.addAll(page);
+                page = DBReader.getEpisodeRowsAfter(page.get(page.size() - 1), 3,
+                        FeedItemFilter.unfiltered(), sortOrder);
+            }
+            assertEquals(sortOrder.name(), ids(all), ids(paged));
+        }
+    }
+
+    private static List<Long> ids(List<FeedItem> items) {
+        List<Long> ids = new ArrayList<>();
+        for (FeedItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,149 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedCounter;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedItemFilter;
+import de.danoeh.antennapod.model.feed.FeedOrder;
+import de.danoeh.antennapod.model.feed.SortOrder;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class FeedCatalogTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+    }
+
+    @Test
+    public void testCatalogIsInvalidatedByFeedChanges() throws Exception {
+        Feed feed = FeedDatabaseWriter.updateFeed(context, createFeed(0, 2), false);
+        FeedCatalog catalog = FeedCatalog.getInstance();
+        assertSame(catalog, FeedCatalog.getInstance());
+        assertSame(catalog.getFeed(feed.getId()), catalog.getFeedByIdentifyingValue(feed.getIdentifyingValue()));
+
+        feed.setCustomTitle("Custom title");
+        DBWriter.setFeedCustomTitle(feed).get();
+        assertNotSame(catalog, FeedCatalog.getInstance());
+        List<FeedItem> episodes = loadEpisodes();
+        assertEquals("Custom title", episodes.get(0).getFeed().getTitle());
+        assertSame(episodes.get(0).getFeed(), episodes.get(1).getFeed());
+
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        adapter.removeFeed(DBReader.getFeed(feed.getId(), false, 0, Integer.MAX_VALUE));
+        adapter.close();
+        assertNull(FeedCatalog.getInstance().getFeed(feed.getId()));
+    }
+
+    @Test
+    public void testUpdateFindsFeedByIdentifyingValue() {
+        Feed saved = FeedDatabaseWriter.updateFeed(context, createFeed(0, 1), false);
+        Feed updated = FeedDatabaseWriter.updateFeed(context, createFeed(0, 2), false);
+        assertEquals(saved.getId(), updated.getId());
+        assertEquals(1, DBReader.getFeedList().size());
+        // The catalog must not be modified by the update
+        assertTrue(FeedCatalog.getInstance().getFeed(saved.getId()).getItems().isEmpty());
+    }
+
+    @Test
+    public void testNavDrawerDataDoesNotShareFeeds() {
+        Feed saved = FeedDatabaseWriter.updateFeed(context, createFeed(0, 1), false);
+        Feed feed = loadNavDrawerFeeds().get(0);
+        feed.setCustomTitle("Renamed");
+        feed.getPreferences().getTags().add("Tag");
+
+        assertEquals("Feed 0", FeedCatalog.getInstance().getFeed(saved.getId()).getTitle());
+        Feed reloaded = loadNavDrawerFeeds().get(0);
+        assertEquals("Feed 0", reloaded.getTitle());
+        assertFalse(reloaded.getPreferences().getTags().contains("Tag"));
+        assertNotSame(loadEpisodes().get(0).getFeed(), FeedCatalog.getInstance().getFeed(saved.getId()));
+    }
+
+    @Test
+    public void testCatalogIsNotKeptInsideTransaction() {
+        Feed feed = FeedDatabaseWriter.updateFeed(context, createFeed(0, 1), false);
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        try {
+            adapter.runInTransaction(() -> {
+                adapter.setFeedState(feed.getId(), Feed.STATE_ARCHIVED);
+                assertEquals(Feed.STATE_ARCHIVED, FeedCatalog.getInstance().getFeed(feed.getId()).getState());
+                throw new IllegalStateException("Roll back");
+            });
+            fail("Transaction should have been rolled back");
+        } catch (IllegalStateException e) {
+            assertEquals(Feed.STATE_SUBSCRIBED, FeedCatalog.getInstance().getFeed(feed.getId()).getState());
+        } finally {
+            adapter.close();
+        }
+    }
+
+    @Test
+    public void testCachedEpisodeListMatchesUncachedList() {
+        final int numFeeds = 60;
+        List<Feed> feeds = new ArrayList<>();
+        for (int i = 0; i < numFeeds; i++) {
+            feeds.add(createFeed(i, 2));
+        }
+        FeedDatabaseWriter.updateFeeds(context, feeds);
+
+        FeedCatalog.invalidate();
+        List<FeedItem> uncached = loadEpisodes();
+        FeedCatalog catalog = FeedCatalog.getInstance();
+        List<FeedItem> cached = loadEpisodes();
+
+        assertSame(catalog, FeedCatalog.getInstance());
+        assertEquals(100, cached.size());
+        for (int i = 0; i < cached.size(); i++) {
+            assertEquals(uncached.get(i).getId(), cached.get(i).getId());
+            assertEquals(uncached.get(i).getFeed().getId(), cached.get(i).getFeed().getId());
+            assertEquals(uncached.get(i).getFeed().getTitle(), cached.get(i).getFeed().getTitle());
+        }
+    }
+
+    private static List<Feed> loadNavDrawerFeeds() {
+        return DBReader.getNavDrawerData(null, FeedOrder.ALPHABETICAL, FeedCounter.SHOW_NEW,
+                Feed.STATE_SUBSCRIBED).feeds;
+    }
+
+    private static List<FeedItem> loadEpisodes() {
+        return DBReader.getEpisodes(0, 100, FeedItemFilter.unfiltered(), SortOrder.DATE_NEW_OLD);
+    }
+
+    private static Feed createFeed(int number, int numItems) {
+        Feed feed = new Feed("url" + number, null, "Feed " + number);
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < numItems; i++) {
+            feed.getItems().add(new FeedItem(0, "Item " + i, "item" + i, "link",
+                    new Date(number * 100L + i), FeedItem.UNPLAYED, feed));
+        }
+        return feed;
+    }
+}
@@ -0,0 +1,119 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedCounter;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class FeedCounterTableTest {
+    private Context context;
+    private PodDBAdapter adapter;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+    }
+
+    @After
+    public void tearDown() {
+        adapter.close();
+    }
+
+    @Test
+    public void testCountersFollowEpisodes() {
+        Feed feed = createFeed("Feed", 5);
+        feed = FeedDatabaseWriter.updateFeed(context, feed, false);
+        long feedId = feed.getId();
+        assertEquals(5, (int) adapter.getFeedCounters(FeedCounter.SHOW_NEW).get(feedId));
+        assertEquals(5, adapter.getTotalFeedCounter(FeedCounter.SHOW_UNPLAYED));
+        assertEquals(4, (long) adapter.getMostRecentItemDates().get(feedId));
+
+        // Newest episodes first
+        FeedItem played = feed.getItems().get(4);
+        adapter.setFeedItemRead(FeedItem.PLAYED, played.getId());
+        FeedItem downloaded = feed.getItems().get(3);
+        downloaded.getMedia().setDownloaded(true, 1000);
+        adapter.setMedia(downloaded.getMedia());
+
+        assertEquals(4, adapter.getTotalFeedCounter(FeedCounter.SHOW_NEW));
+        assertEquals(1, (int) adapter.getPlayedEpisodesCounters().get(feedId));
+        assertEquals(1, (int) adapter.getFeedCounters(FeedCounter.SHOW_DOWNLOADED, feedId).get(feedId));
+        assertEquals(1, adapter.getTotalFeedCounter(FeedCounter.SHOW_DOWNLOADED_UNPLAYED));
+        assertTrue(adapter.getFeedCounters(FeedCounter.SHOW_NONE).isEmpty());
+
+        FeedItem mostRecent = feed.getItems().get(0);
+        adapter.removeFeedItems(Collections.singletonList(mostRecent));
+        adapter.removeFeedItems(Collections.singletonList(downloaded));
+        assertEquals(3, (long) adapter.getMostRecentItemDates().get(feedId));
+        assertEquals(0, adapter.getTotalFeedCounter(FeedCounter.SHOW_DOWNLOADED));
+        assertFalse(adapter.repairFeedCounters());
+
+        adapter.removeFeed(DBReader.getFeed(feedId, false, 0, Integer.MAX_VALUE));
+        assertTrue(adapter.getMostRecentItemDates().isEmpty());
+        assertFalse(adapter.repairFeedCounters());
+    }
+
+    @Test
+    public void testOnlySubscribedFeedsAreCounted() {
+        FeedDatabaseWriter.updateFeed(context, createFeed("Subscribed", 2), false);
+        Feed notSubscribed = createFeed("Not subscribed", 3);
+        notSubscribed.setState(Feed.STATE_NOT_SUBSCRIBED);
+        notSubscribed = FeedDatabaseWriter.updateFeed(context, notSubscribed, false);
+
+        assertEquals(2, adapter.getTotalFeedCounter(FeedCounter.SHOW_NEW));
+        assertEquals(1, adapter.getFeedCounters(FeedCounter.SHOW_NEW).size());
+        Map<Long, Integer> counters = adapter.getFeedCounters(FeedCounter.SHOW_NEW, notSubscribed.getId());
+        assertEquals(3, (int) counters.get(notSubscribed.getId()));
+    }
+
+    @Test
+    public void testRepairFeedCounters() {
+        Feed feed = FeedDatabaseWriter.updateFeed(context, createFeed("Feed", 3), false);
+        ContentValues values = new ContentValues();
+        values.put(PodDBAdapter.KEY_FEED, feed.getId() + 1);
+        values.put(FeedCounterTable.KEY_NUM_EPISODES, 7);
+        adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_COUNTERS, values);
+
+        assertTrue(adapter.repairFeedCounters());
+        assertFalse(adapter.repairFeedCounters());
+        assertEquals(3, adapter.getTotalFeedCounter(FeedCounter.SHOW_UNPLAYED));
+    }
+
+    private Feed createFeed(String title, int numItems) {
+        Feed feed = new Feed("url-" + title, null, title);
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < numItems; i++) {
+            FeedItem item = new FeedItem(0, "Item " + i, "item" + i, "link", new Date(i), FeedItem.NEW, feed);
+            item.setMedia(new FeedMedia(item, "https://example.com/" + title + i + ".mp3", 1000, "audio/mpeg"));
+            feed.getItems().add(item);
+        }
+        return feed;
+    }
+}
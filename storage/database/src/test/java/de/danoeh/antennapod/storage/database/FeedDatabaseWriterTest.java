@@ -1,6 +1,7 @@
 package de.danoeh.antennapod.storage.database;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import de.danoeh.antennapod.model.download.DownloadError;
 import de.danoeh.antennapod.model.download.DownloadResult;
 import de.danoeh.antennapod.model.feed.Feed;
@@ -27,6 +28,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -138,6 +140,19 @@ public class FeedDatabaseWriterTest {
         assertEquals("new-id", stored.getItems().get(0).getItemIdentifier());
     }
 
+    @Test
+    public void testContentHashStored() {
+        Feed feed = createFeed();
+        feed.setContentHash("hash1");
+        Feed stored = FeedDatabaseWriter.updateFeed(context, feed, false);
+        assertEquals("hash1", DBReader.getFeed(stored.getId(), false, 0, 0).getContentHash());
+
+        Feed newFeed = createFeed();
+        newFeed.setContentHash("hash2");
+        FeedDatabaseWriter.updateFeed(context, newFeed, false);
+        assertEquals("hash2", DBReader.getFeed(stored.getId(), false, 0, 0).getContentHash());
+    }
+
     @Test
     public void testUpdateFeedNewFeed() {
         final int numItems = 10;
@@ -293,6 +308,140 @@ public class FeedDatabaseWriterTest {
     }
 
 
+    @Test
+    public void testUpdateFeedsMergesIncrementally() throws Exception {
+        Feed feed = createFeed();
+        for (int i = 0; i < 50; i++) {
+            feed.getItems().add(createItem("item-" + i, "Item " + i, feed));
+        }
+        feed = FeedDatabaseWriter.updateFeed(context, feed, false);
+        FeedItem playedItem = feed.getItems().stream()
+                .filter(item -> "item-47".equals(item.getItemIdentifier())).findFirst().get();
+        DBWriter.markItemPlayed(playedItem, FeedItem.PLAYED, false).get();
+
+        Feed refreshedFeed = createFeed();
+        for (int i = 45; i < 55; i++) {
+            refreshedFeed.getItems().add(createItem("item-" + i, "Item " + i, refreshedFeed));
+        }
+        Feed stored = FeedDatabaseWriter.updateFeeds(context, Collections.singletonList(refreshedFeed)).get(0);
+
+        assertEquals(feed.getId(), stored.getId());
+        assertEquals(10, stored.getItems().size()); // Only the matching items were loaded
+        List<FeedItem> dbItems = DBReader.getFeedItemList(stored, FeedItemFilter.unfiltered(),
+                SortOrder.EPISODE_TITLE_A_Z, 0, Integer.MAX_VALUE);
+        assertEquals(55, dbItems.size());
+        for (FeedItem item : dbItems) {
+            assertEquals("item-47".equals(item.getItemIdentifier()), item.isPlayed());
+        }
+    }
+
+    @Test
+    public void testUpdateFeedsRepairsChangedGuid() {
+        Feed feed = createFeed();
+        for (int i = 0; i < 10; i++) {
+            feed.getItems().add(createItem("id " + i, "item " + i, feed));
+        }
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+
+        // Same title and media URL, but a new guid
+        Feed refreshedFeed = createFeed();
+        FeedItem changedItem = createItem("id 3-changed", "item 3", refreshedFeed);
+        refreshedFeed.getItems().add(changedItem);
+        Feed stored = FeedDatabaseWriter.updateFeeds(context, Collections.singletonList(refreshedFeed)).get(0);
+
+        assertEquals(1, stored.getItems().size());
+        assertEquals("id 3-changed", stored.getItems().get(0).getItemIdentifier());
+        Feed feedFromDB = DBReader.getFeed(stored.getId(), false, 0, Integer.MAX_VALUE);
+        assertEquals(10, feedFromDB.getItems().size());
+    }
+
+    @Test
+    public void testUpdateFeedsFindsDuplicateWithWhitespacePaddedTitle() {
+        Feed feed = createFeed();
+        FeedItem item = createItem("id 0", "\tItem 0\n", feed);
+        item.setPubDate(new Date(1000));
+        feed.getItems().add(item);
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+
+        // New guid and media URL, the title only differs in whitespace
+        Feed refreshedFeed = createFeed();
+        FeedItem changedItem = createItem("id 0-changed", " Item 0\r\n", refreshedFeed);
+        changedItem.setPubDate(new Date(2000));
+        refreshedFeed.getItems().add(changedItem);
+        Feed stored = FeedDatabaseWriter.updateFeeds(context, Collections.singletonList(refreshedFeed)).get(0);
+
+        assertEquals(1, stored.getItems().size());
+        assertEquals(item.getId(), stored.getItems().get(0).getId());
+        assertEquals("id 0-changed", stored.getItems().get(0).getItemIdentifier());
+        Feed feedFromDB = DBReader.getFeed(stored.getId(), false, 0, Integer.MAX_VALUE);
+        assertEquals(1, feedFromDB.getItems().size());
+    }
+
+    @Test
+    public void testUpdateFeedsRollsBackOnlyFailingFeed() {
+        List<Feed> refreshedFeeds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Feed feed = new Feed("url-" + i, null, "Feed " + i);
+            feed.setItems(new ArrayList<>());
+            feed.getItems().add(createItem("item-0", "Item 0", feed));
+            FeedDatabaseWriter.updateFeed(context, feed, false);
+
+            Feed refreshedFeed = new Feed("url-" + i, null, "Feed " + i);
+            refreshedFeed.setItems(new ArrayList<>());
+            refreshedFeed.getItems().add(createItem("item-1", "Item 1", refreshedFeed));
+            refreshedFeeds.add(refreshedFeed);
+        }
+
+        // Storing the second feed fails
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                context.getDatabasePath(PodDBAdapter.DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        db.execSQL("CREATE TRIGGER fail_update BEFORE UPDATE ON " + PodDBAdapter.TABLE_NAME_FEEDS
+                + " WHEN NEW." + PodDBAdapter.KEY_DOWNLOAD_URL + " = 'url-1'"
+                + " BEGIN SELECT RAISE(ABORT, 'Update failed'); END");
+        db.close();
+
+        List<Feed> stored = FeedDatabaseWriter.updateFeeds(context, refreshedFeeds);
+        assertNotNull(stored.get(0));
+        assertNull(stored.get(1));
+        assertNotNull(stored.get(2));
+        for (Feed feed : DBReader.getFeedList()) {
+            List<FeedItem> dbItems = DBReader.getFeedItemList(feed, FeedItemFilter.unfiltered(),
+                    SortOrder.EPISODE_TITLE_A_Z, 0, Integer.MAX_VALUE);
+            assertEquals(feed.getDownloadUrl(), "url-1".equals(feed.getDownloadUrl()) ? 1 : 2, dbItems.size());
+        }
+    }
+
+    @Test
+    public void testIncrementalMergeLoadsOnlyListedItems() {
+        final int[] historySizes = {50, 300};
+        final int refreshedItems = 20;
+        for (int historySize : historySizes) {
+            PodDBAdapter.deleteDatabase();
+            PodDBAdapter.getInstance().open();
+            Feed feed = createFeed();
+            for (int i = 0; i < historySize; i++) {
+                feed.getItems().add(createItem("item-" + i, "Item " + i, feed));
+            }
+            FeedDatabaseWriter.updateFeed(context, feed, false);
+
+            // The feed file only lists the most recent episodes, two of which are new
+            Feed refreshedFeed = createFeed();
+            for (int i = historySize - refreshedItems + 2; i < historySize + 2; i++) {
+                refreshedFeed.getItems().add(createItem("item-" + i, "Item " + i, refreshedFeed));
+            }
+            Feed stored = FeedDatabaseWriter.updateFeeds(context, Collections.singletonList(refreshedFeed)).get(0);
+
+            refreshedFeed = createFeed();
+            for (int i = historySize - refreshedItems + 2; i < historySize + 2; i++) {
+                refreshedFeed.getItems().add(createItem("item-" + i, "Item " + i, refreshedFeed));
+            }
+            Feed storedFully = FeedDatabaseWriter.updateFeed(context, refreshedFeed, false);
+
+            assertEquals(refreshedItems, stored.getItems().size());
+            assertEquals(historySize + 2, storedFully.getItems().size());
+        }
+    }
+
     @SuppressWarnings("SameParameterValue")
     private void updatedFeedTest(final Feed newFeed, long feedID, List<Long> itemIDs,
                                  int numItemsOld, int numItemsNew) {
@@ -0,0 +1,98 @@
+package de.danoeh.antennapod.storage.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testAddRemoveContains() {
+        LongHashSet set = new LongHashSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(0));
+        assertTrue(set.add(-5));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertFalse(set.add(-5));
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0));
+        assertFalse(set.contains(5));
+
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        long[] values = set.toArray();
+        Arrays.sort(values);
+        assertEquals(-5, values[0]);
+        assertEquals(Long.MAX_VALUE, values[1]);
+
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains(-5));
+    }
+
+    @Test
+    public void testSetBehavesLikeHashSet() {
+        Random random = new Random(1);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            // Small range, so that there are many collisions and removals of existing values
+            long value = random.nextInt(2000) * 1024L;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (long value = -1024; value < 2001 * 1024L; value += 512) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+
+    @Test
+    public void testMapBehavesLikeHashMap() {
+        Random random = new Random(1);
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextInt(3000) - 10;
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -20; key < 3000; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            int value = expected.containsKey(key) ? expected.get(key) : -1;
+            assertEquals(value, map.get(key, -1));
+        }
+        assertEquals(expected.size(), LongIntMap.of(expected).size());
+    }
+
+    @Test
+    public void testOfMatchesListMembership() {
+        Random random = new Random(1);
+        LongList list = new LongList();
+        Set<Long> distinct = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            long value = random.nextInt(5000);
+            list.add(value);
+            distinct.add(value);
+        }
+        LongHashSet set = LongHashSet.of(list);
+        assertEquals(distinct.size(), set.size());
+        for (long id = -1; id <= 5000; id++) {
+            assertEquals(list.contains(id), set.contains(id));
+        }
+    }
+}
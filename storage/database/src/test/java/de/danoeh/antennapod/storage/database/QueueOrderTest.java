@@ -0,0 +1,122 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class QueueOrderTest {
+    private PodDBAdapter adapter;
+    private List<FeedItem> items;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+
+        Feed feed = new Feed("url", null, "Feed");
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            feed.getItems().add(new FeedItem(0, "Item " + i, "item" + i, "link",
+                    new Date(i), FeedItem.UNPLAYED, feed));
+        }
+        items = FeedDatabaseWriter.updateFeed(context, feed, false).getItems();
+    }
+
+    @After
+    public void tearDown() {
+        adapter.close();
+    }
+
+    @Test
+    public void testInsertMoveAndRemove() {
+        List<FeedItem> expected = new ArrayList<>(items.subList(0, 3));
+        adapter.setQueue(expected);
+
+        adapter.addQueueItem(1, items.get(3));
+        expected.add(1, items.get(3));
+        adapter.addQueueItem(0, items.get(4));
+        expected.add(0, items.get(4));
+        adapter.addQueueItem(Integer.MAX_VALUE, items.get(5));
+        expected.add(items.get(5));
+        assertQueue(expected);
+
+        adapter.moveQueueItem(items.get(5).getId(), 0);
+        expected.add(0, expected.remove(expected.size() - 1));
+        adapter.moveQueueItem(items.get(4).getId(), 3);
+        expected.add(3, expected.remove(1));
+        assertQueue(expected);
+
+        adapter.removeQueueItems(items.get(0).getId(), items.get(3).getId());
+        expected.remove(items.get(0));
+        expected.remove(items.get(3));
+        assertQueue(expected);
+    }
+
+    @Test
+    public void testPositionsAreSpreadWhenGapIsUsedUp() {
+        List<FeedItem> expected = new ArrayList<>(items.subList(0, 2));
+        adapter.setQueue(expected);
+        // Halving the gap between the first two items runs out of free positions after 20 inserts
+        for (int i = 2; i < 40; i++) {
+            adapter.addQueueItem(1, items.get(i));
+            expected.add(1, items.get(i));
+        }
+        assertQueue(expected);
+    }
+
+    @Test
+    public void testRandomMoves() throws Exception {
+        adapter.setQueue(items);
+        List<FeedItem> expected = new ArrayList<>(items);
+        Random random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            int from = random.nextInt(expected.size());
+            int to = random.nextInt(expected.size());
+            DBWriter.moveQueueItem(from, to, false).get();
+            expected.add(to, expected.remove(from));
+        }
+        assertQueue(expected);
+    }
+
+    @Test
+    public void testMoveToTopAndBottomAddItemsThatAreNotQueued() throws Exception {
+        adapter.setQueue(new ArrayList<>(items.subList(0, 3)));
+
+        DBWriter.moveQueueItemsToTop(Arrays.asList(items.get(2), items.get(5))).get();
+        assertQueue(Arrays.asList(items.get(2), items.get(5), items.get(0), items.get(1)));
+
+        DBWriter.moveQueueItemsToBottom(Arrays.asList(items.get(6), items.get(2))).get();
+        assertQueue(Arrays.asList(items.get(5), items.get(0), items.get(1), items.get(6), items.get(2)));
+    }
+
+    private static void assertQueue(List<FeedItem> expected) {
+        long[] expectedIds = new long[expected.size()];
+        for (int i = 0; i < expected.size(); i++) {
+            expectedIds[i] = expected.get(i).getId();
+        }
+        assertArrayEquals(expectedIds, DBReader.getQueueIDList().toArray());
+    }
+}
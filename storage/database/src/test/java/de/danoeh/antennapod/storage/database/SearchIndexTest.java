@@ -0,0 +1,201 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SearchIndexTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        adapter.close();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+    }
+
+    @Test
+    public void testToMatchQuery() {
+        assertEquals("podcast* über*", SearchIndex.toMatchQuery("  Podcast, Über", null));
+        assertEquals("title:or* title:near*", SearchIndex.toMatchQuery("\"OR\" -NEAR*", "title"));
+        assertNull(SearchIndex.toMatchQuery(" -*\"() ", null));
+    }
+
+    @Test
+    public void testSearchItemsByWordPrefix() {
+        Feed feed = createFeed("Science");
+        feed.getItems().add(createItem(feed, "Physics news", "Weekly update", 1));
+        feed.getItems().add(createItem(feed, "Interview", "A talk with a physicist", 2));
+        feed.getItems().add(createItem(feed, "Cooking", "Nothing to see here", 3));
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+
+        List<FeedItem> results = DBReader.searchFeedItems(0, "phys", Feed.STATE_SUBSCRIBED);
+        assertEquals(2, results.size());
+        // Title matches first, even though the other episode is newer
+        assertEquals("Physics news", results.get(0).getTitle());
+        assertEquals("Interview", results.get(1).getTitle());
+
+        assertEquals(1, DBReader.searchFeedItems(0, "PHYS talk", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(0, DBReader.searchFeedItems(0, "\"", Feed.STATE_SUBSCRIBED).size());
+    }
+
+    @Test
+    public void testSearchFindsWordsInsideCompoundWords() {
+        Feed feed = createFeed("ARD Radiokrimi");
+        feed.getItems().add(createItem(feed, "Radiokrimi: Der Fall", "Ein Hörspiel", 1));
+        feed.getItems().add(createItem(feed, "Nachrichten", "Kurz und knapp", 2));
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+
+        List<FeedItem> results = DBReader.searchFeedItems(0, "krimi", Feed.STATE_SUBSCRIBED);
+        assertEquals(1, results.size());
+        assertEquals("Radiokrimi: Der Fall", results.get(0).getTitle());
+        assertEquals(1, DBReader.searchFeedItems(0, "Krimi fall", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(1, DBReader.searchFeeds("krimi", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(0, DBReader.searchFeedItems(0, "krimis", Feed.STATE_SUBSCRIBED).size());
+    }
+
+    @Test
+    public void testSearchItemsInFeed() {
+        Feed feed1 = createFeed("Feed 1");
+        feed1.getItems().add(createItem(feed1, "Episode one", "", 1));
+        FeedDatabaseWriter.updateFeed(context, feed1, false);
+        Feed feed2 = createFeed("Feed 2");
+        feed2.getItems().add(createItem(feed2, "Episode two", "", 2));
+        FeedDatabaseWriter.updateFeed(context, feed2, false);
+
+        assertEquals(2, DBReader.searchFeedItems(0, "episode", Feed.STATE_SUBSCRIBED).size());
+        List<FeedItem> results = DBReader.searchFeedItems(feed2.getId(), "episode", Feed.STATE_SUBSCRIBED);
+        assertEquals(1, results.size());
+        assertEquals("Episode two", results.get(0).getTitle());
+    }
+
+    @Test
+    public void testIndexFollowsUpdatesAndDeletes() {
+        Feed feed = createFeed("Feed");
+        feed.getItems().add(createItem(feed, "Old title", "", 1));
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+
+        Feed newFeed = createFeed("Feed");
+        FeedItem item = createItem(newFeed, "New title", "", 1);
+        item.setItemIdentifier("Old title");
+        newFeed.getItems().add(item);
+        Feed savedFeed = FeedDatabaseWriter.updateFeed(context, newFeed, false);
+
+        assertEquals(0, DBReader.searchFeedItems(0, "old", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(1, DBReader.searchFeedItems(0, "new", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(1, DBReader.searchFeeds("feed", Feed.STATE_SUBSCRIBED).size());
+
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        adapter.removeFeed(DBReader.getFeed(savedFeed.getId(), false, 0, Integer.MAX_VALUE));
+        adapter.close();
+        assertEquals(0, DBReader.searchFeedItems(0, "new", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(0, DBReader.searchFeeds("feed", Feed.STATE_SUBSCRIBED).size());
+    }
+
+    @Test
+    public void testSearchFeeds() {
+        Feed feed1 = createFeed("Daily news");
+        feed1.setAuthor("Radio Station");
+        FeedDatabaseWriter.updateFeed(context, feed1, false);
+        Feed feed2 = createFeed("Another show");
+        feed2.setDescription("Radio drama");
+        FeedDatabaseWriter.updateFeed(context, feed2, false);
+
+        assertEquals(2, DBReader.searchFeeds("radio", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(1, DBReader.searchFeeds("radio stat", Feed.STATE_SUBSCRIBED).size());
+        assertEquals(0, DBReader.searchFeeds("radio", Feed.STATE_NOT_SUBSCRIBED).size());
+    }
+
+    @Test
+    public void testRowsInsertedDirectlyAreIndexed() {
+        final int numItems = 500;
+        Random random = new Random(1);
+        String[] words = new String[200];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int j = 0; j < 7; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+        String query = words[42].substring(0, 5);
+
+        Feed feed = createFeed("Archive");
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+        Set<String> expected = new HashSet<>();
+        PodDBAdapter adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        adapter.runInTransaction(() -> {
+            for (int i = 0; i < numItems; i++) {
+                String title = randomText(random, words, 4);
+                String description = randomText(random, words, 30);
+                if ((" " + title + description).contains(" " + query)) {
+                    expected.add("item" + i);
+                }
+                ContentValues values = new ContentValues();
+                values.put(PodDBAdapter.KEY_TITLE, title);
+                values.put(PodDBAdapter.KEY_DESCRIPTION, description);
+                values.put(PodDBAdapter.KEY_PUBDATE, i);
+                values.put(PodDBAdapter.KEY_READ, FeedItem.UNPLAYED);
+                values.put(PodDBAdapter.KEY_FEED, feed.getId());
+                values.put(PodDBAdapter.KEY_ITEM_IDENTIFIER, "item" + i);
+                adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_ITEMS, values);
+            }
+        });
+        adapter.close();
+
+        Set<String> found = new HashSet<>();
+        for (FeedItem item : DBReader.searchFeedItems(0, query, Feed.STATE_SUBSCRIBED)) {
+            found.add(item.getItemIdentifier());
+        }
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, found);
+    }
+
+    private static String randomText(Random random, String[] words, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.toString();
+    }
+
+    private Feed createFeed(String title) {
+        Feed feed = new Feed("url-" + title, null, title);
+        feed.setItems(new ArrayList<>());
+        return feed;
+    }
+
+    private FeedItem createItem(Feed feed, String title, String description, long pubDate) {
+        FeedItem item = new FeedItem(0, title, title, "link", new Date(pubDate), FeedItem.UNPLAYED, feed);
+        item.setDescriptionIfLonger(description);
+        return item;
+    }
+}
@@ -0,0 +1,188 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class StatisticsTableTest {
+    private static final long MAY_10_2022 = 1652140800000L;
+    private static final long MAY_20_2022 = 1653004800000L;
+    private static final long MAY_25_2022 = 1653436800000L;
+    private static final long JUNE_15_2022 = 1655251200000L;
+    private static final long JULY_1_2022 = 1656633600000L;
+
+    private Context context;
+    private PodDBAdapter adapter;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        adapter = PodDBAdapter.getInstance();
+        adapter.open();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+    }
+
+    @After
+    public void tearDown() {
+        adapter.close();
+    }
+
+    @Test
+    public void testStatisticsFollowPlayback() {
+        Feed feed = FeedDatabaseWriter.updateFeed(context, createFeed("Feed", 4), false);
+        List<FeedItem> items = feed.getItems();
+        play(items.get(0).getMedia(), 30_000, MAY_10_2022);
+        play(items.get(1).getMedia(), 60_000, MAY_25_2022);
+        play(items.get(2).getMedia(), 120_000, JUNE_15_2022);
+        adapter.setFeedItemRead(FeedItem.PLAYED, items.get(3).getId());
+
+        StatisticsItem all = getStatistics(false, 0, Long.MAX_VALUE);
+        assertEquals(4, all.episodes);
+        assertEquals(3, all.episodesStarted);
+        assertEquals(210, all.timePlayed);
+        assertEquals(1200, all.time);
+
+        // Half of May is looked at individually, June is read from the table
+        StatisticsItem filtered = getStatistics(false, MAY_20_2022, JULY_1_2022);
+        assertEquals(180, filtered.timePlayed);
+        StatisticsItem withMarked = getStatistics(true, MAY_20_2022, JULY_1_2022);
+        assertEquals(4, withMarked.episodesStarted);
+        assertEquals(180, withMarked.timePlayed);
+        assertEquals(MAY_10_2022, DBReader.getStatistics(false, 0, Long.MAX_VALUE).oldestDate);
+
+        List<DBReader.MonthlyStatisticsItem> months = DBReader.getMonthlyTimeStatistics();
+        assertEquals(2, months.size());
+        assertEquals(5, months.get(0).getMonth());
+        assertEquals(2022, months.get(0).getYear());
+        assertEquals(90_000, months.get(0).getTimePlayed());
+        assertEquals(120_000, months.get(1).getTimePlayed());
+
+        adapter.removeFeedItems(Collections.singletonList(items.get(2)));
+        assertEquals(1, DBReader.getMonthlyTimeStatistics().size());
+        assertEquals(90, getStatistics(false, 0, Long.MAX_VALUE).timePlayed);
+        assertFalse(adapter.repairStatistics());
+
+        adapter.removeFeed(DBReader.getFeed(feed.getId(), false, 0, Integer.MAX_VALUE));
+        assertTrue(DBReader.getMonthlyTimeStatistics().isEmpty());
+        assertFalse(adapter.repairStatistics());
+    }
+
+    @Test
+    public void testRepairStatistics() {
+        Feed feed = FeedDatabaseWriter.updateFeed(context, createFeed("Feed", 3), false);
+        ContentValues values = new ContentValues();
+        values.put(PodDBAdapter.KEY_FEED, feed.getId());
+        values.put(StatisticsTable.KEY_MONTH_START, MAY_10_2022);
+        values.put(StatisticsTable.KEY_PLAYED_TIME, 7000);
+        adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_STATISTICS, values);
+
+        assertTrue(adapter.repairStatistics());
+        assertFalse(adapter.repairStatistics());
+        assertEquals(0, getStatistics(false, 0, Long.MAX_VALUE).timePlayed);
+    }
+
+    @Test
+    public void testPositionOnlyCountsWhenEpisodeIsStarted() {
+        Feed feed = FeedDatabaseWriter.updateFeed(context, createFeed("Feed", 2), false);
+        FeedMedia media = feed.getItems().get(0).getMedia();
+
+        media.setPosition(1000);
+        adapter.setMedia(media);
+        assertEquals(1, getStatistics(true, 0, Long.MAX_VALUE).episodesStarted);
+        media.setPosition(2000);
+        adapter.setMedia(media);
+        assertEquals(1, getStatistics(true, 0, Long.MAX_VALUE).episodesStarted);
+
+        adapter.setFeedItemRead(feed.getItems().get(0), FeedItem.UNPLAYED, true);
+        assertEquals(0, getStatistics(true, 0, Long.MAX_VALUE).episodesStarted);
+        assertFalse(adapter.repairStatistics());
+    }
+
+    @Test
+    public void testStatisticsOfManyEpisodes() {
+        final int numFeeds = 10;
+        final int numItems = 1500;
+        List<Feed> feeds = new ArrayList<>();
+        for (int i = 0; i < numFeeds; i++) {
+            feeds.add(FeedDatabaseWriter.updateFeed(context, createFeed("Feed " + i, 0), false));
+        }
+        adapter.runInTransaction(() -> {
+            for (int i = 0; i < numItems; i++) {
+                ContentValues values = new ContentValues();
+                values.put(PodDBAdapter.KEY_ID, i + 1);
+                values.put(PodDBAdapter.KEY_TITLE, "Episode " + i);
+                values.put(PodDBAdapter.KEY_PUBDATE, i);
+                values.put(PodDBAdapter.KEY_READ, FeedItem.UNPLAYED);
+                values.put(PodDBAdapter.KEY_FEED, feeds.get(i % numFeeds).getId());
+                values.put(PodDBAdapter.KEY_ITEM_IDENTIFIER, "item" + i);
+                adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_ITEMS, values);
+                values = new ContentValues();
+                values.put(PodDBAdapter.KEY_FEEDITEM, i + 1);
+                values.put(PodDBAdapter.KEY_DURATION, 1000);
+                values.put(PodDBAdapter.KEY_PLAYED_DURATION, 1000);
+                values.put(PodDBAdapter.KEY_LAST_PLAYED_TIME_HISTORY, 1);
+                values.put(PodDBAdapter.KEY_LAST_PLAYED_TIME_STATISTICS, MAY_10_2022 + i * 3_600_000L);
+                adapter.insertTestData(PodDBAdapter.TABLE_NAME_FEED_MEDIA, values);
+            }
+        });
+
+        DBReader.StatisticsResult result = DBReader.getStatistics(false, MAY_20_2022, JULY_1_2022 + 1);
+        assertEquals(numFeeds, result.feedTime.size());
+        long timePlayed = 0;
+        for (StatisticsItem item : result.feedTime) {
+            timePlayed += item.timePlayed;
+        }
+        // One episode per hour, from May 20 until just after the start of July
+        assertEquals((JULY_1_2022 - MAY_20_2022) / 3_600_000L + 1, timePlayed);
+        // From May 2022 until July 2022
+        assertEquals(3, DBReader.getMonthlyTimeStatistics().size());
+        assertFalse(adapter.repairStatistics());
+    }
+
+    private void play(FeedMedia media, int playedDuration, long lastPlayed) {
+        media.setPlayedDuration(playedDuration);
+        media.setLastPlayedTimeStatistics(lastPlayed);
+        media.setLastPlayedTimeHistory(new Date(lastPlayed));
+        adapter.setFeedMediaPlaybackInformation(media);
+    }
+
+    private StatisticsItem getStatistics(boolean includeMarkedAsPlayed, long timeFilterFrom, long timeFilterTo) {
+        return DBReader.getStatistics(includeMarkedAsPlayed, timeFilterFrom, timeFilterTo).feedTime.get(0);
+    }
+
+    private Feed createFeed(String title, int numItems) {
+        Feed feed = new Feed("url-" + title, null, title);
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < numItems; i++) {
+            FeedItem item = new FeedItem(0, "Item " + i, "item" + i, "link", new Date(i), FeedItem.UNPLAYED, feed);
+            item.setMedia(new FeedMedia(item, "https://example.com/" + title + i + ".mp3", 1000, "audio/mpeg"));
+            item.getMedia().setDuration(300_000);
+            feed.getItems().add(item);
+        }
+        return feed;
+    }
+}
@@ -0,0 +1,81 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.Context;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class WriteAheadLoggingTest {
+    private static final int NUM_FEEDS = 50;
+    private static final int NUM_ITEMS = 20;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.tearDownTests();
+        PodDBAdapter.setWriteAheadLoggingEnabled(true);
+        PodDBAdapter.deleteDatabase();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+    }
+
+    @After
+    public void tearDown() {
+        PodDBAdapter.setWriteAheadLoggingEnabled(false);
+        PodDBAdapter.tearDownTests();
+    }
+
+    @Test
+    public void testExportSeesAllChanges() {
+        FeedDatabaseWriter.updateFeed(context, createFeed(0), false);
+        assertTrue(PodDBAdapter.checkpointWriteAheadLog());
+        assertEquals(1, DBReader.getFeedList().size());
+    }
+
+    @Test
+    public void testReadsDuringRefreshSeeCommittedFeeds() throws Exception {
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < NUM_FEEDS; i++) {
+                FeedDatabaseWriter.updateFeed(context, createFeed(i), false);
+            }
+        });
+        writer.start();
+
+        int lastSize = 0;
+        while (writer.isAlive()) {
+            int size = DBReader.getFeedList().size();
+            assertTrue(size >= lastSize);
+            lastSize = size;
+        }
+        writer.join();
+        assertEquals(NUM_FEEDS, DBReader.getFeedList().size());
+    }
+
+    private Feed createFeed(int number) {
+        Feed feed = new Feed("url" + number, null, "Feed " + number);
+        feed.setItems(new ArrayList<>());
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            feed.getItems().add(new FeedItem(0, "Item " + i, "item" + i, "link",
+                    new Date(i), FeedItem.UNPLAYED, feed));
+        }
+        return feed;
+    }
+}
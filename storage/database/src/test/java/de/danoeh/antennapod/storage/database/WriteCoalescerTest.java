@@ -0,0 +1,162 @@
+package de.danoeh.antennapod.storage.database;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import de.danoeh.antennapod.event.DownloadLogEvent;
+import de.danoeh.antennapod.model.download.DownloadError;
+import de.danoeh.antennapod.model.download.DownloadResult;
+import de.danoeh.antennapod.model.feed.Feed;
+import de.danoeh.antennapod.model.feed.FeedItem;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueue;
+import de.danoeh.antennapod.net.sync.serviceinterface.SynchronizationQueueStub;
+import de.danoeh.antennapod.storage.preferences.UserPreferences;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class WriteCoalescerTest {
+    private Context context;
+    private final AtomicInteger downloadLogEvents = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        UserPreferences.init(context);
+        PodDBAdapter.init(context);
+        PodDBAdapter.deleteDatabase();
+        SynchronizationQueue.setInstance(new SynchronizationQueueStub());
+        EventBus.getDefault().register(this);
+    }
+
+    @After
+    public void tearDown() {
+        EventBus.getDefault().unregister(this);
+        DBWriter.tearDownTests();
+    }
+
+    @Subscribe
+    public void onDownloadLogEvent(DownloadLogEvent event) {
+        downloadLogEvents.incrementAndGet();
+    }
+
+    @Test
+    public void testUpdatesOfSameRowAreMerged() throws Exception {
+        FeedItem item = createItem();
+        long mergedBefore = DBWriter.getWriteQueueStats().writesMerged;
+        DBWriter.markItemPlayed(FeedItem.PLAYED, item.getId());
+        DBWriter.markItemPlayed(FeedItem.NEW, item.getId());
+        DBWriter.markItemPlayed(FeedItem.UNPLAYED, item.getId()).get();
+
+        assertEquals(FeedItem.UNPLAYED, DBReader.getFeedItem(item.getId()).getPlayState());
+        assertEquals(2, DBWriter.getWriteQueueStats().writesMerged - mergedBefore);
+    }
+
+    @Test
+    public void testOrderWithOtherWritesIsKept() throws Exception {
+        FeedItem item = createItem();
+        DBWriter.markItemPlayed(FeedItem.NEW, item.getId());
+        DBWriter.markItemPlayed(item, FeedItem.PLAYED, false).get();
+        assertEquals(FeedItem.PLAYED, DBReader.getFeedItem(item.getId()).getPlayState());
+
+        DBWriter.markItemPlayed(item, FeedItem.PLAYED, false);
+        DBWriter.markItemPlayed(FeedItem.UNPLAYED, item.getId()).get();
+        assertEquals(FeedItem.UNPLAYED, DBReader.getFeedItem(item.getId()).getPlayState());
+    }
+
+    @Test
+    public void testPlaybackPositionIsWritten() throws Exception {
+        FeedItem item = createItem();
+        FeedMedia media = item.getMedia();
+        Future<?> lastWrite = null;
+        for (int position = 1000; position <= 10000; position += 1000) {
+            media.setPosition(position);
+            lastWrite = DBWriter.setFeedMediaPlaybackInformation(media);
+        }
+        lastWrite.get();
+        assertEquals(10000, DBReader.getFeedMedia(media.getId()).getPosition());
+    }
+
+    @Test
+    public void testBurstIsCommittedInFewBatches() throws Exception {
+        final int numWrites = 200;
+        WriteQueueStats before = DBWriter.getWriteQueueStats();
+        downloadLogEvents.set(0);
+        Future<?> lastWrite = null;
+        for (int i = 0; i < numWrites; i++) {
+            lastWrite = DBWriter.addDownloadStatus(new DownloadResult("Episode " + i, i + 1,
+                    FeedMedia.FEEDFILETYPE_FEEDMEDIA, true, DownloadError.SUCCESS, ""));
+        }
+        lastWrite.get();
+        DBWriter.tearDownTests(); // Wait until the events of the last batch are posted
+        WriteQueueStats after = DBWriter.getWriteQueueStats();
+
+        long batches = after.batchesCommitted - before.batchesCommitted;
+        assertEquals(numWrites, after.writesCommitted - before.writesCommitted);
+        assertTrue(batches < numWrites);
+        assertEquals(batches, downloadLogEvents.get());
+        assertEquals(0, after.pendingWrites);
+    }
+
+    @Test
+    public void testFailingWriteDoesNotFailOthers() throws Exception {
+        FeedItem item = createItem();
+        FeedMedia brokenMedia = createItem("broken").getMedia();
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                context.getDatabasePath(PodDBAdapter.DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        db.execSQL("CREATE TRIGGER fail_update BEFORE UPDATE OF " + PodDBAdapter.KEY_POSITION
+                + " ON " + PodDBAdapter.TABLE_NAME_FEED_MEDIA
+                + " WHEN NEW." + PodDBAdapter.KEY_ID + " = " + brokenMedia.getId()
+                + " BEGIN SELECT RAISE(ABORT, 'Update failed'); END");
+        db.close();
+
+        brokenMedia.setPosition(5000);
+        Future<?> brokenWrite = DBWriter.setFeedMediaPlaybackInformation(brokenMedia);
+        Future<?> playedWrite = DBWriter.markItemPlayed(FeedItem.PLAYED, item.getId());
+        item.getMedia().setPosition(3000);
+        Future<?> positionWrite = DBWriter.setFeedMediaPlaybackInformation(item.getMedia());
+
+        positionWrite.get();
+        playedWrite.get();
+        try {
+            brokenWrite.get();
+            fail("Write should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        assertEquals(FeedItem.PLAYED, DBReader.getFeedItem(item.getId()).getPlayState());
+        assertEquals(3000, DBReader.getFeedMedia(item.getMedia().getId()).getPosition());
+        assertEquals(0, DBReader.getFeedMedia(brokenMedia.getId()).getPosition());
+    }
+
+    private FeedItem createItem() {
+        return createItem("item");
+    }
+
+    private FeedItem createItem(String name) {
+        Feed feed = new Feed("url-" + name, null, "Feed");
+        feed.setItems(new ArrayList<>());
+        FeedItem item = new FeedItem(0, "Episode", name, "link", new Date(), FeedItem.UNPLAYED, feed);
+        item.setMedia(new FeedMedia(item, "https://example.com/" + name + ".mp3", 1000, "audio/mpeg"));
+        feed.getItems().add(item);
+        FeedDatabaseWriter.updateFeed(context, feed, false);
+        return item;
+    }
+}
@@ -47,6 +47,9 @@ public class DatabaseExporter {
         if (!currentDB.exists()) {
             throw new IOException("Cannot access current database");
         }
+        if (!PodDBAdapter.checkpointWriteAheadLog()) {
+            throw new IOException("Database is busy, unable to copy all changes to the database file");
+        }
         try (InputStream src = new FileInputStream(currentDB)) {
             return IOUtils.copy(src, outFileStream);
         } catch (IOException e) {
@@ -70,7 +73,8 @@ public class DatabaseExporter {
             db.close();
 
             File currentDB = context.getDatabasePath(PodDBAdapter.DATABASE_NAME);
-            boolean success = currentDB.delete();
+            // Also deletes the write-ahead log, which must not be applied to the imported database
+            boolean success = SQLiteDatabase.deleteDatabase(currentDB);
             if (!success) {
                 throw new IOException("Unable to delete old database");
             }
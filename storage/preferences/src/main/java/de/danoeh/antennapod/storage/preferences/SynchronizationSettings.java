@@ -10,6 +10,7 @@ public class SynchronizationSettings {
     private static final String LAST_SYNC_ATTEMPT_SUCCESS = "last_sync_attempt_success";
     private static final String LAST_EPISODE_ACTIONS_SYNC_TIMESTAMP = "last_episode_actions_sync_timestamp";
     private static final String LAST_SUBSCRIPTION_SYNC_TIMESTAMP = "last_sync_timestamp";
+    private static final String LAST_UPLOADED_PLAYED_EPISODE = "last_uploaded_played_episode";
 
     private static SharedPreferences prefs;
 
@@ -26,6 +27,7 @@ public class SynchronizationSettings {
                 .putLong(LAST_SUBSCRIPTION_SYNC_TIMESTAMP, 0)
                 .putLong(LAST_EPISODE_ACTIONS_SYNC_TIMESTAMP, 0)
                 .putLong(LAST_SYNC_ATTEMPT_TIMESTAMP, 0)
+                .remove(LAST_UPLOADED_PLAYED_EPISODE)
                 .apply();
     }
 
@@ -65,7 +67,24 @@ public class SynchronizationSettings {
         return prefs.getLong(LAST_EPISODE_ACTIONS_SYNC_TIMESTAMP, 0);
     }
 
+    /**
+     * Also forgets the progress of uploading the played episodes, which is only needed until the first sync is done.
+     */
     public static void setLastEpisodeActionSynchronizationAttemptTimestamp(long timestamp) {
-        prefs.edit().putLong(LAST_EPISODE_ACTIONS_SYNC_TIMESTAMP, timestamp).apply();
+        prefs.edit()
+                .putLong(LAST_EPISODE_ACTIONS_SYNC_TIMESTAMP, timestamp)
+                .remove(LAST_UPLOADED_PLAYED_EPISODE)
+                .apply();
+    }
+
+    /**
+     * @return The ID of the last played episode that the first sync uploaded, or 0 if it did not upload any yet
+     */
+    public static long getLastUploadedPlayedEpisode() {
+        return prefs.getLong(LAST_UPLOADED_PLAYED_EPISODE, 0);
+    }
+
+    public static void setLastUploadedPlayedEpisode(long itemId) {
+        prefs.edit().putLong(LAST_UPLOADED_PLAYED_EPISODE, itemId).apply();
     }
 }
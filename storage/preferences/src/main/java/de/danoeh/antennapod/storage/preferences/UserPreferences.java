@@ -115,6 +115,7 @@ public abstract class UserPreferences {
     public static final String PREF_DELETE_REMOVES_FROM_QUEUE = "prefDeleteRemovesFromQueue";
     public static final String PREF_DOWNLOADS_BUTTON_ACTION = "prefDownloadsButtonAction";
     private static final String PREF_AUTOMATIC_EXPORT_FOLDER = "prefAutomaticExportFolder";
+    public static final String PREF_DATABASE_WRITE_AHEAD_LOGGING = "prefDatabaseWriteAheadLogging";
 
     // Mediaplayer
     private static final String PREF_PLAYBACK_SPEED = "prefPlaybackSpeed";
@@ -315,6 +316,10 @@ public abstract class UserPreferences {
         prefs.edit().putString(PREF_AUTOMATIC_EXPORT_FOLDER, folder).apply();
     }
 
+    public static boolean isDatabaseWriteAheadLogging() {
+        return prefs.getBoolean(PREF_DATABASE_WRITE_AHEAD_LOGGING, false);
+    }
+
     /**
      * Returns notification priority.
      *
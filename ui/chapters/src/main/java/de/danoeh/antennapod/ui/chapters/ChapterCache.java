@@ -0,0 +1,163 @@
+package de.danoeh.antennapod.ui.chapters;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.danoeh.antennapod.model.feed.Chapter;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the chapters that were read from media files on disk, so that starting playback does not
+ * need to open and parse the file again. An entry is only used while the file it was read from
+ * stays the same, so downloading the episode again invalidates it.
+ */
+class ChapterCache {
+    private static final String TAG = "ChapterCache";
+    private static final int FORMAT_VERSION = 1;
+    static final int MAX_ENTRIES = 300;
+
+    private ChapterCache() {
+    }
+
+    /**
+     * @return The cached chapters, an empty list if the file is known to have no chapters,
+     *         or null if there is no valid entry
+     */
+    @Nullable
+    static synchronized List<Chapter> get(Context context, FeedMedia media) {
+        File file = getFile(context, media);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            List<Chapter> chapters = read(in, getSourceKey(media));
+            if (chapters != null) {
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis());
+            }
+            return chapters;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.d(TAG, "Unable to read cached chapters: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static synchronized void put(Context context, FeedMedia media, @Nullable List<Chapter> chapters) {
+        File file = getFile(context, media);
+        File tempFile = new File(file.getPath() + ".tmp");
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            write(out, getSourceKey(media), chapters != null ? chapters : Collections.emptyList());
+        } catch (IOException e) {
+            Log.d(TAG, "Unable to cache chapters: " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+        trim(file.getParentFile());
+    }
+
+    /**
+     * Identifies the content that the chapters were read from. Downloading the file again changes its date.
+     */
+    @NonNull
+    static String getSourceKey(FeedMedia media) {
+        if (media.localFileAvailable()) {
+            return "file " + new File(media.getLocalFileUrl()).length() + " " + media.getDownloadDate()
+                    + " " + media.getLocalFileUrl();
+        }
+        return "stream " + media.getSize() + " " + media.getStreamUrl();
+    }
+
+    static void write(DataOutputStream out, String sourceKey, List<Chapter> chapters) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(sourceKey);
+        out.writeInt(chapters.size());
+        for (Chapter chapter : chapters) {
+            out.writeLong(chapter.getStart());
+            writeNullableString(out, chapter.getTitle());
+            writeNullableString(out, chapter.getLink());
+            writeNullableString(out, chapter.getImageUrl());
+            writeNullableString(out, chapter.getChapterId());
+        }
+    }
+
+    /**
+     * @return The chapters, or null if the entry was made for a different file
+     */
+    @Nullable
+    static List<Chapter> read(DataInputStream in, String sourceKey) throws IOException {
+        if (in.readInt() != FORMAT_VERSION || !sourceKey.equals(in.readUTF())) {
+            return null;
+        }
+        int numChapters = in.readInt();
+        List<Chapter> chapters = new ArrayList<>(numChapters);
+        for (int i = 0; i < numChapters; i++) {
+            long start = in.readLong();
+            Chapter chapter = new Chapter(start, readNullableString(in), readNullableString(in),
+                    readNullableString(in));
+            chapter.setChapterId(readNullableString(in));
+            chapters.add(chapter);
+        }
+        return chapters;
+    }
+
+    private static void writeNullableString(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static File getFile(Context context, FeedMedia media) {
+        return new File(new File(context.getCacheDir(), "chapters"), Long.toString(media.getId()));
+    }
+
+    /**
+     * Removes the least recently used entries.
+     */
+    private static void trim(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) {
+            return;
+        }
+        long[] lastModified = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+        }
+        long[] sorted = lastModified.clone();
+        Arrays.sort(sorted);
+        long threshold = sorted[files.length - MAX_ENTRIES];
+        for (int i = 0; i < files.length; i++) {
+            if (lastModified[i] < threshold) {
+                //noinspection ResultOfMethodCallIgnored
+                files[i].delete();
+            }
+        }
+    }
+}
@@ -67,7 +67,7 @@ public class ChapterUtils {
 
             }
 
-            List<Chapter> chaptersFromMediaFile = ChapterUtils.loadChaptersFromMediaFile(playable, context);
+            List<Chapter> chaptersFromMediaFile = loadChaptersFromMediaFile(playable, context, forceRefresh);
             List<Chapter> chaptersMergePhase1 = ChapterMerger.merge(chaptersFromDatabase, chaptersFromMediaFile);
             List<Chapter> chapters = ChapterMerger.merge(chaptersMergePhase1, chaptersFromPodcastIndex);
             if (chapters == null) {
@@ -82,6 +82,30 @@ public class ChapterUtils {
         }
     }
 
+    /**
+     * Like {@link #loadChaptersFromMediaFile(Playable, Context)}, but uses the chapters that were read from
+     * the same file before. If forceRefresh is set, the file is read again and the cache is updated.
+     */
+    public static List<Chapter> loadChaptersFromMediaFile(Playable playable, Context context, boolean forceRefresh)
+            throws InterruptedIOException {
+        if (!(playable instanceof FeedMedia)) {
+            return loadChaptersFromMediaFile(playable, context);
+        }
+        FeedMedia media = (FeedMedia) playable;
+        if (!forceRefresh) {
+            List<Chapter> cachedChapters = ChapterCache.get(context, media);
+            if (cachedChapters != null) {
+                return cachedChapters.isEmpty() ? null : cachedChapters;
+            }
+        }
+        List<Chapter> chapters = loadChaptersFromMediaFile(playable, context);
+        if (chapters != null || media.localFileAvailable()) {
+            // A stream that could not be loaded looks like a stream without chapters, so only remember files
+            ChapterCache.put(context, media, chapters);
+        }
+        return chapters;
+    }
+
     public static List<Chapter> loadChaptersFromMediaFile(Playable playable, Context context)
             throws InterruptedIOException {
         try (CountingInputStream in = openStream(playable, context)) {
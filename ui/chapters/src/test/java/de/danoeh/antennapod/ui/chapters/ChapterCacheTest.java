@@ -0,0 +1,177 @@
+package de.danoeh.antennapod.ui.chapters;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import de.danoeh.antennapod.model.feed.Chapter;
+import de.danoeh.antennapod.model.feed.FeedMedia;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ChapterCacheTest {
+    private Context context;
+    private File mediaFile;
+
+    @Before
+    public void setUp() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        mediaFile = new File(context.getFilesDir(), "episode.mp3");
+        writeFile(mediaFile, 1000);
+    }
+
+    @Test
+    public void testRoundTripWithNullFields() throws IOException {
+        Chapter chapter = new Chapter(1000, "Title", "https://example.com/link", "https://example.com/image.png");
+        chapter.setChapterId("ch1");
+        Chapter emptyChapter = new Chapter(2000, null, null, null);
+        List<Chapter> chapters = readBack(Arrays.asList(chapter, emptyChapter), "key", "key");
+
+        assertNotNull(chapters);
+        assertEquals(2, chapters.size());
+        assertEquals(1000, chapters.get(0).getStart());
+        assertEquals("Title", chapters.get(0).getTitle());
+        assertEquals("https://example.com/link", chapters.get(0).getLink());
+        assertEquals("https://example.com/image.png", chapters.get(0).getImageUrl());
+        assertEquals("ch1", chapters.get(0).getChapterId());
+        assertEquals(2000, chapters.get(1).getStart());
+        assertNull(chapters.get(1).getTitle());
+        assertNull(chapters.get(1).getLink());
+        assertNull(chapters.get(1).getImageUrl());
+        assertNull(chapters.get(1).getChapterId());
+    }
+
+    @Test
+    public void testReadWithDifferentKey() throws IOException {
+        assertNull(readBack(Collections.singletonList(new Chapter(0, "Title", null, null)), "key", "other key"));
+    }
+
+    @Test
+    public void testFileEntryIsInvalidatedWhenLengthChanges() throws IOException {
+        FeedMedia media = createDownloadedMedia(1, 1000);
+        ChapterCache.put(context, media, Collections.singletonList(new Chapter(0, "Title", null, null)));
+        assertEquals(1, ChapterCache.get(context, media).size());
+
+        writeFile(mediaFile, 2000);
+        assertNull(ChapterCache.get(context, media));
+    }
+
+    @Test
+    public void testFileEntryIsInvalidatedWhenDownloadDateChanges() {
+        FeedMedia media = createDownloadedMedia(1, 1000);
+        ChapterCache.put(context, media, Collections.singletonList(new Chapter(0, "Title", null, null)));
+        assertEquals(1, ChapterCache.get(context, media).size());
+
+        media.setDownloaded(true, 2000);
+        assertNull(ChapterCache.get(context, media));
+    }
+
+    @Test
+    public void testStreamEntryIsInvalidatedWhenUrlChanges() {
+        FeedMedia media = createStreamMedia(1, "https://example.com/episode.mp3");
+        ChapterCache.put(context, media, Collections.singletonList(new Chapter(0, "Title", null, null)));
+        assertEquals(1, ChapterCache.get(context, media).size());
+
+        assertNull(ChapterCache.get(context, createStreamMedia(1, "https://example.com/other.mp3")));
+    }
+
+    @Test
+    public void testFileWithoutChaptersIsRemembered() {
+        FeedMedia media = createDownloadedMedia(1, 1000);
+        ChapterCache.put(context, media, null);
+        List<Chapter> chapters = ChapterCache.get(context, media);
+        assertNotNull(chapters);
+        assertTrue(chapters.isEmpty());
+    }
+
+    @Test
+    public void testLoadChaptersUsesCache() throws IOException {
+        FeedMedia media = createDownloadedMedia(1, 1000);
+        ChapterCache.put(context, media, Collections.singletonList(new Chapter(0, "Cached", null, null)));
+
+        List<Chapter> chapters = ChapterUtils.loadChaptersFromMediaFile(media, context, false);
+        assertNotNull(chapters);
+        assertEquals("Cached", chapters.get(0).getTitle());
+    }
+
+    @Test
+    public void testForcedRefreshReadsFileAgain() throws IOException {
+        FeedMedia media = createDownloadedMedia(1, 1000);
+        ChapterCache.put(context, media, Collections.singletonList(new Chapter(0, "Cached", null, null)));
+
+        // The file itself has no chapters
+        assertNull(ChapterUtils.loadChaptersFromMediaFile(media, context, true));
+        List<Chapter> cachedChapters = ChapterCache.get(context, media);
+        assertNotNull(cachedChapters);
+        assertTrue(cachedChapters.isEmpty());
+        assertNull(ChapterUtils.loadChaptersFromMediaFile(media, context, false));
+    }
+
+    @Test
+    public void testTrimRemovesLeastRecentlyUsed() {
+        File directory = new File(context.getCacheDir(), "chapters");
+        for (int i = 1; i <= ChapterCache.MAX_ENTRIES; i++) {
+            ChapterCache.put(context, createStreamMedia(i, "https://example.com/" + i), null);
+            assertTrue(new File(directory, Integer.toString(i)).setLastModified(i * 1000L));
+        }
+        // Reading the oldest entry makes the second oldest one the least recently used
+        assertNotNull(ChapterCache.get(context, createStreamMedia(1, "https://example.com/1")));
+
+        int newId = ChapterCache.MAX_ENTRIES + 1;
+        ChapterCache.put(context, createStreamMedia(newId, "https://example.com/" + newId), null);
+
+        assertEquals(ChapterCache.MAX_ENTRIES, directory.listFiles().length);
+        assertTrue(new File(directory, "1").exists());
+        assertFalse(new File(directory, "2").exists());
+        assertTrue(new File(directory, Integer.toString(newId)).exists());
+    }
+
+    private static List<Chapter> readBack(List<Chapter> chapters, String writeKey, String readKey)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ChapterCache.write(out, writeKey, chapters);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return ChapterCache.read(in, readKey);
+        }
+    }
+
+    private FeedMedia createDownloadedMedia(long id, long downloadDate) {
+        FeedMedia media = new FeedMedia(null, "https://example.com/episode.mp3", 0, "audio/mpeg");
+        media.setId(id);
+        media.setLocalFileUrl(mediaFile.getAbsolutePath());
+        media.setDownloaded(true, downloadDate);
+        return media;
+    }
+
+    private static FeedMedia createStreamMedia(long id, String url) {
+        FeedMedia media = new FeedMedia(null, url, 0, "audio/mpeg");
+        media.setId(id);
+        return media;
+    }
+
+    private static void writeFile(File file, int length) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+    }
+}